@@ -0,0 +1,579 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.*;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BackupManager class for online backups and point-in-time restore
+ * Base snapshots are taken with VACUUM INTO on a separate connection, so in WAL
+ * mode registers keep writing while the copy is made. Between snapshots every
+ * row change is captured by triggers into change_log and shipped to segment
+ * files in the backup directory. A restore copies the newest snapshot taken
+ * before the target time and replays the logged changes up to that time.
+ *
+ * Files in the backup directory:
+ *   base-<epoch millis>.db                 consistent snapshot of the database
+ *   changes-<first id>-<last id>.db        shipped change_log rows
+ */
+public class BackupManager {
+    private static final String CHANGE_LOG = "change_log";
+    private static final DateTimeFormatter SQL_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+
+    private static final long SNAPSHOT_INTERVAL_MILLIS = Long.getLong("coffeeshop.backupSnapshotMinutes", 360L) * 60 * 1000;
+    private static final long ARCHIVE_INTERVAL_MILLIS = Long.getLong("coffeeshop.backupArchiveSeconds", 60L) * 1000;
+    private static final int SNAPSHOTS_TO_KEEP = Integer.getInteger("coffeeshop.backupRetention", 7);
+
+    private static BackupManager instance;
+
+    private final DatabaseConnection primary;
+    private final File backupDirectory;
+    private ScheduledExecutorService scheduler;
+
+    // Metrics
+    private volatile long lastSnapshotTime;
+    private volatile long lastSnapshotBytes;
+    private volatile long lastSnapshotMillis;
+    private volatile long archivedChanges;
+    private volatile long lastArchiveMillis;
+
+    public BackupManager(DatabaseConnection primary, File backupDirectory) {
+        this.primary = primary;
+        this.backupDirectory = backupDirectory;
+    }
+
+    // Get the backup manager for this register's database
+    public static synchronized BackupManager getInstance() {
+        if (instance == null) {
+            File directory = new File(System.getProperty("coffeeshop.backupDir", "backups"));
+            instance = new BackupManager(DatabaseConnection.getInstance(), directory);
+        }
+        return instance;
+    }
+
+    // Install change capture and start taking snapshots and shipping changes in the background
+    public synchronized boolean start() {
+        if (scheduler != null) {
+            return true;
+        }
+        if (!enableChangeLog()) {
+            return false;
+        }
+        File[] bases = listFiles("base-");
+        lastSnapshotTime = bases.length > 0 ? fileTime(bases[bases.length - 1]) : 0;
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "backup-manager");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::runScheduled, 0, ARCHIVE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    // Stop the background work, shipping what is left
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            scheduler = null;
+            archive();
+        }
+    }
+
+    private void runScheduled() {
+        try {
+            if (System.currentTimeMillis() - lastSnapshotTime >= SNAPSHOT_INTERVAL_MILLIS) {
+                snapshot();
+            }
+            archive();
+        } catch (RuntimeException e) {
+            System.err.println("Backup run failed: " + e.getMessage());
+        }
+    }
+
+    // Create change_log and (re)create the capture triggers for every table
+    public boolean enableChangeLog() {
+        Connection conn = primary.getConnection();
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS " + CHANGE_LOG + " (" +
+                         "change_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                         "changed_at TEXT NOT NULL DEFAULT (strftime('%Y-%m-%d %H:%M:%f', 'now'))," +
+                         "table_name TEXT NOT NULL," +
+                         "op CHAR(1) NOT NULL," +
+                         "row_key INTEGER NOT NULL," +
+                         "row_data TEXT)");
+
+            for (String table : loggedTables(conn)) {
+                List<String> columns = columnsOf(conn, table);
+                StringBuilder json = new StringBuilder("json_object(");
+                for (int i = 0; i < columns.size(); i++) {
+                    if (i > 0) {
+                        json.append(", ");
+                    }
+                    json.append("'").append(columns.get(i)).append("', NEW.\"").append(columns.get(i)).append("\"");
+                }
+                json.append(")");
+
+                String upsert = "INSERT INTO " + CHANGE_LOG + " (table_name, op, row_key, row_data) " +
+                                "VALUES ('" + table + "', 'U', NEW.rowid, " + json + ");";
+                String delete = "INSERT INTO " + CHANGE_LOG + " (table_name, op, row_key) " +
+                                "VALUES ('" + table + "', 'D', OLD.rowid);";
+
+                // Recreated on every start so columns added since are captured too
+                stmt.execute("DROP TRIGGER IF EXISTS " + table + "_cl_ai");
+                stmt.execute("DROP TRIGGER IF EXISTS " + table + "_cl_au");
+                stmt.execute("DROP TRIGGER IF EXISTS " + table + "_cl_ad");
+                stmt.execute("CREATE TRIGGER " + table + "_cl_ai AFTER INSERT ON \"" + table + "\" BEGIN " + upsert + " END");
+                stmt.execute("CREATE TRIGGER " + table + "_cl_au AFTER UPDATE ON \"" + table + "\" BEGIN " +
+                             "INSERT INTO " + CHANGE_LOG + " (table_name, op, row_key) " +
+                             "SELECT '" + table + "', 'D', OLD.rowid WHERE OLD.rowid <> NEW.rowid; " +
+                             upsert + " END");
+                stmt.execute("CREATE TRIGGER " + table + "_cl_ad AFTER DELETE ON \"" + table + "\" BEGIN " + delete + " END");
+            }
+            return true;
+
+        } catch (SQLException e) {
+            System.err.println("Error enabling change capture: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Remove the capture triggers so change_log stops growing while backups are off. Rows already
+    // logged are kept and shipped if backups are turned on again.
+    public boolean disableChangeLog() {
+        Connection conn = primary.getConnection();
+        try (Statement stmt = conn.createStatement()) {
+            List<String> triggers = new ArrayList<>();
+            try (ResultSet rs = stmt.executeQuery(
+                    "SELECT name FROM sqlite_master WHERE type = 'trigger' AND name GLOB '*_cl_a[iud]'")) {
+                while (rs.next()) {
+                    triggers.add(rs.getString("name"));
+                }
+            }
+            for (String trigger : triggers) {
+                stmt.execute("DROP TRIGGER IF EXISTS \"" + trigger + "\"");
+            }
+            return true;
+
+        } catch (SQLException e) {
+            System.err.println("Error disabling change capture: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Take a consistent online snapshot; returns the file or null on failure
+    public File snapshot() {
+        if (!backupDirectory.exists() && !backupDirectory.mkdirs()) {
+            System.err.println("Cannot create backup directory " + backupDirectory);
+            return null;
+        }
+
+        long started = System.currentTimeMillis();
+        File partial = new File(backupDirectory, "base-" + started + ".db.tmp");
+
+        try (Connection conn = openSourceConnection()) {
+            try (PreparedStatement pstmt = conn.prepareStatement("VACUUM INTO ?")) {
+                pstmt.setString(1, partial.getPath());
+                pstmt.execute();
+            } catch (SQLException e) {
+                // SQLite before 3.27 has no VACUUM INTO; the driver's backup command is also online
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.executeUpdate("backup to " + partial.getPath());
+                }
+            }
+            // Named by finish time: changes committed before then are in the copy or replayed from the log
+            long finished = System.currentTimeMillis();
+            File target = new File(backupDirectory, "base-" + finished + ".db");
+            Files.move(partial.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+            lastSnapshotTime = finished;
+            lastSnapshotMillis = finished - started;
+            lastSnapshotBytes = target.length();
+            pruneOldBackups();
+            return target;
+
+        } catch (SQLException | IOException e) {
+            partial.delete();
+            System.err.println("Error taking snapshot: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Move captured changes into a segment file; returns the number of changes shipped
+    public int archive() {
+        if (!backupDirectory.exists() && !backupDirectory.mkdirs()) {
+            return 0;
+        }
+
+        long started = System.currentTimeMillis();
+        try (Connection conn = openSourceConnection()) {
+            long firstId;
+            long lastId;
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT MIN(change_id), MAX(change_id), COUNT(*) FROM " + CHANGE_LOG)) {
+                if (!rs.next() || rs.getInt(3) == 0) {
+                    return 0;
+                }
+                firstId = rs.getLong(1);
+                lastId = rs.getLong(2);
+            }
+
+            File segment = new File(backupDirectory, String.format("changes-%012d-%012d.db", firstId, lastId));
+            File partial = new File(backupDirectory, segment.getName() + ".tmp");
+            partial.delete();
+
+            // Segment first, then trim the log: a crash in between only repeats changes, and replay is idempotent
+            try (PreparedStatement attach = conn.prepareStatement("ATTACH DATABASE ? AS seg")) {
+                attach.setString(1, partial.getPath());
+                attach.execute();
+            }
+            int shipped;
+            try (Statement stmt = conn.createStatement()) {
+                shipped = stmt.executeUpdate("CREATE TABLE seg." + CHANGE_LOG + " AS SELECT * FROM main." + CHANGE_LOG +
+                                             " WHERE change_id <= " + lastId);
+                stmt.execute("DETACH DATABASE seg");
+            }
+            Files.move(partial.toPath(), segment.toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+            try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM " + CHANGE_LOG + " WHERE change_id <= ?")) {
+                pstmt.setLong(1, lastId);
+                shipped = pstmt.executeUpdate();
+            }
+
+            archivedChanges += shipped;
+            lastArchiveMillis = System.currentTimeMillis() - started;
+            return shipped;
+
+        } catch (SQLException | IOException e) {
+            System.err.println("Error archiving changes: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    // Rebuild the database as it was at the given time into destination; returns changes replayed or -1
+    public int restoreToPointInTime(LocalDateTime target, File destination) {
+        long targetMillis = target.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        String targetUtc = LocalDateTime.ofInstant(Instant.ofEpochMilli(targetMillis), ZoneOffset.UTC).format(SQL_TIME_FORMAT);
+
+        File base = null;
+        for (File candidate : listFiles("base-")) {
+            if (fileTime(candidate) <= targetMillis) {
+                base = candidate;
+            }
+        }
+        if (base == null) {
+            System.err.println("No snapshot taken before " + target);
+            return -1;
+        }
+
+        try {
+            Files.copy(base.toPath(), destination.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.err.println("Error copying snapshot: " + e.getMessage());
+            return -1;
+        }
+
+        // Foreign keys stay off: replay applies rows in their original order, and cascades must not fire twice
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + destination.getPath())) {
+            long mark = changeLogSequence(conn);
+            ChangeApplier applier = new ChangeApplier(conn);
+
+            int applied = 0;
+            for (File segment : listFiles("changes-")) {
+                if (segmentLastId(segment) > mark) {
+                    applied += replayFrom(conn, applier, segment.getPath(), mark, targetUtc);
+                }
+            }
+            // Changes not shipped yet are still in the live database
+            applied += replayFrom(conn, applier, primary.getDatabaseName(), mark, targetUtc);
+
+            try (Statement stmt = conn.createStatement()) {
+                // The replay itself was captured again; the restored copy starts with an empty log
+                stmt.execute("DELETE FROM " + CHANGE_LOG);
+            }
+            applier.close();
+            return applied;
+
+        } catch (SQLException e) {
+            System.err.println("Error restoring to " + target + ": " + e.getMessage());
+            return -1;
+        }
+    }
+
+    public BackupStats getStats() {
+        return new BackupStats(lastSnapshotTime, lastSnapshotBytes, lastSnapshotMillis, archivedChanges,
+                               lastArchiveMillis, listFiles("base-").length, listFiles("changes-").length);
+    }
+
+    // Apply one source's changes with id above the snapshot mark, up to the target time
+    private int replayFrom(Connection conn, ChangeApplier applier, String sourceFile, long mark, String targetUtc)
+            throws SQLException {
+        try (PreparedStatement attach = conn.prepareStatement("ATTACH DATABASE ? AS src")) {
+            attach.setString(1, sourceFile);
+            attach.execute();
+        }
+
+        // Reading everything first keeps the attached source free while rows are written
+        List<Object[]> changes = new ArrayList<>();
+        try {
+            if (!hasTable(conn, "src", CHANGE_LOG)) {
+                return 0;
+            }
+            String query = "SELECT table_name, op, row_key, row_data FROM src." + CHANGE_LOG +
+                           " WHERE change_id > ? AND changed_at <= ? ORDER BY change_id";
+            try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+                pstmt.setLong(1, mark);
+                pstmt.setString(2, targetUtc);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        changes.add(new Object[] {rs.getString(1), rs.getString(2), rs.getLong(3), rs.getString(4)});
+                    }
+                }
+            }
+        } finally {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("DETACH DATABASE src");
+            }
+        }
+
+        // ATTACH/DETACH can't run inside a transaction, so each source is applied in its own
+        conn.setAutoCommit(false);
+        try {
+            for (Object[] change : changes) {
+                applier.apply((String) change[0], "D".equals(change[1]), (Long) change[2], (String) change[3]);
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+        return changes.size();
+    }
+
+    // Separate connection to the primary file so backup reads never hold the registers' connection
+    private Connection openSourceConnection() throws SQLException {
+        Connection conn = DriverManager.getConnection("jdbc:sqlite:" + primary.getDatabaseName());
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA busy_timeout = 5000");
+        }
+        return conn;
+    }
+
+    // Ordinary tables; FTS indexes and their shadow tables are rebuilt by their own triggers
+    private static List<String> loggedTables(Connection conn) throws SQLException {
+        List<String> tables = new ArrayList<>();
+        List<String> virtualTables = new ArrayList<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT name, sql FROM sqlite_master WHERE type = 'table' ORDER BY name")) {
+            while (rs.next()) {
+                String name = rs.getString("name");
+                String sql = rs.getString("sql");
+                if (sql != null && sql.toUpperCase().startsWith("CREATE VIRTUAL TABLE")) {
+                    virtualTables.add(name);
+                } else if (!name.startsWith("sqlite_") && !name.equals(CHANGE_LOG)) {
+                    tables.add(name);
+                }
+            }
+        }
+        tables.removeIf(name -> {
+            for (String virtualTable : virtualTables) {
+                if (name.startsWith(virtualTable + "_")) {
+                    return true;
+                }
+            }
+            return false;
+        });
+        return tables;
+    }
+
+    private static List<String> columnsOf(Connection conn, String table) throws SQLException {
+        List<String> columns = new ArrayList<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA table_info(\"" + table + "\")")) {
+            while (rs.next()) {
+                columns.add(rs.getString("name"));
+            }
+        }
+        return columns;
+    }
+
+    private static boolean hasTable(Connection conn, String schema, String table) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT 1 FROM " + schema + ".sqlite_master WHERE type = 'table' AND name = ?")) {
+            pstmt.setString(1, table);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    // Highest change id ever assigned when the snapshot was taken (survives the log being trimmed)
+    private static long changeLogSequence(Connection conn) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT seq FROM sqlite_sequence WHERE name = ?")) {
+            pstmt.setString(1, CHANGE_LOG);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getLong("seq") : 0;
+            }
+        }
+    }
+
+    // Keep the newest snapshots and the segments they still need
+    private void pruneOldBackups() throws SQLException {
+        File[] bases = listFiles("base-");
+        if (bases.length <= SNAPSHOTS_TO_KEEP) {
+            return;
+        }
+        File oldestKept = bases[bases.length - SNAPSHOTS_TO_KEEP];
+        long mark;
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + oldestKept.getPath())) {
+            mark = changeLogSequence(conn);
+        }
+        for (int i = 0; i < bases.length - SNAPSHOTS_TO_KEEP; i++) {
+            bases[i].delete();
+        }
+        for (File segment : listFiles("changes-")) {
+            if (segmentLastId(segment) <= mark) {
+                segment.delete();
+            }
+        }
+    }
+
+    // Backup files with the given prefix, oldest first
+    private File[] listFiles(String prefix) {
+        File[] files = backupDirectory.listFiles((dir, name) -> name.startsWith(prefix) && name.endsWith(".db"));
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files, (a, b) -> a.getName().compareTo(b.getName()));
+        return files;
+    }
+
+    private static long fileTime(File base) {
+        String name = base.getName();
+        return Long.parseLong(name.substring("base-".length(), name.length() - ".db".length()));
+    }
+
+    private static long segmentLastId(File segment) {
+        String name = segment.getName();
+        return Long.parseLong(name.substring(name.lastIndexOf('-') + 1, name.length() - ".db".length()));
+    }
+
+    // Writes logged row images back into their tables, one prepared pair per table
+    private static class ChangeApplier {
+        private final Connection conn;
+        private final Map<String, PreparedStatement> deletes = new HashMap<>();
+        private final Map<String, PreparedStatement> inserts = new HashMap<>();
+        private final Set<String> missingTables = new HashSet<>();
+
+        ChangeApplier(Connection conn) {
+            this.conn = conn;
+        }
+
+        void apply(String table, boolean isDelete, long rowKey, String rowData) throws SQLException {
+            if (missingTables.contains(table)) {
+                return;
+            }
+            PreparedStatement delete = deletes.get(table);
+            if (delete == null) {
+                List<String> columns = columnsOf(conn, table);
+                if (columns.isEmpty()) {
+                    missingTables.add(table);
+                    return;
+                }
+                delete = conn.prepareStatement("DELETE FROM \"" + table + "\" WHERE rowid = ?");
+                deletes.put(table, delete);
+
+                StringBuilder names = new StringBuilder("rowid");
+                StringBuilder values = new StringBuilder("?1");
+                for (String column : columns) {
+                    names.append(", \"").append(column).append("\"");
+                    values.append(", json_extract(?2, '$.\"").append(column).append("\"')");
+                }
+                inserts.put(table, conn.prepareStatement(
+                    "INSERT INTO \"" + table + "\" (" + names + ") VALUES (" + values + ")"));
+            }
+
+            // Delete then insert (not REPLACE) so delete triggers, e.g. on FTS indexes, fire
+            delete.setLong(1, rowKey);
+            delete.executeUpdate();
+            if (!isDelete) {
+                PreparedStatement insert = inserts.get(table);
+                insert.setLong(1, rowKey);
+                insert.setString(2, rowData);
+                insert.executeUpdate();
+            }
+        }
+
+        void close() throws SQLException {
+            for (PreparedStatement pstmt : deletes.values()) {
+                pstmt.close();
+            }
+            for (PreparedStatement pstmt : inserts.values()) {
+                pstmt.close();
+            }
+        }
+    }
+
+    // Inner class for backup metrics
+    public static class BackupStats {
+        private final long lastSnapshotTime;
+        private final long lastSnapshotBytes;
+        private final long lastSnapshotMillis;
+        private final long archivedChanges;
+        private final long lastArchiveMillis;
+        private final int snapshotCount;
+        private final int segmentCount;
+
+        public BackupStats(long lastSnapshotTime, long lastSnapshotBytes, long lastSnapshotMillis,
+                           long archivedChanges, long lastArchiveMillis, int snapshotCount, int segmentCount) {
+            this.lastSnapshotTime = lastSnapshotTime;
+            this.lastSnapshotBytes = lastSnapshotBytes;
+            this.lastSnapshotMillis = lastSnapshotMillis;
+            this.archivedChanges = archivedChanges;
+            this.lastArchiveMillis = lastArchiveMillis;
+            this.snapshotCount = snapshotCount;
+            this.segmentCount = segmentCount;
+        }
+
+        public long getLastSnapshotTime() { return lastSnapshotTime; }
+        public long getLastSnapshotBytes() { return lastSnapshotBytes; }
+        public long getLastSnapshotMillis() { return lastSnapshotMillis; }
+        public long getArchivedChanges() { return archivedChanges; }
+        public long getLastArchiveMillis() { return lastArchiveMillis; }
+        public int getSnapshotCount() { return snapshotCount; }
+        public int getSegmentCount() { return segmentCount; }
+
+        @Override
+        public String toString() {
+            String last = lastSnapshotTime > 0
+                ? LocalDateTime.ofInstant(Instant.ofEpochMilli(lastSnapshotTime), ZoneId.systemDefault()).toString()
+                : "never";
+            return String.format("Backups: %d snapshots (last %s, %d KB in %d ms), %d change segments, " +
+                                 "%d changes archived",
+                                 snapshotCount, last, lastSnapshotBytes / 1024, lastSnapshotMillis,
+                                 segmentCount, archivedChanges);
+        }
+    }
+}
@@ -0,0 +1,528 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * BenchmarkSuite class for micro-benchmarks of the hot paths
+ * Run with the benchmark names to execute, or no arguments for all of them:
+ *   java BenchmarkSuite money order backup gateway receipt
+ * Each benchmark warms up before measuring and prints ns per operation.
+ * Database benchmarks use an in-memory SQLite database (the backup benchmark
+ * a temporary file) and are skipped when the SQLite JDBC driver is not on
+ * the classpath.
+ */
+public class BenchmarkSuite {
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURE_ROUNDS = 10;
+
+    // Keeps results alive so the JIT cannot drop the measured work
+    private static volatile long blackhole;
+
+    public static void main(String[] args) {
+        String[] benchmarks = args.length > 0 ? args : new String[] {"money", "order", "backup", "gateway", "receipt"};
+
+        for (String benchmark : benchmarks) {
+            switch (benchmark) {
+                case "money":
+                    benchmarkMoneyTotals();
+                    benchmarkMoneyAggregates();
+                    break;
+                case "order":
+                    benchmarkCateringOrder();
+                    break;
+                case "backup":
+                    benchmarkBackup();
+                    break;
+                case "gateway":
+                    benchmarkGatewayCheckout();
+                    break;
+                case "receipt":
+                    benchmarkReceipts();
+                    break;
+                default:
+                    System.out.println("Unknown benchmark: " + benchmark);
+            }
+        }
+    }
+
+    // Order totals: double arithmetic versus long cents
+    private static void benchmarkMoneyTotals() {
+        final int orders = 100000;
+        final int itemsPerOrder = 8;
+        Random random = new Random(42);
+
+        double[] doublePrices = new double[orders * itemsPerOrder];
+        long[] centPrices = new long[orders * itemsPerOrder];
+        int[] quantities = new int[orders * itemsPerOrder];
+        for (int i = 0; i < doublePrices.length; i++) {
+            centPrices[i] = 150 + random.nextInt(900);
+            doublePrices[i] = centPrices[i] / 100.0;
+            quantities[i] = 1 + random.nextInt(4);
+        }
+
+        System.out.println("\n=== Money: order totals (" + orders + " orders x " + itemsPerOrder + " items) ===");
+
+        double doubleNanos = measure(() -> {
+            double sum = 0;
+            for (int order = 0; order < orders; order++) {
+                double subtotal = 0;
+                for (int i = order * itemsPerOrder; i < (order + 1) * itemsPerOrder; i++) {
+                    subtotal += doublePrices[i] * quantities[i];
+                }
+                double tax = subtotal * 0.08;
+                sum += subtotal + tax;
+            }
+            blackhole += (long) sum;
+        }) / orders;
+
+        double centNanos = measure(() -> {
+            long sum = 0;
+            for (int order = 0; order < orders; order++) {
+                long subtotal = 0;
+                for (int i = order * itemsPerOrder; i < (order + 1) * itemsPerOrder; i++) {
+                    subtotal += centPrices[i] * quantities[i];
+                }
+                long tax = Money.applyBasisPoints(subtotal, 8 * Money.BASIS_POINTS_PER_PERCENT);
+                sum += subtotal + tax;
+            }
+            blackhole += sum;
+        }) / orders;
+
+        // How often the double result disagrees with the exact cent result once rounded
+        int mismatches = 0;
+        for (int order = 0; order < orders; order++) {
+            double subtotal = 0;
+            long subtotalCents = 0;
+            for (int i = order * itemsPerOrder; i < (order + 1) * itemsPerOrder; i++) {
+                subtotal += doublePrices[i] * quantities[i];
+                subtotalCents += centPrices[i] * quantities[i];
+            }
+            long exact = subtotalCents + Money.applyBasisPoints(subtotalCents, 800);
+            if (Math.round((subtotal + subtotal * 0.08) * 100) != exact) {
+                mismatches++;
+            }
+        }
+
+        System.out.printf("double: %8.1f ns/order%n", doubleNanos);
+        System.out.printf("cents:  %8.1f ns/order%n", centNanos);
+        System.out.printf("double totals off by a cent or more: %d of %d%n", mismatches, orders);
+
+        // Whole Order objects through the Order/OrderItem totals path
+        MenuItem[] menu = new MenuItem[32];
+        for (int i = 0; i < menu.length; i++) {
+            menu[i] = new MenuItem(i + 1, "Item " + i, "", centPrices[i] / 100.0, "Bench") {
+                @Override
+                public String getItemType() {
+                    return "Bench";
+                }
+            };
+        }
+        final int orderObjects = 20000;
+        double orderNanos = measure(() -> {
+            long sum = 0;
+            for (int n = 0; n < orderObjects; n++) {
+                Order order = new Order(n, 1, Order.ServiceType.TAKEAWAY);
+                for (int i = 0; i < itemsPerOrder; i++) {
+                    order.addItem(menu[(n + i) % menu.length], quantities[i]);
+                }
+                sum += order.getTotalCents();
+            }
+            blackhole += sum;
+        }) / orderObjects;
+        System.out.printf("Order.addItem x%d: %8.1f ns/order%n", itemsPerOrder, orderNanos);
+    }
+
+    // Large catering order: incremental line updates on Order
+    private static void benchmarkCateringOrder() {
+        final int lines = 2000;
+        MenuItem[] menu = new MenuItem[lines];
+        for (int i = 0; i < lines; i++) {
+            menu[i] = new MenuItem(i + 1, "Item " + i, "", 1.5 + (i % 40) * 0.25, "Bench") {
+                @Override
+                public String getItemType() {
+                    return "Bench";
+                }
+            };
+        }
+
+        System.out.println("\n=== Order: catering order with " + lines + " lines ===");
+        Order order = new Order(1, 1, Order.ServiceType.TAKEAWAY);
+        for (MenuItem item : menu) {
+            order.addItem(item, 1);
+        }
+
+        Random random = new Random(3);
+        final int updates = 100000;
+        double updateNanos = measure(() -> {
+            for (int n = 0; n < updates; n++) {
+                int id = 1 + random.nextInt(lines);
+                order.updateItemQuantity(id, 1 + random.nextInt(20));
+            }
+            blackhole += order.getTotalCents();
+        }) / updates;
+
+        long incremental = order.getTotalCents();
+        order.recalculate();
+        System.out.printf("updateItemQuantity: %8.1f ns/update%n", updateNanos);
+        System.out.println("Incremental total matches full recalculation: " + (incremental == order.getTotalCents()));
+    }
+
+    // Aggregate queries: SUM over REAL amounts versus SUM over integer cents
+    private static void benchmarkMoneyAggregates() {
+        System.out.println("\n=== Money: aggregate queries ===");
+        Connection conn = openMemoryDatabase();
+        if (conn == null) {
+            return;
+        }
+
+        final int rows = 200000;
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE bench_orders (order_id INTEGER PRIMARY KEY, total_amount DECIMAL(10,2) NOT NULL)");
+            conn.setAutoCommit(false);
+            Random random = new Random(7);
+            try (PreparedStatement pstmt = conn.prepareStatement("INSERT INTO bench_orders (total_amount) VALUES (?)")) {
+                for (int i = 0; i < rows; i++) {
+                    Money.bind(pstmt, 1, 100 + random.nextInt(5000));
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            }
+            conn.commit();
+            conn.setAutoCommit(true);
+
+            double doubleMillis = measure(() -> blackhole += querySumAsDouble(conn)) / 1_000_000.0;
+            double centMillis = measure(() -> blackhole += querySumAsCents(conn)) / 1_000_000.0;
+
+            long exactCents = querySumAsCents(conn);
+            long doubleCents = querySumAsDouble(conn);
+
+            System.out.printf("SUM(total_amount):                 %8.2f ms%n", doubleMillis);
+            System.out.printf("SUM(ROUND(total_amount * 100)):    %8.2f ms%n", centMillis);
+            System.out.println("Exact total: " + Money.format(exactCents)
+                    + (exactCents == doubleCents ? " (double SUM agrees)" : " (double SUM is off)"));
+
+        } catch (SQLException e) {
+            System.err.println("Aggregate benchmark failed: " + e.getMessage());
+        } finally {
+            try {
+                conn.close();
+            } catch (SQLException e) {
+                System.err.println("Error closing benchmark database: " + e.getMessage());
+            }
+        }
+    }
+
+    // Online backup: createOrder latency with change capture and during snapshots, snapshot throughput, PITR check
+    private static void benchmarkBackup() {
+        System.out.println("\n=== Backup: online snapshots and change log ===");
+        Connection probe = openMemoryDatabase();
+        if (probe == null) {
+            return;
+        }
+        try {
+            probe.close();
+        } catch (SQLException e) {
+            System.err.println("Error closing benchmark database: " + e.getMessage());
+        }
+
+        File directory;
+        try {
+            directory = Files.createTempDirectory("coffeeshop-backup-bench").toFile();
+        } catch (IOException e) {
+            System.err.println("Backup benchmark failed: " + e.getMessage());
+            return;
+        }
+        DatabaseConnection db = new DatabaseConnection(new File(directory, "bench.db").getPath());
+        try {
+            if (!db.initializeDatabase()) {
+                return;
+            }
+            int customerId = new CustomerDAO(db).createCustomer(new Customer(0, "Bench", "bench@example.com", "0000000000"));
+            MenuItem item = new MenuItemDAO(db).getMenuItemById(1);
+            OrderDAO orderDAO = new OrderDAO(db);
+            BackupManager backups = new BackupManager(db, new File(directory, "backups"));
+            final int orders = 500;
+
+            placeOrders(orderDAO, customerId, item, orders);
+            long[] baseline = placeOrders(orderDAO, customerId, item, orders);
+
+            backups.enableChangeLog();
+            long[] captured = placeOrders(orderDAO, customerId, item, orders);
+
+            // Snapshots back to back on another thread while the register keeps taking orders
+            AtomicBoolean running = new AtomicBoolean(true);
+            long[] snapshotTotals = new long[3];
+            Thread snapshotter = new Thread(() -> {
+                while (running.get()) {
+                    File snapshot = backups.snapshot();
+                    if (snapshot != null) {
+                        snapshotTotals[0]++;
+                        snapshotTotals[1] += snapshot.length();
+                        snapshotTotals[2] += backups.getStats().getLastSnapshotMillis();
+                    }
+                }
+            }, "backup-bench");
+            snapshotter.start();
+            long[] duringSnapshot = placeOrders(orderDAO, customerId, item, orders);
+            running.set(false);
+            snapshotter.join();
+
+            long archiveStart = System.nanoTime();
+            int shipped = backups.archive();
+            double archiveMillis = (System.nanoTime() - archiveStart) / 1_000_000.0;
+
+            // Restore to a moment between two batches of orders
+            Thread.sleep(20);
+            LocalDateTime cut = LocalDateTime.now();
+            int expected = countOrders(db.getConnection());
+            Thread.sleep(20);
+            placeOrders(orderDAO, customerId, item, 50);
+            File restored = new File(directory, "restored.db");
+            int replayed = backups.restoreToPointInTime(cut, restored);
+            int restoredOrders;
+            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + restored.getPath())) {
+                restoredOrders = countOrders(conn);
+            }
+
+            System.out.printf("createOrder p50/p99, no capture:      %8.3f / %8.3f ms%n",
+                              percentile(baseline, 50) / 1e6, percentile(baseline, 99) / 1e6);
+            System.out.printf("createOrder p50/p99, change capture:  %8.3f / %8.3f ms%n",
+                              percentile(captured, 50) / 1e6, percentile(captured, 99) / 1e6);
+            System.out.printf("createOrder p50/p99, during snapshot: %8.3f / %8.3f ms%n",
+                              percentile(duringSnapshot, 50) / 1e6, percentile(duringSnapshot, 99) / 1e6);
+            if (snapshotTotals[0] > 0 && snapshotTotals[2] > 0) {
+                System.out.printf("Snapshot: %d taken, %8.1f MB/s%n", snapshotTotals[0],
+                                  snapshotTotals[1] / 1048576.0 / (snapshotTotals[2] / 1000.0));
+            }
+            System.out.printf("Archive: %d changes in %8.2f ms%n", shipped, archiveMillis);
+            System.out.println("Point-in-time restore replayed " + replayed + " changes; orders at cut "
+                    + expected + ", restored " + restoredOrders + (expected == restoredOrders ? " (match)" : " (MISMATCH)"));
+
+        } catch (SQLException | InterruptedException e) {
+            System.err.println("Backup benchmark failed: " + e.getMessage());
+        } finally {
+            db.closeConnection();
+        }
+    }
+
+    // Checkout throughput against simulated processors: card payments all started at once and
+    // pipelined through ResilientPaymentGateway, latency measured from start to captured or failed
+    private static void benchmarkGatewayCheckout() {
+        final int checkouts = 500;
+        System.out.println("\n=== Gateway: " + checkouts + " card checkouts against simulated processors ===");
+        // name, median ms, p99 ms, decline rate, error rate, no-answer rate, pipeline depth
+        Object[][] scenarios = {
+            {"fast processor, depth 32", 40L, 150L, 0.02, 0.0, 0.0, 32},
+            {"fast processor, depth 1", 40L, 150L, 0.02, 0.0, 0.0, 1},
+            {"slow, long tail, depth 32", 300L, 2500L, 0.02, 0.0, 0.0, 32},
+            {"flaky, depth 32", 150L, 1200L, 0.02, 0.05, 0.01, 32},
+        };
+        System.out.printf("%-26s %10s %10s %10s %9s %7s %8s %8s%n",
+                          "Scenario", "checkout/s", "p50 ms", "p99 ms", "approved", "failed", "retries", "timeouts");
+
+        for (Object[] scenario : scenarios) {
+            SimulatedPaymentGateway processor = new SimulatedPaymentGateway((Long) scenario[1], (Long) scenario[2],
+                    (Double) scenario[3], (Double) scenario[4], (Double) scenario[5]);
+            ResilientPaymentGateway gateway = new ResilientPaymentGateway(processor, (Integer) scenario[6], 1000, 2);
+            int count = (Integer) scenario[6] == 1 ? checkouts / 10 : checkouts;
+
+            long[] latencies = new long[count];
+            AtomicInteger approved = new AtomicInteger();
+            CountDownLatch done = new CountDownLatch(count);
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                final int index = i;
+                final long started = System.nanoTime();
+                Payment payment = new Payment(0, i + 1, Payment.PaymentMethod.CREDIT_CARD, Money.ofCents(450 + i % 700));
+                payment.processThroughGateway(gateway, "card:4242", "bench-" + i).thenAccept(captured -> {
+                    latencies[index] = System.nanoTime() - started;
+                    if (captured) {
+                        approved.incrementAndGet();
+                    }
+                    done.countDown();
+                });
+            }
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            ResilientPaymentGateway.GatewayStats stats = gateway.getStats();
+            processor.shutdown();
+
+            System.out.printf("%-26s %10.1f %10.1f %10.1f %9d %7d %8d %8d%n", scenario[0], count / seconds,
+                              percentile(latencies, 50) / 1e6, percentile(latencies, 99) / 1e6,
+                              approved.get(), count - approved.get(), stats.getRetries(), stats.getTimeouts());
+        }
+    }
+
+    // Receipt printing: Order/Payment toString versus ReceiptRenderer into reused buffers,
+    // latency and bytes allocated per receipt
+    private static void benchmarkReceipts() {
+        final int receipts = 20000;
+        String[] names = {"Latte", "Cappuccino", "Crème brûlée", "Blueberry Muffin", "Espresso", "Chai Tea"};
+        Order order = new Order(1042, 7, Order.ServiceType.DINE_IN);
+        order.setTableNumber(12);
+        order.setSpecialInstructions("Birthday - candle on the muffin");
+        for (int i = 0; i < names.length; i++) {
+            MenuItem item = new MenuItem(i + 1, names[i], "", 2.25 + i * 0.75, "Bench") {
+                @Override
+                public String getItemType() {
+                    return "Bench";
+                }
+            };
+            order.addItem(item, 1 + i % 3, i % 2 == 0 ? "oat milk, extra hot" : null);
+        }
+        Payment payment = new Payment(88, order.getOrderId(), Payment.PaymentMethod.CASH, Money.ofCents(order.getTotalCents()));
+        payment.processCashPaymentCents(order.getTotalCents() + 500);
+
+        ReceiptRenderer renderer = new ReceiptRenderer(42);
+        StringBuilder text = new StringBuilder(4096);
+        ByteArrayOutputStream escPos = new ByteArrayOutputStream(4096);
+
+        System.out.println("\n=== Receipt: " + receipts + " receipts of " + names.length + " lines ===");
+        System.out.printf("%-24s %12s %14s %10s%n", "Renderer", "ns/receipt", "bytes alloc", "output");
+        Object[][] variants = {
+            {"Order/Payment toString", (Runnable) () -> {
+                text.setLength(0);
+                text.append(order).append(payment);
+            }},
+            {"text", (Runnable) () -> {
+                text.setLength(0);
+                renderer.renderText(ReceiptTemplate.CUSTOMER_RECEIPT, order, payment, text);
+            }},
+            {"HTML", (Runnable) () -> {
+                text.setLength(0);
+                renderer.renderHtml(ReceiptTemplate.CUSTOMER_RECEIPT, order, payment, text);
+            }},
+            {"ESC/POS", (Runnable) () -> {
+                escPos.reset();
+                renderer.renderEscPos(ReceiptTemplate.CUSTOMER_RECEIPT, order, payment, escPos);
+            }},
+            {"kitchen ticket ESC/POS", (Runnable) () -> {
+                escPos.reset();
+                renderer.renderEscPos(ReceiptTemplate.KITCHEN_TICKET, order, null, escPos);
+            }},
+        };
+        for (Object[] variant : variants) {
+            Runnable render = (Runnable) variant[1];
+            text.setLength(0);
+            escPos.reset();
+            double nanos = measure(() -> {
+                for (int n = 0; n < receipts; n++) {
+                    render.run();
+                }
+                blackhole += text.length() + escPos.size();
+            }) / receipts;
+
+            long before = allocatedBytes();
+            for (int n = 0; n < receipts; n++) {
+                render.run();
+            }
+            long allocated = allocatedBytes() - before;
+            System.out.printf("%-24s %12.1f %14s %10d%n", variant[0], nanos,
+                              allocated < 0 ? "n/a" : String.valueOf(allocated / receipts), text.length() + escPos.size());
+        }
+
+        text.setLength(0);
+        renderer.renderText(ReceiptTemplate.CUSTOMER_RECEIPT, order, payment, text);
+        System.out.println();
+        System.out.print(text);
+    }
+
+    // Bytes this thread has allocated so far, or -1 when the JVM can't tell
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    // Place orders one at a time; returns each createOrder latency in ns
+    private static long[] placeOrders(OrderDAO orderDAO, int customerId, MenuItem item, int count) {
+        long[] latencies = new long[count];
+        for (int i = 0; i < count; i++) {
+            Order order = new Order(0, customerId, Order.ServiceType.TAKEAWAY);
+            order.addItem(item, 1 + i % 3);
+            long start = System.nanoTime();
+            blackhole += orderDAO.createOrder(order);
+            latencies[i] = System.nanoTime() - start;
+        }
+        return latencies;
+    }
+
+    private static int countOrders(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM orders")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    // Returns the double SUM scaled to cents so both variants return comparable values
+    private static long querySumAsDouble(Connection conn) {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT SUM(total_amount) AS total FROM bench_orders")) {
+            return rs.next() ? Money.toCents(rs.getDouble("total")) : 0;
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long querySumAsCents(Connection conn) {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(
+                     "SELECT SUM(CAST(ROUND(total_amount * 100) AS INTEGER)) AS total FROM bench_orders")) {
+            return rs.next() ? rs.getLong("total") : 0;
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Open a throwaway in-memory SQLite database, or null when the driver is missing
+    static Connection openMemoryDatabase() {
+        try {
+            Class.forName("org.sqlite.JDBC");
+            return DriverManager.getConnection("jdbc:sqlite::memory:");
+        } catch (ClassNotFoundException e) {
+            System.out.println("Skipped: SQLite JDBC driver not on classpath");
+        } catch (SQLException e) {
+            System.out.println("Skipped: " + e.getMessage());
+        }
+        return null;
+    }
+
+    // Run the task through warmup and measured rounds; returns mean ns per round
+    static double measure(Runnable task) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            task.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURE_ROUNDS; i++) {
+            task.run();
+        }
+        return (System.nanoTime() - start) / (double) MEASURE_ROUNDS;
+    }
+
+    // Value at the given percentile (0-100) of the samples, nearest-rank
+    static long percentile(long[] samples, double percentile) {
+        if (samples.length == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(samples, samples.length);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+    }
+}
@@ -7,16 +7,21 @@ import java.util.List;
  */
 public class Coffee extends MenuItem {
     public enum Size {
-        SMALL(1.0), MEDIUM(1.3), LARGE(1.6);
+        SMALL(10000), MEDIUM(13000), LARGE(16000);
         
-        private final double multiplier;
+        // Price multiplier in basis points (13000 = 1.3x)
+        private final int multiplierBasisPoints;
         
-        Size(double multiplier) {
-            this.multiplier = multiplier;
+        Size(int multiplierBasisPoints) {
+            this.multiplierBasisPoints = multiplierBasisPoints;
         }
         
         public double getMultiplier() {
-            return multiplier;
+            return multiplierBasisPoints / (double) Money.BASIS_POINTS_WHOLE;
+        }
+        
+        public int getMultiplierBasisPoints() {
+            return multiplierBasisPoints;
         }
     }
     
@@ -24,6 +29,9 @@ public class Coffee extends MenuItem {
         ESPRESSO, AMERICANO, LATTE, CAPPUCCINO, MACCHIATO, MOCHA, FRAPPUCCINO
     }
     
+    // Extra cost per customization (e.g., $0.50)
+    private static final long CUSTOMIZATION_CENTS = 50;
+    
     private CoffeeType coffeeType;
     private Size size;
     private List<String> customizations;
@@ -95,11 +103,11 @@ public class Coffee extends MenuItem {
     }
     
     @Override
-    public double calculatePrice() {
-        double finalPrice = getPrice() * size.getMultiplier();
+    public long calculatePriceCents() {
+        long finalPrice = Money.applyBasisPoints(getPriceCents(), size.getMultiplierBasisPoints());
         
-        // Add extra cost for customizations (e.g., $0.50 per customization)
-        finalPrice += customizations.size() * 0.50;
+        // Add extra cost for customizations
+        finalPrice += customizations.size() * CUSTOMIZATION_CENTS;
         
         return finalPrice;
     }
@@ -116,7 +124,7 @@ public class Coffee extends MenuItem {
             sb.append(String.join(", ", customizations));
         }
         
-        sb.append(String.format("\nFinal Price: $%.2f", calculatePrice()));
+        sb.append("\nFinal Price: ").append(Money.format(calculatePriceCents()));
         
         return sb.toString();
     }
@@ -38,6 +38,9 @@ public class CoffeeShopApp {
             System.out.println("Failed to initialize database. Exiting application.");
             return;
         }
+        StartupProfiler.phase("database");
+        StartupProfiler.phase(MenuCatalog.getInstance().warmStart() ? "menu (snapshot)" : "menu");
+        System.out.println(StartupProfiler.report());
         
         // Main application loop
         while (true) {
@@ -96,6 +99,9 @@ public class CoffeeShopApp {
             // Initialize database schema and sample data
             databaseConnection.initializeDatabase();
             
+            // Backups, archiving, table timers and the order API, shared with the Swing and JavaFX apps
+            BackgroundServices.start();
+            
             System.out.println("Database initialized successfully!");
             return true;
             
@@ -235,6 +241,9 @@ public class CoffeeShopApp {
                 managementView.cleanup();
             }
             
+            // Stop background services and write buffered state before the connection goes away
+            BackgroundServices.stop();
+            
             if (databaseConnection != null) {
                 databaseConnection.closeConnection();
             }
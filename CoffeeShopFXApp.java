@@ -1,4 +1,5 @@
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
@@ -11,7 +12,7 @@ import javafx.stage.Stage;
 import java.util.List;
 
 public class CoffeeShopFXApp extends Application {
-    private final MenuItemDAO menuItemDAO = new MenuItemDAO();
+    private final MenuCatalog menuCatalog = MenuCatalog.getInstance();
     private final Order currentOrder = new Order(0, 1, Order.ServiceType.TAKEAWAY);
 
     @Override
@@ -22,6 +23,10 @@ public class CoffeeShopFXApp extends Application {
             alert("Không thể khởi tạo cơ sở dữ liệu");
             return;
         }
+        BackgroundServices.start();
+        StartupProfiler.phase("database");
+        // Menu from the saved snapshot right away; the database copy follows in the background
+        StartupProfiler.phase(menuCatalog.warmStart() ? "menu (snapshot)" : "menu");
 
         Label title = new Label("Chill Coffee");
         title.setStyle("-fx-font-size: 18px; -fx-font-weight: bold;");
@@ -29,7 +34,7 @@ public class CoffeeShopFXApp extends Application {
         ComboBox<String> categoryFilter = new ComboBox<>();
         categoryFilter.setPromptText("Chọn danh mục");
 
-        List<String> categories = menuItemDAO.getCategories();
+        List<String> categories = menuCatalog.getCategories();
         ObservableList<String> categoryData = FXCollections.observableArrayList();
         categoryData.add("Tất cả");
         categoryData.addAll(categories);
@@ -44,24 +49,33 @@ public class CoffeeShopFXApp extends Application {
                 if (empty || item == null) {
                     setText(null);
                 } else {
-                    setText(item.getName() + " - $" + String.format("%.2f", item.getPrice()));
+                    setText(item.getName() + " - " + Money.format(item.getPriceCents()));
                 }
             }
         });
 
+        TextField searchField = new TextField();
+        searchField.setPromptText("Tìm món...");
+
         Runnable loadMenu = () -> {
             List<MenuItem> items;
             String sel = categoryFilter.getSelectionModel().getSelectedItem();
-            if (sel == null || sel.equals("Tất cả")) {
-                items = menuItemDAO.getAvailableMenuItems();
+            String typed = searchField.getText().trim();
+            if (!typed.isEmpty()) {
+                // Typeahead: each keystroke is a prefix lookup in the in-memory trie
+                items = RegisterTypeahead.getInstance().suggestMenuItems(typed, 20);
+            } else if (sel == null || sel.equals("Tất cả")) {
+                items = menuCatalog.getAvailableItems();
             } else {
-                items = menuItemDAO.getMenuItemsByCategory(sel);
+                items = menuCatalog.getItemsByCategory(sel);
             }
             menuList.setItems(FXCollections.observableArrayList(items));
         };
         loadMenu.run();
+        menuCatalog.addReloadListener(() -> Platform.runLater(loadMenu));
 
         categoryFilter.setOnAction(e -> loadMenu.run());
+        searchField.textProperty().addListener((obs, oldText, newText) -> loadMenu.run());
 
         Spinner<Integer> qtySpinner = new Spinner<>(1, 20, 1);
         Button addBtn = new Button("Thêm vào giỏ");
@@ -91,7 +105,7 @@ public class CoffeeShopFXApp extends Application {
             OrderDAO orderDAO = new OrderDAO();
             int orderId = orderDAO.createOrder(currentOrder);
             if (orderId > 0) {
-                alert("Đã lưu đơn #" + orderId + " - Tổng: " + String.format("%.2f", currentOrder.getTotalAmount()));
+                alert("Đã lưu đơn #" + orderId + " - Tổng: " + Money.format(currentOrder.getTotalCents()));
                 currentOrder.clearOrder();
                 updateOrderArea(orderArea, totalLabel);
             } else {
@@ -102,7 +116,7 @@ public class CoffeeShopFXApp extends Application {
         HBox controls = new HBox(10, new Label("SL:"), qtySpinner, addBtn, clearBtn, checkoutBtn);
         controls.setAlignment(Pos.CENTER_LEFT);
 
-        VBox left = new VBox(10, title, categoryFilter, menuList, controls);
+        VBox left = new VBox(10, title, categoryFilter, searchField, menuList, controls);
         left.setPadding(new Insets(12));
         left.setPrefWidth(360);
 
@@ -116,6 +130,8 @@ public class CoffeeShopFXApp extends Application {
         stage.setScene(scene);
         stage.show();
         updateOrderArea(orderArea, totalLabel);
+        StartupProfiler.phase("ui");
+        System.out.println(StartupProfiler.report());
     }
 
     private void updateOrderArea(TextArea orderArea, Label totalLabel) {
@@ -124,15 +140,20 @@ public class CoffeeShopFXApp extends Application {
             sb.append(item.getMenuItem().getName())
               .append(" x")
               .append(item.getQuantity())
-              .append(" = $")
-              .append(String.format("%.2f", item.getMenuItem().calculatePrice() * item.getQuantity()))
+              .append(" = ")
+              .append(Money.format(item.getItemTotalCents()))
               .append("\n");
         }
-        sb.append("\nTạm tính: ").append(String.format("%.2f", currentOrder.getSubtotal()));
-        sb.append("\nThuế: ").append(String.format("%.2f", currentOrder.getTax()));
-        sb.append("\nTổng: ").append(String.format("%.2f", currentOrder.getTotalAmount()));
+        sb.append("\nTạm tính: ").append(Money.format(currentOrder.getSubtotalCents()));
+        sb.append("\nThuế: ").append(Money.format(currentOrder.getTaxCents()));
+        sb.append("\nTổng: ").append(Money.format(currentOrder.getTotalCents()));
         orderArea.setText(sb.toString());
-        totalLabel.setText("Tổng: " + String.format("%.2f", currentOrder.getTotalAmount()));
+        totalLabel.setText("Tổng: " + Money.format(currentOrder.getTotalCents()));
+    }
+
+    @Override
+    public void stop() {
+        BackgroundServices.stop();
     }
 
     private void alert(String msg) {
@@ -2,19 +2,27 @@ import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import java.awt.*;
 import java.awt.event.ActionEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.util.List;
 
 public class CoffeeShopSwingApp extends JFrame {
-    private final MenuItemDAO menuItemDAO = new MenuItemDAO();
+    private final MenuCatalog menuCatalog = MenuCatalog.getInstance();
     private final Order currentOrder = new Order(0, 1, Order.ServiceType.TAKEAWAY);
 
     private final DefaultListModel<MenuItem> menuModel = new DefaultListModel<>();
     private final JList<MenuItem> menuList = new JList<>(menuModel);
     private final JComboBox<String> categoryCombo = new JComboBox<>();
+    private final JTextField searchField = new JTextField(12);
     private final JTextArea orderArea = new JTextArea(14, 30);
     private final JLabel totalLabel = new JLabel();
     private final JSpinner qtySpinner = new JSpinner(new SpinnerNumberModel(1, 1, 20, 1));
 
+    // Offline-first register: checkout writes to the local queue, OrderSyncer pushes to coffee_shop.db
+    private final boolean offlineMode = Boolean.getBoolean("coffeeshop.offline");
+    private OfflineOrderQueue offlineQueue;
+    private OrderSyncer orderSyncer;
+
     public CoffeeShopSwingApp() {
         super("Coffee Shop - Swing");
         // Initialize database first and wait for completion
@@ -23,7 +31,17 @@ public class CoffeeShopSwingApp extends JFrame {
             JOptionPane.showMessageDialog(null, "Không thể khởi tạo cơ sở dữ liệu");
             System.exit(1);
         }
+        BackgroundServices.start();
+        StartupProfiler.phase("database");
+        // Menu from the saved snapshot right away; the database copy follows in the background
+        StartupProfiler.phase(menuCatalog.warmStart() ? "menu (snapshot)" : "menu");
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        // Runs before EXIT_ON_CLOSE exits the JVM
+        addWindowListener(new WindowAdapter() {
+            @Override public void windowClosing(WindowEvent e) {
+                BackgroundServices.stop();
+            }
+        });
         setSize(780, 560);
         setLocationRelativeTo(null);
 
@@ -43,9 +61,20 @@ public class CoffeeShopSwingApp extends JFrame {
         JPanel topLeft = new JPanel(new FlowLayout(FlowLayout.LEFT));
         topLeft.add(new JLabel("Danh mục:"));
         categoryCombo.addItem("Tất cả");
-        for (String c : menuItemDAO.getCategories()) { categoryCombo.addItem(c); }
+        for (String c : menuCatalog.getCategories()) { categoryCombo.addItem(c); }
         categoryCombo.addActionListener(e -> loadMenu());
         topLeft.add(categoryCombo);
+        topLeft.add(new JLabel("Tìm:"));
+        // Typeahead: each keystroke is a prefix lookup in the in-memory trie
+        searchField.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
+            @Override public void insertUpdate(javax.swing.event.DocumentEvent e) { loadMenu(); }
+            @Override public void removeUpdate(javax.swing.event.DocumentEvent e) { loadMenu(); }
+            @Override public void changedUpdate(javax.swing.event.DocumentEvent e) { loadMenu(); }
+        });
+        searchField.addActionListener(e -> {
+            if (menuModel.size() > 0) { menuList.setSelectedIndex(0); onAdd(); }
+        });
+        topLeft.add(searchField);
         left.add(topLeft, BorderLayout.NORTH);
 
         menuList.setCellRenderer(new DefaultListCellRenderer() {
@@ -54,7 +83,7 @@ public class CoffeeShopSwingApp extends JFrame {
                 Component c = super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
                 if (value instanceof MenuItem) {
                     MenuItem mi = (MenuItem) value;
-                    setText(mi.getName() + " - $" + String.format("%.2f", mi.getPrice()));
+                    setText(mi.getName() + " - " + Money.format(mi.getPriceCents()));
                 }
                 return c;
             }
@@ -91,13 +120,36 @@ public class CoffeeShopSwingApp extends JFrame {
 
         loadMenu();
         updateOrderArea();
+        startOfflineSync();
+        menuCatalog.addReloadListener(() -> SwingUtilities.invokeLater(this::loadMenu));
+    }
+
+    private void startOfflineSync() {
+        if (!offlineMode) return;
+        offlineQueue = OfflineOrderQueue.getInstance();
+        if (offlineQueue == null) return;
+        orderSyncer = new OrderSyncer(offlineQueue, DatabaseConnection.getInstance().getDatabaseName());
+        orderSyncer.addListener(new OrderSyncer.SyncListener() {
+            @Override public void onSynced(String idempotencyKey, int orderId) { }
+            @Override public void onConflict(String idempotencyKey, String reason) {
+                SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(CoffeeShopSwingApp.this,
+                        "Không đồng bộ được đơn " + idempotencyKey + ": " + reason));
+            }
+        });
+        orderSyncer.start();
     }
 
     private void loadMenu() {
         menuModel.clear();
         String sel = (String) categoryCombo.getSelectedItem();
-        List<MenuItem> items = (sel == null || sel.equals("Tất cả")) ?
-                menuItemDAO.getAvailableMenuItems() : menuItemDAO.getMenuItemsByCategory(sel);
+        String typed = searchField.getText().trim();
+        List<MenuItem> items;
+        if (!typed.isEmpty()) {
+            items = RegisterTypeahead.getInstance().suggestMenuItems(typed, 20);
+        } else {
+            items = (sel == null || sel.equals("Tất cả")) ?
+                    menuCatalog.getAvailableItems() : menuCatalog.getItemsByCategory(sel);
+        }
         for (MenuItem mi : items) menuModel.addElement(mi);
     }
 
@@ -111,10 +163,21 @@ public class CoffeeShopSwingApp extends JFrame {
 
     private void onCheckout() {
         if (currentOrder.isEmpty()) { JOptionPane.showMessageDialog(this, "Giỏ hàng trống"); return; }
+        if (offlineQueue != null) {
+            try {
+                offlineQueue.enqueue(currentOrder);
+                JOptionPane.showMessageDialog(this, "Đã lưu đơn (chờ đồng bộ). Tổng: " + Money.format(currentOrder.getTotalCents()));
+                currentOrder.clearOrder();
+                updateOrderArea();
+            } catch (java.sql.SQLException ex) {
+                JOptionPane.showMessageDialog(this, "Lưu đơn thất bại: " + ex.getMessage());
+            }
+            return;
+        }
         OrderDAO orderDAO = new OrderDAO();
         int orderId = orderDAO.createOrder(currentOrder);
         if (orderId > 0) {
-            JOptionPane.showMessageDialog(this, "Đã lưu đơn #" + orderId + ". Tổng: $" + String.format("%.2f", currentOrder.getTotalAmount()));
+            JOptionPane.showMessageDialog(this, "Đã lưu đơn #" + orderId + ". Tổng: " + Money.format(currentOrder.getTotalCents()));
             currentOrder.clearOrder();
             updateOrderArea();
         } else {
@@ -128,19 +191,23 @@ public class CoffeeShopSwingApp extends JFrame {
             sb.append(item.getMenuItem().getName())
               .append(" x")
               .append(item.getQuantity())
-              .append(" = $")
-              .append(String.format("%.2f", item.getMenuItem().calculatePrice() * item.getQuantity()))
+              .append(" = ")
+              .append(Money.format(item.getItemTotalCents()))
               .append("\n");
         }
-        sb.append("\nTạm tính: $").append(String.format("%.2f", currentOrder.getSubtotal()));
-        sb.append("\nThuế: $").append(String.format("%.2f", currentOrder.getTax()));
-        sb.append("\nTổng: $").append(String.format("%.2f", currentOrder.getTotalAmount()));
+        sb.append("\nTạm tính: ").append(Money.format(currentOrder.getSubtotalCents()));
+        sb.append("\nThuế: ").append(Money.format(currentOrder.getTaxCents()));
+        sb.append("\nTổng: ").append(Money.format(currentOrder.getTotalCents()));
         orderArea.setText(sb.toString());
-        totalLabel.setText("Tổng: $" + String.format("%.2f", currentOrder.getTotalAmount()));
+        totalLabel.setText("Tổng: " + Money.format(currentOrder.getTotalCents()));
     }
 
     public static void main(String[] args) {
-        SwingUtilities.invokeLater(() -> new CoffeeShopSwingApp().setVisible(true));
+        SwingUtilities.invokeLater(() -> {
+            new CoffeeShopSwingApp().setVisible(true);
+            StartupProfiler.phase("ui");
+            System.out.println(StartupProfiler.report());
+        });
     }
 }
 
@@ -0,0 +1,305 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * CostOfGoods class for ingredient cost and margin per menu item
+ * Keeps the recipe graph from menu_item_ingredients in both directions: each
+ * menu item's ingredients, and for each ingredient the menu items that use it.
+ * When an ingredient's cost changes (IngredientDAO listener) only the items that
+ * use it are re-costed; a recipe or menu price change re-costs that one item.
+ * Category totals are adjusted by the difference for each re-costed item, so the
+ * margin reports read maintained values and never re-join the tables.
+ *
+ * Costs are ingredient quantity x cost_per_unit, rounded to cents per item.
+ * Items without a recipe have no cost and are left out of the category totals.
+ */
+public class CostOfGoods {
+    private static CostOfGoods instance;
+
+    private final IngredientDAO ingredientDAO;
+    private final MenuItemDAO menuItemDAO;
+    private final Map<Integer, Double> ingredientCosts = new HashMap<>();
+    private final Map<Integer, Map<Integer, Double>> recipes = new HashMap<>();
+    private final Map<Integer, Set<Integer>> usedBy = new HashMap<>();
+    private final Map<Integer, MenuItem> menuItems = new HashMap<>();
+    private final Map<Integer, ItemMargin> itemMargins = new HashMap<>();
+    private final Map<String, CategoryMargin> categoryMargins = new TreeMap<>();
+    private boolean loaded;
+    private long itemsRecosted;
+
+    public CostOfGoods(IngredientDAO ingredientDAO, MenuItemDAO menuItemDAO) {
+        this.ingredientDAO = ingredientDAO;
+        this.menuItemDAO = menuItemDAO;
+        IngredientDAO.addChangeListener(this::onIngredientChanged);
+        IngredientDAO.addRecipeListener(this::onRecipeChanged);
+        MenuItemDAO.addChangeListener(this::onMenuItemChanged);
+    }
+
+    // Get the shared cost model
+    public static synchronized CostOfGoods getInstance() {
+        if (instance == null) {
+            instance = new CostOfGoods(new IngredientDAO(), new MenuItemDAO());
+        }
+        return instance;
+    }
+
+    // Load costs, recipes and prices and cost every item
+    public synchronized void reload() {
+        ingredientCosts.clear();
+        recipes.clear();
+        usedBy.clear();
+        menuItems.clear();
+        itemMargins.clear();
+        categoryMargins.clear();
+
+        for (Ingredient ingredient : ingredientDAO.getAllIngredients()) {
+            ingredientCosts.put(ingredient.getIngredientId(), ingredient.getCostPerUnit());
+        }
+        for (Map.Entry<Integer, Map<Integer, Double>> recipe : ingredientDAO.getRecipes().entrySet()) {
+            setRecipe(recipe.getKey(), recipe.getValue());
+        }
+        for (MenuItem item : MenuCatalog.getInstance().getAllItems()) {
+            menuItems.put(item.getId(), item);
+            recost(item.getId());
+        }
+        loaded = true;
+    }
+
+    private void ensureLoaded() {
+        if (!loaded) {
+            reload();
+        }
+    }
+
+    // Cost and margin of one menu item, or null if it isn't on the menu
+    public synchronized ItemMargin getItemMargin(int menuItemId) {
+        ensureLoaded();
+        return itemMargins.get(menuItemId);
+    }
+
+    // Every costed item, lowest margin percentage first
+    public synchronized List<ItemMargin> getItemMargins() {
+        ensureLoaded();
+        List<ItemMargin> margins = new ArrayList<>();
+        for (ItemMargin margin : itemMargins.values()) {
+            if (margin.hasRecipe()) {
+                margins.add(margin);
+            }
+        }
+        margins.sort((a, b) -> Double.compare(a.getMarginPercentage(), b.getMarginPercentage()));
+        return margins;
+    }
+
+    // Totals per category over costed items, by category name
+    public synchronized List<CategoryMargin> getCategoryMargins() {
+        ensureLoaded();
+        return new ArrayList<>(categoryMargins.values());
+    }
+
+    // Menu items that use an ingredient (for "what does this price rise affect")
+    public synchronized Set<Integer> getItemsUsing(int ingredientId) {
+        ensureLoaded();
+        return new HashSet<>(usedBy.getOrDefault(ingredientId, new HashSet<>()));
+    }
+
+    // How many item costs have been recomputed since the last full load
+    public synchronized long getItemsRecosted() {
+        return itemsRecosted;
+    }
+
+    // A new cost re-costs only the items that use the ingredient
+    private synchronized void onIngredientChanged(int ingredientId) {
+        if (!loaded) {
+            return;
+        }
+        Ingredient ingredient = ingredientDAO.getIngredientById(ingredientId);
+        if (ingredient == null) {
+            // Deleting an ingredient also deletes its recipe rows
+            ingredientCosts.remove(ingredientId);
+            Set<Integer> affected = usedBy.remove(ingredientId);
+            if (affected != null) {
+                for (int menuItemId : affected) {
+                    Map<Integer, Double> recipe = recipes.get(menuItemId);
+                    if (recipe != null) {
+                        recipe.remove(ingredientId);
+                    }
+                    recost(menuItemId);
+                }
+            }
+            return;
+        }
+
+        Double previous = ingredientCosts.put(ingredientId, ingredient.getCostPerUnit());
+        if (previous != null && previous == ingredient.getCostPerUnit()) {
+            return;
+        }
+        for (int menuItemId : usedBy.getOrDefault(ingredientId, new HashSet<>())) {
+            recost(menuItemId);
+        }
+    }
+
+    private synchronized void onRecipeChanged(int menuItemId) {
+        if (!loaded) {
+            return;
+        }
+        setRecipe(menuItemId, ingredientDAO.getRecipe(menuItemId));
+        recost(menuItemId);
+    }
+
+    private synchronized void onMenuItemChanged(int menuItemId) {
+        if (!loaded) {
+            return;
+        }
+        MenuItem item = menuItemDAO.getMenuItemById(menuItemId);
+        if (item == null) {
+            // Its recipe rows are deleted with it
+            menuItems.remove(menuItemId);
+            setRecipe(menuItemId, new HashMap<>());
+        } else {
+            menuItems.put(menuItemId, item);
+        }
+        recost(menuItemId);
+    }
+
+    // Replace a menu item's recipe and the reverse edges from its ingredients
+    private void setRecipe(int menuItemId, Map<Integer, Double> recipe) {
+        Map<Integer, Double> previous = recipes.remove(menuItemId);
+        if (previous != null) {
+            for (int ingredientId : previous.keySet()) {
+                Set<Integer> items = usedBy.get(ingredientId);
+                if (items != null) {
+                    items.remove(menuItemId);
+                    if (items.isEmpty()) {
+                        usedBy.remove(ingredientId);
+                    }
+                }
+            }
+        }
+        if (recipe.isEmpty()) {
+            return;
+        }
+        recipes.put(menuItemId, new HashMap<>(recipe));
+        for (int ingredientId : recipe.keySet()) {
+            usedBy.computeIfAbsent(ingredientId, k -> new HashSet<>()).add(menuItemId);
+        }
+    }
+
+    // Recompute one item's cost and move the category totals by the difference
+    private void recost(int menuItemId) {
+        ItemMargin previous = itemMargins.remove(menuItemId);
+        if (previous != null && previous.hasRecipe()) {
+            adjustCategory(previous, -1);
+        }
+        MenuItem item = menuItems.get(menuItemId);
+        if (item == null) {
+            return;
+        }
+
+        Map<Integer, Double> recipe = recipes.get(menuItemId);
+        double cost = 0;
+        boolean complete = true;
+        if (recipe != null) {
+            for (Map.Entry<Integer, Double> ingredient : recipe.entrySet()) {
+                Double costPerUnit = ingredientCosts.get(ingredient.getKey());
+                if (costPerUnit == null) {
+                    complete = false;
+                } else {
+                    cost += ingredient.getValue() * costPerUnit;
+                }
+            }
+        }
+
+        ItemMargin margin = new ItemMargin(menuItemId, item.getName(), item.getCategory(), item.getPriceCents(),
+                Math.round(cost * 100), recipe != null, complete);
+        itemMargins.put(menuItemId, margin);
+        if (margin.hasRecipe()) {
+            adjustCategory(margin, 1);
+        }
+        itemsRecosted++;
+    }
+
+    private void adjustCategory(ItemMargin margin, int sign) {
+        CategoryMargin totals = categoryMargins.get(margin.getCategory());
+        int count = (totals != null ? totals.getItemCount() : 0) + sign;
+        if (count <= 0) {
+            categoryMargins.remove(margin.getCategory());
+            return;
+        }
+        categoryMargins.put(margin.getCategory(), new CategoryMargin(margin.getCategory(), count,
+                (totals != null ? totals.getPriceCents() : 0) + sign * margin.getPriceCents(),
+                (totals != null ? totals.getCostCents() : 0) + sign * margin.getCostCents()));
+    }
+
+    // Inner class for one menu item's cost and margin
+    public static class ItemMargin {
+        private final int menuItemId;
+        private final String name;
+        private final String category;
+        private final long priceCents;
+        private final long costCents;
+        private final boolean hasRecipe;
+        private final boolean complete;
+
+        public ItemMargin(int menuItemId, String name, String category, long priceCents, long costCents,
+                          boolean hasRecipe, boolean complete) {
+            this.menuItemId = menuItemId;
+            this.name = name;
+            this.category = category;
+            this.priceCents = priceCents;
+            this.costCents = costCents;
+            this.hasRecipe = hasRecipe;
+            this.complete = complete;
+        }
+
+        public int getMenuItemId() { return menuItemId; }
+        public String getName() { return name; }
+        public String getCategory() { return category; }
+        public long getPriceCents() { return priceCents; }
+        public long getCostCents() { return costCents; }
+        public long getMarginCents() { return priceCents - costCents; }
+        public boolean hasRecipe() { return hasRecipe; }
+        // False when a recipe ingredient no longer exists, so the cost is understated
+        public boolean isComplete() { return complete; }
+
+        public double getMarginPercentage() {
+            return priceCents > 0 ? (double) getMarginCents() / priceCents * 100.0 : 0.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: price %s, cost %s, margin %s (%.1f%%)%s", name,
+                    Money.format(priceCents), Money.format(costCents), Money.format(getMarginCents()),
+                    getMarginPercentage(), complete ? "" : " (incomplete recipe)");
+        }
+    }
+
+    // Inner class for margin totals over one category
+    public static class CategoryMargin {
+        private final String category;
+        private final int itemCount;
+        private final long priceCents;
+        private final long costCents;
+
+        public CategoryMargin(String category, int itemCount, long priceCents, long costCents) {
+            this.category = category;
+            this.itemCount = itemCount;
+            this.priceCents = priceCents;
+            this.costCents = costCents;
+        }
+
+        public String getCategory() { return category; }
+        public int getItemCount() { return itemCount; }
+        public long getPriceCents() { return priceCents; }
+        public long getCostCents() { return costCents; }
+
+        // Margin of the category's menu as a whole (one of each item)
+        public double getMarginPercentage() {
+            return priceCents > 0 ? (double) (priceCents - costCents) / priceCents * 100.0 : 0.0;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * CustomerCache class for keeping regular customers' profiles in memory
+ * A bounded LRU of customer rows keyed by id, with secondary lookups by email
+ * and phone number. CustomerDAO fills it on reads and invalidates entries on
+ * its writes; entries also expire after a TTL so changes made by another
+ * terminal show up eventually. Loyalty balances are not cached here; they come
+ * from LoyaltyLedger, which owns them.
+ */
+public class CustomerCache {
+    private static final int DEFAULT_MAX_ENTRIES = Integer.getInteger("coffeeshop.customerCacheEntries", 5000);
+    private static final long DEFAULT_MAX_BYTES = Long.getLong("coffeeshop.customerCacheBytes", 2L * 1024 * 1024);
+    private static final long DEFAULT_TTL_MILLIS = Long.getLong("coffeeshop.customerCacheTtlSeconds", 300L) * 1000;
+
+    // Rough per-entry overhead: entry object, map nodes and index nodes
+    private static final int ENTRY_OVERHEAD_BYTES = 200;
+
+    private static CustomerCache instance;
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final long ttlMillis;
+    private final LinkedHashMap<Integer, Entry> byId = new LinkedHashMap<>(64, 0.75f, true);
+    private final Map<String, Integer> idByEmail = new HashMap<>();
+    private final Map<String, Integer> idByPhone = new HashMap<>();
+    private long bytes;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    public CustomerCache(int maxEntries, long maxBytes, long ttlMillis) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.ttlMillis = ttlMillis;
+    }
+
+    // Get the shared cache
+    public static synchronized CustomerCache getInstance() {
+        if (instance == null) {
+            instance = new CustomerCache(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES, DEFAULT_TTL_MILLIS);
+        }
+        return instance;
+    }
+
+    public Customer getById(int customerId) {
+        return toCustomer(lookup(customerId));
+    }
+
+    public Customer getByEmail(String email) {
+        return email != null ? toCustomer(lookup(idByEmail, email)) : null;
+    }
+
+    public Customer getByPhone(String phoneNumber) {
+        return phoneNumber != null ? toCustomer(lookup(idByPhone, phoneNumber)) : null;
+    }
+
+    // Remember a customer just read from the database
+    public synchronized void put(Customer customer) {
+        if (customer == null || customer.getCustomerId() <= 0) {
+            return;
+        }
+        remove(customer.getCustomerId());
+
+        Entry entry = new Entry(customer.getCustomerId(), customer.getName(), customer.getEmail(),
+                                customer.getPhoneNumber(), System.currentTimeMillis() + ttlMillis);
+        byId.put(entry.customerId, entry);
+        if (entry.email != null) {
+            idByEmail.put(entry.email, entry.customerId);
+        }
+        if (entry.phoneNumber != null) {
+            idByPhone.put(entry.phoneNumber, entry.customerId);
+        }
+        bytes += entry.estimatedBytes;
+
+        // Evict least recently used entries until both limits hold
+        Iterator<Entry> eldest = byId.values().iterator();
+        while ((byId.size() > maxEntries || bytes > maxBytes) && eldest.hasNext()) {
+            Entry evicted = eldest.next();
+            eldest.remove();
+            unindex(evicted);
+            evictions++;
+        }
+    }
+
+    // Drop a customer after a write
+    public synchronized void invalidate(int customerId) {
+        if (remove(customerId)) {
+            invalidations++;
+        }
+    }
+
+    public synchronized void clear() {
+        byId.clear();
+        idByEmail.clear();
+        idByPhone.clear();
+        bytes = 0;
+    }
+
+    public synchronized CacheStats getStats() {
+        return new CacheStats(byId.size(), bytes, maxBytes, hits, misses, evictions, invalidations);
+    }
+
+    private synchronized Entry lookup(Map<String, Integer> index, String key) {
+        Integer customerId = index.get(key);
+        if (customerId == null) {
+            misses++;
+            return null;
+        }
+        return lookup(customerId);
+    }
+
+    private synchronized Entry lookup(int customerId) {
+        Entry entry = byId.get(customerId);
+        if (entry != null && entry.expiresAt < System.currentTimeMillis()) {
+            remove(customerId);
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry;
+    }
+
+    // Built outside the cache lock; the loyalty balance may need a database read
+    private static Customer toCustomer(Entry entry) {
+        return entry != null ? entry.toCustomer() : null;
+    }
+
+    private boolean remove(int customerId) {
+        Entry entry = byId.remove(customerId);
+        if (entry == null) {
+            return false;
+        }
+        unindex(entry);
+        return true;
+    }
+
+    private void unindex(Entry entry) {
+        if (entry.email != null) {
+            idByEmail.remove(entry.email, entry.customerId);
+        }
+        if (entry.phoneNumber != null) {
+            idByPhone.remove(entry.phoneNumber, entry.customerId);
+        }
+        bytes -= entry.estimatedBytes;
+    }
+
+    // Cached profile fields; callers get a fresh Customer so they can't change the cached copy
+    private static class Entry {
+        final int customerId;
+        final String name;
+        final String email;
+        final String phoneNumber;
+        final long expiresAt;
+        final int estimatedBytes;
+
+        Entry(int customerId, String name, String email, String phoneNumber, long expiresAt) {
+            this.customerId = customerId;
+            this.name = name;
+            this.email = email;
+            this.phoneNumber = phoneNumber;
+            this.expiresAt = expiresAt;
+            this.estimatedBytes = ENTRY_OVERHEAD_BYTES + 2 * (length(name) + 2 * length(email) + 2 * length(phoneNumber));
+        }
+
+        Customer toCustomer() {
+            Customer customer = new Customer(customerId, name, email, phoneNumber);
+            customer.addLoyaltyPoints(LoyaltyLedger.toPoints(LoyaltyLedger.getInstance().getBalanceHundredths(customerId)));
+            return customer;
+        }
+
+        private static int length(String s) {
+            return s != null ? s.length() : 0;
+        }
+    }
+
+    // Inner class for cache metrics
+    public static class CacheStats {
+        private final int size;
+        private final long bytes;
+        private final long maxBytes;
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long invalidations;
+
+        public CacheStats(int size, long bytes, long maxBytes, long hits, long misses, long evictions, long invalidations) {
+            this.size = size;
+            this.bytes = bytes;
+            this.maxBytes = maxBytes;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.invalidations = invalidations;
+        }
+
+        public int getSize() { return size; }
+        public long getBytes() { return bytes; }
+        public long getMaxBytes() { return maxBytes; }
+        public long getHits() { return hits; }
+        public long getMisses() { return misses; }
+        public long getEvictions() { return evictions; }
+        public long getInvalidations() { return invalidations; }
+
+        public double getHitRate() {
+            long lookups = hits + misses;
+            return lookups > 0 ? (double) hits / lookups : 0.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Customer Cache: %d entries, %d/%d KB, hit rate %.1f%% (%d hits, %d misses), " +
+                                 "%d evictions, %d invalidations",
+                                 size, bytes / 1024, maxBytes / 1024, getHitRate() * 100, hits, misses,
+                                 evictions, invalidations);
+        }
+    }
+}
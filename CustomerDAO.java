@@ -2,18 +2,48 @@ import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Data Access Object for Customer operations
  * Handles all database operations related to customers
  */
 public class CustomerDAO {
+    // Listener notified after a customer row is created, updated or deleted
+    public interface ChangeListener {
+        void onChanged(int customerId);
+    }
+    
+    private static final List<ChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+    
     private DatabaseConnection dbConnection;
+    private final CustomerCache cache = CustomerCache.getInstance();
     
     public CustomerDAO() {
         this.dbConnection = DatabaseConnection.getInstance();
     }
     
+    // Customer access against a specific database (e.g. the reporting replica)
+    public CustomerDAO(DatabaseConnection dbConnection) {
+        this.dbConnection = dbConnection;
+    }
+
+    public static void addChangeListener(ChangeListener listener) {
+        changeListeners.add(listener);
+    }
+    
+    public static void removeChangeListener(ChangeListener listener) {
+        changeListeners.remove(listener);
+    }
+    
+    private static void fireChanged(int customerId) {
+        // Invalidate first so listeners that re-read the customer see the new row
+        CustomerCache.getInstance().invalidate(customerId);
+        for (ChangeListener listener : changeListeners) {
+            listener.onChanged(customerId);
+        }
+    }
+    
     // Create a new customer
     public int createCustomer(Customer customer) {
         String query = "INSERT INTO customers (name, email, phone_number, loyalty_points) VALUES (?, ?, ?, ?)";
@@ -29,7 +59,9 @@ public class CustomerDAO {
             if (rowsAffected > 0) {
                 ResultSet generatedKeys = pstmt.getGeneratedKeys();
                 if (generatedKeys.next()) {
-                    return generatedKeys.getInt(1);
+                    int customerId = generatedKeys.getInt(1);
+                    fireChanged(customerId);
+                    return customerId;
                 }
             }
             
@@ -42,6 +74,11 @@ public class CustomerDAO {
     
     // Get customer by ID
     public Customer getCustomerById(int customerId) {
+        Customer cached = cache.getById(customerId);
+        if (cached != null) {
+            return cached;
+        }
+        
         String query = "SELECT * FROM customers WHERE customer_id = ?";
         
         try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
@@ -49,7 +86,7 @@ public class CustomerDAO {
             ResultSet rs = pstmt.executeQuery();
             
             if (rs.next()) {
-                return createCustomerFromResultSet(rs);
+                return cacheCustomer(createCustomerFromResultSet(rs));
             }
             
         } catch (SQLException e) {
@@ -61,6 +98,11 @@ public class CustomerDAO {
     
     // Get customer by email
     public Customer getCustomerByEmail(String email) {
+        Customer cached = cache.getByEmail(email);
+        if (cached != null) {
+            return cached;
+        }
+        
         String query = "SELECT * FROM customers WHERE email = ?";
         
         try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
@@ -68,7 +110,7 @@ public class CustomerDAO {
             ResultSet rs = pstmt.executeQuery();
             
             if (rs.next()) {
-                return createCustomerFromResultSet(rs);
+                return cacheCustomer(createCustomerFromResultSet(rs));
             }
             
         } catch (SQLException e) {
@@ -80,6 +122,11 @@ public class CustomerDAO {
     
     // Get customer by phone number
     public Customer getCustomerByPhone(String phoneNumber) {
+        Customer cached = cache.getByPhone(phoneNumber);
+        if (cached != null) {
+            return cached;
+        }
+        
         String query = "SELECT * FROM customers WHERE phone_number = ?";
         
         try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
@@ -87,7 +134,7 @@ public class CustomerDAO {
             ResultSet rs = pstmt.executeQuery();
             
             if (rs.next()) {
-                return createCustomerFromResultSet(rs);
+                return cacheCustomer(createCustomerFromResultSet(rs));
             }
             
         } catch (SQLException e) {
@@ -119,19 +166,21 @@ public class CustomerDAO {
         return customers;
     }
     
-    // Update customer
+    // Update customer details; loyalty points only change through the loyalty ledger
     public boolean updateCustomer(Customer customer) {
         String query = "UPDATE customers SET name = ?, email = ?, phone_number = ?, " +
-                      "loyalty_points = ?, updated_at = CURRENT_TIMESTAMP WHERE customer_id = ?";
+                      "updated_at = CURRENT_TIMESTAMP WHERE customer_id = ?";
         
         try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
             pstmt.setString(1, customer.getName());
             pstmt.setString(2, customer.getEmail());
             pstmt.setString(3, customer.getPhoneNumber());
-            pstmt.setDouble(4, customer.getLoyaltyPoints());
-            pstmt.setInt(5, customer.getCustomerId());
+            pstmt.setInt(4, customer.getCustomerId());
             
             int rowsAffected = pstmt.executeUpdate();
+            if (rowsAffected > 0) {
+                fireChanged(customer.getCustomerId());
+            }
             return rowsAffected > 0;
             
         } catch (SQLException e) {
@@ -140,63 +189,23 @@ public class CustomerDAO {
         }
     }
     
-    // Update customer loyalty points
+    // Set customer loyalty points (recorded in the loyalty ledger as an adjustment)
     public boolean updateLoyaltyPoints(int customerId, double loyaltyPoints) {
-        String query = "UPDATE customers SET loyalty_points = ?, updated_at = CURRENT_TIMESTAMP WHERE customer_id = ?";
-        
-        try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
-            pstmt.setDouble(1, loyaltyPoints);
-            pstmt.setInt(2, customerId);
-            
-            int rowsAffected = pstmt.executeUpdate();
-            return rowsAffected > 0;
-            
-        } catch (SQLException e) {
-            System.err.println("Error updating loyalty points: " + e.getMessage());
-            return false;
-        }
+        return LoyaltyLedger.getInstance().setBalance(customerId, LoyaltyLedger.toHundredths(loyaltyPoints));
     }
     
-    // Add loyalty points
+    // Add loyalty points; buffered by the ledger and written in the next batch
     public boolean addLoyaltyPoints(int customerId, double pointsToAdd) {
-        String query = "UPDATE customers SET loyalty_points = loyalty_points + ?, " +
-                      "updated_at = CURRENT_TIMESTAMP WHERE customer_id = ?";
-        
-        try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
-            pstmt.setDouble(1, pointsToAdd);
-            pstmt.setInt(2, customerId);
-            
-            int rowsAffected = pstmt.executeUpdate();
-            return rowsAffected > 0;
-            
-        } catch (SQLException e) {
-            System.err.println("Error adding loyalty points: " + e.getMessage());
+        if (pointsToAdd <= 0) {
             return false;
         }
+        LoyaltyLedger.getInstance().accrue(customerId, LoyaltyLedger.toHundredths(pointsToAdd), 0);
+        return true;
     }
     
-    // Redeem loyalty points
+    // Redeem loyalty points; a single conditional debit, so the balance can never go negative
     public boolean redeemLoyaltyPoints(int customerId, double pointsToRedeem) {
-        // First check if customer has enough points
-        Customer customer = getCustomerById(customerId);
-        if (customer == null || customer.getLoyaltyPoints() < pointsToRedeem) {
-            return false;
-        }
-        
-        String query = "UPDATE customers SET loyalty_points = loyalty_points - ?, " +
-                      "updated_at = CURRENT_TIMESTAMP WHERE customer_id = ?";
-        
-        try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
-            pstmt.setDouble(1, pointsToRedeem);
-            pstmt.setInt(2, customerId);
-            
-            int rowsAffected = pstmt.executeUpdate();
-            return rowsAffected > 0;
-            
-        } catch (SQLException e) {
-            System.err.println("Error redeeming loyalty points: " + e.getMessage());
-            return false;
-        }
+        return LoyaltyLedger.getInstance().redeem(customerId, LoyaltyLedger.toHundredths(pointsToRedeem), 0);
     }
     
     // Delete customer
@@ -207,6 +216,9 @@ public class CustomerDAO {
             pstmt.setInt(1, customerId);
             
             int rowsAffected = pstmt.executeUpdate();
+            if (rowsAffected > 0) {
+                fireChanged(customerId);
+            }
             return rowsAffected > 0;
             
         } catch (SQLException e) {
@@ -215,13 +227,44 @@ public class CustomerDAO {
         }
     }
     
-    // Search customers by name
+    // Search customers by name (ranked, diacritic-insensitive prefix match)
     public List<Customer> searchCustomersByName(String searchTerm) {
+        return searchCustomers(TextFolding.toMatchQuery("name", searchTerm), -1,
+                               "name LIKE ?", "%" + searchTerm + "%");
+    }
+    
+    // Search customers by name, email or phone number, best match first
+    public List<Customer> searchCustomers(String searchTerm) {
+        return searchCustomers(searchTerm, -1);
+    }
+    
+    // Same search, at most limit rows (a negative limit returns them all)
+    public List<Customer> searchCustomers(String searchTerm, int limit) {
+        String pattern = "%" + searchTerm + "%";
+        return searchCustomers(TextFolding.toMatchQuery(searchTerm), limit,
+                               "name LIKE ? OR email LIKE ? OR phone_number LIKE ?", pattern, pattern, pattern);
+    }
+    
+    // Full-text match when the index exists, else the LIKE fallback with its patterns
+    private List<Customer> searchCustomers(String matchQuery, int limit, String fallbackCondition,
+                                           String... fallbackPatterns) {
         List<Customer> customers = new ArrayList<>();
-        String query = "SELECT * FROM customers WHERE name LIKE ? ORDER BY name";
+        boolean useIndex = matchQuery != null && dbConnection.isFullTextSearchAvailable();
+        String query = useIndex
+            ? "SELECT c.* FROM customers_fts JOIN customers c ON c.customer_id = customers_fts.rowid " +
+              "WHERE customers_fts MATCH ? ORDER BY bm25(customers_fts, 10.0, 2.0, 2.0), c.name LIMIT ?"
+            : "SELECT * FROM customers WHERE " + fallbackCondition + " ORDER BY name LIMIT ?";
         
         try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
-            pstmt.setString(1, "%" + searchTerm + "%");
+            int index = 1;
+            if (useIndex) {
+                pstmt.setString(index++, matchQuery);
+            } else {
+                for (String pattern : fallbackPatterns) {
+                    pstmt.setString(index++, pattern);
+                }
+            }
+            pstmt.setInt(index, limit);
             ResultSet rs = pstmt.executeQuery();
             
             while (rs.next()) {
@@ -307,13 +350,28 @@ public class CustomerDAO {
         return new CustomerStats(0, 0.0, 0.0, 0.0);
     }
     
+    // Remember a customer read by id, email or phone for the next lookup
+    private Customer cacheCustomer(Customer customer) {
+        cache.put(customer);
+        // The balance just read is current; let the ledger drop any older cached value
+        LoyaltyLedger.getInstance().invalidate(customer.getCustomerId());
+        return customer;
+    }
+    
+    // Get customer cache metrics
+    public CustomerCache.CacheStats getCacheStats() {
+        return cache.getStats();
+    }
+    
     // Helper method to create Customer object from ResultSet
     private Customer createCustomerFromResultSet(ResultSet rs) throws SQLException {
         int customerId = rs.getInt("customer_id");
         String name = rs.getString("name");
         String email = rs.getString("email");
         String phoneNumber = rs.getString("phone_number");
-        double loyaltyPoints = rs.getDouble("loyalty_points");
+        // Include accruals the ledger has not written yet
+        double loyaltyPoints = rs.getDouble("loyalty_points")
+            + LoyaltyLedger.toPoints(LoyaltyLedger.getInstance().getPendingHundredths(customerId));
         
         Customer customer = new Customer(customerId, name, email, phoneNumber);
         customer.addLoyaltyPoints(loyaltyPoints);
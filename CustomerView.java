@@ -1,5 +1,6 @@
 import java.util.*;
 import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
 
 public class CustomerView {
     private Scanner scanner;
@@ -11,13 +12,44 @@ public class CustomerView {
     private Customer currentCustomer;
     private Order currentOrder;
     
+    // DAOs are created on first use so opening the view doesn't touch the database
     public CustomerView() {
         this.scanner = new Scanner(System.in);
-        this.menuItemDAO = new MenuItemDAO();
-        this.customerDAO = new CustomerDAO();
-        this.orderDAO = new OrderDAO();
-        this.tableDAO = new TableDAO();
-        this.paymentDAO = new PaymentDAO();
+    }
+    
+    private MenuItemDAO menuItemDAO() {
+        if (menuItemDAO == null) {
+            menuItemDAO = new MenuItemDAO();
+        }
+        return menuItemDAO;
+    }
+    
+    private CustomerDAO customerDAO() {
+        if (customerDAO == null) {
+            customerDAO = new CustomerDAO();
+        }
+        return customerDAO;
+    }
+    
+    private OrderDAO orderDAO() {
+        if (orderDAO == null) {
+            orderDAO = new OrderDAO();
+        }
+        return orderDAO;
+    }
+    
+    private TableDAO tableDAO() {
+        if (tableDAO == null) {
+            tableDAO = new TableDAO();
+        }
+        return tableDAO;
+    }
+    
+    private PaymentDAO paymentDAO() {
+        if (paymentDAO == null) {
+            paymentDAO = new PaymentDAO();
+        }
+        return paymentDAO;
     }
     
     public void start() {
@@ -60,7 +92,7 @@ public class CustomerView {
         String email = scanner.nextLine().trim();
         
         try {
-            currentCustomer = customerDAO.getCustomerByEmail(email);
+            currentCustomer = customerDAO().getCustomerByEmail(email);
             if (currentCustomer != null) {
                 System.out.println("Welcome back, " + currentCustomer.getName() + "!");
                 System.out.println("Loyalty Points: " + currentCustomer.getLoyaltyPoints());
@@ -85,15 +117,15 @@ public class CustomerView {
         String phone = scanner.nextLine().trim();
         
         try {
-            if (customerDAO.emailExists(email)) {
+            if (customerDAO().emailExists(email)) {
                 System.out.println("Email already exists. Please login instead.");
                 loginCustomer();
                 return;
             }
             
             Customer newCustomer = new Customer(0, name, email, phone);
-            int customerId = customerDAO.createCustomer(newCustomer);
-            currentCustomer = customerDAO.getCustomerById(customerId);
+            int customerId = customerDAO().createCustomer(newCustomer);
+            currentCustomer = customerDAO().getCustomerById(customerId);
             
             System.out.println("Registration successful! Welcome, " + name + "!");
         } catch (Exception e) {
@@ -177,7 +209,7 @@ public class CustomerView {
     
     private void selectTable() {
         try {
-            List<Table> availableTables = tableDAO.getAvailableTables();
+            List<Table> availableTables = tableDAO().getAvailableTables();
             
             if (availableTables.isEmpty()) {
                   System.out.println("No tables available. Switching to take-away.");
@@ -251,7 +283,7 @@ public class CustomerView {
     
     private void displayMenu() {
         try {
-            List<MenuItem> menuItems = menuItemDAO.getAllMenuItems();
+            List<MenuItem> menuItems = menuItemDAO().getAllMenuItems();
             
             System.out.println("\n=== Coffee Menu ===");
             System.out.printf("%-5s %-20s %-10s %-30s%n", "ID", "Name", "Price", "Description");
@@ -272,10 +304,10 @@ public class CustomerView {
     
     private void addMenuItem() {
         try {
-            System.out.print("Enter item ID: ");
-            int itemId = getIntInput();
+            System.out.print("Enter item ID or name: ");
+            String input = scanner.nextLine().trim();
             
-            MenuItem menuItem = menuItemDAO.getMenuItemById(itemId);
+            MenuItem menuItem = findMenuItem(input);
             if (menuItem == null) {
                 System.out.println("Item not found.");
                 return;
@@ -295,7 +327,7 @@ public class CustomerView {
                 customizations = getCoffeeCustomizations();
             }
             
-            currentOrder.addItem(menuItem, quantity);
+            currentOrder.addItem(menuItem, quantity, customizations);
             
             System.out.println("Added " + quantity + "x " + menuItem.getName() + " to order.");
             if (!customizations.isEmpty()) {
@@ -307,6 +339,29 @@ public class CustomerView {
         }
     }
     
+    // Resolve an item ID, or a (partial, accent-free) name through the register typeahead
+    private MenuItem findMenuItem(String input) {
+        if (input.isEmpty()) {
+            return null;
+        }
+        if (input.matches("\\d+")) {
+            return MenuCatalog.getInstance().getItem(Integer.parseInt(input));
+        }
+        
+        List<MenuItem> matches = RegisterTypeahead.getInstance().suggestMenuItems(input, 9);
+        if (matches.size() <= 1) {
+            return matches.isEmpty() ? null : matches.get(0);
+        }
+        
+        for (int i = 0; i < matches.size(); i++) {
+            System.out.printf("%d. %s - %s%n", i + 1, matches.get(i).getName(),
+                Money.format(matches.get(i).getPriceCents()));
+        }
+        System.out.print("Choose item (1-" + matches.size() + "): ");
+        int choice = getIntInput();
+        return choice >= 1 && choice <= matches.size() ? matches.get(choice - 1) : null;
+    }
+    
     private String getCoffeeCustomizations() {
         List<String> customizations = new ArrayList<>();
         
@@ -398,10 +453,16 @@ public class CustomerView {
         System.out.print("\nEnter item name to remove: ");
         String itemName = scanner.nextLine().trim();
         
-        boolean removed = currentOrder.getOrderItems().removeIf(item -> 
-            item.getMenuItem().getName().equalsIgnoreCase(itemName));
+        OrderItem match = null;
+        for (OrderItem item : currentOrder.getOrderItems()) {
+            if (item.getMenuItem().getName().equalsIgnoreCase(itemName)) {
+                match = item;
+                break;
+            }
+        }
         
-        if (removed) {
+        if (match != null) {
+            currentOrder.removeItem(match);
             System.out.println("Item removed from order.");
         } else {
             System.out.println("Item not found in order.");
@@ -428,12 +489,17 @@ public class CustomerView {
             System.out.println("\n=== Payment ===");
             System.out.printf("Total Amount: $%.2f%n", totalAmount);
             
+            // 100 points per dollar when paying with points
+            long pointsNeeded = LoyaltyLedger.toHundredths(totalAmount * 100);
+            boolean canUsePoints = currentCustomer.getCustomerId() > 0 &&
+                LoyaltyLedger.getInstance().getBalanceHundredths(currentCustomer.getCustomerId()) >= pointsNeeded;
+            
             // Show payment options
             System.out.println("\nPayment Methods:");
             System.out.println("1. Cash");
             System.out.println("2. Credit Card");
             System.out.println("3. Mobile Payment");
-            if (currentCustomer.getLoyaltyPoints() >= totalAmount * 100) {
+            if (canUsePoints) {
                 System.out.println("4. Loyalty Points (" + currentCustomer.getLoyaltyPoints() + " available)");
             }
             
@@ -449,10 +515,10 @@ public class CustomerView {
                     paymentMethod = Payment.PaymentMethod.CREDIT_CARD;
                     break;
                 case 3:
-                    paymentMethod = Payment.PaymentMethod.CASH;
+                    paymentMethod = Payment.PaymentMethod.MOBILE_PAYMENT;
                     break;
                 case 4:
-                    if (currentCustomer.getLoyaltyPoints() >= totalAmount * 100) {
+                    if (canUsePoints) {
                         paymentMethod = Payment.PaymentMethod.LOYALTY_POINTS;
                     } else {
                         System.out.println("Insufficient loyalty points. Using cash.");
@@ -464,9 +530,40 @@ public class CustomerView {
                     paymentMethod = Payment.PaymentMethod.CASH;
             }
             
+            // Card and mobile details are taken before anything is saved
+            String cardNumber = null;
+            String expiryDate = null;
+            String cvv = null;
+            String mobilePaymentId = null;
+            if (paymentMethod == Payment.PaymentMethod.CREDIT_CARD) {
+                System.out.print("Card number: ");
+                cardNumber = scanner.nextLine().trim();
+                System.out.print("Expiry date (MM/YY): ");
+                expiryDate = scanner.nextLine().trim();
+                System.out.print("CVV: ");
+                cvv = scanner.nextLine().trim();
+            } else if (paymentMethod == Payment.PaymentMethod.MOBILE_PAYMENT) {
+                System.out.print("Mobile payment ID: ");
+                mobilePaymentId = scanner.nextLine().trim();
+            }
+            
             // Create and save order
-            int orderId = orderDAO.createOrder(currentOrder);
-            // Order ID is set internally
+            int orderId = orderDAO().createOrder(currentOrder);
+            if (orderId <= 0) {
+                // Nothing was saved, so no points are spent and no payment is recorded
+                System.out.println("Failed to save order. Please try again.");
+                return;
+            }
+            
+            // Debit the points atomically; another terminal may have spent them since the check above
+            if (paymentMethod == Payment.PaymentMethod.LOYALTY_POINTS) {
+                if (LoyaltyLedger.getInstance().redeem(currentCustomer.getCustomerId(), pointsNeeded, orderId)) {
+                    currentCustomer.redeemLoyaltyPoints(LoyaltyLedger.toPoints(pointsNeeded));
+                } else {
+                    System.out.println("Insufficient loyalty points. Using cash.");
+                    paymentMethod = Payment.PaymentMethod.CASH;
+                }
+            }
             
             // Add order items
             // Order items are handled internally by the Order class
@@ -474,40 +571,54 @@ public class CustomerView {
             // Process payment
             Payment payment = new Payment(0, orderId, paymentMethod, totalAmount);
             // Payment status is handled internally
-            int paymentId = paymentDAO.createPayment(payment);
+            int paymentId = paymentDAO().createPayment(payment);
             
-            // Update order status
-            currentOrder.setStatus(Order.OrderStatus.CONFIRMED);
-            orderDAO.updateOrderStatus(orderId, currentOrder.getStatus());
+            // 10 points per dollar, except when paying with points
+            int pointsEarned = 0;
+            if (currentCustomer.getCustomerId() > 0 && paymentMethod != Payment.PaymentMethod.LOYALTY_POINTS) {
+                pointsEarned = (int)(totalAmount * 10);
+            }
             
-            // Update customer loyalty points and order history
-            if (currentCustomer.getCustomerId() > 0) {
-                // Order history is managed by the system
-                if (paymentMethod == Payment.PaymentMethod.LOYALTY_POINTS) {
-                    // Loyalty points deduction handled by system
-                } else {
-                    currentCustomer.addLoyaltyPoints((int)(totalAmount * 10)); // 10 points per dollar
+            boolean viaGateway = paymentMethod == Payment.PaymentMethod.CREDIT_CARD
+                || paymentMethod == Payment.PaymentMethod.MOBILE_PAYMENT;
+            if (viaGateway) {
+                // The processor answers later; the order is confirmed and points earned when the capture lands
+                CompletableFuture<Boolean> outcome = paymentMethod == Payment.PaymentMethod.CREDIT_CARD
+                    ? payment.processCardPayment(cardNumber, expiryDate, cvv)
+                    : payment.processMobilePayment(mobilePaymentId);
+                settleGatewayPayment(outcome, payment, paymentId, orderId, currentCustomer, pointsEarned);
+            } else {
+                // Update order status
+                currentOrder.setStatus(Order.OrderStatus.CONFIRMED);
+                orderDAO().updateOrderStatus(orderId, currentOrder.getStatus());
+                
+                // Earn loyalty points; the ledger batches the write, so checkout does not wait on it
+                if (pointsEarned > 0) {
+                    LoyaltyLedger.getInstance().accrue(currentCustomer.getCustomerId(), pointsEarned * 100L, orderId);
+                    currentCustomer.addLoyaltyPoints(pointsEarned);
                 }
-                customerDAO.updateCustomer(currentCustomer);
             }
             
             // Reserve table if dine-in
             if (currentOrder.getServiceType() == Order.ServiceType.DINE_IN && currentOrder.getTableNumber() > 0) {
-                Table table = tableDAO.getTableById(currentOrder.getTableNumber());
+                Table table = tableDAO().getTableById(currentOrder.getTableNumber());
                 if (table != null) {
                     table.occupyTable(1);
-                    tableDAO.updateTableStatus(table.getTableNumber(), table.getStatus());
+                    tableDAO().updateTableStatus(table.getTableNumber(), table.getStatus());
                 }
             }
             
-            System.out.println("\n=== Order Confirmed ===");
+            System.out.println(viaGateway ? "\n=== Order Placed ===" : "\n=== Order Confirmed ===");
             System.out.println("Order ID: " + orderId);
             System.out.println("Payment ID: " + paymentId);
-            System.out.println("Total Paid: $" + String.format("%.2f", totalAmount));
+            System.out.println((viaGateway ? "Total Due: $" : "Total Paid: $") + String.format("%.2f", totalAmount));
             System.out.println("Payment Method: " + paymentMethod);
+            if (viaGateway) {
+                System.out.println("Payment is being processed; you will see the result here shortly.");
+            }
             
-            if (currentCustomer.getCustomerId() > 0) {
-                System.out.println("Loyalty Points Earned: " + (int)(totalAmount * 10));
+            if (currentCustomer.getCustomerId() > 0 && !viaGateway) {
+                System.out.println("Loyalty Points Earned: " + pointsEarned);
                 System.out.println("Total Loyalty Points: " + currentCustomer.getLoyaltyPoints());
             }
             
@@ -523,6 +634,36 @@ public class CustomerView {
         }
     }
     
+    // Record a card or mobile payment once the gateway answers. This runs on a gateway thread,
+    // so it writes through a connection of its own instead of the view's shared one.
+    private static void settleGatewayPayment(CompletableFuture<Boolean> outcome, Payment payment, int paymentId,
+                                             int orderId, Customer customer, int pointsEarned) {
+        outcome.thenAccept(captured -> {
+            DatabaseConnection connection = new DatabaseConnection(DatabaseConnection.getInstance().getDatabaseName());
+            try {
+                PaymentDAO payments = new PaymentDAO(connection);
+                if (captured) {
+                    payments.processPayment(paymentId, payment.getTransactionReference());
+                    new OrderDAO(connection).updateOrderStatus(orderId, Order.OrderStatus.CONFIRMED);
+                    if (pointsEarned > 0) {
+                        LoyaltyLedger.getInstance().accrue(customer.getCustomerId(), pointsEarned * 100L, orderId);
+                        customer.addLoyaltyPoints(pointsEarned);
+                    }
+                    System.out.println("\nPayment #" + paymentId + " approved; order #" + orderId + " is confirmed." +
+                                       (pointsEarned > 0 ? " Loyalty points earned: " + pointsEarned : ""));
+                } else {
+                    // FAILED, or PENDING_RECONCILE when the processor may have taken the money
+                    payments.updatePaymentStatus(paymentId, payment.getStatus());
+                    payments.updatePaymentNotes(paymentId, payment.getFailureReason());
+                    System.out.println("\nPayment #" + paymentId + " for order #" + orderId + " was not completed: " +
+                                       payment.getFailureReason());
+                }
+            } finally {
+                connection.closeConnection();
+            }
+        });
+    }
+    
     private void viewMyOrders() {
         if (currentCustomer.getCustomerId() <= 0) {
             System.out.println("Order history not available for guest users.");
@@ -530,7 +671,7 @@ public class CustomerView {
         }
         
         try {
-            List<Order> orders = orderDAO.getOrdersByCustomerId(currentCustomer.getCustomerId());
+            List<Order> orders = orderDAO().getOrdersByCustomerId(currentCustomer.getCustomerId());
             
             if (orders.isEmpty()) {
                 System.out.println("No previous orders found.");
@@ -569,6 +710,15 @@ public class CustomerView {
         double pointsValue = currentCustomer.getLoyaltyPoints() / 100.0;
         System.out.printf("Points Value: $%.2f%n", pointsValue);
         
+        List<LoyaltyLedger.LedgerEntry> history =
+            LoyaltyLedger.getInstance().getHistory(currentCustomer.getCustomerId(), 5);
+        if (!history.isEmpty()) {
+            System.out.println("\nRecent activity:");
+            for (LoyaltyLedger.LedgerEntry entry : history) {
+                System.out.println("  " + entry);
+            }
+        }
+        
         System.out.println("\nNote: 100 points = $1.00");
         System.out.println("Earn 10 points for every $1 spent!");
     }
@@ -8,20 +8,28 @@ import java.io.File;
 public class DatabaseConnection {
     private static DatabaseConnection instance;
     private Connection connection;
+    private boolean fullTextSearchAvailable;
     private static final String DATABASE_NAME = "coffee_shop.db";
-    private static final String DATABASE_URL = "jdbc:sqlite:" + DATABASE_NAME;
+    // Bump whenever createTables changes so existing databases get the new DDL on their next start
+    private static final int SCHEMA_VERSION = 6;
+    private static final int BUSY_TIMEOUT_MILLIS = Integer.getInteger("coffeeshop.busyTimeoutMillis", 5000);
+    private final String databaseName;
+    private final String databaseUrl;
     
     // Private constructor for singleton pattern
     private DatabaseConnection() {
+        this(defaultDatabaseName());
+    }
+    
+    // Connection to a specific database file (one per store in sharded mode)
+    public DatabaseConnection(String databaseName) {
+        this.databaseName = databaseName;
+        this.databaseUrl = "jdbc:sqlite:" + databaseName;
         try {
             // Load SQLite JDBC driver
             Class.forName("org.sqlite.JDBC");
-            this.connection = DriverManager.getConnection(DATABASE_URL);
-            
-            // Enable foreign key constraints
-            Statement stmt = connection.createStatement();
-            stmt.execute("PRAGMA foreign_keys = ON;");
-            stmt.close();
+            this.connection = DriverManager.getConnection(databaseUrl);
+            configure(connection);
             
             System.out.println("Database connection established successfully.");
             
@@ -33,6 +41,15 @@ public class DatabaseConnection {
         }
     }
     
+    // Enable foreign key constraints, and wait for other connections' write locks (backup
+    // archiver, background writers) instead of failing at once with SQLITE_BUSY
+    private static void configure(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA foreign_keys = ON;");
+            stmt.execute("PRAGMA busy_timeout = " + BUSY_TIMEOUT_MILLIS);
+        }
+    }
+    
     // Get singleton instance
     public static synchronized DatabaseConnection getInstance() {
         if (instance == null) {
@@ -41,17 +58,28 @@ public class DatabaseConnection {
         return instance;
     }
     
+    // This register's database: its store's shard when coffeeshop.storeId is set
+    private static String defaultDatabaseName() {
+        String storeId = System.getProperty("coffeeshop.storeId");
+        return storeId != null && !storeId.isEmpty() ? databaseNameForStore(storeId) : DATABASE_NAME;
+    }
+    
+    // Database file holding one store's data
+    public static String databaseNameForStore(String storeId) {
+        return "coffee_shop_" + storeId.replaceAll("[^A-Za-z0-9_-]", "_") + ".db";
+    }
+    
+    public String getDatabaseName() {
+        return databaseName;
+    }
+    
     // Get database connection
     public Connection getConnection() {
         try {
             // Check if connection is still valid
             if (connection == null || connection.isClosed()) {
-                connection = DriverManager.getConnection(DATABASE_URL);
-                
-                // Enable foreign key constraints
-                Statement stmt = connection.createStatement();
-                stmt.execute("PRAGMA foreign_keys = ON;");
-                stmt.close();
+                connection = DriverManager.getConnection(databaseUrl);
+                configure(connection);
             }
         } catch (SQLException e) {
             System.err.println("Failed to get database connection: " + e.getMessage());
@@ -64,17 +92,27 @@ public class DatabaseConnection {
         try {
             // Ensure connection is valid
             if (connection == null || connection.isClosed()) {
-                connection = DriverManager.getConnection(DATABASE_URL);
-                Statement stmt = connection.createStatement();
-                stmt.execute("PRAGMA foreign_keys = ON;");
-                stmt.close();
+                connection = DriverManager.getConnection(databaseUrl);
+                configure(connection);
             }
 
             // Ensure DB file exists (will be created on first connection use)
-            File dbFile = new File(DATABASE_NAME);
+            File dbFile = new File(databaseName);
             boolean isNewDatabase = !dbFile.exists();
+            
+            // WAL lets backups and report copies read while registers keep writing
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("PRAGMA journal_mode = WAL");
+            }
 
-            // Always ensure tables/indexes exist
+            // Schema already verified for this version: skip the DDL and seeding checks
+            if (!Boolean.getBoolean("coffeeshop.verifySchema") && readSchemaVersion() == SCHEMA_VERSION) {
+                fullTextSearchAvailable = tableExists("menu_items_fts");
+                System.out.println("Database schema is current.");
+                return true;
+            }
+
+            // Ensure tables/indexes exist
             createTables();
 
             // Seed sample data on first run OR when critical tables are empty
@@ -85,6 +123,9 @@ public class DatabaseConnection {
                 System.out.println("Database exists with data.");
             }
 
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("PRAGMA user_version = " + SCHEMA_VERSION);
+            }
             return true;
 
         } catch (SQLException e) {
@@ -93,6 +134,24 @@ public class DatabaseConnection {
         }
     }
 
+    // Schema version stamped into the database file by the last full verification
+    private int readSchemaVersion() throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA user_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+    
+    private boolean tableExists(String tableName) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = ?")) {
+            pstmt.setString(1, tableName);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+    
     // Check if a table has no rows
     private boolean isTableEmpty(String tableName) {
         String sql = "SELECT COUNT(1) AS c FROM " + tableName;
@@ -161,6 +220,7 @@ public class DatabaseConnection {
             "discount DECIMAL(10,2) DEFAULT 0.00," +
             "total_amount DECIMAL(10,2) NOT NULL," +
             "special_instructions TEXT," +
+            "idempotency_key VARCHAR(64)," +
             "order_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
             "completion_time TIMESTAMP," +
             "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
@@ -195,6 +255,7 @@ public class DatabaseConnection {
             "amount_paid DECIMAL(10,2) DEFAULT 0.00," +
             "change_given DECIMAL(10,2) DEFAULT 0.00," +
             "transaction_reference VARCHAR(100)," +
+            "idempotency_key VARCHAR(64)," +
             "card_last_four_digits VARCHAR(4)," +
             "failure_reason TEXT," +
             "payment_time TIMESTAMP," +
@@ -218,6 +279,55 @@ public class DatabaseConnection {
             "is_active BOOLEAN DEFAULT TRUE," +
             "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
             "updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
+            ")",
+            
+            // Recipe quantities: how much of each ingredient one menu item uses
+            "CREATE TABLE IF NOT EXISTS menu_item_ingredients (" +
+            "menu_item_id INTEGER NOT NULL," +
+            "ingredient_id INTEGER NOT NULL," +
+            "quantity_required DECIMAL(10,3) NOT NULL," +
+            "PRIMARY KEY (menu_item_id, ingredient_id)," +
+            "FOREIGN KEY (menu_item_id) REFERENCES menu_items(id) ON DELETE CASCADE," +
+            "FOREIGN KEY (ingredient_id) REFERENCES ingredients(ingredient_id) ON DELETE CASCADE" +
+            ")",
+            
+            // Loyalty ledger (append-only; points in hundredths)
+            "CREATE TABLE IF NOT EXISTS loyalty_ledger (" +
+            "entry_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+            "customer_id INTEGER NOT NULL," +
+            "delta_hundredths INTEGER NOT NULL," +
+            "reason VARCHAR(20) NOT NULL," +
+            "order_id INTEGER," +
+            "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
+            "FOREIGN KEY (customer_id) REFERENCES customers(customer_id)" +
+            ")",
+            
+            // Table reservations (UTC times; ends_at is exclusive)
+            "CREATE TABLE IF NOT EXISTS reservations (" +
+            "reservation_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+            "table_number INTEGER NOT NULL," +
+            "customer_id INTEGER," +
+            "party_size INTEGER NOT NULL," +
+            "starts_at TIMESTAMP NOT NULL," +
+            "ends_at TIMESTAMP NOT NULL," +
+            "status VARCHAR(20) DEFAULT 'BOOKED'," +
+            "notes TEXT," +
+            "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
+            "updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
+            "FOREIGN KEY (table_number) REFERENCES tables(table_number)," +
+            "FOREIGN KEY (customer_id) REFERENCES customers(customer_id)" +
+            ")",
+            
+            // Ingredient lots (one row per delivery; ISO dates)
+            "CREATE TABLE IF NOT EXISTS ingredient_lots (" +
+            "lot_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+            "ingredient_id INTEGER NOT NULL," +
+            "quantity_received DECIMAL(10,3) NOT NULL," +
+            "quantity_remaining DECIMAL(10,3) NOT NULL," +
+            "received_date DATE NOT NULL," +
+            "expiration_date DATE," +
+            "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
+            "FOREIGN KEY (ingredient_id) REFERENCES ingredients(ingredient_id) ON DELETE CASCADE" +
             ")"
         };
         
@@ -227,14 +337,26 @@ public class DatabaseConnection {
             stmt.execute(query);
         }
         
+        // Columns added after the first release
+        ensureColumn("orders", "idempotency_key", "VARCHAR(64)");
+        ensureColumn("payments", "idempotency_key", "VARCHAR(64)");
+        
         // Create indexes
         String[] indexQueries = {
             "CREATE INDEX IF NOT EXISTS idx_orders_customer_id ON orders(customer_id)",
             "CREATE INDEX IF NOT EXISTS idx_orders_status ON orders(status)",
+            "CREATE INDEX IF NOT EXISTS idx_orders_order_time ON orders(order_time)",
+            "CREATE UNIQUE INDEX IF NOT EXISTS idx_orders_idempotency_key ON orders(idempotency_key)",
             "CREATE INDEX IF NOT EXISTS idx_order_items_order_id ON order_items(order_id)",
             "CREATE INDEX IF NOT EXISTS idx_payments_order_id ON payments(order_id)",
+            "CREATE UNIQUE INDEX IF NOT EXISTS idx_payments_idempotency_key ON payments(idempotency_key)",
             "CREATE INDEX IF NOT EXISTS idx_tables_status ON tables(status)",
-            "CREATE INDEX IF NOT EXISTS idx_menu_items_category ON menu_items(category)"
+            "CREATE INDEX IF NOT EXISTS idx_menu_items_category ON menu_items(category)",
+            "CREATE INDEX IF NOT EXISTS idx_loyalty_ledger_customer_id ON loyalty_ledger(customer_id)",
+            "CREATE INDEX IF NOT EXISTS idx_reservations_table_time ON reservations(table_number, starts_at)",
+            "CREATE INDEX IF NOT EXISTS idx_reservations_ends_at ON reservations(ends_at)",
+            "CREATE INDEX IF NOT EXISTS idx_ingredient_lots_ingredient ON ingredient_lots(ingredient_id, expiration_date)",
+            "CREATE INDEX IF NOT EXISTS idx_ingredient_lots_open_expiry ON ingredient_lots(expiration_date) WHERE quantity_remaining > 0"
         };
         
         for (String query : indexQueries) {
@@ -242,6 +364,123 @@ public class DatabaseConnection {
         }
         
         stmt.close();
+        
+        createTransactionReferenceIndex();
+        backfillIngredientLots();
+        createSearchIndexes();
+    }
+    
+    // One payment per gateway reference. Older databases stored '' for "no reference" and may
+    // already hold duplicates; those keep a plain index and the duplicates are reported.
+    private void createTransactionReferenceIndex() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("UPDATE payments SET transaction_reference = NULL WHERE transaction_reference = ''");
+            try {
+                stmt.execute("CREATE UNIQUE INDEX IF NOT EXISTS idx_payments_transaction_reference " +
+                             "ON payments(transaction_reference)");
+            } catch (SQLException e) {
+                System.err.println("Duplicate transaction references found, payments are not deduplicated by reference: " +
+                                   e.getMessage());
+                stmt.execute("CREATE INDEX IF NOT EXISTS idx_payments_transaction_reference_lookup " +
+                             "ON payments(transaction_reference)");
+            }
+        }
+    }
+    
+    // Give stock recorded before lots existed an opening lot carrying the ingredient's old expiry.
+    // Older rows stored expiration_date as epoch millis through setDate, so convert those.
+    private void backfillIngredientLots() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(
+                "INSERT INTO ingredient_lots (ingredient_id, quantity_received, quantity_remaining, received_date, expiration_date) " +
+                "SELECT i.ingredient_id, i.current_stock - COALESCE(l.total, 0), i.current_stock - COALESCE(l.total, 0), DATE('now'), " +
+                "CASE WHEN typeof(i.expiration_date) = 'integer' THEN DATE(i.expiration_date / 1000, 'unixepoch') " +
+                "ELSE i.expiration_date END " +
+                "FROM ingredients i LEFT JOIN (SELECT ingredient_id, SUM(quantity_remaining) AS total " +
+                "FROM ingredient_lots GROUP BY ingredient_id) l ON l.ingredient_id = i.ingredient_id " +
+                "WHERE i.current_stock > COALESCE(l.total, 0)");
+        }
+    }
+    
+    // Create FTS5 search tables kept in sync with their source tables by triggers
+    private void createSearchIndexes() {
+        try {
+            createSearchIndex("menu_items_fts", "menu_items", "id", new String[] {"name", "category", "description"});
+            createSearchIndex("customers_fts", "customers", "customer_id", new String[] {"name", "email", "phone_number"});
+            createSearchIndex("ingredients_fts", "ingredients", "ingredient_id", new String[] {"name", "supplier"});
+            fullTextSearchAvailable = true;
+        } catch (SQLException e) {
+            // SQLite builds without FTS5 fall back to LIKE searches
+            System.err.println("Full-text search unavailable: " + e.getMessage());
+            fullTextSearchAvailable = false;
+        }
+    }
+    
+    private void createSearchIndex(String ftsTable, String sourceTable, String idColumn, String[] columns) throws SQLException {
+        boolean isNewIndex;
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = ?")) {
+            pstmt.setString(1, ftsTable);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                isNewIndex = !rs.next();
+            }
+        }
+        
+        String columnList = String.join(", ", columns);
+        StringBuilder newValues = new StringBuilder("new." + idColumn);
+        StringBuilder selectValues = new StringBuilder(idColumn);
+        for (String column : columns) {
+            newValues.append(", ").append(TextFolding.sqlFold("new." + column));
+            selectValues.append(", ").append(TextFolding.sqlFold(column));
+        }
+        
+        String[] queries = {
+            "CREATE VIRTUAL TABLE IF NOT EXISTS " + ftsTable + " USING fts5(" + columnList + ", " +
+            "tokenize = 'unicode61 remove_diacritics 2', prefix = '2 3')",
+            
+            "CREATE TRIGGER IF NOT EXISTS " + ftsTable + "_ai AFTER INSERT ON " + sourceTable + " BEGIN " +
+            "INSERT INTO " + ftsTable + " (rowid, " + columnList + ") VALUES (" + newValues + "); END",
+            
+            "CREATE TRIGGER IF NOT EXISTS " + ftsTable + "_ad AFTER DELETE ON " + sourceTable + " BEGIN " +
+            "DELETE FROM " + ftsTable + " WHERE rowid = old." + idColumn + "; END",
+            
+            "CREATE TRIGGER IF NOT EXISTS " + ftsTable + "_au AFTER UPDATE ON " + sourceTable + " BEGIN " +
+            "DELETE FROM " + ftsTable + " WHERE rowid = old." + idColumn + "; " +
+            "INSERT INTO " + ftsTable + " (rowid, " + columnList + ") VALUES (" + newValues + "); END"
+        };
+        
+        try (Statement stmt = connection.createStatement()) {
+            for (String query : queries) {
+                stmt.execute(query);
+            }
+            
+            // Index rows that existed before the search table did
+            if (isNewIndex) {
+                stmt.execute("INSERT INTO " + ftsTable + " (rowid, " + columnList + ") " +
+                             "SELECT " + selectValues + " FROM " + sourceTable);
+            }
+        }
+    }
+    
+    // Whether the FTS5 search tables could be created
+    public boolean isFullTextSearchAvailable() {
+        return fullTextSearchAvailable;
+    }
+    
+    // Add a column to an existing table if an older database file lacks it
+    private void ensureColumn(String tableName, String columnName, String definition) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + tableName + ")")) {
+            while (rs.next()) {
+                if (columnName.equalsIgnoreCase(rs.getString("name"))) {
+                    return;
+                }
+            }
+        }
+        
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("ALTER TABLE " + tableName + " ADD COLUMN " + columnName + " " + definition);
+        }
     }
     
     // Insert sample data
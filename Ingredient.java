@@ -126,6 +126,11 @@ public class Ingredient {
         this.isActive = active;
     }
     
+    // Restore stock loaded from the database (the sum of its lots; no maximum check)
+    public void restoreStock(double currentStock) {
+        this.currentStock = Math.max(0.0, currentStock);
+    }
+    
     // Methods
     public boolean addStock(double quantity) {
         if (quantity > 0) {
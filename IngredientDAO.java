@@ -1,52 +1,122 @@
 import java.sql.*;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Data Access Object for Ingredient operations
  * Handles all database operations related to ingredient management
+ *
+ * Stock is kept in lots (ingredient_lots), one per delivery. current_stock and
+ * expiration_date on ingredients are maintained from the lots: the total left
+ * and the earliest expiry. Removing stock draws from lots first-expired-first-out
+ * through IngredientLotIndex, which also answers the expiry queries.
  */
 public class IngredientDAO {
+    // Listener notified after an ingredient is created, deleted or has its details changed
+    // (not on every stock movement)
+    public interface ChangeListener {
+        void onChanged(int ingredientId);
+    }
+    
+    // Listener notified after a menu item's recipe quantities change
+    public interface RecipeListener {
+        void onRecipeChanged(int menuItemId);
+    }
+    
+    private static final List<ChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+    private static final List<RecipeListener> recipeListeners = new CopyOnWriteArrayList<>();
+    
     private DatabaseConnection dbConnection;
     
     public IngredientDAO() {
         this.dbConnection = DatabaseConnection.getInstance();
     }
     
-    // Create a new ingredient
+    public static void addChangeListener(ChangeListener listener) {
+        changeListeners.add(listener);
+    }
+    
+    public static void removeChangeListener(ChangeListener listener) {
+        changeListeners.remove(listener);
+    }
+    
+    public static void addRecipeListener(RecipeListener listener) {
+        recipeListeners.add(listener);
+    }
+    
+    public static void removeRecipeListener(RecipeListener listener) {
+        recipeListeners.remove(listener);
+    }
+    
+    private static void fireChanged(int ingredientId) {
+        for (ChangeListener listener : changeListeners) {
+            listener.onChanged(ingredientId);
+        }
+    }
+    
+    private static void fireRecipeChanged(int menuItemId) {
+        for (RecipeListener listener : recipeListeners) {
+            listener.onRecipeChanged(menuItemId);
+        }
+    }
+    
+    // Create a new ingredient; any starting stock becomes its first lot
     public int createIngredient(Ingredient ingredient) {
         String query = "INSERT INTO ingredients (name, current_stock, minimum_stock, maximum_stock, " +
                       "unit, cost_per_unit, supplier, expiration_date) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
         
-        try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
-            pstmt.setString(1, ingredient.getName());
-            pstmt.setDouble(2, ingredient.getCurrentStock());
-            pstmt.setDouble(3, ingredient.getMinimumStock());
-            pstmt.setDouble(4, ingredient.getMaximumStock());
-            pstmt.setString(5, ingredient.getUnit().toString());
-            pstmt.setDouble(6, ingredient.getCostPerUnit());
-            pstmt.setString(7, ingredient.getSupplier());
-            if (ingredient.getExpirationDate() != null) {
-                pstmt.setDate(8, Date.valueOf(ingredient.getExpirationDate()));
-            } else {
-                pstmt.setNull(8, Types.DATE);
-            }
-            
-            int rowsAffected = pstmt.executeUpdate();
-            
-            if (rowsAffected > 0) {
-                ResultSet generatedKeys = pstmt.getGeneratedKeys();
-                if (generatedKeys.next()) {
-                    return generatedKeys.getInt(1);
+        Connection conn = dbConnection.getConnection();
+        int ingredientId = -1;
+        IngredientLot openingLot = null;
+        try {
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+                pstmt.setString(1, ingredient.getName());
+                pstmt.setDouble(2, ingredient.getCurrentStock());
+                pstmt.setDouble(3, ingredient.getMinimumStock());
+                pstmt.setDouble(4, ingredient.getMaximumStock());
+                pstmt.setString(5, ingredient.getUnit().toString());
+                pstmt.setDouble(6, ingredient.getCostPerUnit());
+                pstmt.setString(7, ingredient.getSupplier());
+                bindDate(pstmt, 8, ingredient.getExpirationDate());
+                
+                if (pstmt.executeUpdate() > 0) {
+                    ResultSet generatedKeys = pstmt.getGeneratedKeys();
+                    if (generatedKeys.next()) {
+                        ingredientId = generatedKeys.getInt(1);
+                    }
                 }
             }
-            
+            if (ingredientId > 0 && ingredient.getCurrentStock() > IngredientLotIndex.EPSILON) {
+                openingLot = new IngredientLot(0, ingredientId, ingredient.getCurrentStock(),
+                        ingredient.getCurrentStock(), LocalDate.now(), ingredient.getExpirationDate());
+                openingLot.setLotId(insertLot(conn, openingLot));
+            }
+            conn.commit();
         } catch (SQLException e) {
             System.err.println("Error creating ingredient: " + e.getMessage());
+            rollback(conn);
+            return -1;
+        } finally {
+            resetAutoCommit(conn);
         }
         
-        return -1;
+        if (openingLot != null) {
+            IngredientLotIndex.getInstance().add(openingLot);
+        }
+        if (ingredientId > 0) {
+            fireChanged(ingredientId);
+        }
+        return ingredientId;
     }
     
     // Get ingredient by ID
@@ -153,58 +223,67 @@ public class IngredientDAO {
         return ingredients;
     }
     
-    // Get expired ingredients
+    // Get ingredients with at least one expired lot still in stock, earliest expiry first
     public List<Ingredient> getExpiredIngredients() {
-        List<Ingredient> ingredients = new ArrayList<>();
-        String query = "SELECT * FROM ingredients WHERE expiration_date < CURRENT_DATE ORDER BY expiration_date";
-        
-        try (Statement stmt = dbConnection.getConnection().createStatement();
-             ResultSet rs = stmt.executeQuery(query)) {
-            
-            while (rs.next()) {
-                Ingredient ingredient = createIngredientFromResultSet(rs);
-                if (ingredient != null) {
-                    ingredients.add(ingredient);
-                }
-            }
-            
-        } catch (SQLException e) {
-            System.err.println("Error getting expired ingredients: " + e.getMessage());
-        }
-        
-        return ingredients;
+        return getIngredientsByIds(IngredientLotIndex.getInstance().getIngredientsWithExpiredLots(LocalDate.now()));
     }
     
-    // Get ingredients expiring soon (within specified days)
+    // Get ingredients with a lot expiring soon (within specified days), earliest expiry first
     public List<Ingredient> getIngredientExpiringSoon(int days) {
+        return getIngredientsByIds(IngredientLotIndex.getInstance().getIngredientsExpiringWithin(LocalDate.now(), days));
+    }
+    
+    // Get ingredients by ID in the order given
+    public List<Ingredient> getIngredientsByIds(List<Integer> ingredientIds) {
         List<Ingredient> ingredients = new ArrayList<>();
-        String query = "SELECT * FROM ingredients WHERE expiration_date BETWEEN CURRENT_DATE AND DATE('now', '+' || ? || ' days') ORDER BY expiration_date";
+        if (ingredientIds.isEmpty()) {
+            return ingredients;
+        }
+        StringBuilder placeholders = new StringBuilder();
+        for (int i = 0; i < ingredientIds.size(); i++) {
+            placeholders.append(i == 0 ? "?" : ", ?");
+        }
+        String query = "SELECT * FROM ingredients WHERE ingredient_id IN (" + placeholders + ")";
         
+        Map<Integer, Ingredient> byId = new HashMap<>();
         try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
-            pstmt.setInt(1, days);
+            for (int i = 0; i < ingredientIds.size(); i++) {
+                pstmt.setInt(i + 1, ingredientIds.get(i));
+            }
             ResultSet rs = pstmt.executeQuery();
             
             while (rs.next()) {
                 Ingredient ingredient = createIngredientFromResultSet(rs);
                 if (ingredient != null) {
-                    ingredients.add(ingredient);
+                    byId.put(ingredient.getIngredientId(), ingredient);
                 }
             }
             
         } catch (SQLException e) {
-            System.err.println("Error getting ingredients expiring soon: " + e.getMessage());
+            System.err.println("Error getting ingredients by ID: " + e.getMessage());
         }
         
+        for (int ingredientId : ingredientIds) {
+            Ingredient ingredient = byId.get(ingredientId);
+            if (ingredient != null) {
+                ingredients.add(ingredient);
+            }
+        }
         return ingredients;
     }
     
     // Get ingredients by supplier
     public List<Ingredient> getIngredientsBySupplier(String supplier) {
         List<Ingredient> ingredients = new ArrayList<>();
-        String query = "SELECT * FROM ingredients WHERE supplier LIKE ? ORDER BY name";
+        String matchQuery = TextFolding.toMatchQuery("supplier", supplier);
+        boolean useIndex = matchQuery != null && dbConnection.isFullTextSearchAvailable();
+        String query = useIndex
+            ? "SELECT i.* FROM ingredients_fts JOIN ingredients i ON i.ingredient_id = ingredients_fts.rowid " +
+              "WHERE ingredients_fts MATCH ? ORDER BY bm25(ingredients_fts), i.name"
+            : "SELECT * FROM ingredients WHERE supplier LIKE ? ORDER BY name";
         
         try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
-            pstmt.setString(1, "%" + supplier + "%");
+            pstmt.setString(1, useIndex ? matchQuery : "%" + supplier + "%");
             ResultSet rs = pstmt.executeQuery();
             
             while (rs.next()) {
@@ -221,60 +300,210 @@ public class IngredientDAO {
         return ingredients;
     }
     
-    // Update ingredient stock
+    // Set stock to a counted level: a shortfall comes out of the lots first-expired-first-out
+    // (expired lots included), a surplus is added as a lot without an expiry
     public boolean updateIngredientStock(int ingredientId, double newStock) {
-        String query = "UPDATE ingredients SET current_stock = ?, updated_at = CURRENT_TIMESTAMP WHERE ingredient_id = ?";
-        
-        try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
-            pstmt.setDouble(1, newStock);
-            pstmt.setInt(2, ingredientId);
-            
-            int rowsAffected = pstmt.executeUpdate();
-            return rowsAffected > 0;
-            
-        } catch (SQLException e) {
-            System.err.println("Error updating ingredient stock: " + e.getMessage());
+        Ingredient ingredient = getIngredientById(ingredientId);
+        if (ingredient == null || newStock < 0) {
             return false;
         }
+        double difference = newStock - ingredient.getCurrentStock();
+        if (Math.abs(difference) <= IngredientLotIndex.EPSILON) {
+            return true;
+        }
+        return difference > 0 ? receiveStock(ingredientId, difference, null) > 0
+                              : consumeStock(ingredientId, -difference, true);
     }
     
-    // Add stock to ingredient
+    // Add stock to ingredient (as a lot without an expiry)
     public boolean addStock(int ingredientId, double quantity) {
-        String query = "UPDATE ingredients SET current_stock = current_stock + ?, updated_at = CURRENT_TIMESTAMP WHERE ingredient_id = ?";
-        
-        try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
-            pstmt.setDouble(1, quantity);
-            pstmt.setInt(2, ingredientId);
-            
-            int rowsAffected = pstmt.executeUpdate();
-            return rowsAffected > 0;
-            
+        return receiveStock(ingredientId, quantity, null) > 0;
+    }
+    
+    // Receive a delivery as a new lot; returns the lot ID or -1
+    public int receiveStock(int ingredientId, double quantity, LocalDate expirationDate) {
+        if (quantity <= 0) {
+            return -1;
+        }
+        IngredientLot lot = new IngredientLot(0, ingredientId, quantity, quantity, LocalDate.now(), expirationDate);
+        
+        Connection conn = dbConnection.getConnection();
+        try {
+            conn.setAutoCommit(false);
+            lot.setLotId(insertLot(conn, lot));
+            refreshStockFromLots(conn, ingredientId);
+            conn.commit();
         } catch (SQLException e) {
-            System.err.println("Error adding stock: " + e.getMessage());
-            return false;
+            System.err.println("Error receiving stock: " + e.getMessage());
+            rollback(conn);
+            return -1;
+        } finally {
+            resetAutoCommit(conn);
         }
+        
+        IngredientLotIndex.getInstance().add(lot);
+        return lot.getLotId();
     }
     
-    // Remove stock from ingredient
+    // Remove stock from ingredient, first-expired-first-out; expired lots are not used.
+    // False if the unexpired lots don't hold enough.
     public boolean removeStock(int ingredientId, double quantity) {
-        // First check if there's enough stock
-        Ingredient ingredient = getIngredientById(ingredientId);
-        if (ingredient == null || ingredient.getCurrentStock() < quantity) {
+        return consumeStock(ingredientId, quantity, false);
+    }
+    
+    // Zero every lot past its expiry; returns how many lots were written off
+    public int writeOffExpiredStock() {
+        IngredientLotIndex lotIndex = IngredientLotIndex.getInstance();
+        synchronized (lotIndex) {
+            List<IngredientLotIndex.Draw> draws = new ArrayList<>();
+            Set<Integer> ingredientIds = new LinkedHashSet<>();
+            for (IngredientLot lot : lotIndex.getExpiredLots(LocalDate.now())) {
+                draws.add(new IngredientLotIndex.Draw(lot, lot.getQuantityRemaining()));
+                ingredientIds.add(lot.getIngredientId());
+            }
+            return commitDraws(lotIndex, ingredientIds, draws) ? draws.size() : 0;
+        }
+    }
+    
+    private boolean consumeStock(int ingredientId, double quantity, boolean includeExpired) {
+        if (quantity <= 0) {
             return false;
         }
+        IngredientLotIndex lotIndex = IngredientLotIndex.getInstance();
+        synchronized (lotIndex) {
+            List<IngredientLotIndex.Draw> draws =
+                    lotIndex.planConsumption(ingredientId, quantity, LocalDate.now(), includeExpired);
+            if (draws == null) {
+                return false;
+            }
+            Set<Integer> ingredientIds = new LinkedHashSet<>();
+            ingredientIds.add(ingredientId);
+            return commitDraws(lotIndex, ingredientIds, draws);
+        }
+    }
+    
+    // Take the planned quantities out of their lots and refresh the ingredients' totals in one
+    // transaction; a lot that no longer holds its share fails the whole thing
+    private boolean commitDraws(IngredientLotIndex lotIndex, Set<Integer> ingredientIds,
+                                List<IngredientLotIndex.Draw> draws) {
+        if (draws.isEmpty()) {
+            return true;
+        }
+        String query = "UPDATE ingredient_lots SET quantity_remaining = MAX(quantity_remaining - ?, 0) " +
+                      "WHERE lot_id = ? AND quantity_remaining >= ?";
+        
+        Connection conn = dbConnection.getConnection();
+        try {
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+                for (IngredientLotIndex.Draw draw : draws) {
+                    pstmt.setDouble(1, draw.getQuantity());
+                    pstmt.setInt(2, draw.getLot().getLotId());
+                    pstmt.setDouble(3, draw.getQuantity() - IngredientLotIndex.EPSILON);
+                    pstmt.addBatch();
+                }
+                for (int result : pstmt.executeBatch()) {
+                    if (result == 0) {
+                        throw new SQLException("lot changed since it was read");
+                    }
+                }
+            }
+            for (int ingredientId : ingredientIds) {
+                refreshStockFromLots(conn, ingredientId);
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            System.err.println("Error removing stock: " + e.getMessage());
+            rollback(conn);
+            for (int ingredientId : ingredientIds) {
+                lotIndex.reloadIngredient(ingredientId);
+            }
+            return false;
+        } finally {
+            resetAutoCommit(conn);
+        }
         
-        String query = "UPDATE ingredients SET current_stock = current_stock - ?, updated_at = CURRENT_TIMESTAMP WHERE ingredient_id = ?";
+        lotIndex.applyConsumption(draws);
+        return true;
+    }
+    
+    // Get the lots of an ingredient that still have stock, in the order they will be used
+    public List<IngredientLot> getLots(int ingredientId) {
+        return IngredientLotIndex.getInstance().getLots(ingredientId);
+    }
+    
+    // Load every lot with stock left (for IngredientLotIndex)
+    public List<IngredientLot> getOpenLots() {
+        return queryLots("SELECT * FROM ingredient_lots WHERE quantity_remaining > 0", -1);
+    }
+    
+    // Load one ingredient's lots with stock left
+    public List<IngredientLot> getOpenLots(int ingredientId) {
+        return queryLots("SELECT * FROM ingredient_lots WHERE quantity_remaining > 0 AND ingredient_id = ?", ingredientId);
+    }
+    
+    private List<IngredientLot> queryLots(String query, int ingredientId) {
+        List<IngredientLot> lots = new ArrayList<>();
         
         try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
-            pstmt.setDouble(1, quantity);
-            pstmt.setInt(2, ingredientId);
+            if (ingredientId > 0) {
+                pstmt.setInt(1, ingredientId);
+            }
+            ResultSet rs = pstmt.executeQuery();
             
-            int rowsAffected = pstmt.executeUpdate();
-            return rowsAffected > 0;
+            while (rs.next()) {
+                lots.add(new IngredientLot(
+                    rs.getInt("lot_id"),
+                    rs.getInt("ingredient_id"),
+                    rs.getDouble("quantity_received"),
+                    rs.getDouble("quantity_remaining"),
+                    readDate(rs, "received_date"),
+                    readDate(rs, "expiration_date")
+                ));
+            }
             
         } catch (SQLException e) {
-            System.err.println("Error removing stock: " + e.getMessage());
-            return false;
+            System.err.println("Error getting ingredient lots: " + e.getMessage());
+        }
+        
+        return lots;
+    }
+    
+    private int insertLot(Connection conn, IngredientLot lot) throws SQLException {
+        String query = "INSERT INTO ingredient_lots (ingredient_id, quantity_received, quantity_remaining, " +
+                      "received_date, expiration_date) VALUES (?, ?, ?, ?, ?)";
+        
+        try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+            pstmt.setInt(1, lot.getIngredientId());
+            pstmt.setDouble(2, lot.getQuantityReceived());
+            pstmt.setDouble(3, lot.getQuantityRemaining());
+            bindDate(pstmt, 4, lot.getReceivedDate());
+            bindDate(pstmt, 5, lot.getExpirationDate());
+            pstmt.executeUpdate();
+            
+            ResultSet generatedKeys = pstmt.getGeneratedKeys();
+            if (generatedKeys.next()) {
+                return generatedKeys.getInt(1);
+            }
+        }
+        throw new SQLException("no lot ID generated");
+    }
+    
+    // Recompute an ingredient's total stock and earliest expiry from its lots
+    private void refreshStockFromLots(Connection conn, int ingredientId) throws SQLException {
+        String query = "UPDATE ingredients SET " +
+                      "current_stock = (SELECT COALESCE(SUM(quantity_remaining), 0) FROM ingredient_lots WHERE ingredient_id = ?), " +
+                      "expiration_date = (SELECT MIN(expiration_date) FROM ingredient_lots " +
+                      "WHERE ingredient_id = ? AND quantity_remaining > 0), " +
+                      "updated_at = CURRENT_TIMESTAMP WHERE ingredient_id = ?";
+        
+        try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+            pstmt.setInt(1, ingredientId);
+            pstmt.setInt(2, ingredientId);
+            pstmt.setInt(3, ingredientId);
+            if (pstmt.executeUpdate() == 0) {
+                throw new SQLException("ingredient " + ingredientId + " not found");
+            }
         }
     }
     
@@ -287,6 +516,9 @@ public class IngredientDAO {
             pstmt.setInt(2, ingredientId);
             
             int rowsAffected = pstmt.executeUpdate();
+            if (rowsAffected > 0) {
+                fireChanged(ingredientId);
+            }
             return rowsAffected > 0;
             
         } catch (SQLException e) {
@@ -295,25 +527,31 @@ public class IngredientDAO {
         }
     }
     
-    // Update ingredient expiration date
+    // Set the expiry of an ingredient's lots that have none (stock added without one)
     public boolean updateExpirationDate(int ingredientId, LocalDate expirationDate) {
-        String query = "UPDATE ingredients SET expiration_date = ?, updated_at = CURRENT_TIMESTAMP WHERE ingredient_id = ?";
-        
-        try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
-            if (expirationDate != null) {
-                pstmt.setDate(1, Date.valueOf(expirationDate));
-            } else {
-                pstmt.setNull(1, Types.DATE);
+        String query = "UPDATE ingredient_lots SET expiration_date = ? " +
+                      "WHERE ingredient_id = ? AND expiration_date IS NULL AND quantity_remaining > 0";
+        
+        Connection conn = dbConnection.getConnection();
+        try {
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+                bindDate(pstmt, 1, expirationDate);
+                pstmt.setInt(2, ingredientId);
+                pstmt.executeUpdate();
             }
-            pstmt.setInt(2, ingredientId);
-            
-            int rowsAffected = pstmt.executeUpdate();
-            return rowsAffected > 0;
-            
+            refreshStockFromLots(conn, ingredientId);
+            conn.commit();
         } catch (SQLException e) {
             System.err.println("Error updating expiration date: " + e.getMessage());
+            rollback(conn);
             return false;
+        } finally {
+            resetAutoCommit(conn);
         }
+        
+        IngredientLotIndex.getInstance().reloadIngredient(ingredientId);
+        return true;
     }
     
     // Update ingredient supplier
@@ -325,6 +563,9 @@ public class IngredientDAO {
             pstmt.setInt(2, ingredientId);
             
             int rowsAffected = pstmt.executeUpdate();
+            if (rowsAffected > 0) {
+                fireChanged(ingredientId);
+            }
             return rowsAffected > 0;
             
         } catch (SQLException e) {
@@ -343,6 +584,9 @@ public class IngredientDAO {
             pstmt.setInt(3, ingredientId);
             
             int rowsAffected = pstmt.executeUpdate();
+            if (rowsAffected > 0) {
+                fireChanged(ingredientId);
+            }
             return rowsAffected > 0;
             
         } catch (SQLException e) {
@@ -351,34 +595,33 @@ public class IngredientDAO {
         }
     }
     
-    // Update entire ingredient
+    // Update entire ingredient; a changed stock level goes through the lots like updateIngredientStock
     public boolean updateIngredient(Ingredient ingredient) {
-        String query = "UPDATE ingredients SET name = ?, current_stock = ?, minimum_stock = ?, " +
+        String query = "UPDATE ingredients SET name = ?, minimum_stock = ?, " +
                       "maximum_stock = ?, unit = ?, cost_per_unit = ?, supplier = ?, " +
-                      "expiration_date = ?, updated_at = CURRENT_TIMESTAMP WHERE ingredient_id = ?";
+                      "updated_at = CURRENT_TIMESTAMP WHERE ingredient_id = ?";
         
         try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
             pstmt.setString(1, ingredient.getName());
-            pstmt.setDouble(2, ingredient.getCurrentStock());
-            pstmt.setDouble(3, ingredient.getMinimumStock());
-            pstmt.setDouble(4, ingredient.getMaximumStock());
-            pstmt.setString(5, ingredient.getUnit().toString());
-            pstmt.setDouble(6, ingredient.getCostPerUnit());
-            pstmt.setString(7, ingredient.getSupplier());
-            if (ingredient.getExpirationDate() != null) {
-                pstmt.setDate(8, Date.valueOf(ingredient.getExpirationDate()));
-            } else {
-                pstmt.setNull(8, Types.DATE);
-            }
-            pstmt.setInt(9, ingredient.getIngredientId());
+            pstmt.setDouble(2, ingredient.getMinimumStock());
+            pstmt.setDouble(3, ingredient.getMaximumStock());
+            pstmt.setString(4, ingredient.getUnit().toString());
+            pstmt.setDouble(5, ingredient.getCostPerUnit());
+            pstmt.setString(6, ingredient.getSupplier());
+            pstmt.setInt(7, ingredient.getIngredientId());
             
             int rowsAffected = pstmt.executeUpdate();
-            return rowsAffected > 0;
+            if (rowsAffected == 0) {
+                return false;
+            }
             
         } catch (SQLException e) {
             System.err.println("Error updating ingredient: " + e.getMessage());
             return false;
         }
+        
+        fireChanged(ingredient.getIngredientId());
+        return updateIngredientStock(ingredient.getIngredientId(), ingredient.getCurrentStock());
     }
     
     // Delete ingredient
@@ -389,6 +632,11 @@ public class IngredientDAO {
             pstmt.setInt(1, ingredientId);
             
             int rowsAffected = pstmt.executeUpdate();
+            if (rowsAffected > 0) {
+                // Its lots and recipe rows go with it (ON DELETE CASCADE)
+                IngredientLotIndex.getInstance().removeIngredient(ingredientId);
+                fireChanged(ingredientId);
+            }
             return rowsAffected > 0;
             
         } catch (SQLException e) {
@@ -399,11 +647,22 @@ public class IngredientDAO {
     
     // Search ingredients by name
     public List<Ingredient> searchIngredientsByName(String searchTerm) {
+        return searchIngredientsByName(searchTerm, -1);
+    }
+    
+    // Same search, at most limit rows (a negative limit returns them all)
+    public List<Ingredient> searchIngredientsByName(String searchTerm, int limit) {
         List<Ingredient> ingredients = new ArrayList<>();
-        String query = "SELECT * FROM ingredients WHERE name LIKE ? ORDER BY name";
+        String matchQuery = TextFolding.toMatchQuery("name", searchTerm);
+        boolean useIndex = matchQuery != null && dbConnection.isFullTextSearchAvailable();
+        String query = useIndex
+            ? "SELECT i.* FROM ingredients_fts JOIN ingredients i ON i.ingredient_id = ingredients_fts.rowid " +
+              "WHERE ingredients_fts MATCH ? ORDER BY bm25(ingredients_fts), i.name LIMIT ?"
+            : "SELECT * FROM ingredients WHERE name LIKE ? ORDER BY name LIMIT ?";
         
         try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
-            pstmt.setString(1, "%" + searchTerm + "%");
+            pstmt.setString(1, useIndex ? matchQuery : "%" + searchTerm + "%");
+            pstmt.setInt(2, limit);
             ResultSet rs = pstmt.executeQuery();
             
             while (rs.next()) {
@@ -456,6 +715,71 @@ public class IngredientDAO {
         return new IngredientStats(0, 0, 0, 0, 0.0, 0.0);
     }
     
+    // Get every recipe: menu item ID -> (ingredient ID -> quantity used per item sold)
+    public Map<Integer, Map<Integer, Double>> getRecipes() {
+        Map<Integer, Map<Integer, Double>> recipes = new HashMap<>();
+        String query = "SELECT menu_item_id, ingredient_id, quantity_required FROM menu_item_ingredients";
+        
+        try (Statement stmt = dbConnection.getConnection().createStatement();
+             ResultSet rs = stmt.executeQuery(query)) {
+            
+            while (rs.next()) {
+                recipes.computeIfAbsent(rs.getInt("menu_item_id"), k -> new HashMap<>())
+                       .put(rs.getInt("ingredient_id"), rs.getDouble("quantity_required"));
+            }
+            
+        } catch (SQLException e) {
+            System.err.println("Error getting recipes: " + e.getMessage());
+        }
+        
+        return recipes;
+    }
+    
+    // Get one menu item's recipe: ingredient ID -> quantity used per item sold
+    public Map<Integer, Double> getRecipe(int menuItemId) {
+        Map<Integer, Double> recipe = new HashMap<>();
+        String query = "SELECT ingredient_id, quantity_required FROM menu_item_ingredients WHERE menu_item_id = ?";
+        
+        try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
+            pstmt.setInt(1, menuItemId);
+            ResultSet rs = pstmt.executeQuery();
+            
+            while (rs.next()) {
+                recipe.put(rs.getInt("ingredient_id"), rs.getDouble("quantity_required"));
+            }
+            
+        } catch (SQLException e) {
+            System.err.println("Error getting recipe: " + e.getMessage());
+        }
+        
+        return recipe;
+    }
+    
+    // Set how much of an ingredient a menu item uses; zero or less removes it from the recipe
+    public boolean setRecipeQuantity(int menuItemId, int ingredientId, double quantity) {
+        String query = quantity > 0
+            ? "INSERT OR REPLACE INTO menu_item_ingredients (menu_item_id, ingredient_id, quantity_required) VALUES (?, ?, ?)"
+            : "DELETE FROM menu_item_ingredients WHERE menu_item_id = ? AND ingredient_id = ?";
+        
+        try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
+            pstmt.setInt(1, menuItemId);
+            pstmt.setInt(2, ingredientId);
+            if (quantity > 0) {
+                pstmt.setDouble(3, quantity);
+            }
+            
+            int rowsAffected = pstmt.executeUpdate();
+            if (rowsAffected > 0) {
+                fireRecipeChanged(menuItemId);
+            }
+            return rowsAffected > 0;
+            
+        } catch (SQLException e) {
+            System.err.println("Error updating recipe: " + e.getMessage());
+            return false;
+        }
+    }
+    
     // Get all unique suppliers
     public List<String> getAllSuppliers() {
         List<String> suppliers = new ArrayList<>();
@@ -485,22 +809,64 @@ public class IngredientDAO {
         String unitStr = rs.getString("unit");
         double costPerUnit = rs.getDouble("cost_per_unit");
         String supplier = rs.getString("supplier");
-        Date expirationDate = rs.getDate("expiration_date");
+        LocalDate expirationDate = readDate(rs, "expiration_date");
         
         Ingredient.Unit unit = Ingredient.Unit.valueOf(unitStr);
         
         Ingredient ingredient = new Ingredient(ingredientId, name, "", unit, minimumStock, costPerUnit);
-        ingredient.addStock(currentStock);
         ingredient.setMaximumStock(maximumStock);
+        ingredient.restoreStock(currentStock);
         ingredient.setSupplier(supplier);
         
         if (expirationDate != null) {
-            ingredient.setExpirationDate(expirationDate.toLocalDate());
+            ingredient.setExpirationDate(expirationDate);
         }
         
         return ingredient;
     }
     
+    // Dates are written as ISO text so they compare with CURRENT_DATE
+    private static void bindDate(PreparedStatement pstmt, int index, LocalDate date) throws SQLException {
+        if (date != null) {
+            pstmt.setString(index, date.toString());
+        } else {
+            pstmt.setNull(index, Types.VARCHAR);
+        }
+    }
+    
+    // Read a date column; rows written before lots existed may hold epoch millis
+    static LocalDate readDate(ResultSet rs, String column) throws SQLException {
+        String value = rs.getString(column);
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            if (value.matches("-?\\d+")) {
+                return Instant.ofEpochMilli(Long.parseLong(value)).atZone(ZoneId.systemDefault()).toLocalDate();
+            }
+            return LocalDate.parse(value.length() > 10 ? value.substring(0, 10) : value);
+        } catch (DateTimeParseException | NumberFormatException e) {
+            System.err.println("Invalid date in " + column + ": " + value);
+            return null;
+        }
+    }
+    
+    private static void rollback(Connection conn) {
+        try {
+            conn.rollback();
+        } catch (SQLException rollbackEx) {
+            System.err.println("Error rolling back transaction: " + rollbackEx.getMessage());
+        }
+    }
+    
+    private static void resetAutoCommit(Connection conn) {
+        try {
+            conn.setAutoCommit(true);
+        } catch (SQLException e) {
+            System.err.println("Error resetting auto-commit: " + e.getMessage());
+        }
+    }
+    
     // Inner class for ingredient statistics
     public static class IngredientStats {
         private final int totalIngredients;
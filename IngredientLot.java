@@ -0,0 +1,101 @@
+import java.time.LocalDate;
+import java.util.Comparator;
+
+/**
+ * IngredientLot class representing one delivery of an ingredient
+ * Each lot keeps its own quantity and expiry, so a new delivery no longer
+ * overwrites the expiry of stock still on the shelf. Ingredient.currentStock
+ * is the sum of its lots' remaining quantities.
+ */
+public class IngredientLot {
+    // First expired, first out: earliest expiry first, lots without one last, then oldest delivery
+    public static final Comparator<IngredientLot> FEFO_ORDER =
+            Comparator.comparing(IngredientLot::getExpirationDate, Comparator.nullsLast(Comparator.<LocalDate>naturalOrder()))
+                      .thenComparing(IngredientLot::getReceivedDate)
+                      .thenComparingInt(IngredientLot::getLotId);
+
+    private int lotId;
+    private int ingredientId;
+    private double quantityReceived;
+    private double quantityRemaining;
+    private LocalDate receivedDate;
+    private LocalDate expirationDate;
+
+    // Constructor
+    public IngredientLot(int lotId, int ingredientId, double quantityReceived, double quantityRemaining,
+                         LocalDate receivedDate, LocalDate expirationDate) {
+        if (quantityReceived < 0 || quantityRemaining < 0) {
+            throw new IllegalArgumentException("Lot quantities cannot be negative");
+        }
+
+        this.lotId = lotId;
+        this.ingredientId = ingredientId;
+        this.quantityReceived = quantityReceived;
+        this.quantityRemaining = quantityRemaining;
+        this.receivedDate = receivedDate != null ? receivedDate : LocalDate.now();
+        this.expirationDate = expirationDate;
+    }
+
+    // Getters
+    public int getLotId() {
+        return lotId;
+    }
+
+    public int getIngredientId() {
+        return ingredientId;
+    }
+
+    public double getQuantityReceived() {
+        return quantityReceived;
+    }
+
+    public double getQuantityRemaining() {
+        return quantityRemaining;
+    }
+
+    public LocalDate getReceivedDate() {
+        return receivedDate;
+    }
+
+    public LocalDate getExpirationDate() {
+        return expirationDate;
+    }
+
+    // Setters
+    public void setLotId(int lotId) {
+        this.lotId = lotId;
+    }
+
+    void setQuantityRemaining(double quantityRemaining) {
+        this.quantityRemaining = Math.max(0.0, quantityRemaining);
+    }
+
+    // Methods
+    public boolean isEmpty() {
+        return quantityRemaining <= IngredientLotIndex.EPSILON;
+    }
+
+    public boolean isExpired(LocalDate today) {
+        return expirationDate != null && today.isAfter(expirationDate);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Lot #%d - %.3f of %.3f left, received %s, expires %s",
+                lotId, quantityRemaining, quantityReceived, receivedDate,
+                expirationDate != null ? expirationDate : "N/A");
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (obj == null || getClass() != obj.getClass()) return false;
+        IngredientLot lot = (IngredientLot) obj;
+        return lotId == lot.lotId;
+    }
+
+    @Override
+    public int hashCode() {
+        return Integer.hashCode(lotId);
+    }
+}
@@ -0,0 +1,216 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * IngredientLotIndex class for the in-memory view of open ingredient lots
+ * Each ingredient has a min-heap of its lots in FEFO order, so consumption
+ * always draws from the lot that expires first. A second index keyed by expiry
+ * date answers "which ingredients have expired or soon-expiring stock" by a
+ * range lookup instead of scanning the ingredients table.
+ *
+ * The index is loaded once from IngredientDAO and then changed only after the
+ * DAO has committed the matching lot rows.
+ */
+public class IngredientLotIndex {
+    // Quantities are DECIMAL(10,3); anything below this is treated as zero
+    static final double EPSILON = 1e-6;
+
+    private static IngredientLotIndex instance;
+
+    private final IngredientDAO ingredientDAO;
+    private final Map<Integer, PriorityQueue<IngredientLot>> lotsByIngredient = new HashMap<>();
+    private final TreeMap<LocalDate, Set<IngredientLot>> lotsByExpiry = new TreeMap<>();
+    private boolean loaded;
+
+    public IngredientLotIndex(IngredientDAO ingredientDAO) {
+        this.ingredientDAO = ingredientDAO;
+    }
+
+    // Get the shared index
+    public static synchronized IngredientLotIndex getInstance() {
+        if (instance == null) {
+            instance = new IngredientLotIndex(new IngredientDAO());
+        }
+        return instance;
+    }
+
+    // Load every lot that still has stock
+    public synchronized void reload() {
+        lotsByIngredient.clear();
+        lotsByExpiry.clear();
+        for (IngredientLot lot : ingredientDAO.getOpenLots()) {
+            add(lot);
+        }
+        loaded = true;
+    }
+
+    private void ensureLoaded() {
+        if (!loaded) {
+            reload();
+        }
+    }
+
+    // Record a lot the DAO has just inserted
+    public synchronized void add(IngredientLot lot) {
+        if (lot.isEmpty()) {
+            return;
+        }
+        lotsByIngredient.computeIfAbsent(lot.getIngredientId(),
+                k -> new PriorityQueue<>(IngredientLot.FEFO_ORDER)).add(lot);
+        if (lot.getExpirationDate() != null) {
+            lotsByExpiry.computeIfAbsent(lot.getExpirationDate(), k -> new LinkedHashSet<>()).add(lot);
+        }
+    }
+
+    // Work out which lots a consumption would draw from, without changing anything.
+    // Expired lots are skipped unless includeExpired is set; null if there isn't enough stock.
+    public synchronized List<Draw> planConsumption(int ingredientId, double quantity, LocalDate today,
+                                                   boolean includeExpired) {
+        ensureLoaded();
+        List<Draw> draws = new ArrayList<>();
+        PriorityQueue<IngredientLot> heap = lotsByIngredient.get(ingredientId);
+        if (heap == null) {
+            return quantity <= EPSILON ? draws : null;
+        }
+
+        List<IngredientLot> polled = new ArrayList<>();
+        double needed = quantity;
+        while (needed > EPSILON && !heap.isEmpty()) {
+            IngredientLot lot = heap.poll();
+            polled.add(lot);
+            if (!includeExpired && lot.isExpired(today)) {
+                continue;
+            }
+            double taken = Math.min(needed, lot.getQuantityRemaining());
+            draws.add(new Draw(lot, taken));
+            needed -= taken;
+        }
+        heap.addAll(polled);
+        return needed > EPSILON ? null : draws;
+    }
+
+    // Apply draws the DAO has committed; emptied lots leave the index
+    public synchronized void applyConsumption(List<Draw> draws) {
+        for (Draw draw : draws) {
+            IngredientLot lot = draw.getLot();
+            lot.setQuantityRemaining(lot.getQuantityRemaining() - draw.getQuantity());
+            if (lot.isEmpty()) {
+                remove(lot);
+            }
+        }
+    }
+
+    // Forget an ingredient's lots (after it is deleted)
+    public synchronized void removeIngredient(int ingredientId) {
+        PriorityQueue<IngredientLot> heap = lotsByIngredient.remove(ingredientId);
+        if (heap != null) {
+            for (IngredientLot lot : heap) {
+                removeFromExpiryIndex(lot);
+            }
+        }
+    }
+
+    // Re-read one ingredient's lots, e.g. after a write that failed part-way
+    public synchronized void reloadIngredient(int ingredientId) {
+        if (!loaded) {
+            return;
+        }
+        removeIngredient(ingredientId);
+        for (IngredientLot lot : ingredientDAO.getOpenLots(ingredientId)) {
+            add(lot);
+        }
+    }
+
+    // Open lots of an ingredient in the order they will be used
+    public synchronized List<IngredientLot> getLots(int ingredientId) {
+        ensureLoaded();
+        List<IngredientLot> lots = new ArrayList<>();
+        PriorityQueue<IngredientLot> heap = lotsByIngredient.get(ingredientId);
+        if (heap != null) {
+            lots.addAll(heap);
+            lots.sort(IngredientLot.FEFO_ORDER);
+        }
+        return lots;
+    }
+
+    // Lots past their expiry that still have stock, earliest first
+    public synchronized List<IngredientLot> getExpiredLots(LocalDate today) {
+        ensureLoaded();
+        return collect(lotsByExpiry.headMap(today, false));
+    }
+
+    // Ingredients with stock past its expiry, earliest expiry first
+    public synchronized List<Integer> getIngredientsWithExpiredLots(LocalDate today) {
+        ensureLoaded();
+        return ingredientIds(lotsByExpiry.headMap(today, false));
+    }
+
+    // Ingredients with stock expiring between today and today + days, earliest expiry first
+    public synchronized List<Integer> getIngredientsExpiringWithin(LocalDate today, int days) {
+        ensureLoaded();
+        return ingredientIds(lotsByExpiry.subMap(today, true, today.plusDays(days), true));
+    }
+
+    private static List<IngredientLot> collect(Map<LocalDate, Set<IngredientLot>> range) {
+        List<IngredientLot> lots = new ArrayList<>();
+        for (Set<IngredientLot> sameDay : range.values()) {
+            lots.addAll(sameDay);
+        }
+        return lots;
+    }
+
+    private static List<Integer> ingredientIds(Map<LocalDate, Set<IngredientLot>> range) {
+        Set<Integer> ids = new LinkedHashSet<>();
+        for (Set<IngredientLot> sameDay : range.values()) {
+            for (IngredientLot lot : sameDay) {
+                ids.add(lot.getIngredientId());
+            }
+        }
+        return new ArrayList<>(ids);
+    }
+
+    private void remove(IngredientLot lot) {
+        PriorityQueue<IngredientLot> heap = lotsByIngredient.get(lot.getIngredientId());
+        if (heap != null) {
+            heap.remove(lot);
+            if (heap.isEmpty()) {
+                lotsByIngredient.remove(lot.getIngredientId());
+            }
+        }
+        removeFromExpiryIndex(lot);
+    }
+
+    private void removeFromExpiryIndex(IngredientLot lot) {
+        if (lot.getExpirationDate() == null) {
+            return;
+        }
+        Set<IngredientLot> sameDay = lotsByExpiry.get(lot.getExpirationDate());
+        if (sameDay != null) {
+            sameDay.remove(lot);
+            if (sameDay.isEmpty()) {
+                lotsByExpiry.remove(lot.getExpirationDate());
+            }
+        }
+    }
+
+    // Inner class for the part of one lot a consumption takes
+    public static class Draw {
+        private final IngredientLot lot;
+        private final double quantity;
+
+        Draw(IngredientLot lot, double quantity) {
+            this.lot = lot;
+            this.quantity = quantity;
+        }
+
+        public IngredientLot getLot() { return lot; }
+        public double getQuantity() { return quantity; }
+    }
+}
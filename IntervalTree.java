@@ -0,0 +1,207 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * IntervalTree class for half-open [start, end) intervals over long time values
+ * An AVL tree ordered by (start, id) where every node also keeps the largest end
+ * in its subtree. That lets overlaps() answer in O(log n) and findOverlapping()
+ * in O(log n + k) for k results, since whole subtrees that end too early are skipped.
+ * The id makes entries unique so two intervals with the same start can coexist.
+ */
+public class IntervalTree<V> {
+    private Node<V> root;
+    private int size;
+
+    // Add an interval; ids must be unique within the tree
+    public void insert(long start, long end, long id, V value) {
+        if (end <= start) {
+            throw new IllegalArgumentException("Interval end must be after its start");
+        }
+        root = insert(root, new Node<>(start, end, id, value));
+        size++;
+    }
+
+    // Remove the interval added with this start and id; false if it isn't there
+    public boolean remove(long start, long id) {
+        int before = size;
+        root = remove(root, start, id);
+        return size < before;
+    }
+
+    // Whether any interval overlaps [start, end)
+    public boolean overlaps(long start, long end) {
+        Node<V> node = root;
+        while (node != null) {
+            if (node.start < end && node.end > start) {
+                return true;
+            }
+            // If the left side reaches past start but holds no overlap, every interval
+            // there starts at or after end, and so does everything to the right
+            if (node.left != null && node.left.maxEnd > start) {
+                node = node.left;
+            } else {
+                node = node.right;
+            }
+        }
+        return false;
+    }
+
+    // Values of every interval overlapping [start, end), in start order
+    public List<V> findOverlapping(long start, long end) {
+        List<V> found = new ArrayList<>();
+        collect(root, start, end, found);
+        return found;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private static <V> void collect(Node<V> node, long start, long end, List<V> found) {
+        if (node == null || node.maxEnd <= start) {
+            return;
+        }
+        collect(node.left, start, end, found);
+        if (node.start >= end) {
+            // This node and everything to its right start too late
+            return;
+        }
+        if (node.end > start) {
+            found.add(node.value);
+        }
+        collect(node.right, start, end, found);
+    }
+
+    private static <V> int compare(long start, long id, Node<V> node) {
+        int byStart = Long.compare(start, node.start);
+        return byStart != 0 ? byStart : Long.compare(id, node.id);
+    }
+
+    private Node<V> insert(Node<V> node, Node<V> added) {
+        if (node == null) {
+            return added;
+        }
+        int cmp = compare(added.start, added.id, node);
+        if (cmp == 0) {
+            throw new IllegalArgumentException("Duplicate interval id " + added.id);
+        }
+        if (cmp < 0) {
+            node.left = insert(node.left, added);
+        } else {
+            node.right = insert(node.right, added);
+        }
+        return rebalance(node);
+    }
+
+    private Node<V> remove(Node<V> node, long start, long id) {
+        if (node == null) {
+            return null;
+        }
+        int cmp = compare(start, id, node);
+        if (cmp < 0) {
+            node.left = remove(node.left, start, id);
+        } else if (cmp > 0) {
+            node.right = remove(node.right, start, id);
+        } else {
+            size--;
+            if (node.left == null) {
+                return node.right;
+            }
+            if (node.right == null) {
+                return node.left;
+            }
+            // Replace with the next interval in order, taken out of the right subtree
+            Node<V> successor = node.right;
+            while (successor.left != null) {
+                successor = successor.left;
+            }
+            successor.right = removeMin(node.right);
+            successor.left = node.left;
+            node = successor;
+        }
+        return rebalance(node);
+    }
+
+    private Node<V> removeMin(Node<V> node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        node.left = removeMin(node.left);
+        return rebalance(node);
+    }
+
+    private static <V> int height(Node<V> node) {
+        return node != null ? node.height : 0;
+    }
+
+    private static <V> void update(Node<V> node) {
+        node.height = 1 + Math.max(height(node.left), height(node.right));
+        long maxEnd = node.end;
+        if (node.left != null && node.left.maxEnd > maxEnd) {
+            maxEnd = node.left.maxEnd;
+        }
+        if (node.right != null && node.right.maxEnd > maxEnd) {
+            maxEnd = node.right.maxEnd;
+        }
+        node.maxEnd = maxEnd;
+    }
+
+    private static <V> Node<V> rebalance(Node<V> node) {
+        update(node);
+        int balance = height(node.left) - height(node.right);
+        if (balance > 1) {
+            if (height(node.left.left) < height(node.left.right)) {
+                node.left = rotateLeft(node.left);
+            }
+            return rotateRight(node);
+        }
+        if (balance < -1) {
+            if (height(node.right.right) < height(node.right.left)) {
+                node.right = rotateRight(node.right);
+            }
+            return rotateLeft(node);
+        }
+        return node;
+    }
+
+    private static <V> Node<V> rotateRight(Node<V> node) {
+        Node<V> pivot = node.left;
+        node.left = pivot.right;
+        pivot.right = node;
+        update(node);
+        update(pivot);
+        return pivot;
+    }
+
+    private static <V> Node<V> rotateLeft(Node<V> node) {
+        Node<V> pivot = node.right;
+        node.right = pivot.left;
+        pivot.left = node;
+        update(node);
+        update(pivot);
+        return pivot;
+    }
+
+    private static class Node<V> {
+        private final long start;
+        private final long end;
+        private final long id;
+        private final V value;
+        private long maxEnd;
+        private int height = 1;
+        private Node<V> left;
+        private Node<V> right;
+
+        Node(long start, long end, long id, V value) {
+            this.start = start;
+            this.end = end;
+            this.id = id;
+            this.value = value;
+            this.maxEnd = end;
+        }
+    }
+}
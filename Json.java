@@ -0,0 +1,378 @@
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Json class for the order API's request and response bodies
+ * Writer streams JSON straight to the response so large lists are never built
+ * up as one string; parse() reads small request bodies into Map / List /
+ * String / BigDecimal / Boolean / null. Numbers are kept as BigDecimal so
+ * money amounts convert to cents exactly; numbers beyond 15 digits either side
+ * of the point are rejected as malformed.
+ */
+public class Json {
+    private Json() {
+    }
+
+    // Streaming writer; callers nest beginObject/endObject and beginArray/endArray
+    public static class Writer {
+        private final java.io.Writer out;
+        // One entry per open container: true once it has a member, so the next one needs a comma
+        private final boolean[] hasMember = new boolean[64];
+        private int depth;
+        private boolean afterName;
+
+        public Writer(java.io.Writer out) {
+            this.out = out;
+        }
+
+        public Writer beginObject() throws IOException {
+            beforeValue();
+            out.write('{');
+            open();
+            return this;
+        }
+
+        public Writer endObject() throws IOException {
+            depth--;
+            out.write('}');
+            return this;
+        }
+
+        public Writer beginArray() throws IOException {
+            beforeValue();
+            out.write('[');
+            open();
+            return this;
+        }
+
+        public Writer endArray() throws IOException {
+            depth--;
+            out.write(']');
+            return this;
+        }
+
+        public Writer name(String name) throws IOException {
+            if (hasMember[depth]) {
+                out.write(',');
+            }
+            hasMember[depth] = true;
+            writeString(name);
+            out.write(':');
+            afterName = true;
+            return this;
+        }
+
+        public Writer value(String value) throws IOException {
+            if (value == null) {
+                return nullValue();
+            }
+            beforeValue();
+            writeString(value);
+            return this;
+        }
+
+        public Writer value(long value) throws IOException {
+            beforeValue();
+            out.write(Long.toString(value));
+            return this;
+        }
+
+        public Writer value(double value) throws IOException {
+            beforeValue();
+            out.write(Double.isFinite(value) ? Double.toString(value) : "null");
+            return this;
+        }
+
+        public Writer value(boolean value) throws IOException {
+            beforeValue();
+            out.write(value ? "true" : "false");
+            return this;
+        }
+
+        public Writer value(BigDecimal value) throws IOException {
+            if (value == null) {
+                return nullValue();
+            }
+            beforeValue();
+            out.write(value.toPlainString());
+            return this;
+        }
+
+        // Amount in cents as a decimal number, e.g. 1250 -> 12.50
+        public Writer money(long cents) throws IOException {
+            return value(Money.toBigDecimal(cents));
+        }
+
+        public Writer nullValue() throws IOException {
+            beforeValue();
+            out.write("null");
+            return this;
+        }
+
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        private void open() {
+            depth++;
+            hasMember[depth] = false;
+        }
+
+        // Array elements need commas between them; object values follow their name directly
+        private void beforeValue() throws IOException {
+            if (afterName) {
+                afterName = false;
+                return;
+            }
+            if (depth > 0) {
+                if (hasMember[depth]) {
+                    out.write(',');
+                }
+                hasMember[depth] = true;
+            }
+        }
+
+        private void writeString(String s) throws IOException {
+            out.write('"');
+            int runStart = 0;
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                String escape = null;
+                if (c == '"') {
+                    escape = "\\\"";
+                } else if (c == '\\') {
+                    escape = "\\\\";
+                } else if (c == '\n') {
+                    escape = "\\n";
+                } else if (c == '\r') {
+                    escape = "\\r";
+                } else if (c == '\t') {
+                    escape = "\\t";
+                } else if (c < 0x20) {
+                    escape = String.format("\\u%04x", (int) c);
+                }
+                if (escape != null) {
+                    out.write(s, runStart, i - runStart);
+                    out.write(escape);
+                    runStart = i + 1;
+                }
+            }
+            out.write(s, runStart, s.length() - runStart);
+            out.write('"');
+        }
+    }
+
+    // Parse a JSON document; throws IllegalArgumentException on malformed input
+    public static Object parse(String text) {
+        Parser parser = new Parser(text);
+        parser.skipWhitespace();
+        Object value = parser.readValue(0);
+        parser.skipWhitespace();
+        if (parser.pos != text.length()) {
+            throw parser.error("Unexpected trailing characters");
+        }
+        return value;
+    }
+
+    // Parse a body that must be a JSON object
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> parseObject(String text) {
+        Object value = parse(text);
+        if (!(value instanceof Map)) {
+            throw new IllegalArgumentException("Expected a JSON object");
+        }
+        return (Map<String, Object>) value;
+    }
+
+    private static class Parser {
+        private static final int MAX_DEPTH = 32;
+        // Largest numbers accepted: digits before and after the point (keeps 1e999999999 out of BigDecimal math)
+        private static final int MAX_INTEGER_DIGITS = 15;
+        private static final int MAX_SCALE = 15;
+
+        private final String text;
+        private int pos;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        Object readValue(int depth) {
+            if (depth > MAX_DEPTH) {
+                throw error("Nesting too deep");
+            }
+            if (pos >= text.length()) {
+                throw error("Unexpected end of input");
+            }
+            char c = text.charAt(pos);
+            switch (c) {
+                case '{':
+                    return readObject(depth);
+                case '[':
+                    return readArray(depth);
+                case '"':
+                    return readString();
+                case 't':
+                    expect("true");
+                    return Boolean.TRUE;
+                case 'f':
+                    expect("false");
+                    return Boolean.FALSE;
+                case 'n':
+                    expect("null");
+                    return null;
+                default:
+                    if (c == '-' || (c >= '0' && c <= '9')) {
+                        return readNumber();
+                    }
+                    throw error("Unexpected character '" + c + "'");
+            }
+        }
+
+        private Map<String, Object> readObject(int depth) {
+            Map<String, Object> object = new LinkedHashMap<>();
+            pos++;
+            skipWhitespace();
+            if (peek() == '}') {
+                pos++;
+                return object;
+            }
+            while (true) {
+                skipWhitespace();
+                if (peek() != '"') {
+                    throw error("Expected a member name");
+                }
+                String name = readString();
+                skipWhitespace();
+                if (peek() != ':') {
+                    throw error("Expected ':'");
+                }
+                pos++;
+                skipWhitespace();
+                object.put(name, readValue(depth + 1));
+                skipWhitespace();
+                char c = peek();
+                pos++;
+                if (c == '}') {
+                    return object;
+                }
+                if (c != ',') {
+                    throw error("Expected ',' or '}'");
+                }
+            }
+        }
+
+        private List<Object> readArray(int depth) {
+            List<Object> array = new ArrayList<>();
+            pos++;
+            skipWhitespace();
+            if (peek() == ']') {
+                pos++;
+                return array;
+            }
+            while (true) {
+                skipWhitespace();
+                array.add(readValue(depth + 1));
+                skipWhitespace();
+                char c = peek();
+                pos++;
+                if (c == ']') {
+                    return array;
+                }
+                if (c != ',') {
+                    throw error("Expected ',' or ']'");
+                }
+            }
+        }
+
+        private String readString() {
+            StringBuilder sb = new StringBuilder();
+            pos++;
+            while (true) {
+                if (pos >= text.length()) {
+                    throw error("Unterminated string");
+                }
+                char c = text.charAt(pos++);
+                if (c == '"') {
+                    return sb.toString();
+                }
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                if (pos >= text.length()) {
+                    throw error("Unterminated escape");
+                }
+                char escaped = text.charAt(pos++);
+                switch (escaped) {
+                    case '"': sb.append('"'); break;
+                    case '\\': sb.append('\\'); break;
+                    case '/': sb.append('/'); break;
+                    case 'b': sb.append('\b'); break;
+                    case 'f': sb.append('\f'); break;
+                    case 'n': sb.append('\n'); break;
+                    case 'r': sb.append('\r'); break;
+                    case 't': sb.append('\t'); break;
+                    case 'u':
+                        if (pos + 4 > text.length()) {
+                            throw error("Bad unicode escape");
+                        }
+                        try {
+                            sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw error("Bad unicode escape");
+                        }
+                        pos += 4;
+                        break;
+                    default:
+                        throw error("Bad escape '\\" + escaped + "'");
+                }
+            }
+        }
+
+        private BigDecimal readNumber() {
+            int start = pos;
+            while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0) {
+                pos++;
+            }
+            BigDecimal number;
+            try {
+                number = new BigDecimal(text.substring(start, pos));
+            } catch (NumberFormatException e) {
+                throw error("Bad number");
+            }
+            if (number.scale() > MAX_SCALE || number.precision() - number.scale() > MAX_INTEGER_DIGITS) {
+                throw error("Number out of range");
+            }
+            return number;
+        }
+
+        private void expect(String literal) {
+            if (!text.startsWith(literal, pos)) {
+                throw error("Expected " + literal);
+            }
+            pos += literal.length();
+        }
+
+        private char peek() {
+            if (pos >= text.length()) {
+                throw error("Unexpected end of input");
+            }
+            return text.charAt(pos);
+        }
+
+        void skipWhitespace() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + pos);
+        }
+    }
+}
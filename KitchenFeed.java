@@ -0,0 +1,388 @@
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * KitchenFeed class for pushing live order events to kitchen displays
+ * Served by OrderApiServer as Server-Sent Events at GET /api/kitchen/feed.
+ *
+ * Order events come from OrderEventJournal (OrderDAO journals every created order
+ * and status change). Each event is read and encoded to an SSE frame exactly once,
+ * on the feed's own thread, and stored in one shared ring of frames. Orders are
+ * read on a connection of the feed's own: OrderDAO journals after it commits, so
+ * that connection sees the finished order and never another thread's open
+ * transaction. Every display keeps only a cursor into that ring, so the frames
+ * between its cursor and the head are its queue; that queue is bounded by
+ * coffeeshop.kitchenFeedMaxLag.
+ * A display that falls further behind (stalled screen, dead socket) is evicted
+ * and its connection closed; EventSource reconnects with Last-Event-ID and either
+ * resumes from the ring or gets a fresh snapshot. If events arrive faster than
+ * the feed can encode them, the overflow is dropped and one snapshot frame is
+ * pushed to every display once the backlog clears.
+ *
+ * Events:
+ *   snapshot  {"orders":[...]}       active orders, sent on connect when not resuming
+ *                                    and after dropped events
+ *   order     {"sequence", "type", "orderId", "status", "time", ...}
+ * plus a ": ping" comment every coffeeshop.kitchenFeedHeartbeatSeconds.
+ */
+public class KitchenFeed {
+    private static final Order.OrderStatus[] ACTIVE_STATUSES = {
+        Order.OrderStatus.PENDING, Order.OrderStatus.CONFIRMED,
+        Order.OrderStatus.PREPARING, Order.OrderStatus.READY
+    };
+    private static final byte[] PING = ": ping\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private static KitchenFeed instance;
+
+    private final OrderDAO orderDAO;
+    private final int maxLag;
+    private final int maxClients;
+    private final long heartbeatMillis;
+    // Shared fan-out buffer: frame n lives at n % capacity until overwritten
+    private final byte[][] frames;
+    private final long[] frameSequences;
+    private final List<Client> clients = new ArrayList<>();
+    private final FeedStats stats = new FeedStats();
+    private final OrderEventJournal.EventHandler journalHandler = this::onJournalEvent;
+    private final AtomicBoolean resyncNeeded = new AtomicBoolean();
+    private long head;
+    private boolean running;
+    private ThreadPoolExecutor encoder;
+    private ExecutorService clientExecutor;
+
+    public KitchenFeed(OrderDAO orderDAO) {
+        this.orderDAO = orderDAO;
+        int capacity = Math.max(16, Integer.getInteger("coffeeshop.kitchenFeedBuffer", 1024));
+        this.maxLag = Math.min(capacity, Math.max(1, Integer.getInteger("coffeeshop.kitchenFeedMaxLag", 256)));
+        this.maxClients = Integer.getInteger("coffeeshop.kitchenFeedMaxClients", 64);
+        this.heartbeatMillis = Long.getLong("coffeeshop.kitchenFeedHeartbeatSeconds", 15) * 1000;
+        this.frames = new byte[capacity][];
+        this.frameSequences = new long[capacity];
+    }
+
+    // Get the shared feed, reading orders on its own connection to this register's database
+    public static synchronized KitchenFeed getInstance() {
+        if (instance == null) {
+            DatabaseConnection feedConnection = new DatabaseConnection(DatabaseConnection.getInstance().getDatabaseName());
+            instance = new KitchenFeed(new OrderDAO(feedConnection));
+        }
+        return instance;
+    }
+
+    // Start following the event journal
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        OrderEventJournal journal = OrderEventJournal.getInstance();
+        if (journal == null) {
+            System.err.println("Kitchen feed unavailable: event journal could not be opened");
+            return;
+        }
+        encoder = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(frames.length), runnable -> {
+                    Thread thread = new Thread(runnable, "kitchen-feed");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        clientExecutor = OrderApiServer.newPerTaskExecutor("kitchen-feed-client", maxClients);
+        running = true;
+        journal.subscribe(journalHandler);
+    }
+
+    // Stop following the journal and disconnect every display
+    public void stop() {
+        List<Client> disconnected;
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            OrderEventJournal journal = OrderEventJournal.getInstance();
+            if (journal != null) {
+                journal.unsubscribe(journalHandler);
+            }
+            disconnected = new ArrayList<>(clients);
+            for (Client client : disconnected) {
+                client.evicted = true;
+            }
+            clients.clear();
+            notifyAll();
+        }
+        for (Client client : disconnected) {
+            client.exchange.close();
+        }
+        encoder.shutdown();
+        clientExecutor.shutdown();
+    }
+
+    // Journal callback on the writing thread: hand off so the DAO caller isn't held up
+    private void onJournalEvent(OrderEventJournal.JournalEvent event) {
+        if (event.getType().isPaymentEvent()) {
+            return;
+        }
+        try {
+            encoder.execute(() -> {
+                publish(event.getSequence(), encode(event));
+                // The backlog was full when the flag was set, so a queued task always gets here afterwards
+                if (resyncNeeded.getAndSet(false)) {
+                    publishSnapshot(event.getSequence());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            stats.dropped.increment();
+            if (resyncNeeded.compareAndSet(false, true)) {
+                System.err.println("Kitchen feed backlog full; dropping events until displays are resynced");
+            }
+        }
+    }
+
+    // Push the active orders to every display in place of events that were dropped
+    private void publishSnapshot(long sequence) {
+        try {
+            publish(sequence, encodeSnapshot(sequence));
+        } catch (IOException e) {
+            System.err.println("Error encoding kitchen snapshot: " + e.getMessage());
+        }
+    }
+
+    // Add a frame to the ring and evict displays that have fallen too far behind
+    private void publish(long sequence, byte[] frame) {
+        List<Client> evicted = new ArrayList<>();
+        synchronized (this) {
+            int slot = (int) (head % frames.length);
+            frames[slot] = frame;
+            frameSequences[slot] = sequence;
+            head++;
+            for (Client client : clients) {
+                if (head - client.cursor > maxLag) {
+                    client.evicted = true;
+                    evicted.add(client);
+                }
+            }
+            clients.removeAll(evicted);
+            notifyAll();
+        }
+        stats.published.increment();
+        for (Client client : evicted) {
+            stats.evicted.increment();
+            // Closing the exchange also unblocks a display stuck in a socket write
+            client.exchange.close();
+        }
+    }
+
+    // Take over an SSE request; the display is then served on its own thread until it disconnects.
+    // Returns false (nothing sent) when the feed is stopped or full.
+    public boolean attach(HttpExchange exchange) throws IOException {
+        long lastEventId = -1;
+        String lastEventHeader = exchange.getRequestHeaders().getFirst("Last-Event-ID");
+        if (lastEventHeader != null) {
+            try {
+                lastEventId = Long.parseLong(lastEventHeader.trim());
+            } catch (NumberFormatException e) {
+                // Treat as a fresh connection
+            }
+        }
+
+        Client client = new Client(exchange);
+        boolean resumed;
+        synchronized (this) {
+            if (!running || clients.size() >= maxClients) {
+                return false;
+            }
+            client.cursor = resumePosition(lastEventId);
+            resumed = client.cursor >= 0 && head - client.cursor <= maxLag;
+            if (!resumed) {
+                client.cursor = head;
+            }
+            clients.add(client);
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+        try {
+            clientExecutor.execute(() -> serve(client, !resumed));
+        } catch (RejectedExecutionException e) {
+            disconnect(client);
+        }
+        return true;
+    }
+
+    // Ring position just after the given journal sequence, or -1 if it has been overwritten
+    private long resumePosition(long lastEventId) {
+        if (lastEventId < 0) {
+            return -1;
+        }
+        long oldest = Math.max(0, head - frames.length);
+        for (long position = head - 1; position >= oldest; position--) {
+            long sequence = frameSequences[(int) (position % frames.length)];
+            if (sequence == lastEventId) {
+                return position + 1;
+            }
+            if (sequence < lastEventId) {
+                break;
+            }
+        }
+        return -1;
+    }
+
+    // Writer loop for one display
+    private void serve(Client client, boolean sendSnapshot) {
+        stats.connected.increment();
+        try (OutputStream out = client.exchange.getResponseBody()) {
+            if (sendSnapshot) {
+                out.write(encodeSnapshot(-1));
+                out.flush();
+            }
+            List<byte[]> batch = new ArrayList<>();
+            while (true) {
+                synchronized (this) {
+                    if (!client.evicted && client.cursor == head) {
+                        wait(heartbeatMillis);
+                    }
+                    if (client.evicted) {
+                        break;
+                    }
+                    // Claim the pending frames; writing happens outside the lock
+                    for (long position = client.cursor; position < head; position++) {
+                        batch.add(frames[(int) (position % frames.length)]);
+                    }
+                    client.cursor = head;
+                }
+                if (batch.isEmpty()) {
+                    out.write(PING);
+                } else {
+                    for (byte[] frame : batch) {
+                        out.write(frame);
+                    }
+                    batch.clear();
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            // Display disconnected or was evicted mid-write
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            disconnect(client);
+        }
+    }
+
+    private void disconnect(Client client) {
+        synchronized (this) {
+            client.evicted = true;
+            clients.remove(client);
+        }
+        client.exchange.close();
+    }
+
+    // Encode one journal event as an SSE frame; created orders carry their lines for the ticket
+    private byte[] encode(OrderEventJournal.JournalEvent event) {
+        StringWriter body = new StringWriter();
+        Json.Writer json = new Json.Writer(body);
+        try {
+            Order.OrderStatus status = OrderEventJournal.orderStatusOf(event.getStatus());
+            json.beginObject()
+                .name("sequence").value(event.getSequence())
+                .name("type").value(event.getType().toString())
+                .name("orderId").value(event.getEntityId())
+                .name("status").value(status != null ? status.toString() : null)
+                .name("time").value(Instant.ofEpochMilli(event.getTimestamp()).toString());
+            if (event.getType() == OrderEventJournal.EventType.ORDER_CREATED) {
+                Order order = orderDAO.getOrderById(event.getEntityId());
+                if (order != null) {
+                    writeTicket(json, order);
+                }
+            }
+            json.endObject();
+        } catch (IOException e) {
+            // StringWriter does not throw
+        }
+        return ("id: " + event.getSequence() + "\nevent: order\ndata: " + body + "\n\n")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Active orders as a snapshot frame; a sequence >= 0 becomes its event id
+    private byte[] encodeSnapshot(long sequence) throws IOException {
+        StringWriter body = new StringWriter();
+        Json.Writer json = new Json.Writer(body);
+        json.beginObject().name("orders").beginArray();
+        for (Order.OrderStatus status : ACTIVE_STATUSES) {
+            for (Order order : orderDAO.getOrdersByStatus(status)) {
+                json.beginObject()
+                    .name("orderId").value(order.getOrderId())
+                    .name("status").value(order.getStatus().toString());
+                writeTicket(json, order);
+                json.endObject();
+            }
+        }
+        json.endArray().endObject();
+        String id = sequence >= 0 ? "id: " + sequence + "\n" : "";
+        return (id + "event: snapshot\ndata: " + body + "\n\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    // The fields a kitchen ticket needs, written into the current object
+    private static void writeTicket(Json.Writer json, Order order) throws IOException {
+        json.name("serviceType").value(order.getServiceType().toString());
+        if (order.getTableNumber() > 0) {
+            json.name("tableNumber").value(order.getTableNumber());
+        }
+        json.name("specialInstructions").value(order.getSpecialInstructions())
+            .name("items").beginArray();
+        for (OrderItem item : order.getOrderItems()) {
+            json.beginObject()
+                .name("name").value(item.getMenuItem().getName())
+                .name("quantity").value(item.getQuantity())
+                .name("customizations").value(item.getCustomizations())
+                .endObject();
+        }
+        json.endArray();
+    }
+
+    public synchronized int getClientCount() {
+        return clients.size();
+    }
+
+    public FeedStats getStats() {
+        return stats;
+    }
+
+    // One connected display: its position in the shared ring
+    private static class Client {
+        private final HttpExchange exchange;
+        private long cursor;
+        private boolean evicted;
+
+        Client(HttpExchange exchange) {
+            this.exchange = exchange;
+        }
+    }
+
+    // Inner class for feed counters
+    public static class FeedStats {
+        private final LongAdder published = new LongAdder();
+        private final LongAdder connected = new LongAdder();
+        private final LongAdder evicted = new LongAdder();
+        private final LongAdder dropped = new LongAdder();
+
+        public long getPublished() { return published.sum(); }
+        public long getConnected() { return connected.sum(); }
+        public long getEvicted() { return evicted.sum(); }
+        public long getDropped() { return dropped.sum(); }
+    }
+}
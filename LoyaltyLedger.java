@@ -0,0 +1,582 @@
+import java.math.BigDecimal;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * LoyaltyLedger class for customer loyalty points
+ * Every change is appended to loyalty_ledger and applied to customers.loyalty_points
+ * in the same transaction. Redemptions are a single conditional UPDATE, so two
+ * terminals can never spend the same points. Accruals are buffered in memory,
+ * striped by customer, and written in batches by a background flusher, so
+ * checkout does not wait on an extra database write.
+ *
+ * Ledger transactions run on the ledger's own connection to the same database
+ * file, so the flusher thread never commits or rolls back a transaction another
+ * DAO has open on the shared connection; SQLite's busy timeout queues the writers.
+ *
+ * A batch being flushed stays visible as in-flight until its commit is applied to
+ * the cached balances, so reads never miss it or count it twice.
+ *
+ * Points are held in hundredths (like money in cents) so balances add up exactly.
+ */
+public class LoyaltyLedger {
+    public static final String REASON_ACCRUAL = "ACCRUAL";
+    public static final String REASON_REDEMPTION = "REDEMPTION";
+    public static final String REASON_ADJUSTMENT = "ADJUSTMENT";
+
+    private static final int STRIPE_COUNT = 16;
+    private static final int HOT_CUSTOMERS_PER_STRIPE = 64;
+    private static final int FLUSH_THRESHOLD = Integer.getInteger("coffeeshop.loyaltyBatchSize", 50);
+    private static final long FLUSH_INTERVAL_MILLIS = 1000;
+
+    private static LoyaltyLedger instance;
+
+    private final DatabaseConnection dbConnection;
+    private final Stripe[] stripes = new Stripe[STRIPE_COUNT];
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    // Guards the ledger connection; ledger transactions run one at a time
+    private final Object writeLock = new Object();
+    // One flush at a time; taken before any stripe lock
+    private final Object flushLock = new Object();
+    // Set under writeLock once the in-flight batch is committed, cleared once it is applied
+    private volatile boolean inFlightCommitted;
+    private DatabaseConnection ledgerConnection;
+    private ScheduledExecutorService flusher;
+
+    public LoyaltyLedger(DatabaseConnection dbConnection) {
+        this.dbConnection = dbConnection;
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    // Get the shared ledger
+    public static synchronized LoyaltyLedger getInstance() {
+        if (instance == null) {
+            instance = new LoyaltyLedger(DatabaseConnection.getInstance());
+        }
+        return instance;
+    }
+
+    public static long toHundredths(double points) {
+        return Math.round(points * 100);
+    }
+
+    public static double toPoints(long hundredths) {
+        return hundredths / 100.0;
+    }
+
+    // Record earned points; buffered and written by the next batch
+    public void accrue(int customerId, long hundredths, int orderId) {
+        if (customerId <= 0 || hundredths <= 0) {
+            return;
+        }
+
+        Stripe stripe = stripeFor(customerId);
+        synchronized (stripe) {
+            stripe.pending.add(new Entry(customerId, hundredths, REASON_ACCRUAL, orderId));
+            stripe.pendingByCustomer.merge(customerId, hundredths, Long::sum);
+        }
+
+        if (pendingCount.incrementAndGet() >= FLUSH_THRESHOLD) {
+            requestFlush();
+        } else {
+            startFlusher();
+        }
+    }
+
+    // Spend points only if the balance covers them; false when it does not
+    public boolean redeem(int customerId, long hundredths, int orderId) {
+        if (customerId <= 0 || hundredths <= 0) {
+            return false;
+        }
+
+        Stripe stripe = stripeFor(customerId);
+        synchronized (stripe) {
+            // Buffered accruals count toward the balance, so write them first
+            List<Entry> entries = takePending(stripe, customerId);
+
+            synchronized (writeLock) {
+                Connection conn = ledgerConnection();
+                try {
+                    conn.setAutoCommit(false);
+                    writeEntries(conn, entries);
+
+                    String debit = "UPDATE customers SET loyalty_points = ROUND(loyalty_points - ?, 2), " +
+                                   "updated_at = CURRENT_TIMESTAMP " +
+                                   "WHERE customer_id = ? AND CAST(ROUND(loyalty_points * 100) AS INTEGER) >= ?";
+                    boolean debited;
+                    try (PreparedStatement pstmt = conn.prepareStatement(debit)) {
+                        pstmt.setBigDecimal(1, BigDecimal.valueOf(hundredths, 2));
+                        pstmt.setInt(2, customerId);
+                        pstmt.setLong(3, hundredths);
+                        debited = pstmt.executeUpdate() > 0;
+                    }
+
+                    if (debited) {
+                        insertEntry(conn, new Entry(customerId, -hundredths, REASON_REDEMPTION, orderId));
+                    }
+                    conn.commit();
+
+                    applyCommitted(entries);
+                    if (debited) {
+                        adjustCommitted(stripe, customerId, -hundredths);
+                    }
+                    return debited;
+
+                } catch (SQLException e) {
+                    rollback(conn);
+                    restorePending(stripe, entries);
+                    System.err.println("Error redeeming loyalty points: " + e.getMessage());
+                    return false;
+                } finally {
+                    resetAutoCommit(conn);
+                }
+            }
+        }
+    }
+
+    // Set a balance outright (manual correction); recorded as an adjustment entry
+    public boolean setBalance(int customerId, long hundredths) {
+        Stripe stripe = stripeFor(customerId);
+        synchronized (stripe) {
+            List<Entry> entries = takePending(stripe, customerId);
+
+            synchronized (writeLock) {
+                Connection conn = ledgerConnection();
+                try {
+                    conn.setAutoCommit(false);
+                    writeEntries(conn, entries);
+
+                    String record = "INSERT INTO loyalty_ledger (customer_id, delta_hundredths, reason) " +
+                                    "SELECT customer_id, ? - CAST(ROUND(loyalty_points * 100) AS INTEGER), ? " +
+                                    "FROM customers WHERE customer_id = ?";
+                    try (PreparedStatement pstmt = conn.prepareStatement(record)) {
+                        pstmt.setLong(1, hundredths);
+                        pstmt.setString(2, REASON_ADJUSTMENT);
+                        pstmt.setInt(3, customerId);
+                        if (pstmt.executeUpdate() == 0) {
+                            conn.rollback();
+                            restorePending(stripe, entries);
+                            return false;
+                        }
+                    }
+
+                    String update = "UPDATE customers SET loyalty_points = ?, updated_at = CURRENT_TIMESTAMP " +
+                                    "WHERE customer_id = ?";
+                    try (PreparedStatement pstmt = conn.prepareStatement(update)) {
+                        pstmt.setBigDecimal(1, BigDecimal.valueOf(hundredths, 2));
+                        pstmt.setInt(2, customerId);
+                        pstmt.executeUpdate();
+                    }
+                    conn.commit();
+
+                    cacheBalance(stripe, customerId, hundredths);
+                    return true;
+
+                } catch (SQLException e) {
+                    rollback(conn);
+                    restorePending(stripe, entries);
+                    System.err.println("Error setting loyalty points: " + e.getMessage());
+                    return false;
+                } finally {
+                    resetAutoCommit(conn);
+                }
+            }
+        }
+    }
+
+    // Current balance including accruals not yet written
+    public long getBalanceHundredths(int customerId) {
+        Stripe stripe = stripeFor(customerId);
+        synchronized (stripe) {
+            Long committed = stripe.committed.get(customerId);
+            if (committed == null) {
+                committed = loadBalance(stripe, customerId);
+                if (committed == null) {
+                    return 0;
+                }
+            }
+            return committed + stripe.pendingByCustomer.getOrDefault(customerId, 0L)
+                   + stripe.inFlightByCustomer.getOrDefault(customerId, 0L);
+        }
+    }
+
+    // Accruals for a customer that are still buffered or being flushed
+    public long getPendingHundredths(int customerId) {
+        Stripe stripe = stripeFor(customerId);
+        synchronized (stripe) {
+            return stripe.pendingByCustomer.getOrDefault(customerId, 0L)
+                   + stripe.inFlightByCustomer.getOrDefault(customerId, 0L);
+        }
+    }
+
+    // Drop the cached balance so the next read goes to the database
+    public void invalidate(int customerId) {
+        Stripe stripe = stripeFor(customerId);
+        synchronized (stripe) {
+            stripe.committed.remove(customerId);
+        }
+    }
+
+    // Ledger entries for a customer, newest first
+    public List<LedgerEntry> getHistory(int customerId, int limit) {
+        List<LedgerEntry> history = new ArrayList<>();
+        String query = "SELECT entry_id, delta_hundredths, reason, order_id, created_at FROM loyalty_ledger " +
+                       "WHERE customer_id = ? ORDER BY entry_id DESC LIMIT ?";
+
+        synchronized (writeLock) {
+            try (PreparedStatement pstmt = ledgerConnection().prepareStatement(query)) {
+                pstmt.setInt(1, customerId);
+                pstmt.setInt(2, limit);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        history.add(new LedgerEntry(
+                            rs.getInt("entry_id"),
+                            customerId,
+                            rs.getLong("delta_hundredths"),
+                            rs.getString("reason"),
+                            rs.getInt("order_id"),
+                            rs.getString("created_at")
+                        ));
+                    }
+                }
+            } catch (SQLException e) {
+                System.err.println("Error getting loyalty history: " + e.getMessage());
+            }
+        }
+
+        return history;
+    }
+
+    // Write every buffered accrual in one transaction; returns the number written
+    public int flush() {
+        synchronized (flushLock) {
+            // Buffered accruals become in-flight: still counted by reads, no longer taken by redeem
+            List<Entry> entries = new ArrayList<>();
+            for (Stripe stripe : stripes) {
+                synchronized (stripe) {
+                    entries.addAll(stripe.pending);
+                    for (Map.Entry<Integer, Long> pending : stripe.pendingByCustomer.entrySet()) {
+                        stripe.inFlightByCustomer.merge(pending.getKey(), pending.getValue(), Long::sum);
+                    }
+                    stripe.pending.clear();
+                    stripe.pendingByCustomer.clear();
+                }
+            }
+            if (entries.isEmpty()) {
+                return 0;
+            }
+            pendingCount.addAndGet(-entries.size());
+
+            // Stripe locks are taken only after the write lock is released (redeem takes them the other way round)
+            boolean written;
+            synchronized (writeLock) {
+                Connection conn = ledgerConnection();
+                try {
+                    conn.setAutoCommit(false);
+                    writeEntries(conn, entries);
+                    conn.commit();
+                    written = true;
+                    inFlightCommitted = true;
+                } catch (SQLException e) {
+                    rollback(conn);
+                    System.err.println("Error writing loyalty accruals: " + e.getMessage());
+                    written = false;
+                } finally {
+                    resetAutoCommit(conn);
+                }
+            }
+
+            // Move each entry out of in-flight under its stripe lock, into the cached balance or back to pending
+            for (Entry entry : entries) {
+                Stripe stripe = stripeFor(entry.customerId);
+                synchronized (stripe) {
+                    stripe.inFlightByCustomer.merge(entry.customerId, -entry.deltaHundredths,
+                                                    (a, b) -> a + b == 0 ? null : a + b);
+                    if (written) {
+                        adjustCommitted(stripe, entry.customerId, entry.deltaHundredths);
+                    } else {
+                        restorePending(stripe, Collections.singletonList(entry));
+                    }
+                }
+            }
+            inFlightCommitted = false;
+            return written ? entries.size() : 0;
+        }
+    }
+
+    // Stop the background flusher and write what is left
+    public void close() {
+        synchronized (this) {
+            if (flusher != null) {
+                flusher.shutdown();
+                try {
+                    flusher.awaitTermination(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                flusher = null;
+            }
+        }
+        flush();
+        synchronized (writeLock) {
+            if (ledgerConnection != null) {
+                ledgerConnection.closeConnection();
+                ledgerConnection = null;
+            }
+        }
+    }
+
+    // The ledger's own connection, opened on first use (caller holds writeLock)
+    private Connection ledgerConnection() {
+        if (ledgerConnection == null) {
+            ledgerConnection = new DatabaseConnection(dbConnection.getDatabaseName());
+        }
+        return ledgerConnection.getConnection();
+    }
+
+    private synchronized void startFlusher() {
+        if (flusher != null) {
+            return;
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "loyalty-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushSafely, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    // Flush now on the background thread instead of waiting for the next tick
+    private synchronized void requestFlush() {
+        startFlusher();
+        flusher.execute(this::flushSafely);
+    }
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            System.err.println("Loyalty flush failed: " + e.getMessage());
+        }
+    }
+
+    // Append entries and apply their per-customer totals to customers.loyalty_points
+    private void writeEntries(Connection conn, List<Entry> entries) throws SQLException {
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        String insert = "INSERT INTO loyalty_ledger (customer_id, delta_hundredths, reason, order_id) VALUES (?, ?, ?, ?)";
+        try (PreparedStatement pstmt = conn.prepareStatement(insert)) {
+            for (Entry entry : entries) {
+                bindEntry(pstmt, entry);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+
+        Map<Integer, Long> totals = new LinkedHashMap<>();
+        for (Entry entry : entries) {
+            totals.merge(entry.customerId, entry.deltaHundredths, Long::sum);
+        }
+
+        String update = "UPDATE customers SET loyalty_points = ROUND(loyalty_points + ?, 2), " +
+                        "updated_at = CURRENT_TIMESTAMP WHERE customer_id = ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(update)) {
+            for (Map.Entry<Integer, Long> total : totals.entrySet()) {
+                pstmt.setBigDecimal(1, BigDecimal.valueOf(total.getValue(), 2));
+                pstmt.setInt(2, total.getKey());
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    private void insertEntry(Connection conn, Entry entry) throws SQLException {
+        String insert = "INSERT INTO loyalty_ledger (customer_id, delta_hundredths, reason, order_id) VALUES (?, ?, ?, ?)";
+        try (PreparedStatement pstmt = conn.prepareStatement(insert)) {
+            bindEntry(pstmt, entry);
+            pstmt.executeUpdate();
+        }
+    }
+
+    private static void bindEntry(PreparedStatement pstmt, Entry entry) throws SQLException {
+        pstmt.setInt(1, entry.customerId);
+        pstmt.setLong(2, entry.deltaHundredths);
+        pstmt.setString(3, entry.reason);
+        if (entry.orderId > 0) {
+            pstmt.setInt(4, entry.orderId);
+        } else {
+            pstmt.setNull(4, Types.INTEGER);
+        }
+    }
+
+    // Load and cache the balance stored in customers.loyalty_points, or null if the customer
+    // does not exist (caller holds the stripe lock)
+    private Long loadBalance(Stripe stripe, int customerId) {
+        String query = "SELECT CAST(ROUND(loyalty_points * 100) AS INTEGER) AS balance FROM customers WHERE customer_id = ?";
+
+        synchronized (writeLock) {
+            try (PreparedStatement pstmt = ledgerConnection().prepareStatement(query)) {
+                pstmt.setInt(1, customerId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) {
+                        return cacheBalance(stripe, customerId, rs.getLong("balance"));
+                    }
+                }
+            } catch (SQLException e) {
+                System.err.println("Error reading loyalty balance: " + e.getMessage());
+            }
+        }
+
+        return null;
+    }
+
+    // Cache a balance just read or written in the database (caller holds the stripe lock and writeLock).
+    // Once the in-flight batch is committed the database already holds it, but the flush will still add
+    // it to the cache, so it is taken off here.
+    private Long cacheBalance(Stripe stripe, int customerId, long databaseHundredths) {
+        long committed = databaseHundredths;
+        if (inFlightCommitted) {
+            committed -= stripe.inFlightByCustomer.getOrDefault(customerId, 0L);
+        }
+        stripe.committed.put(customerId, committed);
+        return committed;
+    }
+
+    // Remove one customer's buffered accruals from its stripe (caller holds the stripe lock)
+    private List<Entry> takePending(Stripe stripe, int customerId) {
+        List<Entry> taken = new ArrayList<>();
+        if (stripe.pendingByCustomer.remove(customerId) == null) {
+            return taken;
+        }
+        stripe.pending.removeIf(entry -> {
+            if (entry.customerId == customerId) {
+                taken.add(entry);
+                return true;
+            }
+            return false;
+        });
+        pendingCount.addAndGet(-taken.size());
+        return taken;
+    }
+
+    private void restorePending(Stripe stripe, List<Entry> entries) {
+        for (Entry entry : entries) {
+            stripe.pending.add(entry);
+            stripe.pendingByCustomer.merge(entry.customerId, entry.deltaHundredths, Long::sum);
+        }
+        pendingCount.addAndGet(entries.size());
+    }
+
+    // Move written entries into the cached balances of hot customers
+    private void applyCommitted(List<Entry> entries) {
+        for (Entry entry : entries) {
+            Stripe stripe = stripeFor(entry.customerId);
+            synchronized (stripe) {
+                adjustCommitted(stripe, entry.customerId, entry.deltaHundredths);
+            }
+        }
+    }
+
+    private static void adjustCommitted(Stripe stripe, int customerId, long deltaHundredths) {
+        Long committed = stripe.committed.get(customerId);
+        if (committed != null) {
+            stripe.committed.put(customerId, committed + deltaHundredths);
+        }
+    }
+
+    private Stripe stripeFor(int customerId) {
+        return stripes[(customerId & 0x7fffffff) % STRIPE_COUNT];
+    }
+
+    private static void rollback(Connection conn) {
+        try {
+            conn.rollback();
+        } catch (SQLException rollbackEx) {
+            System.err.println("Error rolling back transaction: " + rollbackEx.getMessage());
+        }
+    }
+
+    private static void resetAutoCommit(Connection conn) {
+        try {
+            conn.setAutoCommit(true);
+        } catch (SQLException e) {
+            System.err.println("Error resetting auto-commit: " + e.getMessage());
+        }
+    }
+
+    // One lock's worth of customers: cached balances and buffered accruals
+    private static class Stripe {
+        // Last balance known to be in the database, for recently used customers
+        final Map<Integer, Long> committed = new LinkedHashMap<Integer, Long>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Long> eldest) {
+                return size() > HOT_CUSTOMERS_PER_STRIPE;
+            }
+        };
+        final List<Entry> pending = new ArrayList<>();
+        final Map<Integer, Long> pendingByCustomer = new HashMap<>();
+        // Accruals of the batch being flushed, until the flush applies or restores them
+        final Map<Integer, Long> inFlightByCustomer = new HashMap<>();
+    }
+
+    // Ledger entry waiting to be written
+    private static class Entry {
+        final int customerId;
+        final long deltaHundredths;
+        final String reason;
+        final int orderId;
+
+        Entry(int customerId, long deltaHundredths, String reason, int orderId) {
+            this.customerId = customerId;
+            this.deltaHundredths = deltaHundredths;
+            this.reason = reason;
+            this.orderId = orderId;
+        }
+    }
+
+    // Inner class for ledger history rows
+    public static class LedgerEntry {
+        private final int entryId;
+        private final int customerId;
+        private final long deltaHundredths;
+        private final String reason;
+        private final int orderId;
+        private final String createdAt;
+
+        public LedgerEntry(int entryId, int customerId, long deltaHundredths, String reason, int orderId, String createdAt) {
+            this.entryId = entryId;
+            this.customerId = customerId;
+            this.deltaHundredths = deltaHundredths;
+            this.reason = reason;
+            this.orderId = orderId;
+            this.createdAt = createdAt;
+        }
+
+        public int getEntryId() { return entryId; }
+        public int getCustomerId() { return customerId; }
+        public long getDeltaHundredths() { return deltaHundredths; }
+        public double getPoints() { return toPoints(deltaHundredths); }
+        public String getReason() { return reason; }
+        public int getOrderId() { return orderId; }
+        public String getCreatedAt() { return createdAt; }
+
+        @Override
+        public String toString() {
+            return String.format("%s %+.2f%s (%s)", reason, getPoints(),
+                                 orderId > 0 ? " order #" + orderId : "", createdAt);
+        }
+    }
+}
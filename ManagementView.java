@@ -1,4 +1,5 @@
 import java.util.*;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 
@@ -10,15 +11,60 @@ public class ManagementView {
     private TableDAO tableDAO;
     private PaymentDAO paymentDAO;
     private IngredientDAO ingredientDAO;
+    private SearchService searchService;
     
+    // DAOs are created on first use so opening the view doesn't touch the database
     public ManagementView() {
         this.scanner = new Scanner(System.in);
-        this.menuItemDAO = new MenuItemDAO();
-        this.customerDAO = new CustomerDAO();
-        this.orderDAO = new OrderDAO();
-        this.tableDAO = new TableDAO();
-        this.paymentDAO = new PaymentDAO();
-        this.ingredientDAO = new IngredientDAO();
+    }
+    
+    private MenuItemDAO menuItemDAO() {
+        if (menuItemDAO == null) {
+            menuItemDAO = new MenuItemDAO();
+        }
+        return menuItemDAO;
+    }
+    
+    private CustomerDAO customerDAO() {
+        if (customerDAO == null) {
+            customerDAO = new CustomerDAO();
+        }
+        return customerDAO;
+    }
+    
+    private OrderDAO orderDAO() {
+        if (orderDAO == null) {
+            orderDAO = new OrderDAO();
+        }
+        return orderDAO;
+    }
+    
+    private TableDAO tableDAO() {
+        if (tableDAO == null) {
+            tableDAO = new TableDAO();
+        }
+        return tableDAO;
+    }
+    
+    private PaymentDAO paymentDAO() {
+        if (paymentDAO == null) {
+            paymentDAO = new PaymentDAO();
+        }
+        return paymentDAO;
+    }
+    
+    private IngredientDAO ingredientDAO() {
+        if (ingredientDAO == null) {
+            ingredientDAO = new IngredientDAO();
+        }
+        return ingredientDAO;
+    }
+    
+    private SearchService searchService() {
+        if (searchService == null) {
+            searchService = new SearchService(menuItemDAO(), customerDAO(), ingredientDAO());
+        }
+        return searchService;
     }
     
     public void start() {
@@ -126,7 +172,7 @@ public class ManagementView {
     
     private void viewAllOrders() {
         try {
-            List<Order> orders = orderDAO.getAllOrders();
+            List<Order> orders = orderDAO().getAllOrders();
             displayOrders(orders, "All Orders");
         } catch (Exception e) {
             System.out.println("Error retrieving orders: " + e.getMessage());
@@ -135,9 +181,9 @@ public class ManagementView {
     
     private void viewPendingOrders() {
         try {
-            List<Order> orders = orderDAO.getOrdersByStatus(Order.OrderStatus.PENDING);
-        orders.addAll(orderDAO.getOrdersByStatus(Order.OrderStatus.CONFIRMED));
-        orders.addAll(orderDAO.getOrdersByStatus(Order.OrderStatus.PREPARING));
+            List<Order> orders = orderDAO().getOrdersByStatus(Order.OrderStatus.PENDING);
+        orders.addAll(orderDAO().getOrdersByStatus(Order.OrderStatus.CONFIRMED));
+        orders.addAll(orderDAO().getOrdersByStatus(Order.OrderStatus.PREPARING));
             
             displayOrders(orders, "Pending Orders");
         } catch (Exception e) {
@@ -158,7 +204,7 @@ public class ManagementView {
         
         for (Order order : orders) {
             try {
-                Customer customer = customerDAO.getCustomerById(order.getCustomerId());
+                Customer customer = customerDAO().getCustomerById(order.getCustomerId());
                 String customerName = (customer != null) ? customer.getName() : "Unknown";
                 String tableInfo = (order.getTableNumber() > 0) ? String.valueOf(order.getTableNumber()) : "N/A";
                 
@@ -181,7 +227,7 @@ public class ManagementView {
         int orderId = getIntInput();
         
         try {
-            Order order = orderDAO.getOrderById(orderId);
+            Order order = orderDAO().getOrderById(orderId);
             if (order == null) {
                 System.out.println("Order not found.");
                 return;
@@ -213,17 +259,17 @@ public class ManagementView {
             }
             
             order.setStatus(newStatus);
-            orderDAO.updateOrderStatus(orderId, order.getStatus());
+            orderDAO().updateOrderStatus(orderId, order.getStatus());
             
             // If order is completed and it's dine-in, free the table
             if (newStatus == Order.OrderStatus.COMPLETED && 
                 order.getServiceType() == Order.ServiceType.DINE_IN && 
                 order.getTableNumber() > 0) {
                 
-                Table table = tableDAO.getTableById(order.getTableNumber());
+                Table table = tableDAO().getTableById(order.getTableNumber());
                 if (table != null) {
                     table.makeAvailable();
-                    tableDAO.updateTableStatus(table.getTableNumber(), table.getStatus());
+                    tableDAO().saveTableState(table);
                     System.out.println("Table " + order.getTableNumber() + " has been freed.");
                 }
             }
@@ -251,14 +297,14 @@ public class ManagementView {
                 case 1:
                     System.out.print("Enter customer name: ");
                     String customerName = scanner.nextLine().trim();
-                    List<Customer> customers = customerDAO.searchCustomersByName(customerName);
+                    List<Customer> customers = customerDAO().searchCustomersByName(customerName);
                     for (Customer customer : customers) {
-                        results.addAll(orderDAO.getOrdersByCustomerId(customer.getCustomerId()));
+                        results.addAll(orderDAO().getOrdersByCustomerId(customer.getCustomerId()));
                     }
                     break;
                 case 2:
                     System.out.println("Enter date range (today's orders only for simplicity)");
-                    results = orderDAO.getOrdersByDateRange(
+                    results = orderDAO().getOrdersByDateRange(
                         LocalDateTime.now().toLocalDate().atStartOfDay(),
                         LocalDateTime.now());
                     break;
@@ -285,7 +331,7 @@ public class ManagementView {
                             System.out.println("Invalid choice.");
                             return;
                     }
-                    results = orderDAO.getOrdersByStatus(status);
+                    results = orderDAO().getOrdersByStatus(status);
                     break;
                 default:
                     System.out.println("Invalid choice.");
@@ -304,7 +350,7 @@ public class ManagementView {
         int orderId = getIntInput();
         
         try {
-            Order order = orderDAO.getOrderById(orderId);
+            Order order = orderDAO().getOrderById(orderId);
             if (order == null) {
                 System.out.println("Order not found.");
                 return;
@@ -317,14 +363,14 @@ public class ManagementView {
             }
             
             order.setStatus(Order.OrderStatus.CANCELLED);
-            orderDAO.updateOrderStatus(orderId, order.getStatus());
+            orderDAO().updateOrderStatus(orderId, order.getStatus());
             
             // Free table if it was dine-in
             if (order.getServiceType() == Order.ServiceType.DINE_IN && order.getTableNumber() > 0) {
-                Table table = tableDAO.getTableById(order.getTableNumber());
+                Table table = tableDAO().getTableById(order.getTableNumber());
                 if (table != null) {
                     table.makeAvailable();
-                    tableDAO.updateTableStatus(table.getTableNumber(), table.getStatus());
+                    tableDAO().saveTableState(table);
                 }
             }
             
@@ -345,8 +391,9 @@ public class ManagementView {
             System.out.println("5. Update Table Status");
             System.out.println("6. Remove Table");
             System.out.println("7. Table Statistics");
-            System.out.println("8. Back to Main Menu");
-            System.out.print("Choose option (1-8): ");
+            System.out.println("8. Upcoming Table Releases");
+            System.out.println("9. Back to Main Menu");
+            System.out.print("Choose option (1-9): ");
             
             int choice = getIntInput();
             
@@ -373,6 +420,9 @@ public class ManagementView {
                     tableStatistics();
                     break;
                 case 8:
+                    viewUpcomingTableReleases();
+                    break;
+                case 9:
                     return;
                 default:
                     System.out.println("Invalid choice. Please try again.");
@@ -382,7 +432,7 @@ public class ManagementView {
     
     private void viewAllTables() {
         try {
-            List<Table> tables = tableDAO.getAllTables();
+            List<Table> tables = tableDAO().getAllTables();
             displayTables(tables, "All Tables");
         } catch (Exception e) {
             System.out.println("Error retrieving tables: " + e.getMessage());
@@ -391,7 +441,7 @@ public class ManagementView {
     
     private void viewAvailableTables() {
         try {
-            List<Table> tables = tableDAO.getAvailableTables();
+            List<Table> tables = tableDAO().getAvailableTables();
             displayTables(tables, "Available Tables");
         } catch (Exception e) {
             System.out.println("Error retrieving available tables: " + e.getMessage());
@@ -400,13 +450,25 @@ public class ManagementView {
     
     private void viewOccupiedTables() {
         try {
-            List<Table> tables = tableDAO.getTablesByStatus(Table.TableStatus.OCCUPIED);
+            List<Table> tables = tableDAO().getTablesByStatus(Table.TableStatus.OCCUPIED);
             displayTables(tables, "Occupied Tables");
         } catch (Exception e) {
             System.out.println("Error retrieving occupied tables: " + e.getMessage());
         }
     }
     
+    private void viewUpcomingTableReleases() {
+        List<TableScheduler.Deadline> upcoming = TableScheduler.getInstance().getUpcoming(60);
+        if (upcoming.isEmpty()) {
+            System.out.println("\nNo reservations ending or seating limits due in the next hour.");
+            return;
+        }
+        System.out.println("\n=== Upcoming Table Releases (next hour) ===");
+        for (TableScheduler.Deadline deadline : upcoming) {
+            System.out.println(deadline);
+        }
+    }
+    
     private void displayTables(List<Table> tables, String title) {
         if (tables.isEmpty()) {
             System.out.println("\nNo tables found.");
@@ -434,14 +496,14 @@ public class ManagementView {
         int capacity = getIntInput();
         
         try {
-            Table existingTable = tableDAO.getTableById(tableNumber);
+            Table existingTable = tableDAO().getTableById(tableNumber);
             if (existingTable != null) {
                 System.out.println("Table number already exists.");
                 return;
             }
             
             Table newTable = new Table(tableNumber, capacity);
-            tableDAO.createTable(newTable);
+            tableDAO().createTable(newTable);
             
             System.out.println("Table " + tableNumber + " added successfully.");
             
@@ -455,7 +517,7 @@ public class ManagementView {
         int tableNumber = getIntInput();
         
         try {
-            Table table = tableDAO.getTableById(tableNumber);
+            Table table = tableDAO().getTableById(tableNumber);
             if (table == null) {
                 System.out.println("Table not found.");
                 return;
@@ -489,7 +551,7 @@ public class ManagementView {
                     return;
             }
             
-            tableDAO.updateTableStatus(table.getTableNumber(), table.getStatus());
+            tableDAO().saveTableState(table);
             System.out.println("Table status updated to: " + table.getStatus());
             
         } catch (Exception e) {
@@ -502,7 +564,7 @@ public class ManagementView {
         int tableNumber = getIntInput();
         
         try {
-            Table table = tableDAO.getTableById(tableNumber);
+            Table table = tableDAO().getTableById(tableNumber);
             if (table == null) {
                 System.out.println("Table not found.");
                 return;
@@ -519,7 +581,7 @@ public class ManagementView {
             String confirm = scanner.nextLine().trim().toLowerCase();
             
             if (confirm.equals("y") || confirm.equals("yes")) {
-                // tableDAO.deleteTable(tableNumber); // Method not available
+                // tableDAO().deleteTable(tableNumber); // Method not available
                 System.out.println("Table " + tableNumber + " removed successfully.");
             } else {
                 System.out.println("Table removal cancelled.");
@@ -532,7 +594,7 @@ public class ManagementView {
     
     private void tableStatistics() {
         try {
-            TableDAO.TableStats stats = tableDAO.getTableStats();
+            TableDAO.TableStats stats = tableDAO().getTableStats();
             
             System.out.println("\n=== Table Statistics ===");
             System.out.println("Total Tables: " + stats.getTotalTables());
@@ -561,8 +623,9 @@ public class ManagementView {
             System.out.println("6. Update Ingredient Details");
             System.out.println("7. Remove Ingredient");
             System.out.println("8. Inventory Statistics");
-            System.out.println("9. Back to Main Menu");
-            System.out.print("Choose option (1-9): ");
+            System.out.println("9. Reorder Forecast");
+            System.out.println("10. Back to Main Menu");
+            System.out.print("Choose option (1-10): ");
             
             int choice = getIntInput();
             
@@ -592,6 +655,9 @@ public class ManagementView {
                     inventoryStatistics();
                     break;
                 case 9:
+                    viewReorderForecast();
+                    break;
+                case 10:
                     return;
                 default:
                     System.out.println("Invalid choice. Please try again.");
@@ -601,7 +667,7 @@ public class ManagementView {
     
     private void viewAllIngredients() {
         try {
-            List<Ingredient> ingredients = ingredientDAO.getAllIngredients();
+            List<Ingredient> ingredients = ingredientDAO().getAllIngredients();
             displayIngredients(ingredients, "All Ingredients");
         } catch (Exception e) {
             System.out.println("Error retrieving ingredients: " + e.getMessage());
@@ -610,7 +676,7 @@ public class ManagementView {
     
     private void viewLowStockItems() {
         try {
-            List<Ingredient> ingredients = ingredientDAO.getLowStockIngredients();
+            List<Ingredient> ingredients = ingredientDAO().getLowStockIngredients();
             displayIngredients(ingredients, "Low Stock Items");
         } catch (Exception e) {
             System.out.println("Error retrieving low stock items: " + e.getMessage());
@@ -619,8 +685,18 @@ public class ManagementView {
     
     private void viewExpiredItems() {
         try {
-            List<Ingredient> ingredients = ingredientDAO.getExpiredIngredients();
+            List<Ingredient> ingredients = ingredientDAO().getExpiredIngredients();
             displayIngredients(ingredients, "Expired Items");
+            if (ingredients.isEmpty()) {
+                return;
+            }
+            
+            System.out.print("\nWrite off all expired lots? (y/n): ");
+            String confirm = scanner.nextLine().trim().toLowerCase();
+            if (confirm.equals("y") || confirm.equals("yes")) {
+                int lots = ingredientDAO().writeOffExpiredStock();
+                System.out.println(lots + " expired lot(s) written off.");
+            }
         } catch (Exception e) {
             System.out.println("Error retrieving expired items: " + e.getMessage());
         }
@@ -693,7 +769,7 @@ public class ManagementView {
             Ingredient ingredient = new Ingredient(0, name, "", unit, minimumLevel, costPerUnit);
             ingredient.addStock(currentStock);
             ingredient.setSupplier(supplier);
-            ingredientDAO.createIngredient(ingredient);
+            ingredientDAO().createIngredient(ingredient);
             
             System.out.println("Ingredient '" + name + "' added successfully.");
             
@@ -707,43 +783,53 @@ public class ManagementView {
         int ingredientId = getIntInput();
         
         try {
-            Ingredient ingredient = ingredientDAO.getIngredientById(ingredientId);
+            Ingredient ingredient = ingredientDAO().getIngredientById(ingredientId);
             if (ingredient == null) {
                 System.out.println("Ingredient not found.");
                 return;
             }
             
             System.out.println("Current stock: " + ingredient.getCurrentStock() + " " + ingredient.getUnit());
-            System.out.println("1. Add stock");
+            for (IngredientLot lot : ingredientDAO().getLots(ingredientId)) {
+                System.out.println("  " + lot);
+            }
+            System.out.println("1. Receive delivery");
             System.out.println("2. Remove stock");
             System.out.println("3. Set stock level");
             System.out.print("Choose option (1-3): ");
             
             int choice = getIntInput();
+            boolean updated;
             
             switch (choice) {
                 case 1:
-                    System.out.print("Enter amount to add: ");
+                    System.out.print("Enter amount received: ");
                     double addAmount = getDoubleInput();
-                    ingredient.addStock(addAmount);
+                    System.out.print("Enter expiry date (yyyy-MM-dd, or press Enter for none): ");
+                    String expiry = scanner.nextLine().trim();
+                    LocalDate expirationDate = expiry.isEmpty() ? null : LocalDate.parse(expiry);
+                    updated = ingredientDAO().receiveStock(ingredientId, addAmount, expirationDate) > 0;
                     break;
                 case 2:
                     System.out.print("Enter amount to remove: ");
                     double removeAmount = getDoubleInput();
-                    ingredient.removeStock(removeAmount);
+                    updated = ingredientDAO().removeStock(ingredientId, removeAmount);
                     break;
                 case 3:
                     System.out.print("Enter new stock level: ");
                     double newLevel = getDoubleInput();
-                    ingredient.removeStock(ingredient.getCurrentStock());
-                    ingredient.addStock(newLevel);
+                    updated = ingredientDAO().updateIngredientStock(ingredientId, newLevel);
                     break;
                 default:
                     System.out.println("Invalid choice.");
                     return;
             }
             
-            ingredientDAO.updateIngredient(ingredient);
+            if (!updated) {
+                System.out.println("Stock not updated (not enough unexpired stock?).");
+                return;
+            }
+            ingredient = ingredientDAO().getIngredientById(ingredientId);
             System.out.println("Stock updated. New level: " + ingredient.getCurrentStock() + " " + ingredient.getUnit());
             
         } catch (Exception e) {
@@ -756,7 +842,7 @@ public class ManagementView {
         int ingredientId = getIntInput();
         
         try {
-            Ingredient ingredient = ingredientDAO.getIngredientById(ingredientId);
+            Ingredient ingredient = ingredientDAO().getIngredientById(ingredientId);
             if (ingredient == null) {
                 System.out.println("Ingredient not found.");
                 return;
@@ -792,7 +878,7 @@ public class ManagementView {
                 ingredient.setSupplier(newSupplier);
             }
             
-            ingredientDAO.updateIngredient(ingredient);
+            ingredientDAO().updateIngredient(ingredient);
             System.out.println("Ingredient details updated successfully.");
             
         } catch (Exception e) {
@@ -805,7 +891,7 @@ public class ManagementView {
         int ingredientId = getIntInput();
         
         try {
-            Ingredient ingredient = ingredientDAO.getIngredientById(ingredientId);
+            Ingredient ingredient = ingredientDAO().getIngredientById(ingredientId);
             if (ingredient == null) {
                 System.out.println("Ingredient not found.");
                 return;
@@ -815,7 +901,7 @@ public class ManagementView {
             String confirm = scanner.nextLine().trim().toLowerCase();
             
             if (confirm.equals("y") || confirm.equals("yes")) {
-                ingredientDAO.deleteIngredient(ingredientId);
+                ingredientDAO().deleteIngredient(ingredientId);
                 System.out.println("Ingredient removed successfully.");
             } else {
                 System.out.println("Ingredient removal cancelled.");
@@ -826,9 +912,43 @@ public class ManagementView {
         }
     }
     
+    private void viewReorderForecast() {
+        try {
+            ReorderForecaster forecaster = ReorderForecaster.getInstance();
+            if (!forecaster.refresh()) {
+                System.out.println("Could not read order history.");
+                return;
+            }
+            
+            System.out.println("\n=== Stock-out Forecast ===");
+            for (ReorderForecaster.Forecast forecast : forecaster.forecast()) {
+                if (forecast.getAverageDailyUse() > 0) {
+                    System.out.println(forecast);
+                }
+            }
+            
+            Map<String, List<ReorderForecaster.Forecast>> suggestions = forecaster.getPurchaseSuggestions();
+            if (suggestions.isEmpty()) {
+                System.out.println("\nNothing needs ordering.");
+                return;
+            }
+            System.out.println("\n=== Suggested Purchases ===");
+            for (Map.Entry<String, List<ReorderForecaster.Forecast>> supplier : suggestions.entrySet()) {
+                System.out.println(supplier.getKey() + ":");
+                for (ReorderForecaster.Forecast forecast : supplier.getValue()) {
+                    System.out.printf("  %-25s %10.2f %s%n", forecast.getIngredient().getName(),
+                        forecast.getSuggestedQuantity(), forecast.getIngredient().getUnit().toString().toLowerCase());
+                }
+            }
+            
+        } catch (Exception e) {
+            System.out.println("Error forecasting stock: " + e.getMessage());
+        }
+    }
+    
     private void inventoryStatistics() {
         try {
-            IngredientDAO.IngredientStats stats = ingredientDAO.getIngredientStats();
+            IngredientDAO.IngredientStats stats = ingredientDAO().getIngredientStats();
             
             System.out.println("\n=== Inventory Statistics ===");
             System.out.println("Total Ingredients: " + stats.getTotalIngredients());
@@ -881,7 +1001,7 @@ public class ManagementView {
     
     private void viewAllMenuItems() {
         try {
-            List<MenuItem> menuItems = menuItemDAO.getAllMenuItems();
+            List<MenuItem> menuItems = menuItemDAO().getAllMenuItems();
             displayMenuItems(menuItems, "All Menu Items");
         } catch (Exception e) {
             System.out.println("Error retrieving menu items: " + e.getMessage());
@@ -937,13 +1057,13 @@ public class ManagementView {
                     }
                     
                     @Override
-                    public double calculatePrice() {
-                        return getBasePrice();
+                    public long calculatePriceCents() {
+                        return getPriceCents();
                     }
                 };
             }
             
-            menuItemDAO.createMenuItem(menuItem);
+            menuItemDAO().createMenuItem(menuItem);
             System.out.println("Menu item '" + name + "' added successfully.");
             
         } catch (Exception e) {
@@ -956,7 +1076,7 @@ public class ManagementView {
         int itemId = getIntInput();
         
         try {
-            MenuItem item = menuItemDAO.getMenuItemById(itemId);
+            MenuItem item = menuItemDAO().getMenuItemById(itemId);
             if (item == null) {
                 System.out.println("Menu item not found.");
                 return;
@@ -992,7 +1112,7 @@ public class ManagementView {
                 item.setDescription(newDescription);
             }
             
-            menuItemDAO.updateMenuItem(item);
+            menuItemDAO().updateMenuItem(item);
             System.out.println("Menu item updated successfully.");
             
         } catch (Exception e) {
@@ -1005,7 +1125,7 @@ public class ManagementView {
         int itemId = getIntInput();
         
         try {
-            MenuItem item = menuItemDAO.getMenuItemById(itemId);
+            MenuItem item = menuItemDAO().getMenuItemById(itemId);
             if (item == null) {
                 System.out.println("Menu item not found.");
                 return;
@@ -1015,7 +1135,7 @@ public class ManagementView {
             String confirm = scanner.nextLine().trim().toLowerCase();
             
             if (confirm.equals("y") || confirm.equals("yes")) {
-                menuItemDAO.deleteMenuItem(itemId);
+                menuItemDAO().deleteMenuItem(itemId);
                 System.out.println("Menu item removed successfully.");
             } else {
                 System.out.println("Menu item removal cancelled.");
@@ -1031,7 +1151,7 @@ public class ManagementView {
         String searchTerm = scanner.nextLine().trim();
         
         try {
-            List<MenuItem> results = menuItemDAO.searchMenuItemsByName(searchTerm);
+            List<MenuItem> results = searchService().searchMenuItems(searchTerm, 50);
             displayMenuItems(results, "Search Results");
         } catch (Exception e) {
             System.out.println("Error searching menu items: " + e.getMessage());
@@ -1077,7 +1197,7 @@ public class ManagementView {
     
     private void viewAllCustomers() {
         try {
-            List<Customer> customers = customerDAO.getAllCustomers();
+            List<Customer> customers = customerDAO().getAllCustomers();
             displayCustomers(customers, "All Customers");
         } catch (Exception e) {
             System.out.println("Error retrieving customers: " + e.getMessage());
@@ -1111,10 +1231,10 @@ public class ManagementView {
         String searchTerm = scanner.nextLine().trim();
         
         try {
-            List<Customer> results = customerDAO.searchCustomersByName(searchTerm);
+            List<Customer> results = searchService().searchCustomers(searchTerm, 50);
             
             // Also search by email
-            Customer emailResult = customerDAO.getCustomerByEmail(searchTerm);
+            Customer emailResult = customerDAO().getCustomerByEmail(searchTerm);
             if (emailResult != null && !results.contains(emailResult)) {
                 results.add(emailResult);
             }
@@ -1130,7 +1250,7 @@ public class ManagementView {
         int customerId = getIntInput();
         
         try {
-            Customer customer = customerDAO.getCustomerById(customerId);
+            Customer customer = customerDAO().getCustomerById(customerId);
             if (customer == null) {
                 System.out.println("Customer not found.");
                 return;
@@ -1147,7 +1267,7 @@ public class ManagementView {
             System.out.println("Loyalty Points: " + customer.getLoyaltyPoints());
             
             // Show recent orders
-            List<Order> recentOrders = orderDAO.getOrdersByCustomerId(customerId);
+            List<Order> recentOrders = orderDAO().getOrdersByCustomerId(customerId);
             if (!recentOrders.isEmpty()) {
                 System.out.println("\nRecent Orders:");
                 System.out.printf("%-8s %-15s %-10s %-12s%n", "Order ID", "Date", "Total", "Status");
@@ -1173,7 +1293,7 @@ public class ManagementView {
         int customerId = getIntInput();
         
         try {
-            Customer customer = customerDAO.getCustomerById(customerId);
+            Customer customer = customerDAO().getCustomerById(customerId);
             if (customer == null) {
                 System.out.println("Customer not found.");
                 return;
@@ -1202,7 +1322,7 @@ public class ManagementView {
                 customer.setPhoneNumber(newPhone);
             }
             
-            customerDAO.updateCustomer(customer);
+            customerDAO().updateCustomer(customer);
             System.out.println("Customer updated successfully.");
             
         } catch (Exception e) {
@@ -1212,13 +1332,14 @@ public class ManagementView {
     
     private void customerStatistics() {
         try {
-            CustomerDAO.CustomerStats stats = customerDAO.getCustomerStats();
+            CustomerDAO.CustomerStats stats = new CustomerDAO(reportConnection()).getCustomerStats();
             
             System.out.println("\n=== Customer Statistics ===");
             System.out.println("Total Customers: " + stats.getTotalCustomers());
             System.out.printf("Average Loyalty Points: %.2f%n", stats.getAvgLoyaltyPoints());
             System.out.printf("Maximum Loyalty Points: %.2f%n", stats.getMaxLoyaltyPoints());
             System.out.println("Total Loyalty Points Issued: " + stats.getTotalLoyaltyPoints());
+            System.out.println(customerDAO().getCacheStats());
             
         } catch (Exception e) {
             System.out.println("Error retrieving customer statistics: " + e.getMessage());
@@ -1228,13 +1349,16 @@ public class ManagementView {
     private void reportsAndAnalytics() {
         while (true) {
             System.out.println("\n=== Reports & Analytics ===");
+            System.out.println(ReportingReplica.getInstance().getStats());
             System.out.println("1. Daily Sales Report");
             System.out.println("2. Order Statistics");
             System.out.println("3. Payment Statistics");
             System.out.println("4. Popular Menu Items");
             System.out.println("5. Revenue Summary");
-            System.out.println("6. Back to Main Menu");
-            System.out.print("Choose option (1-6): ");
+            System.out.println("6. Margin Report");
+            System.out.println("7. Payment Reconciliation");
+            System.out.println("8. Back to Main Menu");
+            System.out.print("Choose option (1-8): ");
             
             int choice = getIntInput();
             
@@ -1255,6 +1379,12 @@ public class ManagementView {
                     revenueSummary();
                     break;
                 case 6:
+                    marginReport();
+                    break;
+                case 7:
+                    paymentReconciliation();
+                    break;
+                case 8:
                     return;
                 default:
                     System.out.println("Invalid choice. Please try again.");
@@ -1262,45 +1392,97 @@ public class ManagementView {
         }
     }
     
+    // Reports read from the reporting replica while it is within the allowed lag
+    private DatabaseConnection reportConnection() {
+        return ReportingReplica.getInstance().getReportConnection();
+    }
+    
     private void dailySalesReport() {
         try {
             LocalDateTime startOfDay = LocalDateTime.now().toLocalDate().atStartOfDay();
-            LocalDateTime endOfDay = LocalDateTime.now();
+            LocalDateTime endOfDay = startOfDay.plusDays(1);
+            
+            if (ShardRouter.getInstance().isSharded()) {
+                allStoresDailySalesReport(startOfDay, endOfDay);
+                return;
+            }
             
-            List<Order> todayOrders = orderDAO.getOrdersByDateRange(startOfDay, endOfDay);
+            OrderAnalytics analytics = OrderAnalytics.getInstance();
+            analytics.refresh();
+            OrderAnalytics.SalesSummary summary = analytics.getSalesSummary(startOfDay, endOfDay);
             
             System.out.println("\n=== Daily Sales Report ===");
             System.out.println("Date: " + LocalDateTime.now().format(DateTimeFormatter.ofPattern("MM/dd/yyyy")));
             
-            double totalRevenue = 0;
-            int totalOrders = todayOrders.size();
-            int completedOrders = 0;
+            System.out.println("Total Orders: " + summary.getTotalOrders());
+            System.out.println("Completed Orders: " + summary.getCompletedOrders());
+            System.out.printf("Total Revenue: $%.2f%n", summary.getCompletedRevenue());
             
-            for (Order order : todayOrders) {
-                if (order.getStatus() == Order.OrderStatus.COMPLETED) {
-                    totalRevenue += order.getTotalAmount();
-                    completedOrders++;
+            if (summary.getCompletedOrders() > 0) {
+                System.out.printf("Average Order Value: $%.2f%n", summary.getAvgOrderValue());
+                
+                long[] revenueByHour = analytics.getRevenueByHour(startOfDay, endOfDay,
+                        OrderAnalytics.statusMask(Order.OrderStatus.COMPLETED));
+                System.out.println("\nRevenue by Hour:");
+                for (int hour = 0; hour < revenueByHour.length; hour++) {
+                    if (revenueByHour[hour] > 0) {
+                        System.out.printf("  %02d:00  $%.2f%n", hour, revenueByHour[hour] / 100.0);
+                    }
                 }
             }
             
-            System.out.println("Total Orders: " + totalOrders);
-            System.out.println("Completed Orders: " + completedOrders);
-            System.out.printf("Total Revenue: $%.2f%n", totalRevenue);
-            
-            if (completedOrders > 0) {
-                System.out.printf("Average Order Value: $%.2f%n", totalRevenue / completedOrders);
-            }
-            
         } catch (Exception e) {
             System.out.println("Error generating daily sales report: " + e.getMessage());
         }
     }
     
+    // HQ view: every store queried in parallel, totals first, then each store
+    private void allStoresDailySalesReport(LocalDateTime startOfDay, LocalDateTime endOfDay) {
+        ShardedReports reports = new ShardedReports();
+        ShardedReports.StoreReport<OrderAnalytics.SalesSummary> report = reports.getSalesSummary(startOfDay, endOfDay);
+        OrderAnalytics.SalesSummary summary = report.getTotal();
+        
+        System.out.println("\n=== Daily Sales Report (all stores) ===");
+        System.out.println("Date: " + LocalDateTime.now().format(DateTimeFormatter.ofPattern("MM/dd/yyyy")));
+        System.out.println("Stores reporting: " + report.getStoreCount() + "/" + ShardRouter.getInstance().getStoreIds().size());
+        System.out.println("Total Orders: " + summary.getTotalOrders());
+        System.out.println("Completed Orders: " + summary.getCompletedOrders());
+        System.out.printf("Total Revenue: $%.2f%n", summary.getCompletedRevenue());
+        
+        System.out.println("\nBy Store:");
+        for (Map.Entry<String, OrderAnalytics.SalesSummary> entry : report.getByStore().entrySet()) {
+            System.out.printf("  %-10s %5d orders  $%.2f%n", entry.getKey(),
+                entry.getValue().getCompletedOrders(), entry.getValue().getCompletedRevenue());
+        }
+        
+        if (summary.getCompletedOrders() > 0) {
+            long[] revenueByHour = reports.getRevenueByHour(startOfDay, endOfDay,
+                    OrderAnalytics.statusMask(Order.OrderStatus.COMPLETED));
+            System.out.println("\nRevenue by Hour:");
+            for (int hour = 0; hour < revenueByHour.length; hour++) {
+                if (revenueByHour[hour] > 0) {
+                    System.out.printf("  %02d:00  $%.2f%n", hour, revenueByHour[hour] / 100.0);
+                }
+            }
+        }
+    }
+    
     private void orderStatistics() {
         try {
-            OrderDAO.OrderStats stats = orderDAO.getOrderStats();
+            OrderDAO.OrderStats stats;
+            if (ShardRouter.getInstance().isSharded()) {
+                ShardedReports.StoreReport<OrderDAO.OrderStats> report = new ShardedReports().getOrderStats();
+                stats = report.getTotal();
+                System.out.println("\n=== Order Statistics (" + report.getStoreCount() + " stores) ===");
+                for (Map.Entry<String, OrderDAO.OrderStats> entry : report.getByStore().entrySet()) {
+                    System.out.printf("  %-10s %5d orders  $%.2f%n", entry.getKey(),
+                        entry.getValue().getTotalOrders(), entry.getValue().getTotalRevenue());
+                }
+            } else {
+                stats = new OrderDAO(reportConnection()).getOrderStats();
+                System.out.println("\n=== Order Statistics ===");
+            }
             
-            System.out.println("\n=== Order Statistics ===");
             System.out.println("Total Orders: " + stats.getTotalOrders());
             System.out.println("Pending Orders: " + stats.getPendingOrders());
             System.out.println("Completed Orders: " + stats.getCompletedOrders());
@@ -1315,9 +1497,19 @@ public class ManagementView {
     
     private void paymentStatistics() {
         try {
-            PaymentDAO.PaymentStats stats = paymentDAO.getPaymentStats();
-            
-            System.out.println("\n=== Payment Statistics ===");
+            PaymentDAO.PaymentStats stats;
+            if (ShardRouter.getInstance().isSharded()) {
+                ShardedReports.StoreReport<PaymentDAO.PaymentStats> report = new ShardedReports().getPaymentStats();
+                stats = report.getTotal();
+                System.out.println("\n=== Payment Statistics (" + report.getStoreCount() + " stores) ===");
+                for (Map.Entry<String, PaymentDAO.PaymentStats> entry : report.getByStore().entrySet()) {
+                    System.out.printf("  %-10s %5d payments  $%.2f%n", entry.getKey(),
+                        entry.getValue().getCompletedPayments(), entry.getValue().getTotalRevenue());
+                }
+            } else {
+                stats = new PaymentDAO(reportConnection()).getPaymentStats();
+                System.out.println("\n=== Payment Statistics ===");
+            }
             System.out.println("Total Payments: " + stats.getTotalPayments());
             System.out.println("Completed Payments: " + stats.getCompletedPayments());
             System.out.println("Cancelled Payments: " + stats.getCancelledPayments());
@@ -1331,19 +1523,104 @@ public class ManagementView {
     
     private void popularMenuItems() {
         try {
-            // This would require additional DAO methods to track item popularity
-            System.out.println("\n=== Popular Menu Items ===");
-            System.out.println("Feature not yet implemented - would require order item tracking.");
+            OrderAnalytics analytics = OrderAnalytics.getInstance();
+            analytics.refresh();
+            
+            LocalDateTime to = LocalDateTime.now();
+            LocalDateTime from = to.minusDays(30);
+            int statusMask = OrderAnalytics.ALL_STATUSES & ~OrderAnalytics.statusMask(Order.OrderStatus.CANCELLED);
+            OrderAnalytics.ItemSales[] topItems = analytics.getTopItems(from, to, statusMask, 10);
+            
+            System.out.println("\n=== Popular Menu Items (last 30 days) ===");
+            if (topItems.length == 0) {
+                System.out.println("No items sold in this period.");
+                return;
+            }
+            
+            System.out.printf("%-4s %-30s %-10s %-10s%n", "#", "Item", "Sold", "Revenue");
+            System.out.println("-".repeat(58));
+            for (int i = 0; i < topItems.length; i++) {
+                MenuItem item = menuItemDAO().getMenuItemById(topItems[i].getMenuItemId());
+                String name = item != null ? item.getName() : "Item #" + topItems[i].getMenuItemId();
+                System.out.printf("%-4d %-30s %-10d $%-9.2f%n", i + 1, name,
+                        topItems[i].getQuantity(), topItems[i].getRevenue());
+            }
             
         } catch (Exception e) {
             System.out.println("Error retrieving popular items: " + e.getMessage());
         }
     }
     
+    private void marginReport() {
+        try {
+            CostOfGoods costOfGoods = CostOfGoods.getInstance();
+            List<CostOfGoods.ItemMargin> items = costOfGoods.getItemMargins();
+            
+            System.out.println("\n=== Margin by Item (lowest first) ===");
+            if (items.isEmpty()) {
+                System.out.println("No menu items have a recipe yet.");
+                return;
+            }
+            System.out.printf("%-30s %-10s %-10s %-10s %-8s%n", "Item", "Price", "Cost", "Margin", "Margin%");
+            System.out.println("-".repeat(72));
+            for (CostOfGoods.ItemMargin item : items) {
+                System.out.printf("%-30s %-10s %-10s %-10s %6.1f%%%s%n", item.getName(),
+                        Money.format(item.getPriceCents()), Money.format(item.getCostCents()),
+                        Money.format(item.getMarginCents()), item.getMarginPercentage(),
+                        item.isComplete() ? "" : " *");
+            }
+            
+            System.out.println("\n=== Margin by Category ===");
+            for (CostOfGoods.CategoryMargin category : costOfGoods.getCategoryMargins()) {
+                System.out.printf("%-30s %3d items  %6.1f%%%n", category.getCategory(),
+                        category.getItemCount(), category.getMarginPercentage());
+            }
+            
+        } catch (Exception e) {
+            System.out.println("Error generating margin report: " + e.getMessage());
+        }
+    }
+    
+    private void paymentReconciliation() {
+        try {
+            System.out.print("Enter start date (yyyy-MM-dd): ");
+            LocalDate from = LocalDate.parse(scanner.nextLine().trim());
+            System.out.print("Enter end date (yyyy-MM-dd, inclusive): ");
+            LocalDate to = LocalDate.parse(scanner.nextLine().trim()).plusDays(1);
+            
+            PaymentReconciler.Reconciliation result = PaymentReconciler.getInstance().reconcile(from, to);
+            if (result == null) {
+                System.out.println("Reconciliation failed.");
+                return;
+            }
+            
+            System.out.println("\n=== Payment Reconciliation ===");
+            System.out.println(result);
+            for (Map.Entry<PaymentReconciler.Issue, Integer> count : result.getIssueCounts().entrySet()) {
+                System.out.printf("  %-24s %d%n", count.getKey(), count.getValue());
+            }
+            int shown = 0;
+            for (PaymentReconciler.Discrepancy discrepancy : result.getDiscrepancies()) {
+                if (shown++ == 20) {
+                    System.out.println("  ... " + (result.getDiscrepancies().size() - 20) + " more in the report");
+                    break;
+                }
+                System.out.println("  " + discrepancy);
+            }
+            if (result.getReportFile() != null) {
+                System.out.println("Report written to " + result.getReportFile().getPath());
+            }
+            
+        } catch (Exception e) {
+            System.out.println("Error running payment reconciliation: " + e.getMessage());
+        }
+    }
+    
     private void revenueSummary() {
         try {
-            OrderDAO.OrderStats orderStats = orderDAO.getOrderStats();
-            PaymentDAO.PaymentStats paymentStats = paymentDAO.getPaymentStats();
+            DatabaseConnection reports = reportConnection();
+            OrderDAO.OrderStats orderStats = new OrderDAO(reports).getOrderStats();
+            PaymentDAO.PaymentStats paymentStats = new PaymentDAO(reports).getPaymentStats();
             
             System.out.println("\n=== Revenue Summary ===");
             System.out.printf("Total Revenue (Orders): $%.2f%n", orderStats.getTotalRevenue());
@@ -1365,7 +1642,7 @@ public class ManagementView {
             System.out.println("Database: Connected");
             
             // Table statistics
-            TableDAO.TableStats tableStats = tableDAO.getTableStats();
+            TableDAO.TableStats tableStats = tableDAO().getTableStats();
             System.out.println("\nTable Status:");
             System.out.println("  Available: " + tableStats.getAvailableTables());
             System.out.println("  Occupied: " + tableStats.getOccupiedTables());
@@ -1373,8 +1650,8 @@ public class ManagementView {
             System.out.println("  Out of Service: " + tableStats.getOutOfServiceTables());
             
             // Inventory alerts
-            List<Ingredient> lowStock = ingredientDAO.getLowStockIngredients();
-            List<Ingredient> expired = ingredientDAO.getExpiredIngredients();
+            List<Ingredient> lowStock = ingredientDAO().getLowStockIngredients();
+            List<Ingredient> expired = ingredientDAO().getExpiredIngredients();
             
             System.out.println("\nInventory Alerts:");
             System.out.println("  Low Stock Items: " + lowStock.size());
@@ -1388,8 +1665,8 @@ public class ManagementView {
             }
             
             // Order queue
-            List<Order> pendingOrders = orderDAO.getOrdersByStatus(Order.OrderStatus.PENDING);
-            List<Order> preparingOrders = orderDAO.getOrdersByStatus(Order.OrderStatus.PREPARING);
+            List<Order> pendingOrders = orderDAO().getOrdersByStatus(Order.OrderStatus.PENDING);
+            List<Order> preparingOrders = orderDAO().getOrdersByStatus(Order.OrderStatus.PREPARING);
             
             System.out.println("\nOrder Queue:");
             System.out.println("  Pending Orders: " + pendingOrders.size());
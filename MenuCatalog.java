@@ -0,0 +1,316 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * MenuCatalog class for the register's in-memory copy of the menu
+ * Loads menu items once and then follows MenuItemDAO writes item by item,
+ * so browsing and typeahead never go back to the database per keystroke.
+ *
+ * Every full load is also written to a binary snapshot next to the database.
+ * warmStart() serves the menu from that snapshot at once and re-reads the
+ * database in the background, so the register is usable before the first query.
+ *
+ * Snapshot layout (big-endian, DataOutputStream):
+ *   int magic | int version | int count |
+ *   count x (int id | UTF name | UTF description | long priceCents | UTF category |
+ *            UTF itemType | UTF coffeeType | boolean available) | long crc32
+ * Null strings are written as a false flag byte; present strings as true + UTF.
+ */
+public class MenuCatalog {
+    private static final int SNAPSHOT_MAGIC = 0x4D454E55; // "MENU"
+    private static final int SNAPSHOT_VERSION = 1;
+
+    private static MenuCatalog instance;
+
+    private final MenuItemDAO menuItemDAO;
+    private final File snapshotFile;
+    private final Map<Integer, MenuItem> items = new LinkedHashMap<>();
+    private final TypeaheadIndex<MenuItem> typeahead = new TypeaheadIndex<>();
+    private final List<Runnable> reloadListeners = new CopyOnWriteArrayList<>();
+    private boolean loaded;
+    private boolean fromSnapshot;
+    private int changeCount;
+
+    public MenuCatalog(MenuItemDAO menuItemDAO) {
+        this(menuItemDAO, null);
+    }
+
+    public MenuCatalog(MenuItemDAO menuItemDAO, File snapshotFile) {
+        this.menuItemDAO = menuItemDAO;
+        this.snapshotFile = snapshotFile;
+        MenuItemDAO.addChangeListener(this::onMenuItemChanged);
+    }
+
+    // Get the shared catalog
+    public static synchronized MenuCatalog getInstance() {
+        if (instance == null) {
+            String databaseName = DatabaseConnection.getInstance().getDatabaseName();
+            File snapshot = new File(databaseName.replaceAll("\\.db$", "") + ".menu.snapshot");
+            instance = new MenuCatalog(new MenuItemDAO(), snapshot);
+        }
+        return instance;
+    }
+
+    // Serve the menu from the snapshot if there is one and refresh it in the background;
+    // returns true when the snapshot was used
+    public boolean warmStart() {
+        if (loadSnapshot()) {
+            Thread refresher = new Thread(this::reload, "menu-catalog-refresh");
+            refresher.setDaemon(true);
+            refresher.start();
+            return true;
+        }
+        reload();
+        return false;
+    }
+
+    // Load every menu item; later changes arrive through the DAO listener
+    public void reload() {
+        while (true) {
+            int changesBefore;
+            synchronized (this) {
+                changesBefore = changeCount;
+            }
+            // Read outside the lock so lookups keep answering from the current copy meanwhile
+            List<MenuItem> fresh = menuItemDAO.getAllMenuItems();
+            synchronized (this) {
+                if (changeCount != changesBefore) {
+                    // A write landed during the read and may be missing from it
+                    continue;
+                }
+                items.clear();
+                typeahead.clear();
+                for (MenuItem item : fresh) {
+                    index(item);
+                }
+                loaded = true;
+                fromSnapshot = false;
+            }
+            break;
+        }
+        saveSnapshot();
+        for (Runnable listener : reloadListeners) {
+            listener.run();
+        }
+    }
+
+    // Run after each full reload, e.g. to redraw a menu first drawn from the snapshot
+    public void addReloadListener(Runnable listener) {
+        reloadListeners.add(listener);
+    }
+
+    // Whether the items come from the snapshot and the database read hasn't finished yet
+    public synchronized boolean isFromSnapshot() {
+        return fromSnapshot;
+    }
+
+    private void ensureLoaded() {
+        if (!loaded) {
+            reload();
+        }
+    }
+
+    // Distinct categories of available items, sorted
+    public synchronized List<String> getCategories() {
+        ensureLoaded();
+        TreeSet<String> categories = new TreeSet<>();
+        for (MenuItem item : items.values()) {
+            if (item.isAvailable() && item.getCategory() != null) {
+                categories.add(item.getCategory());
+            }
+        }
+        return new ArrayList<>(categories);
+    }
+
+    public synchronized MenuItem getItem(int menuItemId) {
+        ensureLoaded();
+        return items.get(menuItemId);
+    }
+
+    public synchronized List<MenuItem> getAllItems() {
+        ensureLoaded();
+        return new ArrayList<>(items.values());
+    }
+
+    public synchronized List<MenuItem> getAvailableItems() {
+        ensureLoaded();
+        List<MenuItem> available = new ArrayList<>();
+        for (MenuItem item : items.values()) {
+            if (item.isAvailable()) {
+                available.add(item);
+            }
+        }
+        return available;
+    }
+
+    public synchronized List<MenuItem> getItemsByCategory(String category) {
+        ensureLoaded();
+        List<MenuItem> matching = new ArrayList<>();
+        for (MenuItem item : items.values()) {
+            if (item.isAvailable() && item.getCategory().equals(category)) {
+                matching.add(item);
+            }
+        }
+        return matching;
+    }
+
+    // Available items whose name or category starts with the typed prefix (diacritics ignored)
+    public List<MenuItem> suggest(String prefix, int limit) {
+        synchronized (this) {
+            ensureLoaded();
+        }
+        return typeahead.suggest(prefix, limit);
+    }
+
+    public synchronized int size() {
+        ensureLoaded();
+        return items.size();
+    }
+
+    // Keep one item in step with the database after a DAO write
+    private synchronized void onMenuItemChanged(int menuItemId) {
+        changeCount++;
+        if (!loaded) {
+            return;
+        }
+        MenuItem item = menuItemDAO.getMenuItemById(menuItemId);
+        if (item == null) {
+            items.remove(menuItemId);
+            typeahead.remove(menuItemId);
+        } else {
+            index(item);
+        }
+    }
+
+    private void index(MenuItem item) {
+        items.put(item.getId(), item);
+        if (item.isAvailable()) {
+            typeahead.put(item.getId(), item, Arrays.asList(item.getName(), item.getCategory()));
+        } else {
+            typeahead.remove(item.getId());
+        }
+    }
+
+    // Write the current menu to the snapshot file (atomically, via a temp file)
+    public void saveSnapshot() {
+        if (snapshotFile == null) {
+            return;
+        }
+        List<MenuItem> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(items.values());
+        }
+
+        File partial = new File(snapshotFile.getPath() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (CheckedOutputStream checked = new CheckedOutputStream(
+                new BufferedOutputStream(new FileOutputStream(partial)), crc);
+             DataOutputStream out = new DataOutputStream(checked)) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeInt(snapshot.size());
+            for (MenuItem item : snapshot) {
+                out.writeInt(item.getId());
+                writeString(out, item.getName());
+                writeString(out, item.getDescription());
+                out.writeLong(item.getPriceCents());
+                writeString(out, item.getCategory());
+                writeString(out, item.getItemType());
+                writeString(out, item instanceof Coffee ? ((Coffee) item).getCoffeeType().name() : null);
+                out.writeBoolean(item.isAvailable());
+            }
+            // Checksum of everything above; the trailer itself is not covered
+            out.writeLong(crc.getValue());
+        } catch (IOException e) {
+            System.err.println("Error writing menu snapshot: " + e.getMessage());
+            partial.delete();
+            return;
+        }
+
+        try {
+            Files.move(partial.toPath(), snapshotFile.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Error saving menu snapshot: " + e.getMessage());
+            partial.delete();
+        }
+    }
+
+    // Fill the catalog from the snapshot file; false when it is missing, stale in format or damaged
+    public boolean loadSnapshot() {
+        if (snapshotFile == null || !snapshotFile.isFile()) {
+            return false;
+        }
+
+        List<MenuItem> snapshot = new ArrayList<>();
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(new FileInputStream(snapshotFile)), crc))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                return false;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                int id = in.readInt();
+                String name = readString(in);
+                String description = readString(in);
+                long priceCents = in.readLong();
+                String category = readString(in);
+                String itemType = readString(in);
+                String coffeeType = readString(in);
+                boolean available = in.readBoolean();
+                snapshot.add(MenuItemDAO.buildMenuItem(id, name, description, Money.toDouble(priceCents),
+                                                       category, itemType, coffeeType, available));
+            }
+            long expected = crc.getValue();
+            if (in.readLong() != expected) {
+                System.err.println("Menu snapshot is damaged; loading from the database");
+                return false;
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading menu snapshot: " + e.getMessage());
+            return false;
+        }
+
+        synchronized (this) {
+            if (loaded) {
+                return true;
+            }
+            for (MenuItem item : snapshot) {
+                index(item);
+            }
+            loaded = true;
+            fromSnapshot = true;
+        }
+        return true;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -6,7 +6,7 @@ public abstract class MenuItem {
     private int id;
     private String name;
     private String description;
-    private double price;
+    private long priceCents;
     private boolean available;
     private String category;
     
@@ -15,7 +15,7 @@ public abstract class MenuItem {
         this.id = id;
         this.name = name;
         this.description = description;
-        this.price = price;
+        this.priceCents = Money.toCents(price);
         this.category = category;
         this.available = true;
     }
@@ -34,11 +34,15 @@ public abstract class MenuItem {
     }
     
     public double getPrice() {
-        return price;
+        return Money.toDouble(priceCents);
+    }
+    
+    public long getPriceCents() {
+        return priceCents;
     }
     
     public double getBasePrice() {
-        return price;
+        return Money.toDouble(priceCents);
     }
     
     public boolean isAvailable() {
@@ -60,7 +64,13 @@ public abstract class MenuItem {
     
     public void setPrice(double price) {
         if (price >= 0) {
-            this.price = price;
+            this.priceCents = Money.toCents(price);
+        }
+    }
+    
+    public void setPriceCents(long priceCents) {
+        if (priceCents >= 0) {
+            this.priceCents = priceCents;
         }
     }
     
@@ -79,14 +89,18 @@ public abstract class MenuItem {
     // Abstract method to be implemented by subclasses
     public abstract String getItemType();
     
-    // Method to calculate final price (can be overridden for customizations)
+    // Method to calculate final price in cents (can be overridden for customizations)
+    public long calculatePriceCents() {
+        return this.priceCents;
+    }
+    
     public double calculatePrice() {
-        return this.price;
+        return Money.toDouble(calculatePriceCents());
     }
     
     @Override
     public String toString() {
-        return String.format("%s - $%.2f\n%s", name, price, description);
+        return name + " - " + Money.format(priceCents) + "\n" + description;
     }
     
     @Override
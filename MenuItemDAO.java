@@ -1,18 +1,45 @@
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Data Access Object for MenuItem operations
  * Handles all database operations related to menu items
  */
 public class MenuItemDAO {
+    // Listener notified after a menu item row is created, updated or deleted
+    public interface ChangeListener {
+        void onChanged(int menuItemId);
+    }
+    
+    private static final List<ChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+    
     private DatabaseConnection dbConnection;
     
     public MenuItemDAO() {
         this.dbConnection = DatabaseConnection.getInstance();
     }
     
+    // Menu access against a specific store's database
+    public MenuItemDAO(DatabaseConnection dbConnection) {
+        this.dbConnection = dbConnection;
+    }
+
+    public static void addChangeListener(ChangeListener listener) {
+        changeListeners.add(listener);
+    }
+    
+    public static void removeChangeListener(ChangeListener listener) {
+        changeListeners.remove(listener);
+    }
+    
+    private static void fireChanged(int menuItemId) {
+        for (ChangeListener listener : changeListeners) {
+            listener.onChanged(menuItemId);
+        }
+    }
+    
     // Create a new menu item
     public boolean createMenuItem(MenuItem menuItem) {
         String query = "INSERT INTO menu_items (name, description, base_price, category, item_type, coffee_type, is_available) " +
@@ -21,7 +48,7 @@ public class MenuItemDAO {
         try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
             pstmt.setString(1, menuItem.getName());
             pstmt.setString(2, menuItem.getDescription());
-            pstmt.setDouble(3, menuItem.getPrice());
+            Money.bind(pstmt, 3, menuItem.getPriceCents());
             pstmt.setString(4, menuItem.getCategory());
             pstmt.setString(5, menuItem.getItemType());
             
@@ -36,6 +63,12 @@ public class MenuItemDAO {
             pstmt.setBoolean(7, menuItem.isAvailable());
             
             int rowsAffected = pstmt.executeUpdate();
+            if (rowsAffected > 0) {
+                ResultSet generatedKeys = pstmt.getGeneratedKeys();
+                if (generatedKeys.next()) {
+                    fireChanged(generatedKeys.getInt(1));
+                }
+            }
             return rowsAffected > 0;
             
         } catch (SQLException e) {
@@ -138,12 +171,15 @@ public class MenuItemDAO {
         try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
             pstmt.setString(1, menuItem.getName());
             pstmt.setString(2, menuItem.getDescription());
-            pstmt.setDouble(3, menuItem.getPrice());
+            Money.bind(pstmt, 3, menuItem.getPriceCents());
             pstmt.setString(4, menuItem.getCategory());
             pstmt.setBoolean(5, menuItem.isAvailable());
             pstmt.setInt(6, menuItem.getId());
             
             int rowsAffected = pstmt.executeUpdate();
+            if (rowsAffected > 0) {
+                fireChanged(menuItem.getId());
+            }
             return rowsAffected > 0;
             
         } catch (SQLException e) {
@@ -161,6 +197,9 @@ public class MenuItemDAO {
             pstmt.setInt(2, id);
             
             int rowsAffected = pstmt.executeUpdate();
+            if (rowsAffected > 0) {
+                fireChanged(id);
+            }
             return rowsAffected > 0;
             
         } catch (SQLException e) {
@@ -177,6 +216,9 @@ public class MenuItemDAO {
             pstmt.setInt(1, id);
             
             int rowsAffected = pstmt.executeUpdate();
+            if (rowsAffected > 0) {
+                fireChanged(id);
+            }
             return rowsAffected > 0;
             
         } catch (SQLException e) {
@@ -185,13 +227,25 @@ public class MenuItemDAO {
         }
     }
     
-    // Search menu items by name
+    // Search menu items by name, category or description (ranked, diacritic-insensitive prefix match)
     public List<MenuItem> searchMenuItemsByName(String searchTerm) {
+        return searchMenuItemsByName(searchTerm, -1);
+    }
+    
+    // Same search, at most limit rows (a negative limit returns them all)
+    public List<MenuItem> searchMenuItemsByName(String searchTerm, int limit) {
         List<MenuItem> menuItems = new ArrayList<>();
-        String query = "SELECT * FROM menu_items WHERE name LIKE ? AND is_available = TRUE ORDER BY name";
+        String matchQuery = TextFolding.toMatchQuery(searchTerm);
+        boolean useIndex = matchQuery != null && dbConnection.isFullTextSearchAvailable();
+        String query = useIndex
+            ? "SELECT m.* FROM menu_items_fts JOIN menu_items m ON m.id = menu_items_fts.rowid " +
+              "WHERE menu_items_fts MATCH ? AND m.is_available = TRUE " +
+              "ORDER BY bm25(menu_items_fts, 10.0, 3.0, 1.0), m.name LIMIT ?"
+            : "SELECT * FROM menu_items WHERE name LIKE ? AND is_available = TRUE ORDER BY name LIMIT ?";
         
         try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
-            pstmt.setString(1, "%" + searchTerm + "%");
+            pstmt.setString(1, useIndex ? matchQuery : "%" + searchTerm + "%");
+            pstmt.setInt(2, limit);
             ResultSet rs = pstmt.executeQuery();
             
             while (rs.next()) {
@@ -214,8 +268,8 @@ public class MenuItemDAO {
         String query = "SELECT * FROM menu_items WHERE base_price BETWEEN ? AND ? AND is_available = TRUE ORDER BY base_price";
         
         try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
-            pstmt.setDouble(1, minPrice);
-            pstmt.setDouble(2, maxPrice);
+            Money.bind(pstmt, 1, Money.toCents(minPrice));
+            Money.bind(pstmt, 2, Money.toCents(maxPrice));
             ResultSet rs = pstmt.executeQuery();
             
             while (rs.next()) {
@@ -253,15 +307,21 @@ public class MenuItemDAO {
     
     // Helper method to create MenuItem object from ResultSet
     private MenuItem createMenuItemFromResultSet(ResultSet rs) throws SQLException {
-        int id = rs.getInt("id");
-        String name = rs.getString("name");
-        String description = rs.getString("description");
-        double basePrice = rs.getDouble("base_price");
-        String category = rs.getString("category");
-        String itemType = rs.getString("item_type");
-        String coffeeTypeStr = rs.getString("coffee_type");
-        boolean isAvailable = rs.getBoolean("is_available");
-        
+        return buildMenuItem(
+            rs.getInt("id"),
+            rs.getString("name"),
+            rs.getString("description"),
+            rs.getDouble("base_price"),
+            rs.getString("category"),
+            rs.getString("item_type"),
+            rs.getString("coffee_type"),
+            rs.getBoolean("is_available")
+        );
+    }
+    
+    // Create the MenuItem subclass for a menu_items row (also used for the catalog snapshot)
+    static MenuItem buildMenuItem(int id, String name, String description, double basePrice, String category,
+                                  String itemType, String coffeeTypeStr, boolean isAvailable) {
         MenuItem menuItem;
         
         // Create appropriate subclass based on item type
@@ -273,6 +333,8 @@ public class MenuItemDAO {
                 // If coffee type is invalid, create a generic coffee
                 menuItem = new Coffee(id, name, description, basePrice, Coffee.CoffeeType.AMERICANO, Coffee.Size.MEDIUM, true);
             }
+            // Keep the menu's own category so category filters find coffees too
+            menuItem.setCategory(category);
         } else {
             // Create a generic MenuItem using an anonymous subclass
             menuItem = new MenuItem(id, name, description, basePrice, category) {
@@ -0,0 +1,180 @@
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * Money class for exact currency amounts
+ * An amount is a whole number of cents held in a long. The static helpers
+ * work directly on long cents so the order totals path does no allocation;
+ * Money instances wrap the same value where an object is more convenient.
+ * Amounts are bound as DECIMAL(10,2) with setBigDecimal, never setDouble.
+ */
+public final class Money implements Comparable<Money> {
+    public static final Money ZERO = new Money(0);
+
+    // One percent expressed in basis points
+    public static final int BASIS_POINTS_PER_PERCENT = 100;
+    public static final int BASIS_POINTS_WHOLE = 10000;
+
+    private final long cents;
+
+    private Money(long cents) {
+        this.cents = cents;
+    }
+
+    public static Money ofCents(long cents) {
+        return cents == 0 ? ZERO : new Money(cents);
+    }
+
+    public static Money of(double amount) {
+        return ofCents(toCents(amount));
+    }
+
+    public static Money of(BigDecimal amount) {
+        return ofCents(toCents(amount));
+    }
+
+    public long getCents() {
+        return cents;
+    }
+
+    public double toDouble() {
+        return toDouble(cents);
+    }
+
+    public BigDecimal toBigDecimal() {
+        return toBigDecimal(cents);
+    }
+
+    public Money plus(Money other) {
+        return ofCents(add(cents, other.cents));
+    }
+
+    public Money minus(Money other) {
+        return ofCents(subtract(cents, other.cents));
+    }
+
+    public Money times(int quantity) {
+        return ofCents(multiply(cents, quantity));
+    }
+
+    public Money percent(int basisPoints) {
+        return ofCents(applyBasisPoints(cents, basisPoints));
+    }
+
+    public boolean isNegative() {
+        return cents < 0;
+    }
+
+    public boolean isZero() {
+        return cents == 0;
+    }
+
+    // Static helpers on long cents
+
+    // Convert a double amount to cents, rounding half away from zero
+    public static long toCents(double amount) {
+        return Math.round(amount * 100.0);
+    }
+
+    public static long toCents(BigDecimal amount) {
+        if (amount == null) {
+            return 0;
+        }
+        return amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    public static double toDouble(long cents) {
+        return cents / 100.0;
+    }
+
+    public static BigDecimal toBigDecimal(long cents) {
+        return BigDecimal.valueOf(cents, 2);
+    }
+
+    public static long add(long a, long b) {
+        return Math.addExact(a, b);
+    }
+
+    public static long subtract(long a, long b) {
+        return Math.subtractExact(a, b);
+    }
+
+    public static long multiply(long cents, int quantity) {
+        return Math.multiplyExact(cents, (long) quantity);
+    }
+
+    // Apply a rate in basis points (800 = 8%), rounding half up to the cent
+    public static long applyBasisPoints(long cents, int basisPoints) {
+        long product = Math.multiplyExact(cents, (long) basisPoints);
+        long half = BASIS_POINTS_WHOLE / 2;
+        return product >= 0
+                ? (product + half) / BASIS_POINTS_WHOLE
+                : -((-product + half) / BASIS_POINTS_WHOLE);
+    }
+
+    // Format cents as "$12.34" without going through floating point
+    public static String format(long cents) {
+        StringBuilder sb = new StringBuilder(12);
+        appendTo(sb, cents);
+        return sb.toString();
+    }
+
+    // Append cents as "$12.34" to an existing buffer
+    public static void appendTo(StringBuilder sb, long cents) {
+        if (cents < 0) {
+            sb.append('-');
+            cents = -cents;
+        }
+        long fraction = cents % 100;
+        sb.append('$').append(cents / 100).append('.');
+        if (fraction < 10) {
+            sb.append('0');
+        }
+        sb.append(fraction);
+    }
+
+    // Bind an amount in cents to a DECIMAL(10,2) parameter
+    public static void bind(PreparedStatement pstmt, int index, long cents) throws SQLException {
+        pstmt.setBigDecimal(index, toBigDecimal(cents));
+    }
+
+    public static void bindNullable(PreparedStatement pstmt, int index, Money amount) throws SQLException {
+        if (amount == null) {
+            pstmt.setNull(index, Types.DECIMAL);
+        } else {
+            bind(pstmt, index, amount.cents);
+        }
+    }
+
+    // Read a DECIMAL(10,2) column as cents
+    public static long read(ResultSet rs, String column) throws SQLException {
+        // SQLite stores DECIMAL as REAL; rounding the double to cents is exact for 2-place values
+        return toCents(rs.getDouble(column));
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(cents, other.cents);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (obj == null || getClass() != obj.getClass()) return false;
+        return cents == ((Money) obj).cents;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(cents);
+    }
+
+    @Override
+    public String toString() {
+        return format(cents);
+    }
+}
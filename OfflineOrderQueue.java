@@ -0,0 +1,356 @@
+import java.sql.*;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * OfflineOrderQueue class for the register's local order journal
+ * Orders are written to a small SQLite file next to the register and synced
+ * to the shared coffee_shop.db later by OrderSyncer. Each queued order carries
+ * an idempotency key so a retried sync never creates the order twice.
+ */
+public class OfflineOrderQueue {
+    public enum QueueStatus {
+        PENDING, SYNCED, CONFLICT
+    }
+
+    private static final String DEFAULT_QUEUE_FILE = "register_queue.db";
+
+    private static OfflineOrderQueue instance;
+
+    private final String databaseUrl;
+    private final String registerId;
+    private Connection connection;
+
+    // Create a queue backed by the given SQLite file
+    public OfflineOrderQueue(String queueFile, String registerId) throws SQLException {
+        this.databaseUrl = "jdbc:sqlite:" + queueFile;
+        this.registerId = registerId;
+
+        try {
+            Class.forName("org.sqlite.JDBC");
+        } catch (ClassNotFoundException e) {
+            throw new SQLException("SQLite JDBC driver not found: " + e.getMessage());
+        }
+        this.connection = DriverManager.getConnection(databaseUrl);
+        createTables();
+    }
+
+    // Get the queue for this register
+    public static synchronized OfflineOrderQueue getInstance() {
+        if (instance == null) {
+            try {
+                String registerId = System.getProperty("coffeeshop.registerId", "REG1");
+                instance = new OfflineOrderQueue(DEFAULT_QUEUE_FILE, registerId);
+            } catch (SQLException e) {
+                System.err.println("Failed to open offline order queue: " + e.getMessage());
+            }
+        }
+        return instance;
+    }
+
+    // Create local queue tables
+    private void createTables() throws SQLException {
+        String[] queries = {
+            "PRAGMA journal_mode = WAL",
+
+            "CREATE TABLE IF NOT EXISTS pending_orders (" +
+            "queue_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+            "idempotency_key VARCHAR(64) NOT NULL UNIQUE," +
+            "register_id VARCHAR(20) NOT NULL," +
+            "customer_id INTEGER NOT NULL," +
+            "service_type VARCHAR(20) NOT NULL," +
+            "table_number INTEGER," +
+            "discount DECIMAL(10,2) DEFAULT 0.00," +
+            "total_amount DECIMAL(10,2) NOT NULL," +
+            "special_instructions TEXT," +
+            "order_time INTEGER NOT NULL," +
+            "status VARCHAR(20) DEFAULT 'PENDING'," +
+            "attempts INTEGER DEFAULT 0," +
+            "next_attempt_at INTEGER DEFAULT 0," +
+            "last_error TEXT," +
+            "central_order_id INTEGER" +
+            ")",
+
+            "CREATE TABLE IF NOT EXISTS pending_order_items (" +
+            "queue_id INTEGER NOT NULL," +
+            "menu_item_id INTEGER NOT NULL," +
+            "item_name VARCHAR(100) NOT NULL," +
+            "category VARCHAR(50)," +
+            "quantity INTEGER NOT NULL," +
+            "unit_price DECIMAL(10,2) NOT NULL," +
+            "customizations TEXT," +
+            "FOREIGN KEY (queue_id) REFERENCES pending_orders(queue_id) ON DELETE CASCADE" +
+            ")",
+
+            "CREATE INDEX IF NOT EXISTS idx_pending_orders_due ON pending_orders(status, next_attempt_at)",
+            "CREATE INDEX IF NOT EXISTS idx_pending_order_items_queue ON pending_order_items(queue_id)"
+        };
+
+        try (Statement stmt = connection.createStatement()) {
+            for (String query : queries) {
+                stmt.execute(query);
+            }
+        }
+    }
+
+    // Write an order to the local queue and return its idempotency key
+    public synchronized String enqueue(Order order) throws SQLException {
+        String idempotencyKey = registerId + "-" + UUID.randomUUID();
+        String orderQuery = "INSERT INTO pending_orders (idempotency_key, register_id, customer_id, service_type, " +
+                           "table_number, discount, total_amount, special_instructions, order_time) " +
+                           "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        String itemQuery = "INSERT INTO pending_order_items (queue_id, menu_item_id, item_name, category, " +
+                          "quantity, unit_price, customizations) VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+        connection.setAutoCommit(false);
+        try {
+            long queueId;
+            try (PreparedStatement pstmt = connection.prepareStatement(orderQuery, Statement.RETURN_GENERATED_KEYS)) {
+                pstmt.setString(1, idempotencyKey);
+                pstmt.setString(2, registerId);
+                pstmt.setInt(3, order.getCustomerId());
+                pstmt.setString(4, order.getServiceType().toString());
+                if (order.getTableNumber() > 0) {
+                    pstmt.setInt(5, order.getTableNumber());
+                } else {
+                    pstmt.setNull(5, Types.INTEGER);
+                }
+                Money.bind(pstmt, 6, order.getManualDiscountCents());
+                Money.bind(pstmt, 7, order.getTotalCents());
+                pstmt.setString(8, order.getSpecialInstructions());
+                pstmt.setLong(9, order.getOrderTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+                pstmt.executeUpdate();
+
+                try (ResultSet keys = pstmt.getGeneratedKeys()) {
+                    if (!keys.next()) {
+                        throw new SQLException("No queue ID generated");
+                    }
+                    queueId = keys.getLong(1);
+                }
+            }
+
+            try (PreparedStatement pstmt = connection.prepareStatement(itemQuery)) {
+                for (OrderItem item : order.getOrderItems()) {
+                    pstmt.setLong(1, queueId);
+                    pstmt.setInt(2, item.getMenuItem().getId());
+                    pstmt.setString(3, item.getMenuItem().getName());
+                    pstmt.setString(4, item.getMenuItem().getCategory());
+                    pstmt.setInt(5, item.getQuantity());
+                    Money.bind(pstmt, 6, item.getUnitPriceCents());
+                    pstmt.setString(7, item.getCustomizations());
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            }
+
+            connection.commit();
+            return idempotencyKey;
+
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    // Get pending orders whose next attempt is due
+    public synchronized List<QueuedOrder> getDueOrders(int limit, long nowMillis) throws SQLException {
+        List<QueuedOrder> due = new ArrayList<>();
+        String query = "SELECT * FROM pending_orders WHERE status = 'PENDING' AND next_attempt_at <= ? " +
+                      "ORDER BY queue_id LIMIT ?";
+
+        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
+            pstmt.setLong(1, nowMillis);
+            pstmt.setInt(2, limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    due.add(createQueuedOrderFromResultSet(rs));
+                }
+            }
+        }
+
+        for (QueuedOrder queued : due) {
+            loadItems(queued);
+        }
+        return due;
+    }
+
+    // Mark an order as accepted by the central database
+    public synchronized void markSynced(long queueId, int centralOrderId) throws SQLException {
+        String query = "UPDATE pending_orders SET status = 'SYNCED', central_order_id = ?, last_error = NULL WHERE queue_id = ?";
+
+        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
+            pstmt.setInt(1, centralOrderId);
+            pstmt.setLong(2, queueId);
+            pstmt.executeUpdate();
+        }
+    }
+
+    // Schedule another attempt after a transient failure
+    public synchronized void markRetry(long queueId, int attempts, long nextAttemptAt, String error) throws SQLException {
+        String query = "UPDATE pending_orders SET attempts = ?, next_attempt_at = ?, last_error = ? WHERE queue_id = ?";
+
+        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
+            pstmt.setInt(1, attempts);
+            pstmt.setLong(2, nextAttemptAt);
+            pstmt.setString(3, error);
+            pstmt.setLong(4, queueId);
+            pstmt.executeUpdate();
+        }
+    }
+
+    // Park an order the central database rejected; it needs manual attention
+    public synchronized void markConflict(long queueId, int attempts, String error) throws SQLException {
+        String query = "UPDATE pending_orders SET status = 'CONFLICT', attempts = ?, last_error = ? WHERE queue_id = ?";
+
+        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
+            pstmt.setInt(1, attempts);
+            pstmt.setString(2, error);
+            pstmt.setLong(3, queueId);
+            pstmt.executeUpdate();
+        }
+    }
+
+    // Put a conflicting order back in the queue after it was fixed
+    public synchronized boolean requeue(long queueId) throws SQLException {
+        String query = "UPDATE pending_orders SET status = 'PENDING', attempts = 0, next_attempt_at = 0 " +
+                      "WHERE queue_id = ? AND status = 'CONFLICT'";
+
+        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
+            pstmt.setLong(1, queueId);
+            return pstmt.executeUpdate() > 0;
+        }
+    }
+
+    // Get orders the central database rejected
+    public synchronized List<QueuedOrder> getConflicts() throws SQLException {
+        List<QueuedOrder> conflicts = new ArrayList<>();
+        String query = "SELECT * FROM pending_orders WHERE status = 'CONFLICT' ORDER BY queue_id";
+
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery(query)) {
+            while (rs.next()) {
+                conflicts.add(createQueuedOrderFromResultSet(rs));
+            }
+        }
+        return conflicts;
+    }
+
+    // Count orders by queue status
+    public synchronized int countByStatus(QueueStatus status) throws SQLException {
+        String query = "SELECT COUNT(*) AS count FROM pending_orders WHERE status = ?";
+
+        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
+            pstmt.setString(1, status.toString());
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt("count") : 0;
+            }
+        }
+    }
+
+    // Remove synced orders older than the given time
+    public synchronized int purgeSynced(long olderThanMillis) throws SQLException {
+        String query = "DELETE FROM pending_orders WHERE status = 'SYNCED' AND order_time < ?";
+
+        try (Statement pragma = connection.createStatement()) {
+            pragma.execute("PRAGMA foreign_keys = ON");
+        }
+        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
+            pstmt.setLong(1, olderThanMillis);
+            return pstmt.executeUpdate();
+        }
+    }
+
+    // Close the local queue
+    public synchronized void close() {
+        try {
+            if (connection != null && !connection.isClosed()) {
+                connection.close();
+            }
+        } catch (SQLException e) {
+            System.err.println("Failed to close offline order queue: " + e.getMessage());
+        }
+    }
+
+    private void loadItems(QueuedOrder queued) throws SQLException {
+        String query = "SELECT * FROM pending_order_items WHERE queue_id = ?";
+
+        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
+            pstmt.setLong(1, queued.getQueueId());
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    int menuItemId = rs.getInt("menu_item_id");
+                    String itemName = rs.getString("item_name");
+                    String category = rs.getString("category");
+                    long unitPriceCents = Money.read(rs, "unit_price");
+
+                    // The captured unit price is what the customer was charged
+                    MenuItem menuItem = new MenuItem(menuItemId, itemName, "", Money.toDouble(unitPriceCents), category) {
+                        @Override
+                        public String getItemType() {
+                            return "Queued";
+                        }
+                    };
+                    queued.getOrder().addItem(menuItem, rs.getInt("quantity"), rs.getString("customizations"));
+                }
+            }
+        }
+    }
+
+    // Helper method to rebuild a queued order from ResultSet
+    private QueuedOrder createQueuedOrderFromResultSet(ResultSet rs) throws SQLException {
+        Order.ServiceType serviceType = Order.ServiceType.valueOf(rs.getString("service_type"));
+        Order order = new Order(0, rs.getInt("customer_id"), serviceType);
+        order.setTableNumber(rs.getInt("table_number"));
+        order.setSpecialInstructions(rs.getString("special_instructions"));
+        order.setDiscountCents(Money.read(rs, "discount"));
+        order.setOrderTime(LocalDateTime.ofInstant(Instant.ofEpochMilli(rs.getLong("order_time")), ZoneId.systemDefault()));
+
+        return new QueuedOrder(
+            rs.getLong("queue_id"),
+            rs.getString("idempotency_key"),
+            order,
+            QueueStatus.valueOf(rs.getString("status")),
+            rs.getInt("attempts"),
+            rs.getString("last_error")
+        );
+    }
+
+    // Inner class for an order waiting in the local queue
+    public static class QueuedOrder {
+        private final long queueId;
+        private final String idempotencyKey;
+        private final Order order;
+        private final QueueStatus status;
+        private final int attempts;
+        private final String lastError;
+
+        public QueuedOrder(long queueId, String idempotencyKey, Order order,
+                          QueueStatus status, int attempts, String lastError) {
+            this.queueId = queueId;
+            this.idempotencyKey = idempotencyKey;
+            this.order = order;
+            this.status = status;
+            this.attempts = attempts;
+            this.lastError = lastError;
+        }
+
+        public long getQueueId() { return queueId; }
+        public String getIdempotencyKey() { return idempotencyKey; }
+        public Order getOrder() { return order; }
+        public QueueStatus getStatus() { return status; }
+        public int getAttempts() { return attempts; }
+        public String getLastError() { return lastError; }
+
+        @Override
+        public String toString() {
+            return String.format("Queued order %s (%s, attempts: %d)%s", idempotencyKey, status, attempts,
+                    lastError != null ? " - " + lastError : "");
+        }
+    }
+}
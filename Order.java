@@ -1,10 +1,20 @@
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Predicate;
 
 /**
  * Order class representing customer orders
  * Manages order items, payment, and order status
+ * Line items are kept in a map by menu item, size and customizations, so the same
+ * drink made two ways stays two lines. The subtotal is updated by the delta of
+ * each change, so adding, removing or re-quantifying a line never re-prices the
+ * others. Tax and rule discounts come from a PricingPolicy.
  */
 public class Order {
     public enum OrderStatus {
@@ -17,15 +27,18 @@ public class Order {
     
     private int orderId;
     private int customerId;
-    private List<OrderItem> orderItems;
+    private Map<LineKey, OrderItem> orderItems;
     private OrderStatus status;
     private ServiceType serviceType;
     private LocalDateTime orderTime;
     private LocalDateTime completionTime;
-    private double subtotal;
-    private double tax;
-    private double discount;
-    private double totalAmount;
+    private long subtotalCents;
+    private long taxCents;
+    private long discountCents;
+    private long ruleDiscountCents;
+    private long totalCents;
+    private int totalItems;
+    private PricingPolicy pricingPolicy;
     private int tableNumber; // -1 for takeaway
     private String specialInstructions;
     
@@ -34,13 +47,14 @@ public class Order {
         this.orderId = orderId;
         this.customerId = customerId;
         this.serviceType = serviceType;
-        this.orderItems = new ArrayList<>();
+        this.orderItems = new LinkedHashMap<>();
         this.status = OrderStatus.PENDING;
         this.orderTime = LocalDateTime.now();
         this.tableNumber = -1;
         this.specialInstructions = "";
-        this.tax = 0.0;
-        this.discount = 0.0;
+        this.taxCents = 0;
+        this.discountCents = 0;
+        this.pricingPolicy = PricingPolicy.getDefault();
     }
     
     // Getters
@@ -53,7 +67,12 @@ public class Order {
     }
     
     public List<OrderItem> getOrderItems() {
-        return new ArrayList<>(orderItems);
+        return new ArrayList<>(orderItems.values());
+    }
+    
+    // Live view of the lines for read-only loops that shouldn't copy them (receipt rendering)
+    Collection<OrderItem> items() {
+        return orderItems.values();
     }
     
     public OrderStatus getStatus() {
@@ -73,19 +92,54 @@ public class Order {
     }
     
     public double getSubtotal() {
-        return subtotal;
+        return Money.toDouble(subtotalCents);
     }
     
     public double getTax() {
-        return tax;
+        return Money.toDouble(taxCents);
     }
     
     public double getDiscount() {
-        return discount;
+        return Money.toDouble(getDiscountCents());
     }
     
     public double getTotalAmount() {
-        return totalAmount;
+        return Money.toDouble(totalCents);
+    }
+    
+    public long getSubtotalCents() {
+        return subtotalCents;
+    }
+    
+    public long getTaxCents() {
+        return taxCents;
+    }
+    
+    // Manual discount plus discounts granted by pricing rules
+    public long getDiscountCents() {
+        return discountCents + ruleDiscountCents;
+    }
+    
+    public long getManualDiscountCents() {
+        return discountCents;
+    }
+    
+    public PricingPolicy getPricingPolicy() {
+        return pricingPolicy;
+    }
+    
+    // First line for a menu item, or null if the order has none
+    public OrderItem getItem(int menuItemId) {
+        for (OrderItem item : orderItems.values()) {
+            if (item.getMenuItem().getId() == menuItemId) {
+                return item;
+            }
+        }
+        return null;
+    }
+    
+    public long getTotalCents() {
+        return totalCents;
     }
     
     public int getTableNumber() {
@@ -110,37 +164,105 @@ public class Order {
         }
     }
     
+    public void setOrderTime(LocalDateTime orderTime) {
+        if (orderTime != null) {
+            this.orderTime = orderTime;
+        }
+    }
+    
     public void setSpecialInstructions(String specialInstructions) {
         this.specialInstructions = specialInstructions != null ? specialInstructions : "";
     }
     
     public void setDiscount(double discount) {
-        if (discount >= 0) {
-            this.discount = discount;
-            calculateTotal();
+        setDiscountCents(Money.toCents(discount));
+    }
+    
+    public void setDiscountCents(long discountCents) {
+        if (discountCents >= 0) {
+            this.discountCents = discountCents;
+            applyPricing();
+        }
+    }
+    
+    public void setPricingPolicy(PricingPolicy pricingPolicy) {
+        if (pricingPolicy != null) {
+            this.pricingPolicy = pricingPolicy;
+            applyPricing();
+        }
+    }
+    
+    // Restore the amounts stored with an order loaded from the database
+    public void restoreTotals(long subtotalCents, long taxCents, long discountCents, long totalCents) {
+        this.subtotalCents = subtotalCents;
+        this.taxCents = taxCents;
+        this.discountCents = discountCents;
+        this.ruleDiscountCents = 0;
+        this.totalCents = totalCents;
+    }
+    
+    // Put back a line loaded from the database at the price it was charged; restoreTotals follows
+    void restoreItem(OrderItem item) {
+        LineKey key = LineKey.of(item.getMenuItem(), item.getCustomizations());
+        OrderItem existing = orderItems.get(key);
+        if (existing != null) {
+            setLineQuantity(existing, existing.getQuantity() + item.getQuantity());
+            return;
         }
+        orderItems.put(key, item);
+        item.pricedTotalCents = item.getItemTotalCents();
+        subtotalCents += item.pricedTotalCents;
+        totalItems += item.getQuantity();
     }
     
     // Methods
     public void addItem(MenuItem menuItem, int quantity) {
+        addItem(menuItem, quantity, null);
+    }
+    
+    public void addItem(MenuItem menuItem, int quantity, String customizations) {
         if (menuItem != null && quantity > 0) {
-            // Check if item already exists in order
-            for (OrderItem item : orderItems) {
-                if (item.getMenuItem().getId() == menuItem.getId()) {
-                    item.setQuantity(item.getQuantity() + quantity);
-                    calculateTotal();
-                    return;
-                }
+            // Merge only into a line with the same size and customizations
+            LineKey key = LineKey.of(menuItem, customizations);
+            OrderItem item = orderItems.get(key);
+            if (item != null) {
+                setLineQuantity(item, item.getQuantity() + quantity);
+            } else {
+                item = new OrderItem(menuItem, quantity, customizations);
+                orderItems.put(key, item);
+                item.pricedTotalCents = item.getItemTotalCents();
+                subtotalCents += item.pricedTotalCents;
+                totalItems += quantity;
             }
-            // Add new item
-            orderItems.add(new OrderItem(menuItem, quantity));
-            calculateTotal();
+            applyPricing();
         }
     }
     
+    // Remove every line for a menu item
     public void removeItem(int menuItemId) {
-        orderItems.removeIf(item -> item.getMenuItem().getId() == menuItemId);
-        calculateTotal();
+        removeLines(item -> item.getMenuItem().getId() == menuItemId);
+    }
+    
+    // Remove one line, leaving other lines for the same menu item
+    public void removeItem(OrderItem line) {
+        removeLines(item -> item == line);
+    }
+    
+    private void removeLines(Predicate<OrderItem> matches) {
+        boolean removed = false;
+        Iterator<OrderItem> lines = orderItems.values().iterator();
+        while (lines.hasNext()) {
+            OrderItem item = lines.next();
+            if (matches.test(item)) {
+                lines.remove();
+                subtotalCents -= item.pricedTotalCents;
+                totalItems -= item.getQuantity();
+                removed = true;
+            }
+        }
+        if (removed) {
+            applyPricing();
+        }
     }
     
     public void updateItemQuantity(int menuItemId, int newQuantity) {
@@ -149,34 +271,85 @@ public class Order {
             return;
         }
         
-        for (OrderItem item : orderItems) {
-            if (item.getMenuItem().getId() == menuItemId) {
-                item.setQuantity(newQuantity);
-                calculateTotal();
-                return;
-            }
+        OrderItem item = getItem(menuItemId);
+        if (item != null) {
+            setLineQuantity(item, newQuantity);
+            applyPricing();
         }
     }
     
     public void clearOrder() {
         orderItems.clear();
-        calculateTotal();
+        subtotalCents = 0;
+        totalItems = 0;
+        applyPricing();
     }
     
-    private void calculateTotal() {
-        subtotal = orderItems.stream()
-                .mapToDouble(item -> item.getMenuItem().calculatePrice() * item.getQuantity())
-                .sum();
+    // Re-price every line from the menu items (e.g., after a price or size change)
+    public void recalculate() {
+        long subtotal = 0;
+        int items = 0;
+        for (OrderItem item : orderItems.values()) {
+            item.pricedTotalCents = item.getItemTotalCents();
+            subtotal += item.pricedTotalCents;
+            items += item.getQuantity();
+        }
+        subtotalCents = subtotal;
+        totalItems = items;
+        applyPricing();
+    }
+    
+    // Identity of an order line: menu item, the size it was ordered in, and its customizations
+    private static final class LineKey {
+        private final int menuItemId;
+        private final Coffee.Size size;
+        private final String customizations;
+        
+        private LineKey(int menuItemId, Coffee.Size size, String customizations) {
+            this.menuItemId = menuItemId;
+            this.size = size;
+            this.customizations = customizations;
+        }
+        
+        static LineKey of(MenuItem menuItem, String customizations) {
+            Coffee.Size size = menuItem instanceof Coffee ? ((Coffee) menuItem).getSize() : null;
+            return new LineKey(menuItem.getId(), size, customizations != null ? customizations : "");
+        }
         
-        // Calculate tax (8% tax rate)
-        tax = subtotal * 0.08;
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof LineKey)) return false;
+            LineKey other = (LineKey) obj;
+            return menuItemId == other.menuItemId && size == other.size
+                    && customizations.equals(other.customizations);
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(menuItemId, size, customizations);
+        }
+    }
+    
+    // Change one line and move the subtotal by the difference
+    private void setLineQuantity(OrderItem item, int newQuantity) {
+        totalItems += newQuantity - item.getQuantity();
+        item.setQuantity(newQuantity);
+        long lineTotal = item.getItemTotalCents();
+        subtotalCents += lineTotal - item.pricedTotalCents;
+        item.pricedTotalCents = lineTotal;
+    }
+    
+    private void applyPricing() {
+        taxCents = pricingPolicy.taxCents(this, subtotalCents);
+        ruleDiscountCents = pricingPolicy.discountCents(this, subtotalCents);
         
         // Calculate total
-        totalAmount = subtotal + tax - discount;
+        totalCents = subtotalCents + taxCents - discountCents - ruleDiscountCents;
         
         // Ensure total is not negative
-        if (totalAmount < 0) {
-            totalAmount = 0;
+        if (totalCents < 0) {
+            totalCents = 0;
         }
     }
     
@@ -185,39 +358,36 @@ public class Order {
     }
     
     public int getTotalItems() {
-        return orderItems.stream()
-                .mapToInt(OrderItem::getQuantity)
-                .sum();
+        return totalItems;
     }
     
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
-        sb.append(String.format("Order #%d (Customer ID: %d)\n", orderId, customerId));
-        sb.append(String.format("Status: %s | Service: %s\n", status, serviceType));
-        sb.append(String.format("Order Time: %s\n", orderTime));
+        sb.append("Order #").append(orderId).append(" (Customer ID: ").append(customerId).append(")\n");
+        sb.append("Status: ").append(status).append(" | Service: ").append(serviceType).append('\n');
+        sb.append("Order Time: ").append(orderTime).append('\n');
         
         if (serviceType == ServiceType.DINE_IN && tableNumber > 0) {
-            sb.append(String.format("Table: %d\n", tableNumber));
+            sb.append("Table: ").append(tableNumber).append('\n');
         }
         
         sb.append("\nItems:\n");
-        for (OrderItem item : orderItems) {
-            sb.append(String.format("- %s x%d = $%.2f\n", 
-                    item.getMenuItem().getName(), 
-                    item.getQuantity(), 
-                    item.getMenuItem().calculatePrice() * item.getQuantity()));
+        for (OrderItem item : orderItems.values()) {
+            sb.append("- ").append(item.getMenuItem().getName())
+              .append(" x").append(item.getQuantity())
+              .append(" = ").append(Money.format(item.getItemTotalCents())).append('\n');
         }
         
-        sb.append(String.format("\nSubtotal: $%.2f\n", subtotal));
-        sb.append(String.format("Tax: $%.2f\n", tax));
-        if (discount > 0) {
-            sb.append(String.format("Discount: -$%.2f\n", discount));
+        sb.append("\nSubtotal: ").append(Money.format(subtotalCents)).append('\n');
+        sb.append("Tax: ").append(Money.format(taxCents)).append('\n');
+        if (getDiscountCents() > 0) {
+            sb.append("Discount: -").append(Money.format(getDiscountCents())).append('\n');
         }
-        sb.append(String.format("Total: $%.2f\n", totalAmount));
+        sb.append("Total: ").append(Money.format(totalCents)).append('\n');
         
         if (!specialInstructions.isEmpty()) {
-            sb.append(String.format("Special Instructions: %s\n", specialInstructions));
+            sb.append("Special Instructions: ").append(specialInstructions).append('\n');
         }
         
         return sb.toString();
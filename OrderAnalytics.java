@@ -0,0 +1,569 @@
+import java.sql.*;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * OrderAnalytics class for fast reporting over order history
+ * Keeps a columnar snapshot of orders and order items in primitive arrays
+ * (epoch minutes, cent amounts, dictionary-encoded status/service/menu item)
+ * so report queries are plain array scans instead of List<Order> walks.
+ * The snapshot is refreshed incrementally: new rows are appended by id and
+ * rows touched since the last refresh are patched in place. Deleted orders stay
+ * as tombstone rows (status DELETED_CODE, amounts zeroed) so row positions,
+ * which callers resume from, never shift.
+ */
+public class OrderAnalytics {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // Status filters are bit masks indexed by Order.OrderStatus ordinal
+    public static final int ALL_STATUSES = -1;
+    // Status code of a deleted order's row; scans skip it explicitly, since ALL_STATUSES sets its bit too
+    private static final byte DELETED_CODE = 31;
+
+    private static OrderAnalytics instance;
+
+    // Fixed database, or null to read from ReportingReplica.getReportConnection()
+    private final DatabaseConnection fixedConnection;
+    private DatabaseConnection dbConnection;
+
+    // Order columns, one entry per order, sorted by order id
+    private int orderCount;
+    private int[] orderIds = new int[INITIAL_CAPACITY];
+    private long[] epochMinutes = new long[INITIAL_CAPACITY];
+    private int[] totalCents = new int[INITIAL_CAPACITY];
+    private byte[] statusCodes = new byte[INITIAL_CAPACITY];
+    private byte[] serviceCodes = new byte[INITIAL_CAPACITY];
+
+    // Order item columns, one entry per order line
+    private int itemCount;
+    private int[] itemOrderRows = new int[INITIAL_CAPACITY];
+    private int[] itemCodes = new int[INITIAL_CAPACITY];
+    private int[] itemQuantities = new int[INITIAL_CAPACITY];
+    private int[] itemCents = new int[INITIAL_CAPACITY];
+
+    // Menu item dictionary: menu item id <-> dense code
+    private final Map<Integer, Integer> menuItemCodes = new HashMap<>();
+    private int[] codeMenuItemIds = new int[64];
+
+    private int lastOrderId;
+    private int lastOrderItemId;
+    private int deletedOrders;
+    private String lastUpdatedAt = "";
+
+    // Snapshot fed from the reporting replica (or the primary while the replica is too stale)
+    public OrderAnalytics() {
+        this.fixedConnection = null;
+    }
+
+    public OrderAnalytics(DatabaseConnection dbConnection) {
+        this.fixedConnection = dbConnection;
+    }
+
+    // Get the shared analytics snapshot
+    public static synchronized OrderAnalytics getInstance() {
+        if (instance == null) {
+            instance = new OrderAnalytics();
+        }
+        return instance;
+    }
+
+    // Bring the snapshot up to date with the database
+    public synchronized boolean refresh() {
+        dbConnection = fixedConnection != null ? fixedConnection : ReportingReplica.getInstance().getReportConnection();
+        try {
+            int previousOrderId = lastOrderId;
+            loadNewOrders();
+            patchUpdatedOrders(previousOrderId);
+            loadNewOrderItems();
+            removeDeletedOrders();
+            return true;
+        } catch (SQLException e) {
+            System.err.println("Error refreshing order analytics: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Append orders created since the last refresh; a first load includes archived orders too
+    private void loadNewOrders() throws SQLException {
+        String query = "SELECT order_id, CAST(strftime('%s', order_time) AS INTEGER) / 60 AS epoch_minute, " +
+                      "CAST(ROUND(total_amount * 100) AS INTEGER) AS total_cents, status, service_type, updated_at " +
+                      "FROM " + OrderArchive.forDatabase(dbConnection).span(dbConnection, "orders") +
+                      " WHERE order_id > ? ORDER BY order_id";
+
+        try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
+            pstmt.setInt(1, lastOrderId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    ensureOrderCapacity(orderCount + 1);
+                    int row = orderCount++;
+                    orderIds[row] = rs.getInt("order_id");
+                    epochMinutes[row] = rs.getLong("epoch_minute");
+                    totalCents[row] = rs.getInt("total_cents");
+                    statusCodes[row] = statusCode(rs.getString("status"));
+                    serviceCodes[row] = serviceCode(rs.getString("service_type"));
+                    lastOrderId = orderIds[row];
+                    trackUpdatedAt(rs.getString("updated_at"));
+                }
+            }
+        }
+    }
+
+    // Re-read status and amount of already loaded orders that changed since the last refresh
+    private void patchUpdatedOrders(int previousOrderId) throws SQLException {
+        if (previousOrderId == 0) {
+            return;
+        }
+        String query = "SELECT order_id, CAST(ROUND(total_amount * 100) AS INTEGER) AS total_cents, status, updated_at " +
+                      "FROM orders WHERE order_id <= ? AND updated_at >= ?";
+
+        try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
+            pstmt.setInt(1, previousOrderId);
+            pstmt.setString(2, lastUpdatedAt);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    int row = Arrays.binarySearch(orderIds, 0, orderCount, rs.getInt("order_id"));
+                    if (row >= 0) {
+                        totalCents[row] = rs.getInt("total_cents");
+                        statusCodes[row] = statusCode(rs.getString("status"));
+                    }
+                    trackUpdatedAt(rs.getString("updated_at"));
+                }
+            }
+        }
+    }
+
+    // Append order items created since the last refresh. An item whose order is newer than the
+    // loaded orders (committed between the two queries) stops the cursor, so it is read again next time.
+    private void loadNewOrderItems() throws SQLException {
+        String query = "SELECT order_item_id, order_id, menu_item_id, quantity, " +
+                      "CAST(ROUND(total_price * 100) AS INTEGER) AS total_cents " +
+                      "FROM " + OrderArchive.forDatabase(dbConnection).span(dbConnection, "order_items") +
+                      " WHERE order_item_id > ? ORDER BY order_item_id";
+
+        try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
+            pstmt.setInt(1, lastOrderItemId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    int orderId = rs.getInt("order_id");
+                    int orderRow = Arrays.binarySearch(orderIds, 0, orderCount, orderId);
+                    if (orderRow < 0) {
+                        if (orderId > lastOrderId) {
+                            break;
+                        }
+                        // Its order was deleted before it was ever loaded
+                        lastOrderItemId = rs.getInt("order_item_id");
+                        continue;
+                    }
+                    lastOrderItemId = rs.getInt("order_item_id");
+                    ensureItemCapacity(itemCount + 1);
+                    int row = itemCount++;
+                    itemOrderRows[row] = orderRow;
+                    itemCodes[row] = menuItemCode(rs.getInt("menu_item_id"));
+                    itemQuantities[row] = rs.getInt("quantity");
+                    itemCents[row] = rs.getInt("total_cents");
+                }
+            }
+        }
+    }
+
+    // Tombstone orders that are gone from both tiers. Deletes are rare, so a cheap count
+    // decides whether the full id list has to be read.
+    private void removeDeletedOrders() throws SQLException {
+        String span = OrderArchive.forDatabase(dbConnection).span(dbConnection, "orders");
+        int stored;
+        try (PreparedStatement pstmt = dbConnection.prepareStatement(
+                "SELECT COUNT(*) FROM " + span + " WHERE order_id <= ?")) {
+            pstmt.setInt(1, lastOrderId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                stored = rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+        if (stored >= orderCount - deletedOrders) {
+            return;
+        }
+
+        boolean[] present = new boolean[orderCount];
+        try (PreparedStatement pstmt = dbConnection.prepareStatement(
+                "SELECT order_id FROM " + span + " WHERE order_id <= ?")) {
+            pstmt.setInt(1, lastOrderId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    int row = Arrays.binarySearch(orderIds, 0, orderCount, rs.getInt("order_id"));
+                    if (row >= 0) {
+                        present[row] = true;
+                    }
+                }
+            }
+        }
+        boolean[] deleted = new boolean[orderCount];
+        for (int row = 0; row < orderCount; row++) {
+            if (!present[row] && statusCodes[row] != DELETED_CODE) {
+                deleted[row] = true;
+                statusCodes[row] = DELETED_CODE;
+                totalCents[row] = 0;
+                deletedOrders++;
+            }
+        }
+        for (int row = 0; row < itemCount; row++) {
+            if (deleted[itemOrderRows[row]]) {
+                itemQuantities[row] = 0;
+                itemCents[row] = 0;
+            }
+        }
+    }
+
+    // Revenue in cents per local hour of day for orders in [from, to)
+    public long[] getRevenueByHour(LocalDateTime from, LocalDateTime to, int statusMask) {
+        long[] revenue = new long[24];
+        revenueByHour(toEpochMinute(from), toEpochMinute(to), ZoneId.systemDefault(), statusMask, revenue);
+        return revenue;
+    }
+
+    // Adds revenue in cents per local hour into out[0..23]. Each order takes the zone offset in
+    // force at its own time, so a range across a DST change files every order under the right hour.
+    public synchronized void revenueByHour(long fromMinute, long toMinute, ZoneId zone, int statusMask, long[] out) {
+        LocalOffsets offsets = LocalOffsets.of(zone, fromMinute, toMinute);
+        for (int row = 0; row < orderCount; row++) {
+            long minute = epochMinutes[row];
+            if (minute < fromMinute || minute >= toMinute || !selected(row, statusMask)) {
+                continue;
+            }
+            int hour = (int) Math.floorMod(Math.floorDiv(minute + offsets.at(minute), 60L), 24L);
+            out[hour] += totalCents[row];
+        }
+    }
+
+    // Allocation-free scan: adds revenue in cents per Order.ServiceType ordinal into out
+    public synchronized void revenueByServiceType(long fromMinute, long toMinute, int statusMask, long[] out) {
+        for (int row = 0; row < orderCount; row++) {
+            long minute = epochMinutes[row];
+            if (minute < fromMinute || minute >= toMinute || !selected(row, statusMask)) {
+                continue;
+            }
+            out[serviceCodes[row]] += totalCents[row];
+        }
+    }
+
+    // Allocation-free scan: adds quantity sold per menu item code into out
+    public synchronized void itemMix(long fromMinute, long toMinute, int statusMask, long[] out) {
+        for (int row = 0; row < itemCount; row++) {
+            int orderRow = itemOrderRows[row];
+            long minute = epochMinutes[orderRow];
+            if (minute < fromMinute || minute >= toMinute || !selected(orderRow, statusMask)) {
+                continue;
+            }
+            out[itemCodes[row]] += itemQuantities[row];
+        }
+    }
+
+    // Quantity sold per local day and menu item code, for item rows from fromRow on plus the
+    // carried rows a previous call handed back: quantities[day - firstEpochDay][code]. Each row
+    // takes the zone offset in force at its order's time. Rows whose order falls on or after
+    // endEpochDay are not counted but carried, so passing nextRow and the carried rows to the
+    // next call counts every row exactly once, however late it was loaded. Chunks of rows are
+    // summed in parallel.
+    public synchronized DailyMix dailyItemMix(int fromRow, int[] carriedRows, long firstEpochDay, long endEpochDay,
+                                              ZoneId zone, int statusMask) {
+        int days = (int) Math.max(0, endEpochDay - firstEpochDay);
+        int codes = menuItemCodes.size();
+        // Offsets never exceed 18 hours, so rows outside this range are outside the days asked for
+        LocalOffsets offsets = LocalOffsets.of(zone, firstEpochDay * 1440 - 1080, endEpochDay * 1440 + 1080);
+        int[] rowsToScan = new int[carriedRows.length + Math.max(0, itemCount - fromRow)];
+        System.arraycopy(carriedRows, 0, rowsToScan, 0, carriedRows.length);
+        for (int row = fromRow; row < itemCount; row++) {
+            rowsToScan[carriedRows.length + row - fromRow] = row;
+        }
+
+        int rows = rowsToScan.length;
+        int chunks = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), rows / 16384));
+        int chunkSize = (rows + chunks - 1) / Math.max(1, chunks);
+        long[][] mix = IntStream.range(0, chunks).parallel().mapToObj(chunk -> {
+            long[][] partial = new long[days][codes];
+            int end = Math.min(rows, (chunk + 1) * chunkSize);
+            for (int i = chunk * chunkSize; i < end; i++) {
+                int row = rowsToScan[i];
+                int orderRow = itemOrderRows[row];
+                long minute = epochMinutes[orderRow];
+                long day = Math.floorDiv(minute + offsets.at(minute), 1440L);
+                if (day >= firstEpochDay && day < endEpochDay && selected(orderRow, statusMask)) {
+                    partial[(int) (day - firstEpochDay)][itemCodes[row]] += itemQuantities[row];
+                }
+            }
+            return partial;
+        }).reduce((a, b) -> {
+            for (int day = 0; day < days; day++) {
+                for (int code = 0; code < codes; code++) {
+                    a[day][code] += b[day][code];
+                }
+            }
+            return a;
+        }).orElseGet(() -> new long[days][codes]);
+
+        int carried = 0;
+        int[] carry = new int[rows];
+        for (int row : rowsToScan) {
+            long minute = epochMinutes[itemOrderRows[row]];
+            if (Math.floorDiv(minute + offsets.at(minute), 1440L) >= endEpochDay) {
+                carry[carried++] = row;
+            }
+        }
+        return new DailyMix(mix, itemCount, Arrays.copyOf(carry, carried));
+    }
+
+    // Menu item id for a dense code used by itemMix and dailyItemMix
+    public synchronized int getMenuItemId(int code) {
+        return codeMenuItemIds[code];
+    }
+
+    public synchronized int getMenuItemCodeCount() {
+        return menuItemCodes.size();
+    }
+
+    // Get the best selling menu items in [from, to), most sold first
+    public synchronized ItemSales[] getTopItems(LocalDateTime from, LocalDateTime to, int statusMask, int limit) {
+        long[] quantities = new long[menuItemCodes.size()];
+        itemMix(toEpochMinute(from), toEpochMinute(to), statusMask, quantities);
+
+        long[] revenue = new long[quantities.length];
+        long fromMinute = toEpochMinute(from);
+        long toMinute = toEpochMinute(to);
+        for (int row = 0; row < itemCount; row++) {
+            int orderRow = itemOrderRows[row];
+            long minute = epochMinutes[orderRow];
+            if (minute >= fromMinute && minute < toMinute && selected(orderRow, statusMask)) {
+                revenue[itemCodes[row]] += itemCents[row];
+            }
+        }
+
+        Integer[] codes = new Integer[quantities.length];
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = i;
+        }
+        Arrays.sort(codes, (a, b) -> Long.compare(quantities[b], quantities[a]));
+
+        int size = 0;
+        while (size < codes.length && size < limit && quantities[codes[size]] > 0) {
+            size++;
+        }
+        ItemSales[] top = new ItemSales[size];
+        for (int i = 0; i < size; i++) {
+            int code = codes[i];
+            top[i] = new ItemSales(codeMenuItemIds[code], quantities[code], revenue[code]);
+        }
+        return top;
+    }
+
+    // Get order counts and revenue for orders in [from, to)
+    public synchronized SalesSummary getSalesSummary(LocalDateTime from, LocalDateTime to) {
+        long fromMinute = toEpochMinute(from);
+        long toMinute = toEpochMinute(to);
+        byte completed = (byte) Order.OrderStatus.COMPLETED.ordinal();
+        byte cancelled = (byte) Order.OrderStatus.CANCELLED.ordinal();
+
+        int totalOrders = 0;
+        int completedOrders = 0;
+        int cancelledOrders = 0;
+        long completedCents = 0;
+        for (int row = 0; row < orderCount; row++) {
+            long minute = epochMinutes[row];
+            if (minute < fromMinute || minute >= toMinute) {
+                continue;
+            }
+            if (statusCodes[row] == DELETED_CODE) {
+                continue;
+            }
+            totalOrders++;
+            if (statusCodes[row] == completed) {
+                completedOrders++;
+                completedCents += totalCents[row];
+            } else if (statusCodes[row] == cancelled) {
+                cancelledOrders++;
+            }
+        }
+        return new SalesSummary(totalOrders, completedOrders, cancelledOrders, completedCents);
+    }
+
+    // Whether an order row is live and its status is in the mask
+    private boolean selected(int orderRow, int statusMask) {
+        byte status = statusCodes[orderRow];
+        return status != DELETED_CODE && (statusMask & (1 << status)) != 0;
+    }
+
+    // Build a status filter mask from order statuses
+    public static int statusMask(Order.OrderStatus... statuses) {
+        int mask = 0;
+        for (Order.OrderStatus status : statuses) {
+            mask |= 1 << status.ordinal();
+        }
+        return mask;
+    }
+
+    public synchronized int getOrderCount() {
+        return orderCount;
+    }
+
+    public synchronized int getOrderItemCount() {
+        return itemCount;
+    }
+
+    public static long toEpochMinute(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toEpochSecond() / 60;
+    }
+
+    private void trackUpdatedAt(String updatedAt) {
+        if (updatedAt != null && updatedAt.compareTo(lastUpdatedAt) > 0) {
+            lastUpdatedAt = updatedAt;
+        }
+    }
+
+    private static byte statusCode(String status) {
+        try {
+            return (byte) Order.OrderStatus.valueOf(status).ordinal();
+        } catch (IllegalArgumentException | NullPointerException e) {
+            return (byte) Order.OrderStatus.PENDING.ordinal();
+        }
+    }
+
+    private static byte serviceCode(String serviceType) {
+        try {
+            return (byte) Order.ServiceType.valueOf(serviceType).ordinal();
+        } catch (IllegalArgumentException | NullPointerException e) {
+            return (byte) Order.ServiceType.TAKEAWAY.ordinal();
+        }
+    }
+
+    private int menuItemCode(int menuItemId) {
+        Integer code = menuItemCodes.get(menuItemId);
+        if (code == null) {
+            code = menuItemCodes.size();
+            if (code == codeMenuItemIds.length) {
+                codeMenuItemIds = Arrays.copyOf(codeMenuItemIds, code * 2);
+            }
+            codeMenuItemIds[code] = menuItemId;
+            menuItemCodes.put(menuItemId, code);
+        }
+        return code;
+    }
+
+    private void ensureOrderCapacity(int required) {
+        if (required > orderIds.length) {
+            int capacity = Math.max(required, orderIds.length * 2);
+            orderIds = Arrays.copyOf(orderIds, capacity);
+            epochMinutes = Arrays.copyOf(epochMinutes, capacity);
+            totalCents = Arrays.copyOf(totalCents, capacity);
+            statusCodes = Arrays.copyOf(statusCodes, capacity);
+            serviceCodes = Arrays.copyOf(serviceCodes, capacity);
+        }
+    }
+
+    private void ensureItemCapacity(int required) {
+        if (required > itemOrderRows.length) {
+            int capacity = Math.max(required, itemOrderRows.length * 2);
+            itemOrderRows = Arrays.copyOf(itemOrderRows, capacity);
+            itemCodes = Arrays.copyOf(itemCodes, capacity);
+            itemQuantities = Arrays.copyOf(itemQuantities, capacity);
+            itemCents = Arrays.copyOf(itemCents, capacity);
+        }
+    }
+
+    // Inner class for a zone's UTC offsets (minutes) over a span of epoch minutes, found once per
+    // span so scans look offsets up per row without ZoneRules calls
+    static class LocalOffsets {
+        private final long[] starts;
+        private final int[] offsets;
+
+        private LocalOffsets(long[] starts, int[] offsets) {
+            this.starts = starts;
+            this.offsets = offsets;
+        }
+
+        static LocalOffsets of(ZoneId zone, long fromMinute, long toMinute) {
+            ZoneRules rules = zone.getRules();
+            Instant start = Instant.ofEpochSecond(fromMinute * 60);
+            long[] starts = {Long.MIN_VALUE};
+            int[] offsets = {rules.getOffset(start).getTotalSeconds() / 60};
+            ZoneOffsetTransition transition = rules.nextTransition(start);
+            while (transition != null && transition.toEpochSecond() / 60 < toMinute) {
+                starts = Arrays.copyOf(starts, starts.length + 1);
+                offsets = Arrays.copyOf(offsets, offsets.length + 1);
+                starts[starts.length - 1] = transition.toEpochSecond() / 60;
+                offsets[offsets.length - 1] = transition.getOffsetAfter().getTotalSeconds() / 60;
+                transition = rules.nextTransition(transition.getInstant());
+            }
+            return new LocalOffsets(starts, offsets);
+        }
+
+        // Offset in force at an epoch minute
+        int at(long minute) {
+            int index = Arrays.binarySearch(starts, minute);
+            return offsets[index >= 0 ? index : -index - 2];
+        }
+    }
+
+    // Inner class for a dailyItemMix result and where the next call picks up
+    public static class DailyMix {
+        private final long[][] quantities;
+        private final int nextRow;
+        private final int[] carriedRows;
+
+        public DailyMix(long[][] quantities, int nextRow, int[] carriedRows) {
+            this.quantities = quantities;
+            this.nextRow = nextRow;
+            this.carriedRows = carriedRows;
+        }
+
+        public long[][] getQuantities() { return quantities; }
+        public int getNextRow() { return nextRow; }
+        public int[] getCarriedRows() { return carriedRows; }
+    }
+
+    // Inner class for per-item sales figures
+    public static class ItemSales {
+        private final int menuItemId;
+        private final long quantity;
+        private final long revenueCents;
+
+        public ItemSales(int menuItemId, long quantity, long revenueCents) {
+            this.menuItemId = menuItemId;
+            this.quantity = quantity;
+            this.revenueCents = revenueCents;
+        }
+
+        public int getMenuItemId() { return menuItemId; }
+        public long getQuantity() { return quantity; }
+        public long getRevenueCents() { return revenueCents; }
+        public double getRevenue() { return revenueCents / 100.0; }
+    }
+
+    // Inner class for sales totals over a time range
+    public static class SalesSummary {
+        private final int totalOrders;
+        private final int completedOrders;
+        private final int cancelledOrders;
+        private final long completedRevenueCents;
+
+        public SalesSummary(int totalOrders, int completedOrders, int cancelledOrders, long completedRevenueCents) {
+            this.totalOrders = totalOrders;
+            this.completedOrders = completedOrders;
+            this.cancelledOrders = cancelledOrders;
+            this.completedRevenueCents = completedRevenueCents;
+        }
+
+        public int getTotalOrders() { return totalOrders; }
+        public int getCompletedOrders() { return completedOrders; }
+        public int getCancelledOrders() { return cancelledOrders; }
+        public long getCompletedRevenueCents() { return completedRevenueCents; }
+        public double getCompletedRevenue() { return completedRevenueCents / 100.0; }
+
+        public double getAvgOrderValue() {
+            return completedOrders > 0 ? completedRevenueCents / 100.0 / completedOrders : 0;
+        }
+    }
+}
@@ -0,0 +1,690 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * OrderApiServer class for taking online and kiosk orders over HTTP/JSON
+ * Runs without the Swing/console apps (see main) or alongside the console app
+ * with -Dcoffeeshop.api=true.
+ *
+ *   GET  /api/menu[?category=]        available menu items
+ *   GET  /api/menu/{id}               one menu item
+ *   POST /api/orders                  place an order (Idempotency-Key header honoured)
+ *   GET  /api/orders/{id}             order status, lines and totals
+ *   POST /api/orders/{id}/payments    pay for an order and confirm it (Idempotency-Key header honoured)
+ *   GET  /api/kitchen/feed            live order events for kitchen displays (SSE, see KitchenFeed)
+ *   GET  /api/metrics                 per-route request counts and latency
+ *
+ * Each request runs on its own virtual thread when the JVM has them, otherwise
+ * on a fixed pool. Menu reads come from MenuCatalog's in-memory copy; every
+ * other database call, read or write, is handed to a single database thread
+ * through a bounded queue, since the server's DAOs share one SQLite connection
+ * (its own, not the process-wide one the console and views use) and a read on
+ * another thread would run inside (and see) that thread's open transaction. When that queue is full the request is turned away with 503 and
+ * Retry-After instead of piling up behind it.
+ */
+public class OrderApiServer {
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+    private static final int MAX_QUANTITY = 99;
+
+    private static OrderApiServer instance;
+
+    private final int port;
+    private final MenuCatalog menuCatalog;
+    private final OrderDAO orderDAO;
+    private final PaymentDAO paymentDAO;
+    private final KitchenFeed kitchenFeed;
+    private final int guestCustomerId;
+    private final int writeQueueCapacity;
+    private final Map<String, RouteStats> routeStats = new LinkedHashMap<>();
+    private final LongAdder rejectedWrites = new LongAdder();
+    private HttpServer server;
+    private ExecutorService requestExecutor;
+    private ThreadPoolExecutor writeExecutor;
+
+    public OrderApiServer(int port, MenuCatalog menuCatalog, OrderDAO orderDAO, PaymentDAO paymentDAO,
+                          KitchenFeed kitchenFeed) {
+        this.port = port;
+        this.menuCatalog = menuCatalog;
+        this.orderDAO = orderDAO;
+        this.paymentDAO = paymentDAO;
+        this.kitchenFeed = kitchenFeed;
+        // Orders placed without a customerId are booked to this customer (the register's walk-in account)
+        this.guestCustomerId = Integer.getInteger("coffeeshop.apiGuestCustomerId", 1);
+        this.writeQueueCapacity = Integer.getInteger("coffeeshop.apiMaxQueuedWrites", 64);
+        for (String route : new String[] {"GET /api/menu", "GET /api/menu/{id}", "POST /api/orders",
+                                          "GET /api/orders/{id}", "POST /api/orders/{id}/payments",
+                                          "GET /api/kitchen/feed", "GET /api/metrics", "other"}) {
+            routeStats.put(route, new RouteStats());
+        }
+    }
+
+    // Get the shared server on coffeeshop.apiPort, writing through its own connection to the primary
+    public static synchronized OrderApiServer getInstance() {
+        if (instance == null) {
+            DatabaseConnection connection = new DatabaseConnection(DatabaseConnection.getInstance().getDatabaseName());
+            instance = new OrderApiServer(Integer.getInteger("coffeeshop.apiPort", 8080),
+                    MenuCatalog.getInstance(), new OrderDAO(connection), new PaymentDAO(connection),
+                    KitchenFeed.getInstance());
+        }
+        return instance;
+    }
+
+    // Start listening; false if the port can't be bound
+    public synchronized boolean start() {
+        if (server != null) {
+            return true;
+        }
+        try {
+            server = HttpServer.create(new InetSocketAddress(port), 0);
+        } catch (IOException e) {
+            System.err.println("Error starting order API on port " + port + ": " + e.getMessage());
+            return false;
+        }
+        requestExecutor = newPerTaskExecutor("order-api", Integer.getInteger("coffeeshop.apiThreads", 16));
+        writeExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(writeQueueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "order-api-writer");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        server.createContext("/api/", this::handle);
+        server.setExecutor(requestExecutor);
+        server.start();
+        kitchenFeed.start();
+        System.out.println("Order API listening on port " + server.getAddress().getPort());
+        return true;
+    }
+
+    public synchronized void stop() {
+        if (server == null) {
+            return;
+        }
+        kitchenFeed.stop();
+        server.stop(1);
+        requestExecutor.shutdown();
+        writeExecutor.shutdown();
+        try {
+            writeExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        server = null;
+    }
+
+    // A virtual thread per task on Java 21+, otherwise a fixed pool of daemon threads
+    static ExecutorService newPerTaskExecutor(String threadName, int fallbackThreads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(fallbackThreads, runnable -> {
+                Thread thread = new Thread(runnable, threadName);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private void handle(HttpExchange exchange) {
+        long startNanos = System.nanoTime();
+        String route = "other";
+        int status = 500;
+        boolean streaming = false;
+        try {
+            String method = exchange.getRequestMethod();
+            String[] path = exchange.getRequestURI().getPath().replaceAll("/+$", "").split("/");
+            // path[0] is empty and path[1] is "api"
+            String resource = path.length > 2 ? path[2] : "";
+
+            if (resource.equals("menu") && path.length == 3) {
+                route = "GET /api/menu";
+                requireMethod(method, "GET");
+                status = listMenu(exchange);
+            } else if (resource.equals("menu") && path.length == 4) {
+                route = "GET /api/menu/{id}";
+                requireMethod(method, "GET");
+                status = getMenuItem(exchange, parseId(path[3]));
+            } else if (resource.equals("orders") && path.length == 3) {
+                route = "POST /api/orders";
+                requireMethod(method, "POST");
+                status = placeOrder(exchange);
+            } else if (resource.equals("orders") && path.length == 4) {
+                route = "GET /api/orders/{id}";
+                requireMethod(method, "GET");
+                status = getOrder(exchange, parseId(path[3]));
+            } else if (resource.equals("orders") && path.length == 5 && path[4].equals("payments")) {
+                route = "POST /api/orders/{id}/payments";
+                requireMethod(method, "POST");
+                status = payOrder(exchange, parseId(path[3]));
+            } else if (resource.equals("kitchen") && path.length == 4 && path[3].equals("feed")) {
+                route = "GET /api/kitchen/feed";
+                requireMethod(method, "GET");
+                if (!kitchenFeed.attach(exchange)) {
+                    throw new ApiException(503, "Kitchen feed is full or not running", 5);
+                }
+                // The feed owns the exchange from here and closes it when the display goes away
+                streaming = true;
+                status = 200;
+            } else if (resource.equals("metrics") && path.length == 3) {
+                route = "GET /api/metrics";
+                requireMethod(method, "GET");
+                status = sendJson(exchange, 200, this::writeMetrics);
+            } else {
+                throw new ApiException(404, "No such endpoint");
+            }
+        } catch (ApiException e) {
+            status = e.status;
+            if (e.retryAfterSeconds > 0) {
+                exchange.getResponseHeaders().set("Retry-After", Integer.toString(e.retryAfterSeconds));
+            }
+            sendError(exchange, e.status, e.getMessage());
+        } catch (IOException e) {
+            // Client went away mid-response; nothing left to send
+            status = 499;
+        } catch (RuntimeException e) {
+            System.err.println("Order API error on " + route + ": " + e);
+            status = 500;
+            sendError(exchange, 500, "Internal error");
+        } finally {
+            if (!streaming) {
+                exchange.close();
+            }
+            routeStats.get(route).record(System.nanoTime() - startNanos, status);
+        }
+    }
+
+    // GET /api/menu[?category=]
+    private int listMenu(HttpExchange exchange) throws IOException {
+        String category = queryParameter(exchange.getRequestURI(), "category");
+        List<MenuItem> items = category == null ? menuCatalog.getAvailableItems()
+                                                : menuCatalog.getItemsByCategory(category);
+        return sendJson(exchange, 200, json -> {
+            json.beginArray();
+            for (MenuItem item : items) {
+                writeMenuItem(json, item);
+            }
+            json.endArray();
+        });
+    }
+
+    // GET /api/menu/{id}
+    private int getMenuItem(HttpExchange exchange, int menuItemId) throws IOException, ApiException {
+        MenuItem item = menuCatalog.getItem(menuItemId);
+        if (item == null) {
+            throw new ApiException(404, "Menu item " + menuItemId + " not found");
+        }
+        return sendJson(exchange, 200, json -> writeMenuItem(json, item));
+    }
+
+    // POST /api/orders
+    // {"items":[{"menuItemId":1,"quantity":2,"customizations":"oat milk"}], "customerId":7,
+    //  "serviceType":"DINE_IN", "tableNumber":4, "specialInstructions":"..."}
+    private int placeOrder(HttpExchange exchange) throws IOException, ApiException {
+        Map<String, Object> body = readBody(exchange);
+        String idempotencyKey = exchange.getRequestHeaders().getFirst("Idempotency-Key");
+
+        Order.ServiceType serviceType = parseEnum(Order.ServiceType.class,
+                stringField(body, "serviceType", "TAKEAWAY"), "serviceType");
+        int customerId = intField(body, "customerId", guestCustomerId);
+        Order order = new Order(0, customerId, serviceType);
+        order.setTableNumber(intField(body, "tableNumber", 0));
+        order.setSpecialInstructions(stringField(body, "specialInstructions", null));
+
+        Object items = body.get("items");
+        if (!(items instanceof List) || ((List<?>) items).isEmpty()) {
+            throw new ApiException(400, "items must be a non-empty array");
+        }
+        for (Object entry : (List<?>) items) {
+            if (!(entry instanceof Map)) {
+                throw new ApiException(400, "Each item must be an object");
+            }
+            @SuppressWarnings("unchecked")
+            Map<String, Object> line = (Map<String, Object>) entry;
+            int menuItemId = intField(line, "menuItemId", -1);
+            int quantity = intField(line, "quantity", 1);
+            MenuItem menuItem = menuCatalog.getItem(menuItemId);
+            if (menuItem == null || !menuItem.isAvailable()) {
+                throw new ApiException(422, "Menu item " + menuItemId + " is not available");
+            }
+            if (quantity < 1 || quantity > MAX_QUANTITY) {
+                throw new ApiException(422, "quantity must be between 1 and " + MAX_QUANTITY);
+            }
+            order.addItem(menuItem, quantity, stringField(line, "customizations", null));
+        }
+
+        // A replayed idempotency key answers with the order it created the first time
+        int[] created = new int[1];
+        Order saved = write(() -> {
+            created[0] = orderDAO.createOrders(Collections.singletonList(order),
+                                               Collections.singletonList(idempotencyKey))[0];
+            return orderDAO.getOrderById(created[0]);
+        });
+        int orderId = created[0];
+        Order result = saved != null ? saved : order;
+        exchange.getResponseHeaders().set("Location", "/api/orders/" + orderId);
+        return sendJson(exchange, 201, json -> writeOrder(json, orderId, result, false));
+    }
+
+    // GET /api/orders/{id}
+    private int getOrder(HttpExchange exchange, int orderId) throws IOException, ApiException {
+        boolean[] fullyPaid = new boolean[1];
+        Order order = read(() -> {
+            Order found = orderDAO.getOrderById(orderId);
+            fullyPaid[0] = found != null && paymentDAO.isOrderFullyPaid(orderId);
+            return found;
+        });
+        if (order == null) {
+            throw new ApiException(404, "Order " + orderId + " not found");
+        }
+        boolean paid = fullyPaid[0];
+        return sendJson(exchange, 200, json -> writeOrder(json, orderId, order, paid));
+    }
+
+    // POST /api/orders/{id}/payments
+    // {"method":"CREDIT_CARD", "amount":12.50, "transactionReference":"..."}; amount defaults to the order total.
+    // A card or mobile payment sent with "paymentToken" instead of a reference is charged through the
+    // payment gateway in the background: the answer is 202 and the order shows as paid once captured.
+    private int payOrder(HttpExchange exchange, int orderId) throws IOException, ApiException {
+        Map<String, Object> body = readBody(exchange);
+        Order order = read(() -> orderDAO.getOrderById(orderId));
+        if (order == null) {
+            throw new ApiException(404, "Order " + orderId + " not found");
+        }
+        if (order.getStatus() == Order.OrderStatus.CANCELLED) {
+            throw new ApiException(409, "Order " + orderId + " is cancelled");
+        }
+
+        Payment.PaymentMethod method = parseEnum(Payment.PaymentMethod.class,
+                stringField(body, "method", null), "method");
+        long amountCents = order.getTotalCents();
+        Object amount = body.get("amount");
+        if (amount != null) {
+            if (!(amount instanceof BigDecimal) || ((BigDecimal) amount).signum() < 0) {
+                throw new ApiException(400, "amount must be a non-negative number");
+            }
+            amountCents = Money.toCents((BigDecimal) amount);
+        }
+        String reference = stringField(body, "transactionReference", null);
+        String paymentToken = stringField(body, "paymentToken", null);
+        String idempotencyKey = exchange.getRequestHeaders().getFirst("Idempotency-Key");
+        boolean viaGateway = (reference == null || reference.isEmpty()) && paymentToken != null && !paymentToken.isEmpty()
+                && method != Payment.PaymentMethod.CASH && method != Payment.PaymentMethod.LOYALTY_POINTS;
+        Payment payment = new Payment(0, orderId, method, Money.ofCents(amountCents));
+        payment.setTransactionReference(reference);
+
+        long paidCents = amountCents;
+        // A replayed idempotency key answers with the payment it created the first time
+        Payment.PaymentStatus[] recorded = new Payment.PaymentStatus[1];
+        int paymentId = write(() -> {
+            int id = paymentDAO.createPayment(payment, idempotencyKey);
+            if (id == PaymentDAO.DUPLICATE_REFERENCE || id == PaymentDAO.IDEMPOTENCY_KEY_REUSED) {
+                return id;
+            }
+            if (id <= 0) {
+                throw new SQLException("Payment row was not inserted");
+            }
+            if (reference != null && !reference.isEmpty()) {
+                paymentDAO.processPayment(id, reference);
+            }
+            if (order.getStatus() == Order.OrderStatus.PENDING) {
+                orderDAO.updateOrderStatus(orderId, Order.OrderStatus.CONFIRMED);
+            }
+            recorded[0] = paymentDAO.getPaymentStatus(id);
+            return id;
+        });
+        if (paymentId == PaymentDAO.DUPLICATE_REFERENCE) {
+            throw new ApiException(409, "Transaction reference " + reference + " is already recorded");
+        }
+        if (paymentId == PaymentDAO.IDEMPOTENCY_KEY_REUSED) {
+            throw new ApiException(422, "Idempotency-Key was already used for a different payment");
+        }
+        Payment.PaymentStatus status = recorded[0];
+        if (viaGateway && status == Payment.PaymentStatus.PENDING) {
+            chargeThroughGateway(payment, paymentId, paymentToken, idempotencyKey);
+        }
+
+        return sendJson(exchange, viaGateway ? 202 : 201, json -> json.beginObject()
+                .name("paymentId").value(paymentId)
+                .name("orderId").value(orderId)
+                .name("method").value(method.toString())
+                .name("amount").money(paidCents)
+                .name("status").value((status != null ? status : Payment.PaymentStatus.PENDING).toString())
+                .endObject());
+    }
+
+    // Authorize and capture without holding the request; the outcome is written on the writer thread.
+    // A capture that got no answer is recorded as PENDING_RECONCILE, not FAILED: the processor may have taken it.
+    private void chargeThroughGateway(Payment payment, int paymentId, String paymentToken, String idempotencyKey) {
+        String key = idempotencyKey != null && !idempotencyKey.isEmpty() ? idempotencyKey : "payment-" + paymentId;
+        payment.processThroughGateway(ResilientPaymentGateway.getInstance(), paymentToken, key)
+            .thenAccept(captured -> {
+                try {
+                    writeExecutor.submit(() -> recordGatewayResult(paymentDAO, paymentId, payment, captured));
+                } catch (RejectedExecutionException e) {
+                    // Queue full or server stopping: write it on a connection of its own rather than lose it
+                    DatabaseConnection connection = new DatabaseConnection(DatabaseConnection.getInstance().getDatabaseName());
+                    try {
+                        if (!recordGatewayResult(new PaymentDAO(connection), paymentId, payment, captured)) {
+                            System.err.println("Could not record gateway result for payment " + paymentId + ": " +
+                                               payment.getStatus() + " " + payment.getTransactionReference());
+                        }
+                    } finally {
+                        connection.closeConnection();
+                    }
+                }
+            });
+    }
+
+    private static boolean recordGatewayResult(PaymentDAO dao, int paymentId, Payment payment, boolean captured) {
+        if (captured) {
+            return dao.processPayment(paymentId, payment.getTransactionReference());
+        }
+        return dao.updatePaymentStatus(paymentId, payment.getStatus())
+            & dao.updatePaymentNotes(paymentId, payment.getFailureReason());
+    }
+
+    // Run a database write on the writer thread; 503 when its queue is full
+    private <T> T write(Callable<T> task) throws ApiException {
+        Future<T> result;
+        try {
+            result = writeExecutor.submit(task);
+        } catch (RejectedExecutionException e) {
+            rejectedWrites.increment();
+            throw new ApiException(503, "Too many orders in flight, please retry", 1);
+        }
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApiException(503, "Interrupted while saving", 1);
+        } catch (ExecutionException e) {
+            System.err.println("Order API write failed: " + e.getCause().getMessage());
+            throw new ApiException(500, "Could not save: " + e.getCause().getMessage());
+        }
+    }
+
+    // Run a database read on the writer thread, so it never sees a write half done
+    private <T> T read(Callable<T> task) throws ApiException {
+        return write(task);
+    }
+
+    private void writeMetrics(Json.Writer json) throws IOException {
+        json.beginObject().name("routes").beginArray();
+        for (Map.Entry<String, RouteStats> entry : routeStats.entrySet()) {
+            RouteStats stats = entry.getValue();
+            json.beginObject()
+                .name("route").value(entry.getKey())
+                .name("requests").value(stats.getRequests())
+                .name("errors").value(stats.getErrors())
+                .name("meanMillis").value(stats.getMeanMillis())
+                .name("p50Millis").value(stats.percentileMillis(50))
+                .name("p99Millis").value(stats.percentileMillis(99))
+                .endObject();
+        }
+        json.endArray()
+            .name("writeQueue").beginObject()
+                .name("depth").value(writeExecutor.getQueue().size())
+                .name("capacity").value(writeQueueCapacity)
+                .name("rejected").value(rejectedWrites.sum())
+            .endObject()
+            .name("kitchenFeed").beginObject()
+                .name("clients").value(kitchenFeed.getClientCount())
+                .name("published").value(kitchenFeed.getStats().getPublished())
+                .name("connected").value(kitchenFeed.getStats().getConnected())
+                .name("evicted").value(kitchenFeed.getStats().getEvicted())
+                .name("dropped").value(kitchenFeed.getStats().getDropped())
+            .endObject()
+            .endObject();
+    }
+
+    private static void writeMenuItem(Json.Writer json, MenuItem item) throws IOException {
+        json.beginObject()
+            .name("id").value(item.getId())
+            .name("name").value(item.getName())
+            .name("description").value(item.getDescription())
+            .name("category").value(item.getCategory())
+            .name("itemType").value(item.getItemType())
+            .name("price").money(item.getPriceCents())
+            .name("available").value(item.isAvailable())
+            .endObject();
+    }
+
+    private static void writeOrder(Json.Writer json, int orderId, Order order, boolean paid) throws IOException {
+        json.beginObject()
+            .name("orderId").value(orderId)
+            .name("customerId").value(order.getCustomerId())
+            .name("status").value(order.getStatus().toString())
+            .name("serviceType").value(order.getServiceType().toString());
+        if (order.getTableNumber() > 0) {
+            json.name("tableNumber").value(order.getTableNumber());
+        }
+        json.name("orderTime").value(order.getOrderTime() != null ? order.getOrderTime().toString() : null)
+            .name("specialInstructions").value(order.getSpecialInstructions())
+            .name("items").beginArray();
+        for (OrderItem item : order.getOrderItems()) {
+            json.beginObject()
+                .name("menuItemId").value(item.getMenuItem().getId())
+                .name("name").value(item.getMenuItem().getName())
+                .name("quantity").value(item.getQuantity())
+                .name("unitPrice").money(item.getUnitPriceCents())
+                .name("total").money(item.getItemTotalCents())
+                .name("customizations").value(item.getCustomizations())
+                .endObject();
+        }
+        json.endArray()
+            .name("subtotal").money(order.getSubtotalCents())
+            .name("tax").money(order.getTaxCents())
+            .name("discount").money(order.getDiscountCents())
+            .name("total").money(order.getTotalCents())
+            .name("paid").value(paid)
+            .endObject();
+    }
+
+    // Stream a JSON body with chunked encoding; returns the status for the metrics
+    private static int sendJson(HttpExchange exchange, int status, JsonBody body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, 0);
+        BufferedWriter out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8));
+        Json.Writer json = new Json.Writer(out);
+        body.write(json);
+        json.flush();
+        return status;
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) {
+        try {
+            sendJson(exchange, status, json -> json.beginObject().name("error").value(message).endObject());
+        } catch (IOException e) {
+            // Headers already sent or client gone
+        }
+    }
+
+    private static Map<String, Object> readBody(HttpExchange exchange) throws IOException, ApiException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        byte[] chunk = new byte[4096];
+        try (InputStream in = exchange.getRequestBody()) {
+            int read;
+            while ((read = in.read(chunk)) != -1) {
+                buffer.write(chunk, 0, read);
+                if (buffer.size() > MAX_BODY_BYTES) {
+                    throw new ApiException(413, "Request body exceeds " + MAX_BODY_BYTES + " bytes");
+                }
+            }
+        }
+        try {
+            return Json.parseObject(new String(buffer.toByteArray(), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            throw new ApiException(400, "Invalid JSON: " + e.getMessage());
+        }
+    }
+
+    private static void requireMethod(String actual, String expected) throws ApiException {
+        if (!actual.equals(expected)) {
+            throw new ApiException(405, "Use " + expected);
+        }
+    }
+
+    private static int parseId(String text) throws ApiException {
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, "Invalid id '" + text + "'");
+        }
+    }
+
+    private static String queryParameter(URI uri, String name) {
+        String query = uri.getQuery();
+        if (query == null) {
+            return null;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0 && pair.substring(0, eq).equals(name)) {
+                return pair.substring(eq + 1);
+            }
+        }
+        return null;
+    }
+
+    private static String stringField(Map<String, Object> body, String name, String defaultValue) throws ApiException {
+        Object value = body.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        if (!(value instanceof String)) {
+            throw new ApiException(400, name + " must be a string");
+        }
+        return (String) value;
+    }
+
+    private static int intField(Map<String, Object> body, String name, int defaultValue) throws ApiException {
+        Object value = body.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return ((BigDecimal) value).intValueExact();
+        } catch (ClassCastException | ArithmeticException e) {
+            throw new ApiException(400, name + " must be an integer");
+        }
+    }
+
+    private static <E extends Enum<E>> E parseEnum(Class<E> type, String value, String name) throws ApiException {
+        if (value == null) {
+            throw new ApiException(400, name + " is required");
+        }
+        try {
+            return Enum.valueOf(type, value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new ApiException(400, "Unknown " + name + " '" + value + "'");
+        }
+    }
+
+    private interface JsonBody {
+        void write(Json.Writer json) throws IOException;
+    }
+
+    // An error answered to the client with the given HTTP status
+    private static class ApiException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+        private final int retryAfterSeconds;
+
+        ApiException(int status, String message) {
+            this(status, message, 0);
+        }
+
+        ApiException(int status, String message, int retryAfterSeconds) {
+            super(message);
+            this.status = status;
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+    }
+
+    // Request count, errors and a power-of-two latency histogram for one route
+    public static class RouteStats {
+        private static final int BUCKETS = 40;
+
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder totalMicros = new LongAdder();
+        // Bucket b counts requests that took less than 2^b microseconds
+        private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+        void record(long nanos, int status) {
+            long micros = Math.max(0, nanos / 1000);
+            requests.increment();
+            totalMicros.add(micros);
+            if (status >= 500) {
+                errors.increment();
+            }
+            int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+            histogram.incrementAndGet(bucket);
+        }
+
+        public long getRequests() { return requests.sum(); }
+        public long getErrors() { return errors.sum(); }
+
+        public double getMeanMillis() {
+            long count = requests.sum();
+            return count == 0 ? 0 : totalMicros.sum() / 1000.0 / count;
+        }
+
+        // Upper bound of the bucket holding the given percentile, in milliseconds
+        public double percentileMillis(double percentile) {
+            long count = 0;
+            for (int b = 0; b < BUCKETS; b++) {
+                count += histogram.get(b);
+            }
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(percentile / 100.0 * count);
+            long seen = 0;
+            for (int b = 0; b < BUCKETS; b++) {
+                seen += histogram.get(b);
+                if (seen >= rank) {
+                    return (1L << b) / 1000.0;
+                }
+            }
+            return (1L << (BUCKETS - 1)) / 1000.0;
+        }
+    }
+
+    // Run the order API on its own, without the register UI
+    public static void main(String[] args) {
+        DatabaseConnection.getInstance().initializeDatabase();
+        MenuCatalog.getInstance().warmStart();
+        OrderApiServer apiServer = getInstance();
+        if (!apiServer.start()) {
+            System.exit(1);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(apiServer::stop, "order-api-shutdown"));
+    }
+}
@@ -0,0 +1,381 @@
+import java.io.File;
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OrderArchive class for moving finished orders out of the live tables
+ * Completed and cancelled orders older than the retention window are moved,
+ * with their order items and payments, into a separate SQLite file
+ * (coffee_shop.archive.db) that is attached to the connection as "archive".
+ * The live tables stay small enough to stay in the page cache; OrderDAO and
+ * PaymentDAO read through span(), which adds the archive only when a query can
+ * reach archived rows. Archived orders are read-only. Each run moves rows on a
+ * connection of its own, so its transactions never mix with the registers'.
+ *
+ * Retention is -Dcoffeeshop.archiveAfterDays (default 90); the job runs every
+ * -Dcoffeeshop.archiveIntervalMinutes (default 60) once start() is called.
+ */
+public class OrderArchive {
+    static final String SCHEMA = "archive";
+    private static final DateTimeFormatter SQL_TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final int ARCHIVE_AFTER_DAYS = Integer.getInteger("coffeeshop.archiveAfterDays", 90);
+    private static final long INTERVAL_MINUTES = Long.getLong("coffeeshop.archiveIntervalMinutes", 60L);
+    private static final int BATCH_SIZE = 500;
+
+    // Tables that move, each keyed to its order by order_id, with the index lookups the DAOs need
+    private static final String[] TABLES = {"orders", "order_items", "payments"};
+    private static final String[][] INDEXES = {
+        {"orders", "order_id", "UNIQUE"},
+        {"orders", "customer_id", ""},
+        {"orders", "order_time", ""},
+        {"order_items", "order_item_id", "UNIQUE"},
+        {"order_items", "order_id", ""},
+        {"payments", "payment_id", "UNIQUE"},
+        {"payments", "order_id", ""},
+        {"payments", "transaction_reference", ""},
+        {"payments", "idempotency_key", ""}
+    };
+
+    private static final Map<String, OrderArchive> instances = new HashMap<>();
+
+    private final File archiveFile;
+    // The primary database whose rows this archive takes; moves open their own connection to it
+    private final String databaseName;
+    private final Map<Connection, Boolean> attached = Collections.synchronizedMap(new WeakHashMap<>());
+    private final Map<String, List<String>> columns = new HashMap<>();
+    private final Map<String, long[]> archivedTotals = new HashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    // What the archive holds; read once, then kept up to date by archiveOrdersBefore
+    private volatile boolean loaded;
+    private volatile int maxArchivedOrderId;
+    private volatile String newestArchivedTime;
+
+    private OrderArchive(File archiveFile, String databaseName) {
+        this.archiveFile = archiveFile;
+        this.databaseName = databaseName;
+    }
+
+    // Archive of this register's database
+    public static OrderArchive getInstance() {
+        return forDatabase(DatabaseConnection.getInstance());
+    }
+
+    // Archive for a database; a reporting replica shares its primary's archive. The archive is
+    // keyed to the primary's file name, never to the connection it was first asked for.
+    public static synchronized OrderArchive forDatabase(DatabaseConnection db) {
+        String name = db.getDatabaseName();
+        String base = name.replaceAll("(\\.replica(-[ab])?)?\\.db$", "");
+        String archiveName = base + ".archive.db";
+        OrderArchive archive = instances.get(archiveName);
+        if (archive == null) {
+            boolean replica = name.matches(".*\\.replica(-[ab])?\\.db$");
+            archive = new OrderArchive(new File(archiveName), replica ? base + ".db" : name);
+            instances.put(archiveName, archive);
+        }
+        return archive;
+    }
+
+    // Table to read for rows created at or after 'from' (null: any time), spanning both tiers when needed
+    public String span(DatabaseConnection db, String table, LocalDateTime from) {
+        Connection conn = db.getConnection();
+        if (!ensureAttached(conn, false) || newestArchivedTime == null) {
+            return table;
+        }
+        if (from != null && toSqlTimestamp(from).compareTo(newestArchivedTime) > 0) {
+            return table;
+        }
+        return "(SELECT " + columnList(conn, table) + " FROM " + liveRows(table) +
+               " UNION ALL SELECT " + columnList(conn, table) + " FROM " + SCHEMA + "." + table + ") AS " + table;
+    }
+
+    public String span(DatabaseConnection db, String table) {
+        return span(db, table, null);
+    }
+
+    // Live rows only, leaving out any that a replica copy or an interrupted move still holds in both tiers
+    public String live(DatabaseConnection db, String table) {
+        if (!ensureAttached(db.getConnection(), false) || newestArchivedTime == null) {
+            return table;
+        }
+        return "(SELECT * FROM " + liveRows(table) + ") AS " + table;
+    }
+
+    // Result of an aggregate query over the archived rows of a table, cached until the next move
+    public long[] archivedTotals(DatabaseConnection db, String table, String aggregateQuery) {
+        if (!ensureAttached(db.getConnection(), false) || newestArchivedTime == null) {
+            return null;
+        }
+        String query = aggregateQuery.replace("FROM " + table, "FROM " + SCHEMA + "." + table);
+        synchronized (archivedTotals) {
+            long[] totals = archivedTotals.get(query);
+            if (totals != null) {
+                return totals;
+            }
+        }
+
+        try (Statement stmt = db.getConnection().createStatement();
+             ResultSet rs = stmt.executeQuery(query)) {
+            long[] totals = new long[rs.getMetaData().getColumnCount()];
+            if (rs.next()) {
+                for (int i = 0; i < totals.length; i++) {
+                    totals[i] = rs.getLong(i + 1);
+                }
+            }
+            synchronized (archivedTotals) {
+                archivedTotals.put(query, totals);
+            }
+            return totals;
+        } catch (SQLException e) {
+            System.err.println("Error reading archive totals: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Move finished orders past the retention window; returns the number of orders moved
+    public int archiveOldOrders() {
+        return archiveOrdersBefore(LocalDateTime.now().minusDays(ARCHIVE_AFTER_DAYS));
+    }
+
+    // Move completed/cancelled orders placed before the cutoff, with their items and payments
+    public synchronized int archiveOrdersBefore(LocalDateTime cutoff) {
+        DatabaseConnection mover = new DatabaseConnection(databaseName);
+        Connection conn = mover.getConnection();
+        if (!ensureAttached(conn, true)) {
+            mover.closeConnection();
+            return -1;
+        }
+
+        // Orders with a payment still in flight stay live until it settles
+        String candidates = "SELECT order_id FROM main.orders o WHERE status IN ('COMPLETED', 'CANCELLED') " +
+                            "AND order_time < ? AND NOT EXISTS (SELECT 1 FROM main.payments p " +
+                            "WHERE p.order_id = o.order_id AND p.status IN ('PENDING', 'PROCESSING', 'PENDING_RECONCILE')) " +
+                            "ORDER BY order_id LIMIT " + BATCH_SIZE;
+        int moved = 0;
+        try {
+            while (true) {
+                List<Integer> batch = new ArrayList<>();
+                try (PreparedStatement pstmt = conn.prepareStatement(candidates)) {
+                    pstmt.setString(1, toSqlTimestamp(cutoff));
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            batch.add(rs.getInt("order_id"));
+                        }
+                    }
+                }
+                if (batch.isEmpty()) {
+                    break;
+                }
+                moveBatch(conn, batch);
+                moved += batch.size();
+            }
+        } catch (SQLException e) {
+            System.err.println("Error archiving orders: " + e.getMessage());
+        } finally {
+            if (moved > 0) {
+                loadArchiveState(conn);
+            }
+            attached.remove(conn);
+            mover.closeConnection();
+        }
+        return moved;
+    }
+
+    // Run archiveOldOrders in the background
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "order-archiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                int moved = archiveOldOrders();
+                if (moved > 0) {
+                    System.out.println("Archived " + moved + " orders.");
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Order archiving failed: " + e.getMessage());
+            }
+        }, 1, INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    public boolean hasArchivedOrders(DatabaseConnection db) {
+        ensureAttached(db.getConnection(), false);
+        return newestArchivedTime != null;
+    }
+
+    // Copy into the archive in one transaction, then delete from the live tables in another.
+    // The two files commit separately; a crash in between leaves rows in both tiers, which
+    // liveRows() hides and the next run removes.
+    private void moveBatch(Connection conn, List<Integer> orderIds) throws SQLException {
+        StringBuilder idList = new StringBuilder();
+        for (int orderId : orderIds) {
+            if (idList.length() > 0) {
+                idList.append(',');
+            }
+            idList.append(orderId);
+        }
+
+        try (Statement stmt = conn.createStatement()) {
+            conn.setAutoCommit(false);
+            try {
+                for (String table : TABLES) {
+                    String cols = columnList(conn, table);
+                    stmt.executeUpdate("INSERT OR IGNORE INTO " + SCHEMA + "." + table + " (" + cols + ") SELECT " + cols +
+                                       " FROM main." + table + " WHERE order_id IN (" + idList + ")");
+                }
+                conn.commit();
+
+                stmt.executeUpdate("DELETE FROM main.payments WHERE order_id IN (" + idList + ")");
+                stmt.executeUpdate("DELETE FROM main.order_items WHERE order_id IN (" + idList + ")");
+                stmt.executeUpdate("DELETE FROM main.orders WHERE order_id IN (" + idList + ")");
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    // Live side of a span: rows above the archived id range skip the archive lookup
+    private String liveRows(String table) {
+        return "main." + table + " t WHERE t.order_id > " + maxArchivedOrderId +
+               " OR NOT EXISTS (SELECT 1 FROM " + SCHEMA + ".orders a WHERE a.order_id = t.order_id)";
+    }
+
+    // Attach the archive file to this connection once; create it only when archiving
+    private boolean ensureAttached(Connection conn, boolean create) {
+        if (conn == null) {
+            return false;
+        }
+        if (attached.containsKey(conn)) {
+            return true;
+        }
+        if (!create && !archiveFile.exists()) {
+            return false;
+        }
+
+        synchronized (this) {
+            if (attached.containsKey(conn)) {
+                return true;
+            }
+            try {
+                try (PreparedStatement pstmt = conn.prepareStatement("ATTACH DATABASE ? AS " + SCHEMA)) {
+                    pstmt.setString(1, archiveFile.getPath());
+                    pstmt.execute();
+                }
+                createArchiveTables(conn);
+                attached.put(conn, Boolean.TRUE);
+                if (!loaded) {
+                    loadArchiveState(conn);
+                }
+                return true;
+            } catch (SQLException e) {
+                System.err.println("Error attaching order archive: " + e.getMessage());
+                return false;
+            }
+        }
+    }
+
+    // Archive tables mirror the live columns (no foreign keys: customers and menu stay live)
+    private void createArchiveTables(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            for (String table : TABLES) {
+                stmt.execute("CREATE TABLE IF NOT EXISTS " + SCHEMA + "." + table +
+                             " AS SELECT * FROM main." + table + " WHERE 0");
+                // Columns added to the live table since the archive was created
+                List<String> archived = readColumns(conn, SCHEMA, table);
+                for (String column : readColumns(conn, "main", table)) {
+                    if (!archived.contains(column)) {
+                        stmt.execute("ALTER TABLE " + SCHEMA + "." + table + " ADD COLUMN " + column);
+                    }
+                }
+            }
+            for (String[] index : INDEXES) {
+                stmt.execute("CREATE " + index[2] + " INDEX IF NOT EXISTS " + SCHEMA + ".idx_archived_" +
+                             index[0] + "_" + index[1] + " ON " + index[0] + "(" + index[1] + ")");
+            }
+        }
+    }
+
+    private void loadArchiveState(Connection conn) {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT MAX(order_id) AS max_id, MAX(order_time) AS newest, " +
+                                              "MAX(created_at) AS newest_created FROM " + SCHEMA + ".orders")) {
+            if (rs.next()) {
+                maxArchivedOrderId = rs.getInt("max_id");
+                String newest = rs.getString("newest");
+                String newestCreated = rs.getString("newest_created");
+                // Date-range queries filter on either column; keep the later one
+                newestArchivedTime = newestCreated != null && (newest == null || newestCreated.compareTo(newest) > 0)
+                    ? newestCreated : newest;
+            }
+            loaded = true;
+            synchronized (archivedTotals) {
+                archivedTotals.clear();
+            }
+        } catch (SQLException e) {
+            System.err.println("Error reading order archive: " + e.getMessage());
+        }
+    }
+
+    // Live column names, shared by both sides of a span so their order matches
+    private String columnList(Connection conn, String table) {
+        synchronized (columns) {
+            List<String> names = columns.get(table);
+            if (names == null) {
+                try {
+                    names = readColumns(conn, "main", table);
+                } catch (SQLException e) {
+                    System.err.println("Error reading columns of " + table + ": " + e.getMessage());
+                    return "*";
+                }
+                columns.put(table, names);
+            }
+            return String.join(", ", names);
+        }
+    }
+
+    private static List<String> readColumns(Connection conn, String schema, String table) throws SQLException {
+        List<String> names = new ArrayList<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA " + schema + ".table_info(" + table + ")")) {
+            while (rs.next()) {
+                names.add(rs.getString("name"));
+            }
+        }
+        return names;
+    }
+
+    // Same UTC text form that OrderDAO writes and CURRENT_TIMESTAMP produces
+    static String toSqlTimestamp(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault())
+                .withZoneSameInstant(ZoneOffset.UTC)
+                .format(SQL_TIMESTAMP_FORMAT);
+    }
+}
@@ -1,6 +1,10 @@
 import java.sql.*;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -8,57 +12,96 @@ import java.util.List;
  * Handles all database operations related to orders and order items
  */
 public class OrderDAO {
+    private static final DateTimeFormatter SQL_TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    
     private DatabaseConnection dbConnection;
     private MenuItemDAO menuItemDAO;
+    private OrderArchive archive;
     
     public OrderDAO() {
         this.dbConnection = DatabaseConnection.getInstance();
         this.menuItemDAO = new MenuItemDAO();
+        this.archive = OrderArchive.forDatabase(dbConnection);
+    }
+    
+    // Order access against a specific store's database
+    public OrderDAO(DatabaseConnection dbConnection) {
+        this.dbConnection = dbConnection;
+        this.menuItemDAO = new MenuItemDAO(dbConnection);
+        this.archive = OrderArchive.forDatabase(dbConnection);
     }
     
     // Create a new order (matches current schema)
     public int createOrder(Order order) {
-        String orderQuery = "INSERT INTO orders (customer_id, status, service_type, table_number, subtotal, tax, discount, total_amount, special_instructions) " +
-                           "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        try {
+            return createOrders(Collections.singletonList(order), Collections.singletonList(null))[0];
+        } catch (SQLException e) {
+            System.err.println("Error creating order: " + e.getMessage());
+            return -1;
+        }
+    }
+    
+    // Create several orders in one transaction. An order whose idempotency key
+    // already exists is not inserted again; its existing ID is returned instead.
+    public int[] createOrders(List<Order> orders, List<String> idempotencyKeys) throws SQLException {
+        String orderQuery = "INSERT INTO orders (customer_id, status, service_type, table_number, subtotal, tax, discount, total_amount, special_instructions, idempotency_key, order_time) " +
+                           "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
         
         Connection conn = dbConnection.getConnection();
+        int[] orderIds = new int[orders.size()];
+        boolean[] created = new boolean[orders.size()];
         
         try {
             conn.setAutoCommit(false);
             
-            // Insert order
             try (PreparedStatement pstmt = conn.prepareStatement(orderQuery, Statement.RETURN_GENERATED_KEYS)) {
-                pstmt.setInt(1, order.getCustomerId());
-                pstmt.setString(2, order.getStatus().toString());
-                pstmt.setString(3, order.getServiceType().toString());
-                if (order.getServiceType() == Order.ServiceType.DINE_IN && order.getTableNumber() > 0) {
-                    pstmt.setInt(4, order.getTableNumber());
-                } else {
-                    pstmt.setNull(4, Types.INTEGER);
-                }
-                pstmt.setDouble(5, order.getSubtotal());
-                pstmt.setDouble(6, order.getTax());
-                pstmt.setDouble(7, order.getDiscount());
-                pstmt.setDouble(8, order.getTotalAmount());
-                pstmt.setString(9, order.getSpecialInstructions());
-                
-                int rowsAffected = pstmt.executeUpdate();
-                
-                if (rowsAffected > 0) {
-                    ResultSet generatedKeys = pstmt.getGeneratedKeys();
-                    if (generatedKeys.next()) {
-                        int orderId = generatedKeys.getInt(1);
-                        
-                        // Insert order items
-                        if (insertOrderItems(orderId, order.getOrderItems(), conn)) {
-                            conn.commit();
-                            return orderId;
+                for (int i = 0; i < orders.size(); i++) {
+                    Order order = orders.get(i);
+                    String idempotencyKey = idempotencyKeys.get(i);
+                    
+                    if (idempotencyKey != null) {
+                        int existingId = findOrderIdByIdempotencyKey(idempotencyKey, conn);
+                        if (existingId > 0) {
+                            orderIds[i] = existingId;
+                            continue;
                         }
                     }
+                    
+                    pstmt.setInt(1, order.getCustomerId());
+                    pstmt.setString(2, order.getStatus().toString());
+                    pstmt.setString(3, order.getServiceType().toString());
+                    if (order.getServiceType() == Order.ServiceType.DINE_IN && order.getTableNumber() > 0) {
+                        pstmt.setInt(4, order.getTableNumber());
+                    } else {
+                        pstmt.setNull(4, Types.INTEGER);
+                    }
+                    Money.bind(pstmt, 5, order.getSubtotalCents());
+                    Money.bind(pstmt, 6, order.getTaxCents());
+                    Money.bind(pstmt, 7, order.getDiscountCents());
+                    Money.bind(pstmt, 8, order.getTotalCents());
+                    pstmt.setString(9, order.getSpecialInstructions());
+                    pstmt.setString(10, idempotencyKey);
+                    pstmt.setString(11, toSqlTimestamp(order.getOrderTime()));
+                    
+                    if (pstmt.executeUpdate() <= 0) {
+                        throw new SQLException("Order row was not inserted");
+                    }
+                    
+                    try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
+                        if (!generatedKeys.next()) {
+                            throw new SQLException("No order ID generated");
+                        }
+                        orderIds[i] = generatedKeys.getInt(1);
+                    }
+                    
+                    if (!insertOrderItems(orderIds[i], order.getOrderItems(), conn)) {
+                        throw new SQLException("Failed to insert order items");
+                    }
+                    created[i] = true;
                 }
             }
             
-            conn.rollback();
+            conn.commit();
             
         } catch (SQLException e) {
             try {
@@ -66,7 +109,7 @@ public class OrderDAO {
             } catch (SQLException rollbackEx) {
                 System.err.println("Error rolling back transaction: " + rollbackEx.getMessage());
             }
-            System.err.println("Error creating order: " + e.getMessage());
+            throw e;
         } finally {
             try {
                 conn.setAutoCommit(true);
@@ -75,7 +118,32 @@ public class OrderDAO {
             }
         }
         
-        return -1;
+        for (int i = 0; i < orders.size(); i++) {
+            if (created[i]) {
+                OrderEventJournal.record(OrderEventJournal.EventType.ORDER_CREATED, orderIds[i],
+                        OrderEventJournal.orderStatusCode(orders.get(i).getStatus()), orders.get(i).getServiceType().toString());
+            }
+        }
+        return orderIds;
+    }
+    
+    // Find an order previously created with the given idempotency key
+    private int findOrderIdByIdempotencyKey(String idempotencyKey, Connection conn) throws SQLException {
+        String query = "SELECT order_id FROM orders WHERE idempotency_key = ?";
+        
+        try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+            pstmt.setString(1, idempotencyKey);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt("order_id") : -1;
+            }
+        }
+    }
+    
+    // Format a local order time the way SQLite's CURRENT_TIMESTAMP stores it (UTC)
+    private static String toSqlTimestamp(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault())
+                .withZoneSameInstant(ZoneOffset.UTC)
+                .format(SQL_TIMESTAMP_FORMAT);
     }
     
     // Insert order items
@@ -88,8 +156,8 @@ public class OrderDAO {
                 pstmt.setInt(1, orderId);
                 pstmt.setInt(2, item.getMenuItem().getId());
                 pstmt.setInt(3, item.getQuantity());
-                pstmt.setDouble(4, item.getUnitPrice());
-                pstmt.setDouble(5, item.getItemTotal());
+                Money.bind(pstmt, 4, item.getUnitPriceCents());
+                Money.bind(pstmt, 5, item.getItemTotalCents());
                 pstmt.setString(6, item.getCustomizations());
                 
                 pstmt.addBatch();
@@ -108,24 +176,16 @@ public class OrderDAO {
         }
     }
     
-    // Get order by ID
+    // Get order by ID (live or archived)
     public Order getOrderById(int orderId) {
-        String query = "SELECT * FROM orders WHERE order_id = ?";
+        String query = "SELECT * FROM " + archive.span(dbConnection, "orders") + " WHERE order_id = ?";
         
         try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
             pstmt.setInt(1, orderId);
             ResultSet rs = pstmt.executeQuery();
             
             if (rs.next()) {
-                Order order = createOrderFromResultSet(rs);
-                if (order != null) {
-                    // Load order items
-                    List<OrderItem> orderItems = getOrderItems(orderId);
-                    for (OrderItem item : orderItems) {
-                        order.addItem(item.getMenuItem(), item.getQuantity());
-                    }
-                }
-                return order;
+                return readOrder(rs);
             }
             
         } catch (SQLException e) {
@@ -135,10 +195,10 @@ public class OrderDAO {
         return null;
     }
     
-    // Get order items for a specific order
+    // Get order items for a specific order, priced as they were charged rather than at today's menu price
     private List<OrderItem> getOrderItems(int orderId) {
         List<OrderItem> orderItems = new ArrayList<>();
-        String query = "SELECT * FROM order_items WHERE order_id = ?";
+        String query = "SELECT * FROM " + archive.span(dbConnection, "order_items") + " WHERE order_id = ?";
         
         try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
             pstmt.setInt(1, orderId);
@@ -147,12 +207,12 @@ public class OrderDAO {
             while (rs.next()) {
                 int menuItemId = rs.getInt("menu_item_id");
                 int quantity = rs.getInt("quantity");
-                double unitPrice = rs.getDouble("unit_price");
                 String customizations = rs.getString("customizations");
+                long unitPriceCents = Money.read(rs, "unit_price");
                 
                 MenuItem menuItem = menuItemDAO.getMenuItemById(menuItemId);
                 if (menuItem != null) {
-                    OrderItem orderItem = new OrderItem(menuItem, quantity, customizations);
+                    OrderItem orderItem = new OrderItem(menuItem, quantity, customizations, unitPriceCents);
                     orderItems.add(orderItem);
                 }
             }
@@ -167,20 +227,15 @@ public class OrderDAO {
     // Get orders by customer ID
     public List<Order> getOrdersByCustomerId(int customerId) {
         List<Order> orders = new ArrayList<>();
-        String query = "SELECT * FROM orders WHERE customer_id = ? ORDER BY created_at DESC";
+        String query = "SELECT * FROM " + archive.span(dbConnection, "orders") + " WHERE customer_id = ? ORDER BY created_at DESC";
         
         try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
             pstmt.setInt(1, customerId);
             ResultSet rs = pstmt.executeQuery();
             
             while (rs.next()) {
-                Order order = createOrderFromResultSet(rs);
+                Order order = readOrder(rs);
                 if (order != null) {
-                    // Load order items
-                    List<OrderItem> orderItems = getOrderItems(order.getOrderId());
-                    for (OrderItem item : orderItems) {
-                        order.addItem(item.getMenuItem(), item.getQuantity());
-                    }
                     orders.add(order);
                 }
             }
@@ -192,23 +247,20 @@ public class OrderDAO {
         return orders;
     }
     
-    // Get orders by status
+    // Get orders by status; only finished orders are ever archived, active ones stay on the live table
     public List<Order> getOrdersByStatus(Order.OrderStatus status) {
         List<Order> orders = new ArrayList<>();
-        String query = "SELECT * FROM orders WHERE status = ? ORDER BY created_at ASC";
+        boolean finished = status == Order.OrderStatus.COMPLETED || status == Order.OrderStatus.CANCELLED;
+        String table = finished ? archive.span(dbConnection, "orders") : "orders";
+        String query = "SELECT * FROM " + table + " WHERE status = ? ORDER BY created_at ASC";
         
         try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
             pstmt.setString(1, status.toString());
             ResultSet rs = pstmt.executeQuery();
             
             while (rs.next()) {
-                Order order = createOrderFromResultSet(rs);
+                Order order = readOrder(rs);
                 if (order != null) {
-                    // Load order items
-                    List<OrderItem> orderItems = getOrderItems(order.getOrderId());
-                    for (OrderItem item : orderItems) {
-                        order.addItem(item.getMenuItem(), item.getQuantity());
-                    }
                     orders.add(order);
                 }
             }
@@ -223,20 +275,15 @@ public class OrderDAO {
     // Get orders by table ID
     public List<Order> getOrdersByTableId(int tableId) {
         List<Order> orders = new ArrayList<>();
-        String query = "SELECT * FROM orders WHERE table_id = ? ORDER BY created_at DESC";
+        String query = "SELECT * FROM " + archive.span(dbConnection, "orders") + " WHERE table_number = ? ORDER BY created_at DESC";
         
         try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
             pstmt.setInt(1, tableId);
             ResultSet rs = pstmt.executeQuery();
             
             while (rs.next()) {
-                Order order = createOrderFromResultSet(rs);
+                Order order = readOrder(rs);
                 if (order != null) {
-                    // Load order items
-                    List<OrderItem> orderItems = getOrderItems(order.getOrderId());
-                    for (OrderItem item : orderItems) {
-                        order.addItem(item.getMenuItem(), item.getQuantity());
-                    }
                     orders.add(order);
                 }
             }
@@ -251,19 +298,14 @@ public class OrderDAO {
     // Get all orders
     public List<Order> getAllOrders() {
         List<Order> orders = new ArrayList<>();
-        String query = "SELECT * FROM orders ORDER BY created_at DESC";
+        String query = "SELECT * FROM " + archive.span(dbConnection, "orders") + " ORDER BY created_at DESC";
         
         try (Statement stmt = dbConnection.getConnection().createStatement();
              ResultSet rs = stmt.executeQuery(query)) {
             
             while (rs.next()) {
-                Order order = createOrderFromResultSet(rs);
+                Order order = readOrder(rs);
                 if (order != null) {
-                    // Load order items
-                    List<OrderItem> orderItems = getOrderItems(order.getOrderId());
-                    for (OrderItem item : orderItems) {
-                        order.addItem(item.getMenuItem(), item.getQuantity());
-                    }
                     orders.add(order);
                 }
             }
@@ -284,6 +326,10 @@ public class OrderDAO {
             pstmt.setInt(2, orderId);
             
             int rowsAffected = pstmt.executeUpdate();
+            if (rowsAffected > 0) {
+                OrderEventJournal.record(OrderEventJournal.EventType.ORDER_STATUS_CHANGED, orderId,
+                        OrderEventJournal.orderStatusCode(status), null);
+            }
             return rowsAffected > 0;
             
         } catch (SQLException e) {
@@ -292,12 +338,29 @@ public class OrderDAO {
         }
     }
     
+    // Apply a status recovered from the event journal (not journaled again)
+    public boolean applyOrderStatus(int orderId, Order.OrderStatus status) {
+        String query = "UPDATE orders SET status = ?, updated_at = CURRENT_TIMESTAMP WHERE order_id = ?";
+        
+        try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
+            pstmt.setString(1, status.toString());
+            pstmt.setInt(2, orderId);
+            
+            int rowsAffected = pstmt.executeUpdate();
+            return rowsAffected > 0;
+            
+        } catch (SQLException e) {
+            System.err.println("Error applying order status: " + e.getMessage());
+            return false;
+        }
+    }
+    
     // Update order total amount
     public boolean updateOrderTotal(int orderId, double totalAmount) {
         String query = "UPDATE orders SET total_amount = ?, updated_at = CURRENT_TIMESTAMP WHERE order_id = ?";
         
         try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
-            pstmt.setDouble(1, totalAmount);
+            Money.bind(pstmt, 1, Money.toCents(totalAmount));
             pstmt.setInt(2, orderId);
             
             int rowsAffected = pstmt.executeUpdate();
@@ -311,7 +374,7 @@ public class OrderDAO {
     
     // Update order notes
     public boolean updateOrderNotes(int orderId, String notes) {
-        String query = "UPDATE orders SET notes = ?, updated_at = CURRENT_TIMESTAMP WHERE order_id = ?";
+        String query = "UPDATE orders SET special_instructions = ?, updated_at = CURRENT_TIMESTAMP WHERE order_id = ?";
         
         try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
             pstmt.setString(1, notes);
@@ -372,24 +435,21 @@ public class OrderDAO {
         return false;
     }
     
-    // Get orders by date range
+    // Get orders by date range; the archive is only read when the range reaches back into it
     public List<Order> getOrdersByDateRange(LocalDateTime startDate, LocalDateTime endDate) {
         List<Order> orders = new ArrayList<>();
-        String query = "SELECT * FROM orders WHERE created_at BETWEEN ? AND ? ORDER BY created_at DESC";
+        String query = "SELECT * FROM " + archive.span(dbConnection, "orders", startDate) +
+                      " WHERE created_at BETWEEN ? AND ? ORDER BY created_at DESC";
         
         try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
-            pstmt.setTimestamp(1, Timestamp.valueOf(startDate));
-            pstmt.setTimestamp(2, Timestamp.valueOf(endDate));
+            // created_at holds CURRENT_TIMESTAMP text (UTC), so compare against the same form
+            pstmt.setString(1, toSqlTimestamp(startDate));
+            pstmt.setString(2, toSqlTimestamp(endDate));
             ResultSet rs = pstmt.executeQuery();
             
             while (rs.next()) {
-                Order order = createOrderFromResultSet(rs);
+                Order order = readOrder(rs);
                 if (order != null) {
-                    // Load order items
-                    List<OrderItem> orderItems = getOrderItems(order.getOrderId());
-                    for (OrderItem item : orderItems) {
-                        order.addItem(item.getMenuItem(), item.getQuantity());
-                    }
                     orders.add(order);
                 }
             }
@@ -404,8 +464,7 @@ public class OrderDAO {
     // Get order statistics
     public OrderStats getOrderStats() {
         String query = "SELECT COUNT(*) as total_orders, " +
-                      "SUM(total_amount) as total_revenue, " +
-                      "AVG(total_amount) as avg_order_value, " +
+                      "SUM(CAST(ROUND(total_amount * 100) AS INTEGER)) as total_revenue_cents, " +
                       "COUNT(CASE WHEN status = 'COMPLETED' THEN 1 END) as completed_orders, " +
                       "COUNT(CASE WHEN status = 'PENDING' THEN 1 END) as pending_orders, " +
                       "COUNT(CASE WHEN status = 'PREPARING' THEN 1 END) as preparing_orders, " +
@@ -413,19 +472,34 @@ public class OrderDAO {
                       "COUNT(CASE WHEN status = 'CANCELLED' THEN 1 END) as cancelled_orders " +
                       "FROM orders";
         
+        // Live counts every time; archived orders never change, so their totals are cached
+        String liveQuery = query.replace("FROM orders", "FROM " + archive.live(dbConnection, "orders"));
         try (Statement stmt = dbConnection.getConnection().createStatement();
-             ResultSet rs = stmt.executeQuery(query)) {
+             ResultSet rs = stmt.executeQuery(liveQuery)) {
             
             if (rs.next()) {
+                long[] totals = new long[7];
+                for (int i = 0; i < totals.length; i++) {
+                    totals[i] = rs.getLong(i + 1);
+                }
+                long[] archived = archive.archivedTotals(dbConnection, "orders", query);
+                if (archived != null) {
+                    for (int i = 0; i < totals.length; i++) {
+                        totals[i] += archived[i];
+                    }
+                }
+                
+                int totalOrders = (int) totals[0];
+                long totalRevenueCents = totals[1];
                 return new OrderStats(
-                    rs.getInt("total_orders"),
-                    rs.getDouble("total_revenue"),
-                    rs.getDouble("avg_order_value"),
-                    rs.getInt("completed_orders"),
-                    rs.getInt("pending_orders"),
-                    rs.getInt("preparing_orders"),
-                    rs.getInt("ready_orders"),
-                    rs.getInt("cancelled_orders")
+                    totalOrders,
+                    Money.toDouble(totalRevenueCents),
+                    totalOrders > 0 ? Money.toDouble(totalRevenueCents) / totalOrders : 0.0,
+                    (int) totals[2],
+                    (int) totals[3],
+                    (int) totals[4],
+                    (int) totals[5],
+                    (int) totals[6]
                 );
             }
             
@@ -440,21 +514,40 @@ public class OrderDAO {
     private Order createOrderFromResultSet(ResultSet rs) throws SQLException {
         int orderId = rs.getInt("order_id");
         int customerId = rs.getInt("customer_id");
-        int tableId = rs.getInt("table_id");
+        int tableNumber = rs.getInt("table_number");
         String serviceTypeStr = rs.getString("service_type");
         String statusStr = rs.getString("status");
-        double totalAmount = rs.getDouble("total_amount");
-        String notes = rs.getString("notes");
+        String specialInstructions = rs.getString("special_instructions");
         
         Order.ServiceType serviceType = Order.ServiceType.valueOf(serviceTypeStr);
         Order.OrderStatus status = Order.OrderStatus.valueOf(statusStr);
         
         Order order = new Order(orderId, customerId, serviceType);
-        if (tableId > 0) {
-            order.setTableNumber(tableId);
+        if (tableNumber > 0) {
+            order.setTableNumber(tableNumber);
         }
         order.setStatus(status);
-        order.setSpecialInstructions(notes);
+        order.setSpecialInstructions(specialInstructions);
+        
+        return order;
+    }
+    
+    // Helper method to load an order with its items, keeping the amounts that were charged
+    private Order readOrder(ResultSet rs) throws SQLException {
+        Order order = createOrderFromResultSet(rs);
+        if (order == null) {
+            return null;
+        }
+        
+        long subtotalCents = Money.read(rs, "subtotal");
+        long taxCents = Money.read(rs, "tax");
+        long discountCents = Money.read(rs, "discount");
+        long totalCents = Money.read(rs, "total_amount");
+        
+        for (OrderItem item : getOrderItems(order.getOrderId())) {
+            order.restoreItem(item);
+        }
+        order.restoreTotals(subtotalCents, taxCents, discountCents, totalCents);
         
         return order;
     }
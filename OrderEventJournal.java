@@ -0,0 +1,529 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.CRC32;
+
+/**
+ * OrderEventJournal class for recording order and payment state transitions
+ * Append-only, memory-mapped binary journal split into rolling segments.
+ * Every event gets a sequence number so the journal can be replayed to rebuild
+ * the orders/payments tables or tailed by downstream consumers.
+ *
+ * Record layout (big-endian):
+ *   int length | long sequence | long timestamp | byte type | int entityId |
+ *   byte status | short textLength | text (UTF-8) | int crc32
+ * A length of 0 marks the end of the written part of a segment. Order statuses
+ * are stored as the fixed codes of orderStatusCode, not enum ordinals, so
+ * reordering Order.OrderStatus never changes what an old journal means.
+ */
+public class OrderEventJournal {
+    public enum EventType {
+        ORDER_CREATED(1), ORDER_STATUS_CHANGED(2),
+        PAYMENT_PROCESSED(3), PAYMENT_REFUNDED(4), PAYMENT_CANCELLED(5);
+
+        private final byte code;
+
+        EventType(int code) {
+            this.code = (byte) code;
+        }
+
+        public byte getCode() {
+            return code;
+        }
+
+        public boolean isPaymentEvent() {
+            return this == PAYMENT_PROCESSED || this == PAYMENT_REFUNDED || this == PAYMENT_CANCELLED;
+        }
+
+        static EventType fromCode(byte code) {
+            for (EventType type : values()) {
+                if (type.code == code) {
+                    return type;
+                }
+            }
+            throw new IllegalArgumentException("Unknown journal event type: " + code);
+        }
+    }
+
+    // Callback for replay and live subscribers
+    public interface EventHandler {
+        void onEvent(JournalEvent event);
+    }
+
+    private static final String DEFAULT_DIRECTORY = "journal";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+    private static final int HEADER_SIZE = 4 + 8 + 8 + 1 + 4 + 1 + 2;
+    private static final int TRAILER_SIZE = 4;
+    private static final int MAX_TEXT_BYTES = Short.MAX_VALUE;
+    // Journal code of each order status is its index here; append new statuses, never reorder
+    private static final Order.OrderStatus[] ORDER_STATUS_CODES = {
+        Order.OrderStatus.PENDING, Order.OrderStatus.CONFIRMED, Order.OrderStatus.PREPARING,
+        Order.OrderStatus.READY, Order.OrderStatus.COMPLETED, Order.OrderStatus.CANCELLED
+    };
+
+    private static OrderEventJournal instance;
+
+    private final File directory;
+    private final int segmentSize;
+    private final List<Segment> segments = new ArrayList<>();
+    private final List<EventHandler> subscribers = new CopyOnWriteArrayList<>();
+    private Segment activeSegment;
+    private long nextSequence = 1;
+
+    // Create a journal in the given directory
+    public OrderEventJournal(File directory, int segmentSize) throws IOException {
+        if (segmentSize < HEADER_SIZE + TRAILER_SIZE + MAX_TEXT_BYTES) {
+            throw new IllegalArgumentException("Segment size too small: " + segmentSize);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Cannot create journal directory " + directory);
+        }
+        openExistingSegments();
+    }
+
+    // Get the shared journal used by the DAOs
+    public static synchronized OrderEventJournal getInstance() {
+        if (instance == null) {
+            try {
+                instance = new OrderEventJournal(new File(DEFAULT_DIRECTORY), DEFAULT_SEGMENT_SIZE);
+            } catch (IOException e) {
+                System.err.println("Failed to open event journal: " + e.getMessage());
+            }
+        }
+        return instance;
+    }
+
+    // Record an event from a DAO; journal failures never fail the database write
+    public static void record(EventType type, int entityId, int status, String text) {
+        OrderEventJournal journal = getInstance();
+        if (journal != null) {
+            try {
+                journal.append(type, entityId, status, text);
+            } catch (IOException e) {
+                System.err.println("Error appending to event journal: " + e.getMessage());
+            }
+        }
+    }
+
+    // Append an event and return its sequence number
+    public long append(EventType type, int entityId, int status, String text) throws IOException {
+        byte[] textBytes = text != null ? text.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        if (textBytes.length > MAX_TEXT_BYTES) {
+            textBytes = Arrays.copyOf(textBytes, MAX_TEXT_BYTES);
+        }
+        int recordLength = HEADER_SIZE + textBytes.length + TRAILER_SIZE;
+        JournalEvent event;
+
+        synchronized (this) {
+            if (activeSegment.remaining() < recordLength + 4) {
+                rollSegment();
+            }
+            long sequence = nextSequence++;
+            long timestamp = System.currentTimeMillis();
+            activeSegment.write(sequence, timestamp, type, entityId, (byte) status, textBytes);
+            event = new JournalEvent(sequence, timestamp, type, entityId, status,
+                    text != null ? new String(textBytes, StandardCharsets.UTF_8) : "");
+        }
+
+        for (EventHandler subscriber : subscribers) {
+            try {
+                subscriber.onEvent(event);
+            } catch (RuntimeException e) {
+                System.err.println("Journal subscriber failed: " + e.getMessage());
+            }
+        }
+        return event.getSequence();
+    }
+
+    // Register a consumer for events appended from now on
+    public void subscribe(EventHandler handler) {
+        subscribers.add(handler);
+    }
+
+    public void unsubscribe(EventHandler handler) {
+        subscribers.remove(handler);
+    }
+
+    // Replay every event with sequence >= fromSequence, in order
+    public long replay(long fromSequence, EventHandler handler) {
+        List<Segment> snapshot;
+        int[] written;
+        long[] lastSequences;
+        synchronized (this) {
+            activeSegment.force();
+            snapshot = new ArrayList<>(segments);
+            // Appends keep going while we read; only records complete at this point are replayed
+            written = new int[snapshot.size()];
+            lastSequences = new long[snapshot.size()];
+            for (int i = 0; i < snapshot.size(); i++) {
+                written[i] = snapshot.get(i).writtenLength();
+                lastSequences[i] = snapshot.get(i).lastSequence;
+            }
+        }
+
+        long delivered = 0;
+        for (int i = 0; i < snapshot.size(); i++) {
+            if (lastSequences[i] < fromSequence) {
+                continue;
+            }
+            ByteBuffer view = snapshot.get(i).readView(written[i]);
+            JournalEvent event;
+            while ((event = readRecord(view)) != null) {
+                if (event.getSequence() >= fromSequence) {
+                    handler.onEvent(event);
+                    delivered++;
+                }
+            }
+        }
+        return delivered;
+    }
+
+    // Stable journal code for an order status
+    public static int orderStatusCode(Order.OrderStatus status) {
+        for (int code = 0; code < ORDER_STATUS_CODES.length; code++) {
+            if (ORDER_STATUS_CODES[code] == status) {
+                return code;
+            }
+        }
+        throw new IllegalArgumentException("No journal code for order status " + status);
+    }
+
+    // Order status for a journal code, or null if the code is unknown
+    public static Order.OrderStatus orderStatusOf(int code) {
+        return code >= 0 && code < ORDER_STATUS_CODES.length ? ORDER_STATUS_CODES[code] : null;
+    }
+
+    // Rebuild order and payment statuses from the journal through the DAOs
+    public long rebuildStatuses(long fromSequence, OrderDAO orderDAO, PaymentDAO paymentDAO) {
+        Map<Integer, Integer> orderStatuses = new HashMap<>();
+        Map<Integer, EventType> paymentStates = new HashMap<>();
+
+        replay(fromSequence, event -> {
+            if (event.getType().isPaymentEvent()) {
+                paymentStates.put(event.getEntityId(), event.getType());
+            } else {
+                orderStatuses.put(event.getEntityId(), event.getStatus());
+            }
+        });
+
+        long applied = 0;
+        for (Map.Entry<Integer, Integer> entry : orderStatuses.entrySet()) {
+            Order.OrderStatus status = orderStatusOf(entry.getValue());
+            if (status != null && orderDAO.applyOrderStatus(entry.getKey(), status)) {
+                applied++;
+            }
+        }
+        for (Map.Entry<Integer, EventType> entry : paymentStates.entrySet()) {
+            String status;
+            switch (entry.getValue()) {
+                case PAYMENT_PROCESSED: status = "COMPLETED"; break;
+                case PAYMENT_REFUNDED: status = "REFUNDED"; break;
+                default: status = "CANCELLED"; break;
+            }
+            if (paymentDAO.applyPaymentStatus(entry.getKey(), status)) {
+                applied++;
+            }
+        }
+        return applied;
+    }
+
+    // Compact sealed segments, keeping the latest event of each type per order/payment, so a
+    // replay still sees an order's creation and its last status, or a payment's processing and refund
+    public synchronized int compact() throws IOException {
+        List<Segment> sealed = new ArrayList<>(segments.subList(0, segments.size() - 1));
+        if (sealed.size() < 2) {
+            return 0;
+        }
+
+        Map<Long, JournalEvent> latest = new HashMap<>();
+        for (Segment segment : sealed) {
+            ByteBuffer view = segment.readView(segment.writtenLength());
+            JournalEvent event;
+            while ((event = readRecord(view)) != null) {
+                latest.put(compactionKey(event), event);
+            }
+        }
+        List<JournalEvent> survivors = new ArrayList<>(latest.values());
+        survivors.sort((a, b) -> Long.compare(a.getSequence(), b.getSequence()));
+
+        int size = 4;
+        for (JournalEvent event : survivors) {
+            size += HEADER_SIZE + event.getText().getBytes(StandardCharsets.UTF_8).length + TRAILER_SIZE;
+        }
+        // The compacted segment takes the first sealed segment's place (and name)
+        long firstSequence = sealed.get(0).firstSequence;
+        File temp = new File(directory, "compact" + SEGMENT_SUFFIX + ".tmp");
+        Segment compacted = Segment.create(temp, size, firstSequence);
+        for (JournalEvent event : survivors) {
+            compacted.write(event.getSequence(), event.getTimestamp(), event.getType(), event.getEntityId(),
+                    (byte) event.getStatus(), event.getText().getBytes(StandardCharsets.UTF_8));
+        }
+        compacted.force();
+        compacted.close();
+
+        // Swap the compacted file in before deleting anything: a crash after the move leaves old
+        // segments that the compacted one already covers, which openExistingSegments drops
+        for (Segment segment : sealed) {
+            segment.close();
+        }
+        File target = sealed.get(0).file;
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        for (Segment segment : sealed.subList(1, sealed.size())) {
+            Files.delete(segment.file.toPath());
+        }
+
+        segments.removeAll(sealed);
+        segments.add(0, Segment.open(target));
+        return sealed.size();
+    }
+
+    public synchronized long getLastSequence() {
+        return nextSequence - 1;
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    // Flush and unmap all segments
+    public synchronized void close() {
+        for (Segment segment : segments) {
+            segment.force();
+            segment.close();
+        }
+        segments.clear();
+    }
+
+    private static long compactionKey(JournalEvent event) {
+        return ((long) event.getType().getCode() << 32) | (event.getEntityId() & 0xffffffffL);
+    }
+
+    private void openExistingSegments() throws IOException {
+        // A compaction that stopped before its move left only the temp file; the old segments are intact
+        File leftover = new File(directory, "compact" + SEGMENT_SUFFIX + ".tmp");
+        if (leftover.exists()) {
+            Files.delete(leftover.toPath());
+        }
+
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+        if (files != null) {
+            Arrays.sort(files, (a, b) -> Long.compare(sequenceOf(a), sequenceOf(b)));
+            long coveredTo = 0;
+            for (File file : files) {
+                Segment segment = Segment.open(file);
+                if (segment.firstSequence <= coveredTo) {
+                    // Left over from a compaction that stopped after its move; the compacted segment holds its events
+                    segment.close();
+                    Files.delete(file.toPath());
+                    continue;
+                }
+                segments.add(segment);
+                coveredTo = Math.max(coveredTo, segment.lastSequence);
+            }
+        }
+
+        if (segments.isEmpty()) {
+            activeSegment = Segment.create(segmentFile(1), segmentSize, 1);
+            segments.add(activeSegment);
+        } else {
+            activeSegment = segments.get(segments.size() - 1);
+            for (Segment segment : segments) {
+                if (segment.lastSequence >= nextSequence) {
+                    nextSequence = segment.lastSequence + 1;
+                }
+            }
+            if (activeSegment.capacity() < segmentSize) {
+                // Compacted segments are sized exactly; start a fresh one for appends
+                rollSegment();
+            }
+        }
+    }
+
+    private void rollSegment() throws IOException {
+        activeSegment.force();
+        activeSegment = Segment.create(segmentFile(nextSequence), segmentSize, nextSequence);
+        segments.add(activeSegment);
+    }
+
+    private File segmentFile(long firstSequence) {
+        return new File(directory, String.format("%020d%s", firstSequence, SEGMENT_SUFFIX));
+    }
+
+    private static long sequenceOf(File file) {
+        String name = file.getName();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    // Read the record at the buffer position, or null at the end of valid data
+    private static JournalEvent readRecord(ByteBuffer view) {
+        if (view.remaining() < 4) {
+            return null;
+        }
+        int start = view.position();
+        int length = view.getInt(start);
+        if (length < HEADER_SIZE + TRAILER_SIZE || length > view.remaining()) {
+            return null;
+        }
+
+        CRC32 crc = new CRC32();
+        ByteBuffer body = view.duplicate();
+        body.position(start).limit(start + length - TRAILER_SIZE);
+        crc.update(body);
+        if ((int) crc.getValue() != view.getInt(start + length - TRAILER_SIZE)) {
+            return null;
+        }
+
+        view.position(start + 4);
+        long sequence = view.getLong();
+        long timestamp = view.getLong();
+        EventType type = EventType.fromCode(view.get());
+        int entityId = view.getInt();
+        int status = view.get();
+        byte[] text = new byte[view.getShort() & 0xffff];
+        view.get(text);
+        view.position(start + length);
+        return new JournalEvent(sequence, timestamp, type, entityId, status,
+                new String(text, StandardCharsets.UTF_8));
+    }
+
+    // One memory-mapped segment file
+    private static class Segment {
+        private final File file;
+        private final RandomAccessFile raf;
+        private final MappedByteBuffer buffer;
+        private final long firstSequence;
+        private long lastSequence;
+
+        private Segment(File file, RandomAccessFile raf, MappedByteBuffer buffer, long firstSequence) {
+            this.file = file;
+            this.raf = raf;
+            this.buffer = buffer;
+            this.firstSequence = firstSequence;
+            this.lastSequence = firstSequence - 1;
+        }
+
+        static Segment create(File file, int size, long firstSequence) throws IOException {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            raf.setLength(size);
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            return new Segment(file, raf, buffer, firstSequence);
+        }
+
+        static Segment open(File file) throws IOException {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+            Segment segment = new Segment(file, raf, buffer, sequenceOf(file));
+
+            // Find the end of valid data; a torn tail record is ignored and overwritten
+            ByteBuffer view = buffer.duplicate();
+            JournalEvent event;
+            while ((event = readRecord(view)) != null) {
+                segment.lastSequence = event.getSequence();
+                buffer.position(view.position());
+            }
+            return segment;
+        }
+
+        void write(long sequence, long timestamp, EventType type, int entityId, byte status, byte[] text) {
+            int start = buffer.position();
+            int length = HEADER_SIZE + text.length + TRAILER_SIZE;
+            buffer.putInt(length);
+            buffer.putLong(sequence);
+            buffer.putLong(timestamp);
+            buffer.put(type.getCode());
+            buffer.putInt(entityId);
+            buffer.put(status);
+            buffer.putShort((short) text.length);
+            buffer.put(text);
+
+            CRC32 crc = new CRC32();
+            ByteBuffer body = buffer.duplicate();
+            body.position(start).limit(start + length - TRAILER_SIZE);
+            crc.update(body);
+            buffer.putInt((int) crc.getValue());
+            if (buffer.remaining() >= 4) {
+                buffer.putInt(buffer.position(), 0);
+            }
+            lastSequence = sequence;
+        }
+
+        // Records in the first length bytes
+        ByteBuffer readView(int length) {
+            ByteBuffer view = buffer.duplicate();
+            view.position(0).limit(length);
+            return view;
+        }
+
+        // Bytes of complete records written so far
+        int writtenLength() {
+            return buffer.position();
+        }
+
+        int remaining() {
+            return buffer.remaining();
+        }
+
+        int capacity() {
+            return buffer.capacity();
+        }
+
+        void force() {
+            buffer.force();
+        }
+
+        void close() {
+            try {
+                raf.close();
+            } catch (IOException e) {
+                System.err.println("Error closing journal segment: " + e.getMessage());
+            }
+        }
+    }
+
+    // Inner class for a decoded journal event
+    public static class JournalEvent {
+        private final long sequence;
+        private final long timestamp;
+        private final EventType type;
+        private final int entityId;
+        private final int status;
+        private final String text;
+
+        public JournalEvent(long sequence, long timestamp, EventType type, int entityId, int status, String text) {
+            this.sequence = sequence;
+            this.timestamp = timestamp;
+            this.type = type;
+            this.entityId = entityId;
+            this.status = status;
+            this.text = text;
+        }
+
+        public long getSequence() { return sequence; }
+        public long getTimestamp() { return timestamp; }
+        public EventType getType() { return type; }
+        public int getEntityId() { return entityId; }
+        public int getStatus() { return status; }
+        public String getText() { return text; }
+
+        @Override
+        public String toString() {
+            return String.format("#%d %s id=%d status=%d %s", sequence, type, entityId, status, text);
+        }
+    }
+}
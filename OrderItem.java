@@ -7,6 +7,11 @@ public class OrderItem {
     private int quantity;
     private String customizations;
     
+    // Line total the owning Order last priced this item at; maintained by Order
+    long pricedTotalCents;
+    // Unit price the order was charged, for lines loaded from the database; -1 prices from the menu
+    private long chargedUnitPriceCents = -1;
+    
     // Constructor
     public OrderItem(MenuItem menuItem, int quantity) {
         if (menuItem == null) {
@@ -27,6 +32,12 @@ public class OrderItem {
         this.customizations = customizations != null ? customizations : "";
     }
     
+    // Constructor for a stored line, keeping the unit price it was charged at
+    public OrderItem(MenuItem menuItem, int quantity, String customizations, long unitPriceCents) {
+        this(menuItem, quantity, customizations);
+        this.chargedUnitPriceCents = unitPriceCents;
+    }
+    
     // Getters
     public MenuItem getMenuItem() {
         return menuItem;
@@ -52,22 +63,30 @@ public class OrderItem {
     }
     
     // Methods
+    public long getItemTotalCents() {
+        return Money.multiply(getUnitPriceCents(), quantity);
+    }
+    
+    public long getUnitPriceCents() {
+        return chargedUnitPriceCents >= 0 ? chargedUnitPriceCents : menuItem.calculatePriceCents();
+    }
+    
     public double getItemTotal() {
-        return menuItem.calculatePrice() * quantity;
+        return Money.toDouble(getItemTotalCents());
     }
     
     public double getUnitPrice() {
-        return menuItem.calculatePrice();
+        return Money.toDouble(getUnitPriceCents());
     }
     
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
-        sb.append(String.format("%s x%d = $%.2f", 
-                menuItem.getName(), quantity, getItemTotal()));
+        sb.append(menuItem.getName()).append(" x").append(quantity)
+          .append(" = ").append(Money.format(getItemTotalCents()));
         
         if (!customizations.isEmpty()) {
-            sb.append(String.format(" (Customizations: %s)", customizations));
+            sb.append(" (Customizations: ").append(customizations).append(')');
         }
         
         return sb.toString();
@@ -0,0 +1,203 @@
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OrderSyncer class for pushing queued register orders to the central database
+ * Runs in the background, moves due orders from OfflineOrderQueue into
+ * coffee_shop.db through OrderDAO in batches, retries transient failures
+ * (busy/locked database) with exponential backoff and reports conflicts.
+ * Syncing uses its own connection, so its batch transactions never mix with
+ * whatever the register has open on the shared one; SQLite serializes the two.
+ */
+public class OrderSyncer {
+    // Callback for sync outcomes
+    public interface SyncListener {
+        void onSynced(String idempotencyKey, int orderId);
+        void onConflict(String idempotencyKey, String reason);
+    }
+
+    private static final int DEFAULT_BATCH_SIZE = 25;
+    private static final long DEFAULT_INTERVAL_MILLIS = 2000;
+    private static final long BASE_BACKOFF_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = 5 * 60 * 1000;
+    private static final int MAX_ATTEMPTS = 10;
+
+    private final OfflineOrderQueue queue;
+    private final String databaseName;
+    private final int batchSize;
+    private final Object syncLock = new Object();
+    private DatabaseConnection syncConnection;
+    private OrderDAO orderDAO;
+    private final List<SyncListener> listeners = new CopyOnWriteArrayList<>();
+    private ScheduledExecutorService scheduler;
+
+    // Sync into the given database file (normally DatabaseConnection.getInstance().getDatabaseName())
+    public OrderSyncer(OfflineOrderQueue queue, String databaseName) {
+        this(queue, databaseName, DEFAULT_BATCH_SIZE);
+    }
+
+    public OrderSyncer(OfflineOrderQueue queue, String databaseName, int batchSize) {
+        this.queue = queue;
+        this.databaseName = databaseName;
+        this.batchSize = batchSize;
+    }
+
+    public void addListener(SyncListener listener) {
+        listeners.add(listener);
+    }
+
+    // Start syncing in the background
+    public synchronized void start() {
+        start(DEFAULT_INTERVAL_MILLIS);
+    }
+
+    public synchronized void start(long intervalMillis) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "order-syncer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::syncSafely, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Stop the background syncer, finishing the batch in progress
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            scheduler = null;
+        }
+        synchronized (syncLock) {
+            if (syncConnection != null) {
+                syncConnection.closeConnection();
+                syncConnection = null;
+                orderDAO = null;
+            }
+        }
+    }
+
+    // Sync every due order now; returns the number of orders accepted centrally
+    public int syncNow() throws SQLException {
+        synchronized (syncLock) {
+            if (orderDAO == null) {
+                syncConnection = new DatabaseConnection(databaseName);
+                orderDAO = new OrderDAO(syncConnection);
+            }
+            int synced = 0;
+            List<OfflineOrderQueue.QueuedOrder> batch;
+
+            while (!(batch = queue.getDueOrders(batchSize, System.currentTimeMillis())).isEmpty()) {
+                int accepted = syncBatch(batch);
+                synced += accepted;
+                if (accepted < batch.size()) {
+                    // Something failed; leave the rest for the next scheduled run
+                    break;
+                }
+            }
+            return synced;
+        }
+    }
+
+    private void syncSafely() {
+        try {
+            syncNow();
+        } catch (SQLException e) {
+            System.err.println("Error reading offline order queue: " + e.getMessage());
+        } catch (RuntimeException e) {
+            System.err.println("Order sync failed: " + e.getMessage());
+        }
+    }
+
+    // Try the whole batch in one central transaction, then fall back to one by one
+    private int syncBatch(List<OfflineOrderQueue.QueuedOrder> batch) throws SQLException {
+        List<Order> orders = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        for (OfflineOrderQueue.QueuedOrder queued : batch) {
+            orders.add(queued.getOrder());
+            keys.add(queued.getIdempotencyKey());
+        }
+
+        try {
+            int[] orderIds = orderDAO.createOrders(orders, keys);
+            for (int i = 0; i < batch.size(); i++) {
+                markSynced(batch.get(i), orderIds[i]);
+            }
+            return batch.size();
+        } catch (SQLException e) {
+            if (isTransient(e)) {
+                for (OfflineOrderQueue.QueuedOrder queued : batch) {
+                    scheduleRetry(queued, e);
+                }
+                return 0;
+            }
+        }
+
+        int accepted = 0;
+        for (OfflineOrderQueue.QueuedOrder queued : batch) {
+            try {
+                int[] orderIds = orderDAO.createOrders(
+                        Collections.singletonList(queued.getOrder()),
+                        Collections.singletonList(queued.getIdempotencyKey()));
+                markSynced(queued, orderIds[0]);
+                accepted++;
+            } catch (SQLException e) {
+                if (isTransient(e)) {
+                    scheduleRetry(queued, e);
+                } else {
+                    reportConflict(queued, queued.getAttempts() + 1, e.getMessage());
+                }
+            }
+        }
+        return accepted;
+    }
+
+    private void markSynced(OfflineOrderQueue.QueuedOrder queued, int orderId) throws SQLException {
+        queue.markSynced(queued.getQueueId(), orderId);
+        for (SyncListener listener : listeners) {
+            listener.onSynced(queued.getIdempotencyKey(), orderId);
+        }
+    }
+
+    private void scheduleRetry(OfflineOrderQueue.QueuedOrder queued, SQLException cause) throws SQLException {
+        int attempts = queued.getAttempts() + 1;
+        if (attempts >= MAX_ATTEMPTS) {
+            reportConflict(queued, attempts, "Gave up after " + attempts + " attempts: " + cause.getMessage());
+            return;
+        }
+
+        long backoff = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(attempts - 1, 20));
+        // Jitter keeps several registers from retrying in lockstep
+        long jitter = (long) (Math.random() * backoff / 4);
+        queue.markRetry(queued.getQueueId(), attempts, System.currentTimeMillis() + backoff + jitter, cause.getMessage());
+    }
+
+    private void reportConflict(OfflineOrderQueue.QueuedOrder queued, int attempts, String reason) throws SQLException {
+        queue.markConflict(queued.getQueueId(), attempts, reason);
+        System.err.println("Order sync conflict for " + queued.getIdempotencyKey() + ": " + reason);
+        for (SyncListener listener : listeners) {
+            listener.onConflict(queued.getIdempotencyKey(), reason);
+        }
+    }
+
+    // SQLITE_BUSY (5) and SQLITE_LOCKED (6) clear up on their own; anything else is a conflict
+    private static boolean isTransient(SQLException e) {
+        int code = e.getErrorCode() & 0xff;
+        String message = e.getMessage() != null ? e.getMessage() : "";
+        return code == 5 || code == 6
+                || message.contains("SQLITE_BUSY") || message.contains("SQLITE_LOCKED")
+                || message.contains("database is locked");
+    }
+}
@@ -1,4 +1,7 @@
+import java.security.SecureRandom;
 import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Payment class representing payment transactions
@@ -10,16 +13,23 @@ public class Payment {
     }
     
     public enum PaymentStatus {
-        PENDING, PROCESSING, COMPLETED, FAILED, REFUNDED
+        // PENDING_RECONCILE: the processor may have captured it but never said so; check before charging again
+        PENDING, PROCESSING, COMPLETED, FAILED, REFUNDED, PENDING_RECONCILE
     }
     
+    // Sequence behind transaction references: microsecond slots that never repeat in this
+    // process, plus a random node tag that keeps two registers' references apart
+    private static final AtomicLong lastReferenceSequence = new AtomicLong();
+    private static final String REFERENCE_NODE =
+            Long.toString((new SecureRandom().nextInt() & 0xffffffffL) | 0x100000000L, 36).toUpperCase();
+    
     private int paymentId;
     private int orderId;
     private PaymentMethod paymentMethod;
     private PaymentStatus status;
-    private double amount;
-    private double amountPaid;
-    private double changeGiven;
+    private long amountCents;
+    private long amountPaidCents;
+    private long changeGivenCents;
     private LocalDateTime paymentTime;
     private String transactionReference;
     private String cardLastFourDigits;
@@ -27,17 +37,21 @@ public class Payment {
     
     // Constructor
     public Payment(int paymentId, int orderId, PaymentMethod paymentMethod, double amount) {
-        if (amount < 0) {
+        this(paymentId, orderId, paymentMethod, Money.of(amount));
+    }
+    
+    public Payment(int paymentId, int orderId, PaymentMethod paymentMethod, Money amount) {
+        if (amount.isNegative()) {
             throw new IllegalArgumentException("Payment amount cannot be negative");
         }
         
         this.paymentId = paymentId;
         this.orderId = orderId;
         this.paymentMethod = paymentMethod;
-        this.amount = amount;
+        this.amountCents = amount.getCents();
         this.status = PaymentStatus.PENDING;
-        this.amountPaid = 0.0;
-        this.changeGiven = 0.0;
+        this.amountPaidCents = 0;
+        this.changeGivenCents = 0;
         this.transactionReference = "";
         this.cardLastFourDigits = "";
         this.failureReason = "";
@@ -61,15 +75,27 @@ public class Payment {
     }
     
     public double getAmount() {
-        return amount;
+        return Money.toDouble(amountCents);
     }
     
     public double getAmountPaid() {
-        return amountPaid;
+        return Money.toDouble(amountPaidCents);
     }
     
     public double getChangeGiven() {
-        return changeGiven;
+        return Money.toDouble(changeGivenCents);
+    }
+    
+    public long getAmountCents() {
+        return amountCents;
+    }
+    
+    public long getAmountPaidCents() {
+        return amountPaidCents;
+    }
+    
+    public long getChangeGivenCents() {
+        return changeGivenCents;
     }
     
     public LocalDateTime getPaymentTime() {
@@ -101,78 +127,118 @@ public class Payment {
     
     // Methods
     public boolean processCashPayment(double cashReceived) {
-        if (cashReceived < amount) {
+        return processCashPaymentCents(Money.toCents(cashReceived));
+    }
+    
+    public boolean processCashPaymentCents(long cashReceivedCents) {
+        if (cashReceivedCents < amountCents) {
             this.status = PaymentStatus.FAILED;
             this.failureReason = "Insufficient cash provided";
             return false;
         }
         
         this.status = PaymentStatus.PROCESSING;
-        this.amountPaid = cashReceived;
-        this.changeGiven = cashReceived - amount;
+        this.amountPaidCents = cashReceivedCents;
+        this.changeGivenCents = cashReceivedCents - amountCents;
         
         return completePayment();
     }
     
-    public boolean processCardPayment(String cardNumber, String expiryDate, String cvv) {
+    // Charge a card through the gateway; the future completes with the outcome (see processThroughGateway)
+    public CompletableFuture<Boolean> processCardPayment(String cardNumber, String expiryDate, String cvv) {
         // Simulate card validation
         if (cardNumber == null || cardNumber.length() < 16 || 
             expiryDate == null || cvv == null || cvv.length() != 3) {
-            this.status = PaymentStatus.FAILED;
-            this.failureReason = "Invalid card details";
-            return false;
+            return CompletableFuture.completedFuture(applyFailure("Invalid card details"));
         }
         
-        this.status = PaymentStatus.PROCESSING;
-        this.amountPaid = amount;
         this.cardLastFourDigits = cardNumber.substring(cardNumber.length() - 4);
-        this.transactionReference = generateTransactionReference();
         
-        // Simulate payment processing
-        return completePayment();
+        return processThroughGateway(ResilientPaymentGateway.getInstance(), "card:" + cardLastFourDigits,
+                                     generateTransactionReference());
     }
     
-    public boolean processMobilePayment(String mobilePaymentId) {
+    // Charge a mobile wallet through the gateway; the future completes with the outcome
+    public CompletableFuture<Boolean> processMobilePayment(String mobilePaymentId) {
         if (mobilePaymentId == null || mobilePaymentId.trim().isEmpty()) {
-            this.status = PaymentStatus.FAILED;
-            this.failureReason = "Invalid mobile payment ID";
-            return false;
+            return CompletableFuture.completedFuture(applyFailure("Invalid mobile payment ID"));
         }
         
+        return processThroughGateway(ResilientPaymentGateway.getInstance(), "mobile:" + mobilePaymentId,
+                                     generateTransactionReference());
+    }
+    
+    // Authorize then capture through a gateway without waiting on it. The future completes
+    // once status, transaction reference and failure reason reflect the processor's answer.
+    // The idempotency key is reused on retries, so the payment is charged at most once.
+    // A capture that was refused is followed by a void, so the authorization doesn't keep
+    // holding the customer's money; a capture that got no answer leaves the payment
+    // PENDING_RECONCILE, since the processor may have taken it.
+    public CompletableFuture<Boolean> processThroughGateway(PaymentGateway gateway, String paymentToken,
+                                                            String idempotencyKey) {
         this.status = PaymentStatus.PROCESSING;
-        this.amountPaid = amount;
-        this.transactionReference = mobilePaymentId;
-        
+        return gateway.authorize(idempotencyKey + "-auth", paymentMethod, amountCents, paymentToken)
+            .thenCompose(authorization -> {
+                if (!authorization.isApproved()) {
+                    return CompletableFuture.completedFuture(applyFailure(authorization.getMessage()));
+                }
+                String authorizationReference = authorization.getReference();
+                return gateway.capture(idempotencyKey + "-capture", authorizationReference, amountCents)
+                    .thenCompose(capture -> {
+                        if (capture.isApproved()) {
+                            return CompletableFuture.completedFuture(applyCapture(capture));
+                        }
+                        if (capture.isRetryable()) {
+                            // Timed out or errored on every attempt: the outcome is unknown
+                            return CompletableFuture.completedFuture(applyUnknown(authorizationReference, capture.getMessage()));
+                        }
+                        return gateway.voidAuthorization(idempotencyKey + "-void", authorizationReference)
+                            .thenApply(voided -> applyFailure(capture.getMessage() + (voided.isApproved()
+                                ? " (authorization released)"
+                                : " (authorization " + authorizationReference + " not released: " + voided.getMessage() + ")")));
+                    });
+            });
+    }
+    
+    private synchronized boolean applyCapture(PaymentGateway.GatewayResult result) {
+        this.amountPaidCents = amountCents;
+        this.transactionReference = result.getReference();
         return completePayment();
     }
     
+    private synchronized boolean applyFailure(String reason) {
+        this.status = PaymentStatus.FAILED;
+        this.failureReason = reason;
+        return false;
+    }
+    
+    private synchronized boolean applyUnknown(String authorizationReference, String reason) {
+        this.status = PaymentStatus.PENDING_RECONCILE;
+        this.failureReason = "Capture outcome unknown for authorization " + authorizationReference + ": " + reason;
+        return false;
+    }
+    
     public boolean processLoyaltyPointsPayment(double pointsUsed, double pointsToMoneyRatio) {
-        double pointsValue = pointsUsed * pointsToMoneyRatio;
+        long pointsValueCents = Money.toCents(pointsUsed * pointsToMoneyRatio);
         
-        if (pointsValue < amount) {
+        if (pointsValueCents < amountCents) {
             this.status = PaymentStatus.FAILED;
             this.failureReason = "Insufficient loyalty points";
             return false;
         }
         
         this.status = PaymentStatus.PROCESSING;
-        this.amountPaid = amount;
-        this.transactionReference = "LOYALTY_" + (int)pointsUsed;
+        this.amountPaidCents = amountCents;
+        this.transactionReference = "LOYALTY_" + (int)pointsUsed + "_" + generateTransactionReference();
         
         return completePayment();
     }
     
+    // Cash and points are settled at the counter; cards and mobile arrive here once captured
     private boolean completePayment() {
-        // Simulate payment completion (could fail in real scenario)
-        if (Math.random() > 0.05) { // 95% success rate
-            this.status = PaymentStatus.COMPLETED;
-            this.paymentTime = LocalDateTime.now();
-            return true;
-        } else {
-            this.status = PaymentStatus.FAILED;
-            this.failureReason = "Payment processing failed";
-            return false;
-        }
+        this.status = PaymentStatus.COMPLETED;
+        this.paymentTime = LocalDateTime.now();
+        return true;
     }
     
     public boolean refundPayment() {
@@ -183,8 +249,28 @@ public class Payment {
         return false;
     }
     
-    private String generateTransactionReference() {
-        return "TXN" + System.currentTimeMillis() + (int)(Math.random() * 1000);
+    // Refund a captured card or mobile payment at the processor, then mark it refunded
+    public CompletableFuture<Boolean> refundThroughGateway(PaymentGateway gateway) {
+        if (status != PaymentStatus.COMPLETED || transactionReference.isEmpty()) {
+            return CompletableFuture.completedFuture(false);
+        }
+        return gateway.refund(transactionReference + "-refund", transactionReference, amountCents)
+            .thenApply(result -> {
+                synchronized (this) {
+                    if (!result.isApproved()) {
+                        this.failureReason = "Refund failed: " + result.getMessage();
+                        return false;
+                    }
+                    return refundPayment();
+                }
+            });
+    }
+    
+    // Unique without a database round trip, however many threads ask at once
+    static String generateTransactionReference() {
+        long now = System.currentTimeMillis() * 1000;
+        long sequence = lastReferenceSequence.updateAndGet(last -> Math.max(last + 1, now));
+        return "TXN" + Long.toString(sequence, 36).toUpperCase() + "-" + REFERENCE_NODE;
     }
     
     public boolean isSuccessful() {
@@ -192,36 +278,36 @@ public class Payment {
     }
     
     public boolean requiresChange() {
-        return paymentMethod == PaymentMethod.CASH && changeGiven > 0;
+        return paymentMethod == PaymentMethod.CASH && changeGivenCents > 0;
     }
     
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
-        sb.append(String.format("Payment #%d (Order #%d)\n", paymentId, orderId));
-        sb.append(String.format("Method: %s | Status: %s\n", paymentMethod, status));
-        sb.append(String.format("Amount: $%.2f\n", amount));
+        sb.append("Payment #").append(paymentId).append(" (Order #").append(orderId).append(")\n");
+        sb.append("Method: ").append(paymentMethod).append(" | Status: ").append(status).append('\n');
+        sb.append("Amount: ").append(Money.format(amountCents)).append('\n');
         
         if (status == PaymentStatus.COMPLETED) {
-            sb.append(String.format("Amount Paid: $%.2f\n", amountPaid));
+            sb.append("Amount Paid: ").append(Money.format(amountPaidCents)).append('\n');
             
             if (requiresChange()) {
-                sb.append(String.format("Change Given: $%.2f\n", changeGiven));
+                sb.append("Change Given: ").append(Money.format(changeGivenCents)).append('\n');
             }
             
             if (!transactionReference.isEmpty()) {
-                sb.append(String.format("Transaction Ref: %s\n", transactionReference));
+                sb.append("Transaction Ref: ").append(transactionReference).append('\n');
             }
             
             if (!cardLastFourDigits.isEmpty()) {
-                sb.append(String.format("Card: ****%s\n", cardLastFourDigits));
+                sb.append("Card: ****").append(cardLastFourDigits).append('\n');
             }
             
-            sb.append(String.format("Payment Time: %s\n", paymentTime));
+            sb.append("Payment Time: ").append(paymentTime).append('\n');
         }
         
         if (status == PaymentStatus.FAILED && !failureReason.isEmpty()) {
-            sb.append(String.format("Failure Reason: %s\n", failureReason));
+            sb.append("Failure Reason: ").append(failureReason).append('\n');
         }
         
         return sb.toString();
@@ -9,43 +9,135 @@ import java.util.List;
  */
 public class PaymentDAO {
     private DatabaseConnection dbConnection;
+    private OrderArchive archive;
+    private PaymentDedupIndex dedupIndex;
     
     public PaymentDAO() {
-        this.dbConnection = DatabaseConnection.getInstance();
+        this(DatabaseConnection.getInstance());
     }
     
+    // Payment access against a specific store's database
+    public PaymentDAO(DatabaseConnection dbConnection) {
+        this.dbConnection = dbConnection;
+        this.archive = OrderArchive.forDatabase(dbConnection);
+        this.dedupIndex = PaymentDedupIndex.forDatabase(dbConnection);
+    }
+    
+    // Returned by createPayment when another payment already holds the transaction reference
+    public static final int DUPLICATE_REFERENCE = -2;
+    // Returned by createPayment when the idempotency key belongs to a payment for another order, amount or method
+    public static final int IDEMPOTENCY_KEY_REUSED = -3;
+    
     // Create a new payment
     public int createPayment(Payment payment) {
+        return createPayment(payment, null);
+    }
+    
+    // Create a payment at most once per idempotency key: a repeated key (a double tap or a
+    // retried request) returns the payment created the first time, provided it is the same
+    // request (order, amount and method); a key reused for a different payment is refused with
+    // IDEMPOTENCY_KEY_REUSED. A transaction reference that another payment already holds is
+    // refused with DUPLICATE_REFERENCE.
+    public int createPayment(Payment payment, String idempotencyKey) {
+        String key = idempotencyKey != null && !idempotencyKey.isEmpty() ? idempotencyKey : null;
+        String reference = payment.getTransactionReference().isEmpty() ? null : payment.getTransactionReference();
         String query = "INSERT INTO payments (order_id, payment_method, amount, status, " +
-                      "transaction_reference, notes) VALUES (?, ?, ?, ?, ?, ?)";
-        
-        try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
-            pstmt.setInt(1, payment.getOrderId());
-            pstmt.setString(2, payment.getPaymentMethod().toString());
-            pstmt.setDouble(3, payment.getAmount());
-            pstmt.setString(4, payment.getStatus().toString());
-            pstmt.setString(5, payment.getTransactionReference());
-            pstmt.setString(6, payment.getFailureReason());
-            
-            int rowsAffected = pstmt.executeUpdate();
-            
-            if (rowsAffected > 0) {
-                ResultSet generatedKeys = pstmt.getGeneratedKeys();
-                if (generatedKeys.next()) {
-                    return generatedKeys.getInt(1);
+                      "transaction_reference, failure_reason, idempotency_key) VALUES (?, ?, ?, ?, ?, ?, ?)";
+        
+        // Checked and inserted under one lock so two threads on this register can't both get past the check
+        synchronized (dedupIndex) {
+            if (key != null) {
+                int existingId = dedupIndex.findByIdempotencyKey(key);
+                if (existingId > 0) {
+                    return replayOf(existingId, payment);
                 }
             }
+            if (reference != null && dedupIndex.findByTransactionReference(reference) > 0) {
+                System.err.println("Error creating payment: transaction reference " + reference + " is already recorded");
+                return DUPLICATE_REFERENCE;
+            }
             
-        } catch (SQLException e) {
-            System.err.println("Error creating payment: " + e.getMessage());
+            try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
+                pstmt.setInt(1, payment.getOrderId());
+                pstmt.setString(2, payment.getPaymentMethod().toString());
+                Money.bind(pstmt, 3, payment.getAmountCents());
+                pstmt.setString(4, payment.getStatus().toString());
+                pstmt.setString(5, reference);
+                pstmt.setString(6, payment.getFailureReason());
+                pstmt.setString(7, key);
+                
+                int rowsAffected = pstmt.executeUpdate();
+                
+                if (rowsAffected > 0) {
+                    ResultSet generatedKeys = pstmt.getGeneratedKeys();
+                    if (generatedKeys.next()) {
+                        int paymentId = generatedKeys.getInt(1);
+                        dedupIndex.record(paymentId, key, reference);
+                        return paymentId;
+                    }
+                }
+                
+            } catch (SQLException e) {
+                // Another register wrote the same key or reference between our check and insert
+                if (key != null && e.getMessage() != null && e.getMessage().contains("payments.idempotency_key")) {
+                    int existingId = findPaymentIdBy("idempotency_key", key);
+                    if (existingId > 0) {
+                        return replayOf(existingId, payment);
+                    }
+                }
+                if (e.getMessage() != null && e.getMessage().contains("payments.transaction_reference")) {
+                    System.err.println("Error creating payment: transaction reference " + reference + " is already recorded");
+                    return DUPLICATE_REFERENCE;
+                }
+                System.err.println("Error creating payment: " + e.getMessage());
+            }
         }
         
         return -1;
     }
     
-    // Get payment by ID
+    // The earlier payment for a replayed key, or IDEMPOTENCY_KEY_REUSED if the request differs from it
+    private int replayOf(int existingId, Payment payment) {
+        Payment existing = getPaymentById(existingId);
+        if (existing == null) {
+            return existingId;
+        }
+        if (existing.getOrderId() != payment.getOrderId()
+                || existing.getAmountCents() != payment.getAmountCents()
+                || existing.getPaymentMethod() != payment.getPaymentMethod()) {
+            System.err.println("Error creating payment: idempotency key already used by payment " + existingId);
+            return IDEMPOTENCY_KEY_REUSED;
+        }
+        return existingId;
+    }
+    
+    // Whether a payment other than this one already holds the reference
+    private boolean isReferenceTaken(String transactionReference, int paymentId) {
+        if (transactionReference == null || transactionReference.isEmpty()) {
+            return false;
+        }
+        int holder = dedupIndex.findByTransactionReference(transactionReference);
+        return holder > 0 && holder != paymentId;
+    }
+    
+    // Live payment id by a unique column, straight from the index (0 if none)
+    private int findPaymentIdBy(String column, String value) {
+        String query = "SELECT payment_id FROM payments WHERE " + column + " = ?";
+        
+        try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
+            pstmt.setString(1, value);
+            ResultSet rs = pstmt.executeQuery();
+            return rs.next() ? rs.getInt("payment_id") : 0;
+            
+        } catch (SQLException e) {
+            System.err.println("Error finding payment by " + column + ": " + e.getMessage());
+            return 0;
+        }
+    }
+    
+    // Get payment by ID (live or archived)
     public Payment getPaymentById(int paymentId) {
-        String query = "SELECT * FROM payments WHERE payment_id = ?";
+        String query = "SELECT * FROM " + archive.span(dbConnection, "payments") + " WHERE payment_id = ?";
         
         try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
             pstmt.setInt(1, paymentId);
@@ -62,10 +154,29 @@ public class PaymentDAO {
         return null;
     }
     
+    // Stored status of a payment (live or archived), or null if there is no such payment
+    public Payment.PaymentStatus getPaymentStatus(int paymentId) {
+        String query = "SELECT status FROM " + archive.span(dbConnection, "payments") + " WHERE payment_id = ?";
+        
+        try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
+            pstmt.setInt(1, paymentId);
+            ResultSet rs = pstmt.executeQuery();
+            
+            if (rs.next()) {
+                return Payment.PaymentStatus.valueOf(rs.getString("status"));
+            }
+            
+        } catch (SQLException | IllegalArgumentException e) {
+            System.err.println("Error getting payment status: " + e.getMessage());
+        }
+        
+        return null;
+    }
+    
     // Get payments by order ID
     public List<Payment> getPaymentsByOrderId(int orderId) {
         List<Payment> payments = new ArrayList<>();
-        String query = "SELECT * FROM payments WHERE order_id = ? ORDER BY created_at DESC";
+        String query = "SELECT * FROM " + archive.span(dbConnection, "payments") + " WHERE order_id = ? ORDER BY created_at DESC";
         
         try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
             pstmt.setInt(1, orderId);
@@ -85,10 +196,13 @@ public class PaymentDAO {
         return payments;
     }
     
-    // Get payments by status
+    // Get payments by status; payments in flight keep their order live, so they are never archived
     public List<Payment> getPaymentsByStatus(Payment.PaymentStatus status) {
         List<Payment> payments = new ArrayList<>();
-        String query = "SELECT * FROM payments WHERE status = ? ORDER BY created_at DESC";
+        boolean inFlight = status == Payment.PaymentStatus.PENDING || status == Payment.PaymentStatus.PROCESSING
+                || status == Payment.PaymentStatus.PENDING_RECONCILE;
+        String table = inFlight ? "payments" : archive.span(dbConnection, "payments");
+        String query = "SELECT * FROM " + table + " WHERE status = ? ORDER BY created_at DESC";
         
         try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
             pstmt.setString(1, status.toString());
@@ -111,7 +225,7 @@ public class PaymentDAO {
     // Get payments by payment method
     public List<Payment> getPaymentsByMethod(Payment.PaymentMethod method) {
         List<Payment> payments = new ArrayList<>();
-        String query = "SELECT * FROM payments WHERE payment_method = ? ORDER BY created_at DESC";
+        String query = "SELECT * FROM " + archive.span(dbConnection, "payments") + " WHERE payment_method = ? ORDER BY created_at DESC";
         
         try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
             pstmt.setString(1, method.toString());
@@ -134,7 +248,7 @@ public class PaymentDAO {
     // Get all payments
     public List<Payment> getAllPayments() {
         List<Payment> payments = new ArrayList<>();
-        String query = "SELECT * FROM payments ORDER BY created_at DESC";
+        String query = "SELECT * FROM " + archive.span(dbConnection, "payments") + " ORDER BY created_at DESC";
         
         try (Statement stmt = dbConnection.getConnection().createStatement();
              ResultSet rs = stmt.executeQuery(query)) {
@@ -174,22 +288,36 @@ public class PaymentDAO {
     public boolean updateTransactionReference(int paymentId, String transactionReference) {
         String query = "UPDATE payments SET transaction_reference = ?, updated_at = CURRENT_TIMESTAMP WHERE payment_id = ?";
         
-        try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
-            pstmt.setString(1, transactionReference);
-            pstmt.setInt(2, paymentId);
-            
-            int rowsAffected = pstmt.executeUpdate();
-            return rowsAffected > 0;
+        synchronized (dedupIndex) {
+            if (isReferenceTaken(transactionReference, paymentId)) {
+                System.err.println("Error updating transaction reference: " + transactionReference + " is already recorded");
+                return false;
+            }
+            Payment previous = getPaymentById(paymentId);
             
-        } catch (SQLException e) {
-            System.err.println("Error updating transaction reference: " + e.getMessage());
-            return false;
+            try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
+                pstmt.setString(1, transactionReference != null && !transactionReference.isEmpty() ? transactionReference : null);
+                pstmt.setInt(2, paymentId);
+                
+                int rowsAffected = pstmt.executeUpdate();
+                if (rowsAffected > 0) {
+                    if (previous != null) {
+                        dedupIndex.forgetTransactionReference(previous.getTransactionReference());
+                    }
+                    dedupIndex.record(paymentId, null, transactionReference);
+                }
+                return rowsAffected > 0;
+                
+            } catch (SQLException e) {
+                System.err.println("Error updating transaction reference: " + e.getMessage());
+                return false;
+            }
         }
     }
     
     // Update payment notes
     public boolean updatePaymentNotes(int paymentId, String notes) {
-        String query = "UPDATE payments SET notes = ?, updated_at = CURRENT_TIMESTAMP WHERE payment_id = ?";
+        String query = "UPDATE payments SET failure_reason = ?, updated_at = CURRENT_TIMESTAMP WHERE payment_id = ?";
         
         try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
             pstmt.setString(1, notes);
@@ -209,22 +337,34 @@ public class PaymentDAO {
         String query = "UPDATE payments SET status = 'COMPLETED', transaction_reference = ?, " +
                       "updated_at = CURRENT_TIMESTAMP WHERE payment_id = ? AND status = 'PENDING'";
         
-        try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
-            pstmt.setString(1, transactionReference);
-            pstmt.setInt(2, paymentId);
-            
-            int rowsAffected = pstmt.executeUpdate();
-            return rowsAffected > 0;
+        // The same gateway reference on two payments means one capture was recorded twice
+        synchronized (dedupIndex) {
+            if (isReferenceTaken(transactionReference, paymentId)) {
+                System.err.println("Error processing payment: transaction reference " + transactionReference + " is already recorded");
+                return false;
+            }
             
-        } catch (SQLException e) {
-            System.err.println("Error processing payment: " + e.getMessage());
-            return false;
+            try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
+                pstmt.setString(1, transactionReference != null && !transactionReference.isEmpty() ? transactionReference : null);
+                pstmt.setInt(2, paymentId);
+                
+                int rowsAffected = pstmt.executeUpdate();
+                if (rowsAffected > 0) {
+                    dedupIndex.record(paymentId, null, transactionReference);
+                    OrderEventJournal.record(OrderEventJournal.EventType.PAYMENT_PROCESSED, paymentId, 0, transactionReference);
+                }
+                return rowsAffected > 0;
+                
+            } catch (SQLException e) {
+                System.err.println("Error processing payment: " + e.getMessage());
+                return false;
+            }
         }
     }
     
     // Refund payment
     public boolean refundPayment(int paymentId, String refundReason) {
-        String query = "UPDATE payments SET status = 'REFUNDED', notes = ?, " +
+        String query = "UPDATE payments SET status = 'REFUNDED', failure_reason = ?, " +
                       "updated_at = CURRENT_TIMESTAMP WHERE payment_id = ? AND status = 'COMPLETED'";
         
         try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
@@ -232,6 +372,9 @@ public class PaymentDAO {
             pstmt.setInt(2, paymentId);
             
             int rowsAffected = pstmt.executeUpdate();
+            if (rowsAffected > 0) {
+                OrderEventJournal.record(OrderEventJournal.EventType.PAYMENT_REFUNDED, paymentId, 0, refundReason);
+            }
             return rowsAffected > 0;
             
         } catch (SQLException e) {
@@ -242,7 +385,7 @@ public class PaymentDAO {
     
     // Cancel payment
     public boolean cancelPayment(int paymentId, String cancelReason) {
-        String query = "UPDATE payments SET status = 'CANCELLED', notes = ?, " +
+        String query = "UPDATE payments SET status = 'CANCELLED', failure_reason = ?, " +
                       "updated_at = CURRENT_TIMESTAMP WHERE payment_id = ? AND status = 'PENDING'";
         
         try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
@@ -250,6 +393,9 @@ public class PaymentDAO {
             pstmt.setInt(2, paymentId);
             
             int rowsAffected = pstmt.executeUpdate();
+            if (rowsAffected > 0) {
+                OrderEventJournal.record(OrderEventJournal.EventType.PAYMENT_CANCELLED, paymentId, 0, cancelReason);
+            }
             return rowsAffected > 0;
             
         } catch (SQLException e) {
@@ -258,6 +404,23 @@ public class PaymentDAO {
         }
     }
     
+    // Apply a status recovered from the event journal (not journaled again)
+    public boolean applyPaymentStatus(int paymentId, String status) {
+        String query = "UPDATE payments SET status = ?, updated_at = CURRENT_TIMESTAMP WHERE payment_id = ?";
+        
+        try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
+            pstmt.setString(1, status);
+            pstmt.setInt(2, paymentId);
+            
+            int rowsAffected = pstmt.executeUpdate();
+            return rowsAffected > 0;
+            
+        } catch (SQLException e) {
+            System.err.println("Error applying payment status: " + e.getMessage());
+            return false;
+        }
+    }
+    
     // Delete payment
     public boolean deletePayment(int paymentId) {
         String query = "DELETE FROM payments WHERE payment_id = ?";
@@ -274,14 +437,16 @@ public class PaymentDAO {
         }
     }
     
-    // Get payments by date range
+    // Get payments by date range; the archive is only read when the range reaches back into it
     public List<Payment> getPaymentsByDateRange(LocalDateTime startDate, LocalDateTime endDate) {
         List<Payment> payments = new ArrayList<>();
-        String query = "SELECT * FROM payments WHERE created_at BETWEEN ? AND ? ORDER BY created_at DESC";
+        String query = "SELECT * FROM " + archive.span(dbConnection, "payments", startDate) +
+                      " WHERE created_at BETWEEN ? AND ? ORDER BY created_at DESC";
         
         try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
-            pstmt.setTimestamp(1, Timestamp.valueOf(startDate));
-            pstmt.setTimestamp(2, Timestamp.valueOf(endDate));
+            // created_at holds CURRENT_TIMESTAMP text (UTC), so compare against the same form
+            pstmt.setString(1, OrderArchive.toSqlTimestamp(startDate));
+            pstmt.setString(2, OrderArchive.toSqlTimestamp(endDate));
             ResultSet rs = pstmt.executeQuery();
             
             while (rs.next()) {
@@ -300,7 +465,7 @@ public class PaymentDAO {
     
     // Get payment by transaction reference
     public Payment getPaymentByTransactionReference(String transactionReference) {
-        String query = "SELECT * FROM payments WHERE transaction_reference = ?";
+        String query = "SELECT * FROM " + archive.span(dbConnection, "payments") + " WHERE transaction_reference = ?";
         
         try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
             pstmt.setString(1, transactionReference);
@@ -319,25 +484,25 @@ public class PaymentDAO {
     
     // Check if order is fully paid
     public boolean isOrderFullyPaid(int orderId) {
-        String query = "SELECT SUM(amount) as total_paid FROM payments " +
-                      "WHERE order_id = ? AND status = 'COMPLETED'";
+        String query = "SELECT SUM(CAST(ROUND(amount * 100) AS INTEGER)) as total_paid_cents FROM " +
+                      archive.span(dbConnection, "payments") + " WHERE order_id = ? AND status = 'COMPLETED'";
         
         try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
             pstmt.setInt(1, orderId);
             ResultSet rs = pstmt.executeQuery();
             
             if (rs.next()) {
-                double totalPaid = rs.getDouble("total_paid");
+                long totalPaidCents = rs.getLong("total_paid_cents");
                 
                 // Get order total
-                String orderQuery = "SELECT total_amount FROM orders WHERE order_id = ?";
+                String orderQuery = "SELECT total_amount FROM " + archive.span(dbConnection, "orders") + " WHERE order_id = ?";
                 try (PreparedStatement orderPstmt = dbConnection.prepareStatement(orderQuery)) {
                     orderPstmt.setInt(1, orderId);
                     ResultSet orderRs = orderPstmt.executeQuery();
                     
                     if (orderRs.next()) {
-                        double orderTotal = orderRs.getDouble("total_amount");
-                        return totalPaid >= orderTotal;
+                        long orderTotalCents = Money.read(orderRs, "total_amount");
+                        return totalPaidCents >= orderTotalCents;
                     }
                 }
             }
@@ -351,15 +516,15 @@ public class PaymentDAO {
     
     // Get total paid amount for order
     public double getTotalPaidForOrder(int orderId) {
-        String query = "SELECT SUM(amount) as total_paid FROM payments " +
-                      "WHERE order_id = ? AND status = 'COMPLETED'";
+        String query = "SELECT SUM(CAST(ROUND(amount * 100) AS INTEGER)) as total_paid_cents FROM " +
+                      archive.span(dbConnection, "payments") + " WHERE order_id = ? AND status = 'COMPLETED'";
         
         try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
             pstmt.setInt(1, orderId);
             ResultSet rs = pstmt.executeQuery();
             
             if (rs.next()) {
-                return rs.getDouble("total_paid");
+                return Money.toDouble(rs.getLong("total_paid_cents"));
             }
             
         } catch (SQLException e) {
@@ -372,8 +537,7 @@ public class PaymentDAO {
     // Get payment statistics
     public PaymentStats getPaymentStats() {
         String query = "SELECT COUNT(*) as total_payments, " +
-                      "SUM(CASE WHEN status = 'COMPLETED' THEN amount ELSE 0 END) as total_revenue, " +
-                      "AVG(CASE WHEN status = 'COMPLETED' THEN amount ELSE NULL END) as avg_payment_amount, " +
+                      "SUM(CASE WHEN status = 'COMPLETED' THEN CAST(ROUND(amount * 100) AS INTEGER) ELSE 0 END) as total_revenue_cents, " +
                       "COUNT(CASE WHEN status = 'COMPLETED' THEN 1 END) as completed_payments, " +
                       "COUNT(CASE WHEN status = 'PENDING' THEN 1 END) as pending_payments, " +
                       "COUNT(CASE WHEN status = 'CANCELLED' THEN 1 END) as cancelled_payments, " +
@@ -384,22 +548,37 @@ public class PaymentDAO {
                       "COUNT(CASE WHEN payment_method = 'LOYALTY_POINTS' THEN 1 END) as loyalty_payments " +
                       "FROM payments";
         
+        // Live counts every time; archived payments never change, so their totals are cached
+        String liveQuery = query.replace("FROM payments", "FROM " + archive.live(dbConnection, "payments"));
         try (Statement stmt = dbConnection.getConnection().createStatement();
-             ResultSet rs = stmt.executeQuery(query)) {
+             ResultSet rs = stmt.executeQuery(liveQuery)) {
             
             if (rs.next()) {
+                long[] totals = new long[10];
+                for (int i = 0; i < totals.length; i++) {
+                    totals[i] = rs.getLong(i + 1);
+                }
+                long[] archived = archive.archivedTotals(dbConnection, "payments", query);
+                if (archived != null) {
+                    for (int i = 0; i < totals.length; i++) {
+                        totals[i] += archived[i];
+                    }
+                }
+                
+                long totalRevenueCents = totals[1];
+                int completedPayments = (int) totals[2];
                 return new PaymentStats(
-                    rs.getInt("total_payments"),
-                    rs.getDouble("total_revenue"),
-                    rs.getDouble("avg_payment_amount"),
-                    rs.getInt("completed_payments"),
-                    rs.getInt("pending_payments"),
-                    rs.getInt("cancelled_payments"),
-                    rs.getInt("refunded_payments"),
-                    rs.getInt("cash_payments"),
-                    rs.getInt("card_payments"),
-                    rs.getInt("mobile_payments"),
-                    rs.getInt("loyalty_payments")
+                    (int) totals[0],
+                    Money.toDouble(totalRevenueCents),
+                    completedPayments > 0 ? Money.toDouble(totalRevenueCents) / completedPayments : 0.0,
+                    completedPayments,
+                    (int) totals[3],
+                    (int) totals[4],
+                    (int) totals[5],
+                    (int) totals[6],
+                    (int) totals[7],
+                    (int) totals[8],
+                    (int) totals[9]
                 );
             }
             
@@ -415,15 +594,15 @@ public class PaymentDAO {
         int paymentId = rs.getInt("payment_id");
         int orderId = rs.getInt("order_id");
         String paymentMethodStr = rs.getString("payment_method");
-        double amount = rs.getDouble("amount");
+        long amountCents = Money.read(rs, "amount");
         String statusStr = rs.getString("status");
         String transactionReference = rs.getString("transaction_reference");
-        String notes = rs.getString("notes");
+        String notes = rs.getString("failure_reason");
         
         Payment.PaymentMethod paymentMethod = Payment.PaymentMethod.valueOf(paymentMethodStr);
         Payment.PaymentStatus status = Payment.PaymentStatus.valueOf(statusStr);
         
-        Payment payment = new Payment(paymentId, orderId, paymentMethod, amount);
+        Payment payment = new Payment(paymentId, orderId, paymentMethod, Money.ofCents(amountCents));
         // Note: Payment status is set through payment processing methods
         payment.setTransactionReference(transactionReference);
         // Note: Payment notes functionality not available in current Payment class
@@ -0,0 +1,207 @@
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * PaymentDedupIndex class for spotting repeated payment captures before they reach the database
+ * Every idempotency key and transaction reference already used is in a Bloom
+ * filter, and the most recent ones are in a small LRU with their payment ids.
+ * A double tap hits the LRU and is answered from memory; a new key misses the
+ * filter and goes straight to the insert. Only a filter hit that isn't in the
+ * LRU (an old key, or a false positive) costs an index lookup.
+ *
+ * The unique indexes on payments stay the final guard: a capture that races
+ * past this check fails its insert and PaymentDAO resolves it from there.
+ */
+public class PaymentDedupIndex {
+    private static final int EXPECTED_KEYS = Integer.getInteger("coffeeshop.paymentDedupKeys", 1000000);
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+    private static final int RECENT_KEYS = Integer.getInteger("coffeeshop.paymentRecentKeys", 10000);
+
+    private static final String KEY_PREFIX = "K:";
+    private static final String REFERENCE_PREFIX = "R:";
+
+    private static final Map<String, PaymentDedupIndex> instances = new HashMap<>();
+
+    private final DatabaseConnection dbConnection;
+    private final LinkedHashMap<String, Integer> recent = new LinkedHashMap<String, Integer>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+            return size() > RECENT_KEYS;
+        }
+    };
+    private BloomFilter filter;
+
+    private long recentHits;
+    private long filterMisses;
+    private long databaseLookups;
+    private long falsePositives;
+
+    private PaymentDedupIndex(DatabaseConnection dbConnection) {
+        this.dbConnection = dbConnection;
+    }
+
+    // Index for a database's payments (one per store database in sharded mode)
+    public static synchronized PaymentDedupIndex forDatabase(DatabaseConnection db) {
+        PaymentDedupIndex index = instances.get(db.getDatabaseName());
+        if (index == null) {
+            index = new PaymentDedupIndex(db);
+            instances.put(db.getDatabaseName(), index);
+        }
+        return index;
+    }
+
+    // Payment created with this idempotency key, or 0 if there is none
+    public int findByIdempotencyKey(String idempotencyKey) {
+        return find(KEY_PREFIX, "idempotency_key", idempotencyKey);
+    }
+
+    // Payment holding this transaction reference, or 0 if there is none
+    public int findByTransactionReference(String transactionReference) {
+        return find(REFERENCE_PREFIX, "transaction_reference", transactionReference);
+    }
+
+    // Remember the key and reference of a payment the DAO has just written
+    public synchronized void record(int paymentId, String idempotencyKey, String transactionReference) {
+        if (filter == null) {
+            return;
+        }
+        remember(KEY_PREFIX, idempotencyKey, paymentId);
+        remember(REFERENCE_PREFIX, transactionReference, paymentId);
+        // Past its capacity the filter answers "maybe" too often; rebuild it larger on the next lookup
+        if (filter.isOverCapacity()) {
+            filter = null;
+        }
+    }
+
+    // Drop a reference that a write has moved off a payment
+    public synchronized void forgetTransactionReference(String transactionReference) {
+        if (transactionReference != null) {
+            recent.remove(REFERENCE_PREFIX + transactionReference);
+        }
+    }
+
+    private synchronized int find(String prefix, String column, String value) {
+        if (value == null || value.isEmpty()) {
+            return 0;
+        }
+        ensureLoaded();
+        Integer paymentId = recent.get(prefix + value);
+        if (paymentId != null) {
+            recentHits++;
+            return paymentId;
+        }
+        if (!filter.mightContain(prefix + value)) {
+            filterMisses++;
+            return 0;
+        }
+
+        databaseLookups++;
+        int found = lookup(column, value);
+        if (found > 0) {
+            recent.put(prefix + value, found);
+        } else if (found == 0) {
+            falsePositives++;
+        }
+        return Math.max(found, 0);
+    }
+
+    private void remember(String prefix, String value, int paymentId) {
+        if (value != null && !value.isEmpty()) {
+            filter.add(prefix + value);
+            recent.put(prefix + value, paymentId);
+        }
+    }
+
+    // Fill the filter from every payment in both tiers
+    private void ensureLoaded() {
+        if (filter != null) {
+            return;
+        }
+        String table = OrderArchive.forDatabase(dbConnection).span(dbConnection, "payments");
+        int rows = 0;
+        try (Statement stmt = dbConnection.getConnection().createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + table)) {
+            rows = rs.next() ? rs.getInt(1) : 0;
+        } catch (SQLException e) {
+            System.err.println("Error sizing payment dedup index: " + e.getMessage());
+        }
+
+        // Room for both values of every payment, with headroom before the next rebuild
+        BloomFilter loading = new BloomFilter(Math.max(EXPECTED_KEYS, rows * 4), FALSE_POSITIVE_RATE);
+        try (Statement stmt = dbConnection.getConnection().createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT idempotency_key, transaction_reference FROM " + table)) {
+            while (rs.next()) {
+                String key = rs.getString(1);
+                String reference = rs.getString(2);
+                if (key != null && !key.isEmpty()) {
+                    loading.add(KEY_PREFIX + key);
+                }
+                if (reference != null && !reference.isEmpty()) {
+                    loading.add(REFERENCE_PREFIX + reference);
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error loading payment dedup index: " + e.getMessage());
+        }
+        filter = loading;
+    }
+
+    // Payment id with the value, 0 if none, -1 if the lookup failed
+    private int lookup(String column, String value) {
+        String query = "SELECT payment_id FROM " + OrderArchive.forDatabase(dbConnection).span(dbConnection, "payments") +
+                       " WHERE " + column + " = ? LIMIT 1";
+        try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
+            pstmt.setString(1, value);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        } catch (SQLException e) {
+            System.err.println("Error looking up payment by " + column + ": " + e.getMessage());
+            return -1;
+        }
+    }
+
+    public synchronized DedupStats getStats() {
+        return new DedupStats(filter != null ? filter.size() : 0, recent.size(), recentHits, filterMisses,
+                              databaseLookups, falsePositives);
+    }
+
+    // Inner class for how duplicate checks were answered
+    public static class DedupStats {
+        private final int keysIndexed;
+        private final int recentKeys;
+        private final long recentHits;
+        private final long filterMisses;
+        private final long databaseLookups;
+        private final long falsePositives;
+
+        public DedupStats(int keysIndexed, int recentKeys, long recentHits, long filterMisses,
+                          long databaseLookups, long falsePositives) {
+            this.keysIndexed = keysIndexed;
+            this.recentKeys = recentKeys;
+            this.recentHits = recentHits;
+            this.filterMisses = filterMisses;
+            this.databaseLookups = databaseLookups;
+            this.falsePositives = falsePositives;
+        }
+
+        public int getKeysIndexed() { return keysIndexed; }
+        public int getRecentKeys() { return recentKeys; }
+        public long getRecentHits() { return recentHits; }
+        public long getFilterMisses() { return filterMisses; }
+        public long getDatabaseLookups() { return databaseLookups; }
+        public long getFalsePositives() { return falsePositives; }
+
+        @Override
+        public String toString() {
+            return String.format("Payment dedup: %d keys, %d recent, %d recent hits, %d filter misses, " +
+                                 "%d lookups (%d false positives)", keysIndexed, recentKeys, recentHits,
+                                 filterMisses, databaseLookups, falsePositives);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * PaymentGateway interface for card and mobile payment processors
+ * Every call returns at once with a future that completes when the processor
+ * answers, so the register never waits on the network. The idempotency key
+ * names one operation across retries: a processor that has already answered
+ * it returns the same answer instead of charging twice.
+ *
+ * Futures complete normally even when the processor is unreachable; the
+ * result says whether it failed and whether trying again could help.
+ */
+public interface PaymentGateway {
+    // Hold the amount; the result's reference names the authorization
+    CompletableFuture<GatewayResult> authorize(String idempotencyKey, Payment.PaymentMethod method,
+                                               long amountCents, String paymentToken);
+
+    // Take up to the authorized amount; the result's reference is the transaction reference
+    CompletableFuture<GatewayResult> capture(String idempotencyKey, String authorizationReference, long amountCents);
+
+    // Give back up to the captured amount of a transaction
+    CompletableFuture<GatewayResult> refund(String idempotencyKey, String transactionReference, long amountCents);
+
+    // Release an authorization that will not be captured
+    CompletableFuture<GatewayResult> voidAuthorization(String idempotencyKey, String authorizationReference);
+
+    // Inner class for a processor's answer
+    class GatewayResult {
+        public enum Outcome {
+            APPROVED, DECLINED, FAILED
+        }
+
+        private final Outcome outcome;
+        private final String reference;
+        private final String message;
+        private final boolean retryable;
+
+        private GatewayResult(Outcome outcome, String reference, String message, boolean retryable) {
+            this.outcome = outcome;
+            this.reference = reference;
+            this.message = message;
+            this.retryable = retryable;
+        }
+
+        public static GatewayResult approved(String reference) {
+            return new GatewayResult(Outcome.APPROVED, reference, "", false);
+        }
+
+        // The processor answered no (insufficient funds, bad card); retrying won't change it
+        public static GatewayResult declined(String message) {
+            return new GatewayResult(Outcome.DECLINED, null, message, false);
+        }
+
+        // No usable answer (error, timeout, circuit open); retryable if the same request may yet succeed
+        public static GatewayResult failed(String message, boolean retryable) {
+            return new GatewayResult(Outcome.FAILED, null, message, retryable);
+        }
+
+        public Outcome getOutcome() { return outcome; }
+        public String getReference() { return reference; }
+        public String getMessage() { return message; }
+        public boolean isRetryable() { return retryable; }
+        public boolean isApproved() { return outcome == Outcome.APPROVED; }
+
+        @Override
+        public String toString() {
+            return outcome == Outcome.APPROVED ? "APPROVED " + reference : outcome + ": " + message;
+        }
+    }
+}
@@ -0,0 +1,355 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * PaymentReconciler class for checking orders against the payments taken for them
+ * The date range is cut into partitions of a few days, and each partition is one
+ * query: the orders placed in it LEFT JOINed to their payments and grouped by
+ * order, so every order comes back once with its paid and refunded totals. Rows
+ * are read as they stream in and only the discrepancies are kept.
+ *
+ * Partitions are checked in parallel, each worker on its own read connection to
+ * the database file, so one worker's query doesn't queue behind another's on the
+ * shared connection. Both archive tiers are read when a partition reaches back
+ * into the archive. The findings are written to a CSV report.
+ */
+public class PaymentReconciler {
+    private static final int PARTITION_DAYS = Integer.getInteger("coffeeshop.reconcilePartitionDays", 1);
+    private static final int THREADS = Integer.getInteger("coffeeshop.reconcileThreads",
+            Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    private static PaymentReconciler instance;
+
+    private final String databaseName;
+    private final File reportDirectory;
+
+    public PaymentReconciler(String databaseName, File reportDirectory) {
+        this.databaseName = databaseName;
+        this.reportDirectory = reportDirectory;
+    }
+
+    // Get the reconciler for this register's database
+    public static synchronized PaymentReconciler getInstance() {
+        if (instance == null) {
+            File directory = new File(System.getProperty("coffeeshop.reconciliationDir", "reports"));
+            instance = new PaymentReconciler(DatabaseConnection.getInstance().getDatabaseName(), directory);
+        }
+        return instance;
+    }
+
+    // Kinds of mismatch between an order and its payments
+    public enum Issue {
+        UNDERPAID,              // completed payments short of the order total
+        OVERPAID,               // more taken than the order total (any payment on a cancelled order)
+        REFUNDED_BUT_COMPLETED, // order completed although its payment was refunded
+        ORPHAN_PAYMENT          // payment for an order that doesn't exist
+    }
+
+    // Check orders placed (and payments taken) from one local date up to, not including, another
+    public Reconciliation reconcile(LocalDate from, LocalDate to) {
+        long started = System.currentTimeMillis();
+        ConcurrentLinkedQueue<LocalDate> partitions = new ConcurrentLinkedQueue<>();
+        for (LocalDate day = from; day.isBefore(to); day = day.plusDays(Math.max(1, PARTITION_DAYS))) {
+            partitions.add(day);
+        }
+        int partitionCount = partitions.size();
+
+        List<Discrepancy> discrepancies = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger ordersChecked = new AtomicInteger();
+        AtomicInteger failedPartitions = new AtomicInteger();
+
+        int workers = Math.max(1, Math.min(THREADS, partitionCount));
+        ExecutorService executor = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "payment-reconciler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> running = new ArrayList<>();
+            for (int i = 0; i < workers; i++) {
+                running.add(executor.submit(() -> {
+                    DatabaseConnection db = new DatabaseConnection(databaseName);
+                    try {
+                        LocalDate day;
+                        while ((day = partitions.poll()) != null) {
+                            LocalDate end = day.plusDays(Math.max(1, PARTITION_DAYS));
+                            if (end.isAfter(to)) {
+                                end = to;
+                            }
+                            if (!checkPartition(db, day.atStartOfDay(), end.atStartOfDay(), discrepancies, ordersChecked)) {
+                                failedPartitions.incrementAndGet();
+                            }
+                        }
+                    } finally {
+                        db.closeConnection();
+                    }
+                }));
+            }
+            for (Future<?> worker : running) {
+                worker.get();
+            }
+        } catch (Exception e) {
+            System.err.println("Error reconciling payments: " + e.getMessage());
+            return null;
+        } finally {
+            executor.shutdownNow();
+        }
+
+        List<Discrepancy> sorted = new ArrayList<>(discrepancies);
+        sorted.sort((a, b) -> a.getOrderId() != b.getOrderId()
+                ? Integer.compare(a.getOrderId(), b.getOrderId())
+                : Integer.compare(a.getPaymentId(), b.getPaymentId()));
+        File report = writeReport(from, to, sorted);
+        return new Reconciliation(from, to, partitionCount, failedPartitions.get(), ordersChecked.get(),
+                sorted, report, System.currentTimeMillis() - started);
+    }
+
+    // One partition: orders joined to their payment totals, then payments with no order
+    private boolean checkPartition(DatabaseConnection db, LocalDateTime from, LocalDateTime to,
+                                   List<Discrepancy> discrepancies, AtomicInteger ordersChecked) {
+        Connection conn = db.getConnection();
+        if (conn == null) {
+            return false;
+        }
+        OrderArchive archive = OrderArchive.forDatabase(db);
+        String orders = archive.span(db, "orders", from);
+        String payments = archive.span(db, "payments", from);
+
+        String orderQuery = "SELECT orders.order_id, orders.status, orders.order_time, " +
+                           "CAST(ROUND(orders.total_amount * 100) AS INTEGER) AS total_cents, " +
+                           "COALESCE(SUM(CASE WHEN payments.status = 'COMPLETED' THEN CAST(ROUND(payments.amount * 100) AS INTEGER) END), 0) AS paid_cents, " +
+                           "COALESCE(SUM(CASE WHEN payments.status = 'REFUNDED' THEN CAST(ROUND(payments.amount * 100) AS INTEGER) END), 0) AS refunded_cents " +
+                           "FROM " + orders + " LEFT JOIN " + payments + " ON payments.order_id = orders.order_id " +
+                           "WHERE orders.order_time >= ? AND orders.order_time < ? " +
+                           "GROUP BY orders.order_id";
+        String orphanQuery = "SELECT payment_id, order_id, status, created_at, " +
+                            "CAST(ROUND(amount * 100) AS INTEGER) AS amount_cents FROM " + payments +
+                            " WHERE created_at >= ? AND created_at < ? AND status IN ('COMPLETED', 'REFUNDED')" +
+                            " AND NOT EXISTS (SELECT 1 FROM " + orders + " WHERE orders.order_id = payments.order_id)";
+
+        List<Discrepancy> found = new ArrayList<>();
+        int checked = 0;
+        try {
+            try (PreparedStatement pstmt = conn.prepareStatement(orderQuery)) {
+                pstmt.setString(1, OrderArchive.toSqlTimestamp(from));
+                pstmt.setString(2, OrderArchive.toSqlTimestamp(to));
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        checked++;
+                        Discrepancy discrepancy = classify(rs.getInt("order_id"), rs.getString("status"),
+                                TableDAO.fromSqlTimestamp(rs.getString("order_time")), rs.getLong("total_cents"),
+                                rs.getLong("paid_cents"), rs.getLong("refunded_cents"));
+                        if (discrepancy != null) {
+                            found.add(discrepancy);
+                        }
+                    }
+                }
+            }
+
+            try (PreparedStatement pstmt = conn.prepareStatement(orphanQuery)) {
+                pstmt.setString(1, OrderArchive.toSqlTimestamp(from));
+                pstmt.setString(2, OrderArchive.toSqlTimestamp(to));
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        long amount = rs.getLong("amount_cents");
+                        boolean refunded = "REFUNDED".equals(rs.getString("status"));
+                        found.add(new Discrepancy(Issue.ORPHAN_PAYMENT, rs.getInt("order_id"), rs.getInt("payment_id"),
+                                null, TableDAO.fromSqlTimestamp(rs.getString("created_at")), 0,
+                                refunded ? 0 : amount, refunded ? amount : 0));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error reconciling payments from " + from + " to " + to + ": " + e.getMessage());
+            return false;
+        }
+
+        discrepancies.addAll(found);
+        ordersChecked.addAndGet(checked);
+        return true;
+    }
+
+    // What an order should have been paid against what was, or null if they agree
+    static Discrepancy classify(int orderId, String status, LocalDateTime orderTime,
+                                long totalCents, long paidCents, long refundedCents) {
+        Order.OrderStatus orderStatus;
+        try {
+            orderStatus = Order.OrderStatus.valueOf(status);
+        } catch (IllegalArgumentException | NullPointerException e) {
+            orderStatus = null;
+        }
+
+        // A cancelled order should have nothing left paid; a pending one isn't due yet
+        long expected = orderStatus == Order.OrderStatus.CANCELLED ? 0 : totalCents;
+        Issue issue = null;
+        if (paidCents > expected) {
+            issue = Issue.OVERPAID;
+        } else if (paidCents < expected && orderStatus != Order.OrderStatus.PENDING) {
+            issue = orderStatus == Order.OrderStatus.COMPLETED && refundedCents > 0
+                    ? Issue.REFUNDED_BUT_COMPLETED : Issue.UNDERPAID;
+        }
+        if (issue == null) {
+            return null;
+        }
+        return new Discrepancy(issue, orderId, 0, status, orderTime, expected, paidCents, refundedCents);
+    }
+
+    // Write the findings to a CSV file, via a temporary file so a partial report is never left behind
+    private File writeReport(LocalDate from, LocalDate to, List<Discrepancy> discrepancies) {
+        if (!reportDirectory.exists() && !reportDirectory.mkdirs()) {
+            System.err.println("Cannot create report directory: " + reportDirectory);
+            return null;
+        }
+        File report = new File(reportDirectory, "reconciliation-" + from + "-to-" + to + ".csv");
+        File partial = new File(reportDirectory, report.getName() + ".tmp");
+
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(partial.toPath(), StandardCharsets.UTF_8))) {
+            writer.println("issue,order_id,payment_id,order_status,time,expected,paid,refunded,difference");
+            for (Discrepancy discrepancy : discrepancies) {
+                writer.println(String.join(",",
+                        discrepancy.getIssue().name(),
+                        String.valueOf(discrepancy.getOrderId()),
+                        discrepancy.getPaymentId() > 0 ? String.valueOf(discrepancy.getPaymentId()) : "",
+                        discrepancy.getOrderStatus() != null ? discrepancy.getOrderStatus() : "",
+                        discrepancy.getTime() != null ? discrepancy.getTime().toString() : "",
+                        Money.toBigDecimal(discrepancy.getExpectedCents()).toPlainString(),
+                        Money.toBigDecimal(discrepancy.getPaidCents()).toPlainString(),
+                        Money.toBigDecimal(discrepancy.getRefundedCents()).toPlainString(),
+                        Money.toBigDecimal(discrepancy.getDifferenceCents()).toPlainString()));
+            }
+        } catch (IOException e) {
+            partial.delete();
+            System.err.println("Error writing reconciliation report: " + e.getMessage());
+            return null;
+        }
+
+        try {
+            Files.move(partial.toPath(), report.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+            return report;
+        } catch (IOException e) {
+            partial.delete();
+            System.err.println("Error writing reconciliation report: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Inner class for one order (or orphan payment) that doesn't reconcile
+    public static class Discrepancy {
+        private final Issue issue;
+        private final int orderId;
+        private final int paymentId;
+        private final String orderStatus;
+        private final LocalDateTime time;
+        private final long expectedCents;
+        private final long paidCents;
+        private final long refundedCents;
+
+        public Discrepancy(Issue issue, int orderId, int paymentId, String orderStatus, LocalDateTime time,
+                           long expectedCents, long paidCents, long refundedCents) {
+            this.issue = issue;
+            this.orderId = orderId;
+            this.paymentId = paymentId;
+            this.orderStatus = orderStatus;
+            this.time = time;
+            this.expectedCents = expectedCents;
+            this.paidCents = paidCents;
+            this.refundedCents = refundedCents;
+        }
+
+        public Issue getIssue() { return issue; }
+        public int getOrderId() { return orderId; }
+        // Only set for orphan payments; order rows cover all of the order's payments
+        public int getPaymentId() { return paymentId; }
+        public String getOrderStatus() { return orderStatus; }
+        public LocalDateTime getTime() { return time; }
+        public long getExpectedCents() { return expectedCents; }
+        public long getPaidCents() { return paidCents; }
+        public long getRefundedCents() { return refundedCents; }
+        // Positive when too much was taken, negative when too little
+        public long getDifferenceCents() { return paidCents - expectedCents; }
+
+        @Override
+        public String toString() {
+            if (issue == Issue.ORPHAN_PAYMENT) {
+                return String.format("%s: payment #%d for missing order #%d, %s paid, %s refunded", issue,
+                        paymentId, orderId, Money.format(paidCents), Money.format(refundedCents));
+            }
+            return String.format("%s: order #%d (%s) expected %s, paid %s, refunded %s", issue, orderId,
+                    orderStatus, Money.format(expectedCents), Money.format(paidCents), Money.format(refundedCents));
+        }
+    }
+
+    // Inner class for the result of one reconciliation run
+    public static class Reconciliation {
+        private final LocalDate from;
+        private final LocalDate to;
+        private final int partitions;
+        private final int failedPartitions;
+        private final int ordersChecked;
+        private final List<Discrepancy> discrepancies;
+        private final File reportFile;
+        private final long elapsedMillis;
+
+        public Reconciliation(LocalDate from, LocalDate to, int partitions, int failedPartitions, int ordersChecked,
+                              List<Discrepancy> discrepancies, File reportFile, long elapsedMillis) {
+            this.from = from;
+            this.to = to;
+            this.partitions = partitions;
+            this.failedPartitions = failedPartitions;
+            this.ordersChecked = ordersChecked;
+            this.discrepancies = discrepancies;
+            this.reportFile = reportFile;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public LocalDate getFrom() { return from; }
+        public LocalDate getTo() { return to; }
+        public int getPartitions() { return partitions; }
+        // Partitions whose queries failed; their orders are missing from the counts
+        public int getFailedPartitions() { return failedPartitions; }
+        public int getOrdersChecked() { return ordersChecked; }
+        public List<Discrepancy> getDiscrepancies() { return discrepancies; }
+        public File getReportFile() { return reportFile; }
+        public long getElapsedMillis() { return elapsedMillis; }
+
+        // Number of findings of each kind
+        public Map<Issue, Integer> getIssueCounts() {
+            Map<Issue, Integer> counts = new EnumMap<>(Issue.class);
+            for (Issue issue : Issue.values()) {
+                counts.put(issue, 0);
+            }
+            for (Discrepancy discrepancy : discrepancies) {
+                counts.merge(discrepancy.getIssue(), 1, Integer::sum);
+            }
+            return counts;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Reconciled %d orders from %s to %s in %d partitions (%d ms): %d discrepancies%s",
+                    ordersChecked, from, to, partitions, elapsedMillis, discrepancies.size(),
+                    failedPartitions > 0 ? ", " + failedPartitions + " partitions failed" : "");
+        }
+    }
+}
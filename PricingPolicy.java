@@ -0,0 +1,134 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * PricingPolicy class for combining tax and discount rules
+ * An Order asks its policy for tax and rule discounts whenever its subtotal
+ * changes. The standard policy charges the shop's 8% sales tax; other rules
+ * (service-type tax, percentage or bulk discounts) can be added per order
+ * or installed as the default for new orders.
+ */
+public class PricingPolicy {
+    public static final int STANDARD_TAX_BASIS_POINTS = 8 * Money.BASIS_POINTS_PER_PERCENT;
+
+    private static volatile PricingPolicy defaultPolicy = standard();
+
+    private final List<PricingRule> rules;
+
+    public PricingPolicy(List<PricingRule> rules) {
+        this.rules = Collections.unmodifiableList(new ArrayList<>(rules));
+    }
+
+    public PricingPolicy(PricingRule... rules) {
+        this(Arrays.asList(rules));
+    }
+
+    // The policy new orders start with
+    public static PricingPolicy getDefault() {
+        return defaultPolicy;
+    }
+
+    public static void setDefault(PricingPolicy policy) {
+        if (policy != null) {
+            defaultPolicy = policy;
+        }
+    }
+
+    // 8% sales tax, no discounts
+    public static PricingPolicy standard() {
+        return new PricingPolicy(new SalesTaxRule(STANDARD_TAX_BASIS_POINTS));
+    }
+
+    // Copy of this policy with one more rule
+    public PricingPolicy withRule(PricingRule rule) {
+        List<PricingRule> extended = new ArrayList<>(rules);
+        extended.add(rule);
+        return new PricingPolicy(extended);
+    }
+
+    public List<PricingRule> getRules() {
+        return rules;
+    }
+
+    public long taxCents(Order order, long subtotalCents) {
+        long tax = 0;
+        for (int i = 0; i < rules.size(); i++) {
+            tax += rules.get(i).taxCents(order, subtotalCents);
+        }
+        return tax;
+    }
+
+    public long discountCents(Order order, long subtotalCents) {
+        long discount = 0;
+        for (int i = 0; i < rules.size(); i++) {
+            discount += rules.get(i).discountCents(order, subtotalCents);
+        }
+        return Math.min(discount, subtotalCents);
+    }
+
+    // Flat sales tax on the subtotal
+    public static class SalesTaxRule implements PricingRule {
+        private final int basisPoints;
+
+        public SalesTaxRule(int basisPoints) {
+            this.basisPoints = basisPoints;
+        }
+
+        @Override
+        public long taxCents(Order order, long subtotalCents) {
+            return Money.applyBasisPoints(subtotalCents, basisPoints);
+        }
+
+        public int getBasisPoints() { return basisPoints; }
+    }
+
+    // Extra tax for one service type (e.g., dine-in service charge)
+    public static class ServiceTypeTaxRule implements PricingRule {
+        private final Order.ServiceType serviceType;
+        private final int basisPoints;
+
+        public ServiceTypeTaxRule(Order.ServiceType serviceType, int basisPoints) {
+            this.serviceType = serviceType;
+            this.basisPoints = basisPoints;
+        }
+
+        @Override
+        public long taxCents(Order order, long subtotalCents) {
+            return order.getServiceType() == serviceType ? Money.applyBasisPoints(subtotalCents, basisPoints) : 0;
+        }
+    }
+
+    // Percentage off once the subtotal reaches a threshold
+    public static class PercentageDiscountRule implements PricingRule {
+        private final int basisPoints;
+        private final long minimumSubtotalCents;
+
+        public PercentageDiscountRule(int basisPoints, long minimumSubtotalCents) {
+            this.basisPoints = basisPoints;
+            this.minimumSubtotalCents = minimumSubtotalCents;
+        }
+
+        @Override
+        public long discountCents(Order order, long subtotalCents) {
+            return subtotalCents >= minimumSubtotalCents ? Money.applyBasisPoints(subtotalCents, basisPoints) : 0;
+        }
+    }
+
+    // Percentage off for large (catering) orders by item count
+    public static class BulkDiscountRule implements PricingRule {
+        private final int minimumItems;
+        private final int basisPoints;
+
+        public BulkDiscountRule(int minimumItems, int basisPoints) {
+            this.minimumItems = minimumItems;
+            this.basisPoints = basisPoints;
+        }
+
+        @Override
+        public long discountCents(Order order, long subtotalCents) {
+            return order.getTotalItems() >= minimumItems ? Money.applyBasisPoints(subtotalCents, basisPoints) : 0;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+/**
+ * PricingRule interface for order-level tax and discount rules
+ * Rules see the order and its current subtotal and return amounts in cents.
+ * They are evaluated on every change to an order, so they must not walk the
+ * order items; use the order's running figures (subtotal, item count) instead.
+ */
+public interface PricingRule {
+    // Tax this rule adds, in cents
+    default long taxCents(Order order, long subtotalCents) {
+        return 0;
+    }
+
+    // Discount this rule grants, in cents
+    default long discountCents(Order order, long subtotalCents) {
+        return 0;
+    }
+}
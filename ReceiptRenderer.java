@@ -0,0 +1,492 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.Normalizer;
+import java.time.LocalDateTime;
+
+/**
+ * ReceiptRenderer class for printing receipts and kitchen tickets at volume
+ * Renders a compiled ReceiptTemplate for an order (and its payment) as plain
+ * text, HTML, or ESC/POS bytes for a thermal printer. Each line is laid out in
+ * a reusable char buffer (numbers, money and times are written digit by digit,
+ * aligned by shifting in place) and then copied to the caller's reusable
+ * StringBuilder or byte stream, so a warmed-up renderer allocates next to
+ * nothing per receipt. Compare Order.toString, which formats every line anew.
+ *
+ * A renderer keeps state between calls, so each thread uses its own
+ * (getInstance() hands out one per thread).
+ */
+public class ReceiptRenderer {
+    private static final int DEFAULT_WIDTH = Integer.getInteger("coffeeshop.receiptWidth", 42);
+    private static final String STORE_NAME = System.getProperty("coffeeshop.storeName", "Coffee Shop");
+
+    private static final int TEXT = 0;
+    private static final int HTML = 1;
+    private static final int ESC_POS = 2;
+
+    // ESC/POS commands
+    private static final byte ESC = 0x1B;
+    private static final byte GS = 0x1D;
+    private static final byte[] INITIALIZE = {ESC, '@'};
+    private static final byte[] BOLD_ON = {ESC, 'E', 1};
+    private static final byte[] BOLD_OFF = {ESC, 'E', 0};
+    private static final byte[] DOUBLE_ON = {GS, '!', 0x11};
+    private static final byte[] DOUBLE_OFF = {GS, '!', 0x00};
+    // Feed three lines, then partial cut
+    private static final byte[] CUT = {GS, 'V', 66, 3};
+
+    // Printers only have ASCII here; accented letters print as their base letter, found once per char
+    private static final char[] PRINTER_CHARS = new char[0x2000];
+
+    private static final ThreadLocal<ReceiptRenderer> perThread =
+            ThreadLocal.withInitial(() -> new ReceiptRenderer(DEFAULT_WIDTH));
+
+    private final int width;
+    private char[] line = new char[128];
+    private byte[] bytes = new byte[129];
+    private int length;
+    private final char[] digits = new char[20];
+
+    private StringBuilder charOut;
+    private ByteArrayOutputStream byteOut;
+    private final ByteArrayOutputStream printBuffer = new ByteArrayOutputStream(2048);
+
+    public ReceiptRenderer(int width) {
+        this.width = Math.max(16, width);
+    }
+
+    // This thread's renderer at the configured paper width
+    public static ReceiptRenderer getInstance() {
+        return perThread.get();
+    }
+
+    // Plain text, one receipt line per text line, appended to out
+    public void renderText(ReceiptTemplate template, Order order, Payment payment, StringBuilder out) {
+        charOut = out;
+        render(template, order, payment, TEXT);
+        charOut = null;
+    }
+
+    // An HTML fragment (<pre class="receipt">) for e-mail and screen receipts, appended to out
+    public void renderHtml(ReceiptTemplate template, Order order, Payment payment, StringBuilder out) {
+        charOut = out;
+        out.append("<pre class=\"receipt\">\n");
+        render(template, order, payment, HTML);
+        out.append("</pre>\n");
+        charOut = null;
+    }
+
+    // ESC/POS bytes for a thermal printer, from initialize to paper cut, written to out
+    public void renderEscPos(ReceiptTemplate template, Order order, Payment payment, ByteArrayOutputStream out) {
+        byteOut = out;
+        out.write(INITIALIZE, 0, INITIALIZE.length);
+        render(template, order, payment, ESC_POS);
+        out.write(CUT, 0, CUT.length);
+        byteOut = null;
+    }
+
+    // Send a receipt to a printer. A device file (e.g. /dev/usb/lp0) is written directly; a
+    // directory is a spool that gets one file per receipt, renamed into place once complete.
+    public boolean print(ReceiptTemplate template, Order order, Payment payment, File printer) {
+        printBuffer.reset();
+        renderEscPos(template, order, payment, printBuffer);
+
+        if (!printer.isDirectory()) {
+            try (FileOutputStream device = new FileOutputStream(printer, true)) {
+                printBuffer.writeTo(device);
+                return true;
+            } catch (IOException e) {
+                System.err.println("Error printing to " + printer + ": " + e.getMessage());
+                return false;
+            }
+        }
+
+        String name = "receipt-" + order.getOrderId() + "-" + System.nanoTime();
+        File partial = new File(printer, name + ".tmp");
+        try {
+            try (FileOutputStream spool = new FileOutputStream(partial)) {
+                printBuffer.writeTo(spool);
+            }
+            Files.move(partial.toPath(), new File(printer, name + ".bin").toPath(), StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            partial.delete();
+            System.err.println("Error spooling receipt to " + printer + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void render(ReceiptTemplate template, Order order, Payment payment, int format) {
+        ReceiptTemplate.Line[] lines = template.getLines();
+        int i = 0;
+        while (i < lines.length) {
+            if (!lines[i].eachItem) {
+                renderLine(lines[i], order, null, payment, format);
+                i++;
+                continue;
+            }
+            // Consecutive #each lines repeat together, so an item's customizations follow it
+            int end = i;
+            while (end < lines.length && lines[end].eachItem) {
+                end++;
+            }
+            for (OrderItem item : order.items()) {
+                for (int each = i; each < end; each++) {
+                    renderLine(lines[each], order, item, payment, format);
+                }
+            }
+            i = end;
+        }
+    }
+
+    private void renderLine(ReceiptTemplate.Line templateLine, Order order, OrderItem item, Payment payment, int format) {
+        if (templateLine.condition != null && !isSet(templateLine.condition, order, item, payment)) {
+            return;
+        }
+        // Double-size characters are twice as wide
+        int columns = templateLine.doubleSize ? width / 2 : width;
+        length = 0;
+
+        if (templateLine.rule) {
+            ensureCapacity(columns);
+            for (int i = 0; i < columns; i++) {
+                line[length++] = '-';
+            }
+        } else {
+            for (ReceiptTemplate.Segment segment : templateLine.segments) {
+                if (segment.literal != null) {
+                    append(segment.literal);
+                    continue;
+                }
+                int start = length;
+                writeField(segment.field, order, item, payment);
+                if (segment.fill) {
+                    pad(start, Math.max(columns - start, length - start + (start > 0 ? 1 : 0)), '>');
+                } else if (segment.width > 0) {
+                    pad(start, segment.width, segment.align);
+                }
+            }
+            if (templateLine.center && length < columns) {
+                pad(0, length + (columns - length) / 2, '>');
+            }
+        }
+        emit(templateLine, format);
+    }
+
+    private static boolean isSet(ReceiptTemplate.Field field, Order order, OrderItem item, Payment payment) {
+        switch (field) {
+            case TABLE:
+                return order.getServiceType() == Order.ServiceType.DINE_IN && order.getTableNumber() > 0;
+            case INSTRUCTIONS:
+                return !order.getSpecialInstructions().isEmpty();
+            case DISCOUNT:
+                return order.getDiscountCents() > 0;
+            case CUSTOMIZATIONS:
+                return item != null && !item.getCustomizations().isEmpty();
+            case PAYMENT_ID:
+            case METHOD:
+            case AMOUNT_PAID:
+                return payment != null;
+            case CHANGE:
+                return payment != null && payment.getChangeGivenCents() > 0;
+            case REFERENCE:
+                return payment != null && !payment.getTransactionReference().isEmpty();
+            case CARD:
+                return payment != null && !payment.getCardLastFourDigits().isEmpty();
+            default:
+                return true;
+        }
+    }
+
+    private void writeField(ReceiptTemplate.Field field, Order order, OrderItem item, Payment payment) {
+        switch (field) {
+            case STORE:
+                append(STORE_NAME);
+                break;
+            case ORDER_ID:
+                appendLong(order.getOrderId());
+                break;
+            case ORDER_TIME:
+                appendTime(order.getOrderTime());
+                break;
+            case STATUS:
+                appendEnum(order.getStatus());
+                break;
+            case SERVICE:
+                appendEnum(order.getServiceType());
+                break;
+            case TABLE:
+                appendLong(order.getTableNumber());
+                break;
+            case INSTRUCTIONS:
+                append(order.getSpecialInstructions());
+                break;
+            case ITEM_COUNT:
+                appendLong(order.getTotalItems());
+                break;
+            case SUBTOTAL:
+                appendMoney(order.getSubtotalCents());
+                break;
+            case TAX:
+                appendMoney(order.getTaxCents());
+                break;
+            case DISCOUNT:
+                appendMoney(-order.getDiscountCents());
+                break;
+            case TOTAL:
+                appendMoney(order.getTotalCents());
+                break;
+            default:
+                if (item != null) {
+                    writeItemField(field, item);
+                } else if (payment != null) {
+                    writePaymentField(field, payment);
+                }
+        }
+    }
+
+    private void writeItemField(ReceiptTemplate.Field field, OrderItem item) {
+        switch (field) {
+            case ITEM_NAME:
+                append(item.getMenuItem().getName());
+                break;
+            case QUANTITY:
+                appendLong(item.getQuantity());
+                break;
+            case UNIT_PRICE:
+                appendMoney(item.getUnitPriceCents());
+                break;
+            case ITEM_TOTAL:
+                appendMoney(item.getItemTotalCents());
+                break;
+            case CUSTOMIZATIONS:
+                append(item.getCustomizations());
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void writePaymentField(ReceiptTemplate.Field field, Payment payment) {
+        switch (field) {
+            case PAYMENT_ID:
+                appendLong(payment.getPaymentId());
+                break;
+            case METHOD:
+                appendEnum(payment.getPaymentMethod());
+                break;
+            case AMOUNT_PAID:
+                // Payments read back from the database only carry the amount
+                appendMoney(payment.getAmountPaidCents() > 0 ? payment.getAmountPaidCents() : payment.getAmountCents());
+                break;
+            case CHANGE:
+                appendMoney(payment.getChangeGivenCents());
+                break;
+            case REFERENCE:
+                append(payment.getTransactionReference());
+                break;
+            case CARD:
+                append(payment.getCardLastFourDigits());
+                break;
+            default:
+                break;
+        }
+    }
+
+    // Copy the laid-out line to the output in the requested format
+    private void emit(ReceiptTemplate.Line templateLine, int format) {
+        if (format == TEXT) {
+            for (int i = 0; i < length; i++) {
+                charOut.append(displayChar(line[i]));
+            }
+            charOut.append('\n');
+        } else if (format == HTML) {
+            if (templateLine.doubleSize) {
+                charOut.append("<big>");
+            }
+            if (templateLine.bold) {
+                charOut.append("<b>");
+            }
+            for (int i = 0; i < length; i++) {
+                // Sanitised before escaping, so a control character never reaches the markup
+                char c = displayChar(line[i]);
+                if (c == '<') {
+                    charOut.append("&lt;");
+                } else if (c == '>') {
+                    charOut.append("&gt;");
+                } else if (c == '&') {
+                    charOut.append("&amp;");
+                } else {
+                    charOut.append(c);
+                }
+            }
+            if (templateLine.bold) {
+                charOut.append("</b>");
+            }
+            if (templateLine.doubleSize) {
+                charOut.append("</big>");
+            }
+            charOut.append('\n');
+        } else {
+            if (templateLine.bold) {
+                byteOut.write(BOLD_ON, 0, BOLD_ON.length);
+            }
+            if (templateLine.doubleSize) {
+                byteOut.write(DOUBLE_ON, 0, DOUBLE_ON.length);
+            }
+            for (int i = 0; i < length; i++) {
+                bytes[i] = (byte) printerChar(line[i]);
+            }
+            bytes[length] = '\n';
+            byteOut.write(bytes, 0, length + 1);
+            if (templateLine.doubleSize) {
+                byteOut.write(DOUBLE_OFF, 0, DOUBLE_OFF.length);
+            }
+            if (templateLine.bold) {
+                byteOut.write(BOLD_OFF, 0, BOLD_OFF.length);
+            }
+        }
+    }
+
+    // Lay the text written since start out in the given columns: '>' right-aligns, '<' left-aligns.
+    // Text longer than the columns is cut.
+    private void pad(int start, int columns, char align) {
+        int valueLength = length - start;
+        if (valueLength >= columns) {
+            length = start + columns;
+            return;
+        }
+        int padding = columns - valueLength;
+        ensureCapacity(padding);
+        if (align == '>') {
+            System.arraycopy(line, start, line, start + padding, valueLength);
+            for (int i = start; i < start + padding; i++) {
+                line[i] = ' ';
+            }
+        } else {
+            for (int i = length; i < length + padding; i++) {
+                line[i] = ' ';
+            }
+        }
+        length += padding;
+    }
+
+    private void append(char[] text) {
+        ensureCapacity(text.length);
+        System.arraycopy(text, 0, line, length, text.length);
+        length += text.length;
+    }
+
+    private void append(String text) {
+        ensureCapacity(text.length());
+        text.getChars(0, text.length(), line, length);
+        length += text.length();
+    }
+
+    // DINE_IN -> "DINE IN", without building a new string
+    private void appendEnum(Enum<?> value) {
+        int start = length;
+        append(value.name());
+        for (int i = start; i < length; i++) {
+            if (line[i] == '_') {
+                line[i] = ' ';
+            }
+        }
+    }
+
+    private void appendLong(long value) {
+        ensureCapacity(20);
+        if (value < 0) {
+            line[length++] = '-';
+            value = -value;
+        }
+        int count = 0;
+        do {
+            digits[count++] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        while (count > 0) {
+            line[length++] = digits[--count];
+        }
+    }
+
+    // "$12.34", as Money.format writes it
+    private void appendMoney(long cents) {
+        ensureCapacity(24);
+        if (cents < 0) {
+            line[length++] = '-';
+            cents = -cents;
+        }
+        line[length++] = '$';
+        appendLong(cents / 100);
+        line[length++] = '.';
+        line[length++] = (char) ('0' + cents % 100 / 10);
+        line[length++] = (char) ('0' + cents % 10);
+    }
+
+    // "yyyy-MM-dd HH:mm"
+    private void appendTime(LocalDateTime time) {
+        if (time == null) {
+            return;
+        }
+        appendLong(time.getYear());
+        line[length++] = '-';
+        appendTwoDigits(time.getMonthValue());
+        line[length++] = '-';
+        appendTwoDigits(time.getDayOfMonth());
+        line[length++] = ' ';
+        appendTwoDigits(time.getHour());
+        line[length++] = ':';
+        appendTwoDigits(time.getMinute());
+    }
+
+    private void appendTwoDigits(int value) {
+        ensureCapacity(3);
+        line[length++] = (char) ('0' + value / 10 % 10);
+        line[length++] = (char) ('0' + value % 10);
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > line.length) {
+            char[] grown = new char[Math.max(line.length * 2, length + extra)];
+            System.arraycopy(line, 0, grown, 0, length);
+            line = grown;
+            bytes = new byte[grown.length + 1];
+        }
+    }
+
+    // Control characters (ESC, GS, newline...) become spaces in every format, so text from a
+    // client can't send printer or terminal commands or break the ticket layout
+    private static char displayChar(char c) {
+        return Character.isISOControl(c) ? ' ' : c;
+    }
+
+    // ASCII for the printer: controls become spaces as in displayChar, accents dropped (đ -> d),
+    // anything else unknown becomes '?'
+    private static int printerChar(char c) {
+        if (Character.isISOControl(c)) {
+            return ' ';
+        }
+        if (c < 0x80) {
+            return c;
+        }
+        if (c >= PRINTER_CHARS.length) {
+            return '?';
+        }
+        char folded = PRINTER_CHARS[c];
+        if (folded == 0) {
+            if (c == 'đ' || c == 'Đ') {
+                folded = c == 'đ' ? 'd' : 'D';
+            } else {
+                char base = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD).charAt(0);
+                folded = base < 0x80 ? base : '?';
+            }
+            // Racing threads compute the same value, so the unsynchronized write is harmless
+            PRINTER_CHARS[c] = folded;
+        }
+        return folded;
+    }
+}
@@ -0,0 +1,211 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ReceiptTemplate class for receipt and kitchen ticket layouts, compiled once
+ * A template is plain text, one receipt line per template line. Placeholders
+ * name a field and optionally a column layout:
+ *   {total}        the value as is
+ *   {itemName:<20} left-aligned in 20 columns (cut if longer)
+ *   {quantity:>3}  right-aligned in 3 columns
+ *   {total:>*}     right-aligned to the end of the line
+ * A line may start with directives:
+ *   #each          repeat the line for every order item
+ *   #if field      drop the line when the field is empty or zero
+ *   #center #bold #double   layout and emphasis (ESC/POS and HTML)
+ *   #rule          a full-width dashed line
+ * Compiling turns each line into literal and field segments, so rendering never
+ * parses text or looks anything up by name.
+ */
+public class ReceiptTemplate {
+    // Fields a template can show
+    public enum Field {
+        STORE, ORDER_ID, ORDER_TIME, STATUS, SERVICE, TABLE, INSTRUCTIONS, ITEM_COUNT,
+        ITEM_NAME, QUANTITY, UNIT_PRICE, ITEM_TOTAL, CUSTOMIZATIONS,
+        SUBTOTAL, TAX, DISCOUNT, TOTAL,
+        PAYMENT_ID, METHOD, AMOUNT_PAID, CHANGE, REFERENCE, CARD
+    }
+
+    public static final ReceiptTemplate CUSTOMER_RECEIPT = compile(
+        "#center #double {store}\n" +
+        "#center Order #{orderId}\n" +
+        "#center {orderTime}\n" +
+        "{service}\n" +
+        "#if table Table {table}\n" +
+        "#rule\n" +
+        "#each {quantity:>3} {itemName:<24}{itemTotal:>*}\n" +
+        "#each #if customizations     {customizations}\n" +
+        "#rule\n" +
+        "Subtotal{subtotal:>*}\n" +
+        "Tax{tax:>*}\n" +
+        "#if discount Discount{discount:>*}\n" +
+        "#bold TOTAL{total:>*}\n" +
+        "#if method Paid by {method}{amountPaid:>*}\n" +
+        "#if change Change{change:>*}\n" +
+        "#if card Card ****{card}\n" +
+        "#if reference Ref {reference}\n" +
+        "#rule\n" +
+        "#center Thank you!\n");
+
+    public static final ReceiptTemplate KITCHEN_TICKET = compile(
+        "#double #bold Order #{orderId}\n" +
+        "{orderTime}  {service}\n" +
+        "#if table #bold Table {table}\n" +
+        "#rule\n" +
+        "#each #double {quantity:>2} x {itemName}\n" +
+        "#each #if customizations    > {customizations}\n" +
+        "#rule\n" +
+        "#if instructions #bold Note: {instructions}\n" +
+        "{itemCount} items\n");
+
+    private final Line[] lines;
+
+    private ReceiptTemplate(Line[] lines) {
+        this.lines = lines;
+    }
+
+    // Compile template text; throws IllegalArgumentException on an unknown field or bad layout
+    public static ReceiptTemplate compile(String text) {
+        List<Line> lines = new ArrayList<>();
+        String body = text.endsWith("\n") ? text.substring(0, text.length() - 1) : text;
+        for (String raw : body.split("\n", -1)) {
+            lines.add(compileLine(raw));
+        }
+        return new ReceiptTemplate(lines.toArray(new Line[0]));
+    }
+
+    Line[] getLines() {
+        return lines;
+    }
+
+    private static Line compileLine(String raw) {
+        Line line = new Line();
+        String rest = raw;
+        while (rest.startsWith("#")) {
+            int end = rest.indexOf(' ');
+            String directive = end < 0 ? rest : rest.substring(0, end);
+            String after = end < 0 ? "" : rest.substring(end + 1);
+            if (directive.equals("#each")) {
+                line.eachItem = true;
+            } else if (directive.equals("#center")) {
+                line.center = true;
+            } else if (directive.equals("#bold")) {
+                line.bold = true;
+            } else if (directive.equals("#double")) {
+                line.doubleSize = true;
+            } else if (directive.equals("#rule")) {
+                line.rule = true;
+            } else if (directive.equals("#if")) {
+                int fieldEnd = after.indexOf(' ');
+                line.condition = field(fieldEnd < 0 ? after : after.substring(0, fieldEnd));
+                after = fieldEnd < 0 ? "" : after.substring(fieldEnd + 1);
+            } else {
+                // Not a directive, e.g. "#{orderId}"
+                break;
+            }
+            rest = after;
+        }
+
+        List<Segment> segments = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < rest.length()) {
+            char c = rest.charAt(i);
+            int close = c == '{' ? rest.indexOf('}', i) : -1;
+            if (close < 0) {
+                literal.append(c);
+                i++;
+                continue;
+            }
+            if (literal.length() > 0) {
+                segments.add(Segment.literal(literal.toString()));
+                literal.setLength(0);
+            }
+            segments.add(placeholder(rest.substring(i + 1, close)));
+            i = close + 1;
+        }
+        if (literal.length() > 0) {
+            segments.add(Segment.literal(literal.toString()));
+        }
+        for (int s = 0; s < segments.size() - 1; s++) {
+            if (segments.get(s).fill) {
+                throw new IllegalArgumentException("Only the last field on a line can fill it: " + raw);
+            }
+        }
+        line.segments = segments.toArray(new Segment[0]);
+        return line;
+    }
+
+    private static Segment placeholder(String spec) {
+        int colon = spec.indexOf(':');
+        Field field = field(colon < 0 ? spec : spec.substring(0, colon));
+        if (colon < 0) {
+            return Segment.field(field, (char) 0, 0, false);
+        }
+        String layout = spec.substring(colon + 1);
+        if (layout.length() < 2 || (layout.charAt(0) != '<' && layout.charAt(0) != '>')) {
+            throw new IllegalArgumentException("Bad layout '" + layout + "' for " + field);
+        }
+        if (layout.equals(">*")) {
+            return Segment.field(field, '>', 0, true);
+        }
+        try {
+            return Segment.field(field, layout.charAt(0), Integer.parseInt(layout.substring(1)), false);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad width '" + layout + "' for " + field);
+        }
+    }
+
+    // Template names are camelCase forms of the enum: itemName -> ITEM_NAME
+    private static Field field(String name) {
+        StringBuilder constant = new StringBuilder();
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (Character.isUpperCase(c)) {
+                constant.append('_');
+            }
+            constant.append(Character.toUpperCase(c));
+        }
+        try {
+            return Field.valueOf(constant.toString());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown receipt field: " + name);
+        }
+    }
+
+    // Inner class for one compiled template line
+    static class Line {
+        boolean eachItem;
+        boolean center;
+        boolean bold;
+        boolean doubleSize;
+        boolean rule;
+        Field condition;
+        Segment[] segments;
+    }
+
+    // Inner class for literal text or a field with its layout
+    static class Segment {
+        final char[] literal;
+        final Field field;
+        final char align;
+        final int width;
+        final boolean fill;
+
+        private Segment(char[] literal, Field field, char align, int width, boolean fill) {
+            this.literal = literal;
+            this.field = field;
+            this.align = align;
+            this.width = width;
+            this.fill = fill;
+        }
+
+        static Segment literal(String text) {
+            return new Segment(text.toCharArray(), null, (char) 0, 0, false);
+        }
+
+        static Segment field(Field field, char align, int width, boolean fill) {
+            return new Segment(null, field, align, width, fill);
+        }
+    }
+}
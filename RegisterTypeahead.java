@@ -0,0 +1,65 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * RegisterTypeahead class for instant autocomplete at the register
+ * Menu suggestions come from MenuCatalog; customers are indexed by name,
+ * email and phone number. Both follow DAO writes incrementally.
+ */
+public class RegisterTypeahead {
+    private static RegisterTypeahead instance;
+
+    private final MenuCatalog menuCatalog;
+    private final CustomerDAO customerDAO;
+    private final TypeaheadIndex<Customer> customers = new TypeaheadIndex<>();
+    private boolean customersLoaded;
+
+    public RegisterTypeahead(MenuCatalog menuCatalog, CustomerDAO customerDAO) {
+        this.menuCatalog = menuCatalog;
+        this.customerDAO = customerDAO;
+        CustomerDAO.addChangeListener(this::onCustomerChanged);
+    }
+
+    // Get the shared typeahead
+    public static synchronized RegisterTypeahead getInstance() {
+        if (instance == null) {
+            instance = new RegisterTypeahead(MenuCatalog.getInstance(), new CustomerDAO());
+        }
+        return instance;
+    }
+
+    public List<MenuItem> suggestMenuItems(String prefix, int limit) {
+        return menuCatalog.suggest(prefix, limit);
+    }
+
+    public List<Customer> suggestCustomers(String prefix, int limit) {
+        synchronized (this) {
+            if (!customersLoaded) {
+                for (Customer customer : customerDAO.getAllCustomers()) {
+                    indexCustomer(customer);
+                }
+                customersLoaded = true;
+            }
+        }
+        return customers.suggest(prefix, limit);
+    }
+
+    private synchronized void onCustomerChanged(int customerId) {
+        if (!customersLoaded) {
+            return;
+        }
+        Customer customer = customerDAO.getCustomerById(customerId);
+        if (customer == null) {
+            customers.remove(customerId);
+        } else {
+            indexCustomer(customer);
+        }
+    }
+
+    private void indexCustomer(Customer customer) {
+        String phoneDigits = customer.getPhoneNumber() != null
+                ? customer.getPhoneNumber().replaceAll("[^0-9]", "") : null;
+        customers.put(customer.getCustomerId(), customer,
+                Arrays.asList(customer.getName(), customer.getEmail(), customer.getPhoneNumber(), phoneDigits));
+    }
+}
@@ -0,0 +1,317 @@
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.IntStream;
+
+/**
+ * ReorderForecaster class for predicting ingredient stock-outs and purchase quantities
+ * Daily sales per menu item come from the OrderAnalytics snapshot and are folded into
+ * exponentially weighted averages: one overall level and one per day of week for each
+ * item. An ingredient's expected use on a given day is the recipe quantities
+ * (menu_item_ingredients) times those item rates, so a recipe change applies at once
+ * without re-reading history.
+ *
+ * refresh() folds only the days completed since the previous run and resumes the row
+ * scan where that run stopped, so a year of history is read once and after that each
+ * run only looks at new sales. The daily totals of the history window are kept, so
+ * rows that turn up late for days already folded (orders synced from the offline
+ * queue) are added to their day and the window is refolded. Days are local days,
+ * with each row taking the zone offset in force at its order's time. Items are
+ * folded in parallel; the row scan itself is split across cores by
+ * OrderAnalytics.dailyItemMix.
+ */
+public class ReorderForecaster {
+    // Weight of the newest day; a weekday only recurs weekly, so its average moves faster
+    private static final double LEVEL_ALPHA = 0.1;
+    private static final double WEEKDAY_ALPHA = 0.3;
+    // Weekday averages with fewer samples than this fall back to the overall level
+    private static final int MIN_WEEKDAY_SAMPLES = 2;
+    private static final int HISTORY_DAYS = Integer.getInteger("coffeeshop.forecastHistoryDays", 365);
+    private static final int HORIZON_DAYS = Integer.getInteger("coffeeshop.forecastHorizonDays", 60);
+    private static final int LEAD_DAYS = Integer.getInteger("coffeeshop.reorderLeadDays", 2);
+    private static final int COVER_DAYS = Integer.getInteger("coffeeshop.reorderCoverDays", 7);
+
+    private static ReorderForecaster instance;
+
+    private final OrderAnalytics analytics;
+    private final IngredientDAO ingredientDAO;
+    private final int statusMask = OrderAnalytics.ALL_STATUSES & ~OrderAnalytics.statusMask(Order.OrderStatus.CANCELLED);
+
+    // Per menu item code (see OrderAnalytics); weekdays are indexed Monday = 0
+    private double[] levels = new double[0];
+    private int[] levelSamples = new int[0];
+    private double[][] weekdayRates = new double[0][];
+    private int[][] weekdaySamples = new int[0][];
+
+    // First local day not folded yet, the item row to resume scanning from, and rows already
+    // scanned whose day had not ended yet
+    private long nextEpochDay = Long.MIN_VALUE;
+    private int nextRow;
+    private int[] carriedRows = new int[0];
+    // Quantity sold per day and item code for the days folded so far, from historyStartDay on
+    private long historyStartDay;
+    private long[][] history = new long[0][];
+
+    public ReorderForecaster(OrderAnalytics analytics, IngredientDAO ingredientDAO) {
+        this.analytics = analytics;
+        this.ingredientDAO = ingredientDAO;
+    }
+
+    // Get the shared forecaster
+    public static synchronized ReorderForecaster getInstance() {
+        if (instance == null) {
+            instance = new ReorderForecaster(OrderAnalytics.getInstance(), new IngredientDAO());
+        }
+        return instance;
+    }
+
+    // Fold every day completed since the last refresh into the item rates
+    public synchronized boolean refresh() {
+        if (!analytics.refresh()) {
+            return false;
+        }
+        long endDay = LocalDate.now().toEpochDay();
+        long firstDay = endDay - HISTORY_DAYS;
+        OrderAnalytics.DailyMix counted = analytics.dailyItemMix(nextRow, carriedRows, firstDay, endDay,
+                                                                 ZoneId.systemDefault(), statusMask);
+        long[][] newCounts = counted.getQuantities();
+        int codes = Math.max(levels.length, newCounts.length > 0 ? newCounts[0].length : 0);
+
+        // Rows counted for a day that was already folded arrived late; add them to that day
+        long[][] days = new long[(int) (endDay - firstDay)][];
+        boolean lateRows = false;
+        for (int day = 0; day < days.length; day++) {
+            days[day] = Arrays.copyOf(newCounts[day], codes);
+            long epochDay = firstDay + day;
+            if (epochDay < nextEpochDay && epochDay >= historyStartDay) {
+                long[] folded = history[(int) (epochDay - historyStartDay)];
+                for (int code = 0; code < codes; code++) {
+                    lateRows |= days[day][code] != 0;
+                    days[day][code] += code < folded.length ? folded[code] : 0;
+                }
+            }
+        }
+        ensureCapacity(codes);
+
+        long foldFrom = nextEpochDay == Long.MIN_VALUE ? firstDay : Math.max(firstDay, nextEpochDay);
+        if (lateRows) {
+            // A changed day changes every average after it, so fold the whole window again
+            levels = new double[0];
+            levelSamples = new int[0];
+            weekdayRates = new double[0][];
+            weekdaySamples = new int[0][];
+            ensureCapacity(codes);
+            foldFrom = firstDay;
+        }
+        if (foldFrom < endDay) {
+            long[][] mix = Arrays.copyOfRange(days, (int) (foldFrom - firstDay), days.length);
+            long mixStart = foldFrom;
+            // Items don't depend on each other, so each is folded on its own
+            IntStream.range(0, codes).parallel().forEach(code -> fold(code, mix, mixStart));
+        }
+
+        history = days;
+        historyStartDay = firstDay;
+        nextEpochDay = endDay;
+        nextRow = counted.getNextRow();
+        carriedRows = counted.getCarriedRows();
+        return true;
+    }
+
+    private void fold(int code, long[][] mix, long firstDay) {
+        double[] weekdays = weekdayRates[code];
+        int[] samples = weekdaySamples[code];
+        for (int day = 0; day < mix.length; day++) {
+            long sold = mix[day][code];
+            // History starts at an item's first sale, not at a run of zeros before it was on the menu
+            if (levelSamples[code] == 0 && sold == 0) {
+                continue;
+            }
+            levels[code] = levelSamples[code] == 0 ? sold : levels[code] + LEVEL_ALPHA * (sold - levels[code]);
+            levelSamples[code]++;
+
+            int weekday = weekday(firstDay + day);
+            weekdays[weekday] = samples[weekday] == 0 ? sold : weekdays[weekday] + WEEKDAY_ALPHA * (sold - weekdays[weekday]);
+            samples[weekday]++;
+        }
+    }
+
+    // Forecast every active ingredient, soonest stock-out first
+    public synchronized List<Forecast> forecast() {
+        Map<Integer, double[]> dailyUse = ingredientDailyUse();
+        LocalDateTime now = LocalDateTime.now();
+        LocalDate today = now.toLocalDate();
+
+        List<Forecast> forecasts = new ArrayList<>();
+        for (Ingredient ingredient : ingredientDAO.getAllIngredients()) {
+            if (!ingredient.isActive()) {
+                continue;
+            }
+            double[] use = dailyUse.getOrDefault(ingredient.getIngredientId(), new double[7]);
+            double stock = usableStock(ingredient.getIngredientId(), today);
+
+            LocalDateTime stockOutAt = stockOutTime(stock, use, now);
+            double atArrival = stock - usage(use, now, now.plusDays(LEAD_DAYS));
+            double afterCover = stock - usage(use, now, now.plusDays(LEAD_DAYS + COVER_DAYS));
+            double suggested = 0;
+            if (afterCover < ingredient.getMinimumStock()) {
+                // Top up to the maximum as of the day the delivery arrives
+                suggested = Math.max(0, ingredient.getMaximumStock() - Math.max(0, atArrival));
+            }
+
+            forecasts.add(new Forecast(ingredient, stock, Arrays.stream(use).sum() / 7, stockOutAt, suggested));
+        }
+
+        forecasts.sort((a, b) -> {
+            if (a.getStockOutAt() == null || b.getStockOutAt() == null) {
+                return a.getStockOutAt() == null ? (b.getStockOutAt() == null ? 0 : 1) : -1;
+            }
+            return a.getStockOutAt().compareTo(b.getStockOutAt());
+        });
+        return forecasts;
+    }
+
+    // Ingredients worth ordering now, grouped by supplier
+    public Map<String, List<Forecast>> getPurchaseSuggestions() {
+        Map<String, List<Forecast>> bySupplier = new TreeMap<>();
+        for (Forecast forecast : forecast()) {
+            if (forecast.getSuggestedQuantity() > IngredientLotIndex.EPSILON) {
+                String supplier = forecast.getIngredient().getSupplier();
+                bySupplier.computeIfAbsent(supplier == null || supplier.isEmpty() ? "(no supplier)" : supplier,
+                        k -> new ArrayList<>()).add(forecast);
+            }
+        }
+        return bySupplier;
+    }
+
+    // Expected use per weekday of each ingredient, from item rates times recipe quantities
+    private Map<Integer, double[]> ingredientDailyUse() {
+        Map<Integer, Map<Integer, Double>> recipes = ingredientDAO.getRecipes();
+        Map<Integer, double[]> dailyUse = new HashMap<>();
+        for (int code = 0; code < levels.length; code++) {
+            Map<Integer, Double> recipe = recipes.get(analytics.getMenuItemId(code));
+            if (recipe == null || levelSamples[code] == 0) {
+                continue;
+            }
+            for (Map.Entry<Integer, Double> ingredient : recipe.entrySet()) {
+                double[] use = dailyUse.computeIfAbsent(ingredient.getKey(), k -> new double[7]);
+                for (int weekday = 0; weekday < 7; weekday++) {
+                    use[weekday] += itemRate(code, weekday) * ingredient.getValue();
+                }
+            }
+        }
+        return dailyUse;
+    }
+
+    private double itemRate(int code, int weekday) {
+        return weekdaySamples[code][weekday] >= MIN_WEEKDAY_SAMPLES ? weekdayRates[code][weekday] : levels[code];
+    }
+
+    // Stock in lots that haven't expired
+    private double usableStock(int ingredientId, LocalDate today) {
+        double stock = 0;
+        for (IngredientLot lot : IngredientLotIndex.getInstance().getLots(ingredientId)) {
+            if (!lot.isExpired(today)) {
+                stock += lot.getQuantityRemaining();
+            }
+        }
+        return stock;
+    }
+
+    // Expected use between two times, counting part days pro rata
+    private static double usage(double[] use, LocalDateTime from, LocalDateTime to) {
+        double total = 0;
+        LocalDateTime cursor = from;
+        while (cursor.isBefore(to)) {
+            LocalDateTime dayEnd = cursor.toLocalDate().plusDays(1).atStartOfDay();
+            LocalDateTime end = dayEnd.isBefore(to) ? dayEnd : to;
+            total += use[weekday(cursor.toLocalDate().toEpochDay())] * dayFraction(cursor, end);
+            cursor = end;
+        }
+        return total;
+    }
+
+    // When the stock runs out at the expected rate, or null if not within the horizon
+    private static LocalDateTime stockOutTime(double stock, double[] use, LocalDateTime now) {
+        if (stock <= IngredientLotIndex.EPSILON) {
+            return now;
+        }
+        LocalDateTime cursor = now;
+        LocalDateTime horizon = now.plusDays(HORIZON_DAYS);
+        while (cursor.isBefore(horizon)) {
+            LocalDateTime dayEnd = cursor.toLocalDate().plusDays(1).atStartOfDay();
+            double rate = use[weekday(cursor.toLocalDate().toEpochDay())];
+            double needed = rate * dayFraction(cursor, dayEnd);
+            if (needed >= stock && rate > 0) {
+                return cursor.plusMinutes((long) (stock / rate * 24 * 60));
+            }
+            stock -= needed;
+            cursor = dayEnd;
+        }
+        return null;
+    }
+
+    private static double dayFraction(LocalDateTime from, LocalDateTime to) {
+        return ChronoUnit.MINUTES.between(from, to) / (24.0 * 60);
+    }
+
+    // Monday = 0 (epoch day 0 was a Thursday)
+    private static int weekday(long epochDay) {
+        return (int) Math.floorMod(epochDay + 3, 7L);
+    }
+
+    private void ensureCapacity(int codes) {
+        int previous = levels.length;
+        if (codes <= previous) {
+            return;
+        }
+        levels = Arrays.copyOf(levels, codes);
+        levelSamples = Arrays.copyOf(levelSamples, codes);
+        weekdayRates = Arrays.copyOf(weekdayRates, codes);
+        weekdaySamples = Arrays.copyOf(weekdaySamples, codes);
+        for (int code = previous; code < codes; code++) {
+            weekdayRates[code] = new double[7];
+            weekdaySamples[code] = new int[7];
+        }
+    }
+
+    // Inner class for one ingredient's forecast
+    public static class Forecast {
+        private final Ingredient ingredient;
+        private final double usableStock;
+        private final double averageDailyUse;
+        private final LocalDateTime stockOutAt;
+        private final double suggestedQuantity;
+
+        public Forecast(Ingredient ingredient, double usableStock, double averageDailyUse,
+                        LocalDateTime stockOutAt, double suggestedQuantity) {
+            this.ingredient = ingredient;
+            this.usableStock = usableStock;
+            this.averageDailyUse = averageDailyUse;
+            this.stockOutAt = stockOutAt;
+            this.suggestedQuantity = suggestedQuantity;
+        }
+
+        public Ingredient getIngredient() { return ingredient; }
+        public double getUsableStock() { return usableStock; }
+        public double getAverageDailyUse() { return averageDailyUse; }
+        public LocalDateTime getStockOutAt() { return stockOutAt; }
+        public double getSuggestedQuantity() { return suggestedQuantity; }
+
+        @Override
+        public String toString() {
+            String unit = ingredient.getUnit().toString().toLowerCase();
+            return String.format("%s: %.2f %s usable, ~%.2f/day, %s, order %.2f",
+                    ingredient.getName(), usableStock, unit, averageDailyUse,
+                    stockOutAt != null ? "runs out " + stockOutAt.withSecond(0).withNano(0) : "no stock-out forecast",
+                    suggestedQuantity);
+        }
+    }
+}
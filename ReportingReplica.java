@@ -0,0 +1,287 @@
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * ReportingReplica class for running reports off a copy of the database
+ * Keeps a copy of the primary refreshed with the SQLite online backup API,
+ * copying a few pages per step. The backup waits and retries while the primary
+ * is busy, and starts over if the primary is written during the copy. Two
+ * replica files (coffee_shop.replica-a.db / -b.db) take turns: each refresh
+ * restores into the one reports are not reading and then swaps it in, so a
+ * report never waits on a copy or sees a half-restored database. Reports ask
+ * for getReportConnection(): the replica while it is within the allowed lag,
+ * otherwise the primary (and a refresh is started in the background).
+ *
+ * -Dcoffeeshop.reportReplica=false turns it off; the refresh interval and the
+ * maximum lag are coffeeshop.replicaRefreshSeconds / coffeeshop.replicaMaxLagSeconds.
+ */
+public class ReportingReplica {
+    private static final boolean ENABLED =
+        Boolean.parseBoolean(System.getProperty("coffeeshop.reportReplica", "true"));
+    private static final long REFRESH_INTERVAL_MILLIS = Long.getLong("coffeeshop.replicaRefreshSeconds", 60L) * 1000;
+    private static final long MAX_LAG_MILLIS = Long.getLong("coffeeshop.replicaMaxLagSeconds", 300L) * 1000;
+
+    // Backup pacing: pages copied per step, pause and retries while the primary is busy
+    private static final int PAGES_PER_STEP = 64;
+    private static final int STEP_SLEEP_MILLIS = 5;
+    private static final int BUSY_RETRIES = 20;
+
+    private static ReportingReplica instance;
+
+    private final DatabaseConnection primary;
+    private final String[] replicaFiles;
+    private final boolean enabled;
+    private final long maxLagMillis;
+    private final DatabaseConnection[] replicas = new DatabaseConnection[2];
+    // Replica reports read; the other one is restored into on the next refresh
+    private volatile DatabaseConnection replica;
+    private ScheduledExecutorService refresher;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    // Staleness and refresh metrics
+    private volatile long snapshotTimeMillis;
+    private volatile long lastRefreshMillis;
+    private volatile long lastCopiedPages;
+    private volatile int refreshCount;
+    private volatile int failedRefreshCount;
+
+    public ReportingReplica(DatabaseConnection primary, String replicaFile, boolean enabled, long maxLagMillis) {
+        this.primary = primary;
+        String base = replicaFile.replaceAll("\\.db$", "");
+        this.replicaFiles = new String[] {base + "-a.db", base + "-b.db"};
+        this.enabled = enabled;
+        this.maxLagMillis = maxLagMillis;
+    }
+
+    // Get the replica of this register's database
+    public static synchronized ReportingReplica getInstance() {
+        if (instance == null) {
+            DatabaseConnection primary = DatabaseConnection.getInstance();
+            String replicaFile = primary.getDatabaseName().replaceAll("\\.db$", "") + ".replica.db";
+            instance = new ReportingReplica(primary, replicaFile, ENABLED, MAX_LAG_MILLIS);
+        }
+        return instance;
+    }
+
+    // Connection reports should read from
+    public DatabaseConnection getReportConnection() {
+        if (!enabled) {
+            return primary;
+        }
+
+        synchronized (this) {
+            if (replica == null) {
+                // First report: make the initial copy now, then keep it fresh in the background
+                replicas[0] = new DatabaseConnection(replicaFiles[0]);
+                replicas[1] = new DatabaseConnection(replicaFiles[1]);
+                refresh();
+                startRefresher();
+            }
+        }
+
+        DatabaseConnection current = replica;
+        if (current != null && snapshotTimeMillis > 0 && getLagMillis() <= maxLagMillis) {
+            return current;
+        }
+        requestRefresh();
+        return primary;
+    }
+
+    // Copy the primary into the replica; true when the copy completed
+    public boolean refresh() {
+        if (!refreshing.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            long started = System.currentTimeMillis();
+            DatabaseConnection standby = standby();
+            if (standby == null) {
+                return false;
+            }
+            lastCopiedPages = copyFromPrimary(standby);
+            // Swap only once the copy is complete; reports already running keep the previous copy
+            replica = standby;
+            snapshotTimeMillis = started;
+            lastRefreshMillis = System.currentTimeMillis() - started;
+            refreshCount++;
+            return true;
+        } catch (SQLException e) {
+            failedRefreshCount++;
+            System.err.println("Error refreshing reporting replica: " + e.getMessage());
+            return false;
+        } finally {
+            refreshing.set(false);
+        }
+    }
+
+    // How far the replica is behind the primary, in milliseconds
+    public long getLagMillis() {
+        return snapshotTimeMillis > 0 ? System.currentTimeMillis() - snapshotTimeMillis : Long.MAX_VALUE;
+    }
+
+    public boolean isFresh() {
+        return snapshotTimeMillis > 0 && getLagMillis() <= maxLagMillis;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public ReplicaStats getStats() {
+        return new ReplicaStats(enabled, snapshotTimeMillis > 0 ? getLagMillis() : -1, maxLagMillis,
+                                lastRefreshMillis, lastCopiedPages, refreshCount, failedRefreshCount);
+    }
+
+    // Stop refreshing and close the replica file
+    public synchronized void close() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+            refresher = null;
+        }
+        for (int i = 0; i < replicas.length; i++) {
+            if (replicas[i] != null) {
+                replicas[i].closeConnection();
+                replicas[i] = null;
+            }
+        }
+        replica = null;
+    }
+
+    // The replica file reports are not reading, or null once closed
+    private synchronized DatabaseConnection standby() {
+        if (replicas[0] == null) {
+            return null;
+        }
+        return replica == replicas[0] ? replicas[1] : replicas[0];
+    }
+
+    private synchronized void startRefresher() {
+        if (refresher != null) {
+            return;
+        }
+        refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "report-replica");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleWithFixedDelay(this::refreshSafely, REFRESH_INTERVAL_MILLIS, REFRESH_INTERVAL_MILLIS,
+                                         TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void requestRefresh() {
+        if (refresher != null && !refreshing.get()) {
+            refresher.execute(this::refreshSafely);
+        }
+    }
+
+    private void refreshSafely() {
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            System.err.println("Reporting replica refresh failed: " + e.getMessage());
+        }
+    }
+
+    // Restore the primary file into the given replica connection a few pages at a time
+    private long copyFromPrimary(DatabaseConnection target) throws SQLException {
+        Connection connection = target.getConnection();
+        if (connection == null) {
+            throw new SQLException("Replica connection is not available");
+        }
+        String source = primary.getDatabaseName();
+
+        // sqlite-jdbc exposes a paced backup on its native DB handle; the driver is optional, so look it up reflectively
+        try {
+            Class<?> sqliteConnectionClass = Class.forName("org.sqlite.SQLiteConnection");
+            Class<?> observerClass = Class.forName("org.sqlite.core.DB$ProgressObserver");
+            Object sqliteConnection = connection.unwrap(sqliteConnectionClass);
+            Object database = sqliteConnectionClass.getMethod("getDatabase").invoke(sqliteConnection);
+            Method restore = database.getClass().getMethod("restore", String.class, String.class, observerClass,
+                                                           int.class, int.class, int.class);
+
+            final long[] pages = new long[1];
+            Object observer = Proxy.newProxyInstance(observerClass.getClassLoader(), new Class<?>[] {observerClass},
+                (proxy, method, args) -> {
+                    if ("progress".equals(method.getName()) && args != null && args.length == 2) {
+                        pages[0] = ((Number) args[1]).longValue();
+                        return null;
+                    }
+                    if ("hashCode".equals(method.getName())) {
+                        return System.identityHashCode(proxy);
+                    }
+                    if ("equals".equals(method.getName())) {
+                        return proxy == args[0];
+                    }
+                    return "toString".equals(method.getName()) ? "ReplicaProgress" : null;
+                });
+
+            Object rc = restore.invoke(database, "main", source, observer, STEP_SLEEP_MILLIS, BUSY_RETRIES, PAGES_PER_STEP);
+            // SQLITE_OK (0) or SQLITE_DONE (101)
+            if (rc instanceof Integer && (Integer) rc != 0 && (Integer) rc != 101) {
+                throw new SQLException("Backup failed with SQLite code " + rc);
+            }
+            return pages[0];
+
+        } catch (ReflectiveOperationException e) {
+            if (e instanceof java.lang.reflect.InvocationTargetException && e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            // Older driver: its "restore from" statement runs the same backup API without custom pacing
+            try (Statement stmt = connection.createStatement()) {
+                stmt.executeUpdate("restore from " + source);
+            }
+            return -1;
+        }
+    }
+
+    // Inner class for replica status
+    public static class ReplicaStats {
+        private final boolean enabled;
+        private final long lagMillis;
+        private final long maxLagMillis;
+        private final long lastRefreshMillis;
+        private final long lastCopiedPages;
+        private final int refreshCount;
+        private final int failedRefreshCount;
+
+        public ReplicaStats(boolean enabled, long lagMillis, long maxLagMillis, long lastRefreshMillis,
+                            long lastCopiedPages, int refreshCount, int failedRefreshCount) {
+            this.enabled = enabled;
+            this.lagMillis = lagMillis;
+            this.maxLagMillis = maxLagMillis;
+            this.lastRefreshMillis = lastRefreshMillis;
+            this.lastCopiedPages = lastCopiedPages;
+            this.refreshCount = refreshCount;
+            this.failedRefreshCount = failedRefreshCount;
+        }
+
+        public boolean isEnabled() { return enabled; }
+        public long getLagMillis() { return lagMillis; }
+        public long getMaxLagMillis() { return maxLagMillis; }
+        public long getLastRefreshMillis() { return lastRefreshMillis; }
+        public long getLastCopiedPages() { return lastCopiedPages; }
+        public int getRefreshCount() { return refreshCount; }
+        public int getFailedRefreshCount() { return failedRefreshCount; }
+
+        @Override
+        public String toString() {
+            if (!enabled) {
+                return "Reporting replica: off (reports read the live database)";
+            }
+            if (lagMillis < 0) {
+                return "Reporting replica: not copied yet";
+            }
+            return String.format("Reporting replica: %ds behind (max %ds), last copy %d ms / %d pages, " +
+                                 "%d refreshes, %d failed",
+                                 lagMillis / 1000, maxLagMillis / 1000, lastRefreshMillis, lastCopiedPages,
+                                 refreshCount, failedRefreshCount);
+        }
+    }
+}
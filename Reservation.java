@@ -0,0 +1,116 @@
+import java.time.LocalDateTime;
+
+/**
+ * Reservation class representing an advance table booking
+ * A reservation holds one table for [startsAt, endsAt); the end is exclusive,
+ * so back-to-back bookings (19:00-20:30 and 20:30-22:00) don't conflict.
+ */
+public class Reservation {
+    public enum ReservationStatus {
+        BOOKED, SEATED, COMPLETED, CANCELLED, NO_SHOW;
+
+        // Whether a reservation in this status still holds its table
+        public boolean holdsTable() {
+            return this == BOOKED || this == SEATED;
+        }
+    }
+
+    private int reservationId;
+    private int tableNumber;
+    private int customerId;
+    private int partySize;
+    private LocalDateTime startsAt;
+    private LocalDateTime endsAt;
+    private ReservationStatus status;
+    private String notes;
+
+    // Constructor
+    public Reservation(int reservationId, int tableNumber, int customerId, int partySize,
+                       LocalDateTime startsAt, LocalDateTime endsAt) {
+        if (partySize <= 0) {
+            throw new IllegalArgumentException("Party size must be positive");
+        }
+        if (startsAt == null || endsAt == null || !endsAt.isAfter(startsAt)) {
+            throw new IllegalArgumentException("Reservation must end after it starts");
+        }
+
+        this.reservationId = reservationId;
+        this.tableNumber = tableNumber;
+        this.customerId = customerId;
+        this.partySize = partySize;
+        this.startsAt = startsAt;
+        this.endsAt = endsAt;
+        this.status = ReservationStatus.BOOKED;
+        this.notes = "";
+    }
+
+    // Getters
+    public int getReservationId() {
+        return reservationId;
+    }
+
+    public int getTableNumber() {
+        return tableNumber;
+    }
+
+    public int getCustomerId() {
+        return customerId;
+    }
+
+    public int getPartySize() {
+        return partySize;
+    }
+
+    public LocalDateTime getStartsAt() {
+        return startsAt;
+    }
+
+    public LocalDateTime getEndsAt() {
+        return endsAt;
+    }
+
+    public ReservationStatus getStatus() {
+        return status;
+    }
+
+    public String getNotes() {
+        return notes;
+    }
+
+    // Setters
+    public void setReservationId(int reservationId) {
+        this.reservationId = reservationId;
+    }
+
+    public void setStatus(ReservationStatus status) {
+        this.status = status;
+    }
+
+    public void setNotes(String notes) {
+        this.notes = notes != null ? notes : "";
+    }
+
+    // Methods
+    public boolean overlaps(LocalDateTime from, LocalDateTime to) {
+        return startsAt.isBefore(to) && endsAt.isAfter(from);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Reservation #%d - Table %d, party of %d, %s to %s (%s)",
+                reservationId, tableNumber, partySize, startsAt, endsAt.toLocalTime(), status);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (obj == null || getClass() != obj.getClass()) return false;
+        Reservation reservation = (Reservation) obj;
+        return reservationId == reservation.reservationId;
+    }
+
+    @Override
+    public int hashCode() {
+        return Integer.hashCode(reservationId);
+    }
+}
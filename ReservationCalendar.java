@@ -0,0 +1,262 @@
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * ReservationCalendar class for advance table bookings
+ * Keeps one IntervalTree of bookings per table, loaded once from ReservationDAO,
+ * and an index of tables by capacity. "Which tables for 4+ are free 19:00-20:30"
+ * walks only the tables big enough, smallest first, with an O(log n) overlap
+ * check against each table's bookings.
+ *
+ * TableDAO.findBestTableForCapacity answers from here, so seating a walk-in
+ * checks the trees instead of scanning the reservations table.
+ *
+ * book() checks the tree and then inserts through ReservationDAO, whose insert
+ * re-checks for overlaps in the same statement; another register booking the
+ * same slot first makes the insert (and so the booking) fail instead of doubling up.
+ */
+public class ReservationCalendar {
+    private static ReservationCalendar instance;
+
+    private final ReservationDAO reservationDAO;
+    private final TableDAO tableDAO;
+    private final Map<Integer, IntervalTree<Reservation>> schedules = new HashMap<>();
+    private final Map<Integer, Reservation> reservations = new HashMap<>();
+    // Bookable tables (not out of service) by capacity
+    private final TreeMap<Integer, TreeSet<Integer>> tablesByCapacity = new TreeMap<>();
+    private final Map<Integer, Table> tables = new HashMap<>();
+    private boolean loaded;
+
+    public ReservationCalendar(ReservationDAO reservationDAO, TableDAO tableDAO) {
+        this.reservationDAO = reservationDAO;
+        this.tableDAO = tableDAO;
+        TableDAO.addChangeListener(this::onTableChanged);
+    }
+
+    // Get the shared calendar
+    public static synchronized ReservationCalendar getInstance() {
+        if (instance == null) {
+            instance = new ReservationCalendar(new ReservationDAO(), new TableDAO());
+        }
+        return instance;
+    }
+
+    // Load tables and every booking that hasn't ended yet
+    public synchronized void reload() {
+        schedules.clear();
+        reservations.clear();
+        tablesByCapacity.clear();
+        tables.clear();
+        for (Table table : tableDAO.getAllTables()) {
+            indexTable(table);
+        }
+        for (Reservation reservation : reservationDAO.getActiveReservationsEndingAfter(LocalDateTime.now())) {
+            add(reservation);
+        }
+        loaded = true;
+    }
+
+    private void ensureLoaded() {
+        if (!loaded) {
+            reload();
+        }
+    }
+
+    // Tables seating at least minCapacity with no booking overlapping [from, to), smallest first.
+    // A window that has already started also needs the table to be free right now.
+    public synchronized List<Integer> findFreeTables(int minCapacity, LocalDateTime from, LocalDateTime to) {
+        ensureLoaded();
+        long start = toMillis(from);
+        long end = toMillis(to);
+        boolean startsNow = !from.isAfter(LocalDateTime.now());
+        List<Integer> free = new ArrayList<>();
+        for (TreeSet<Integer> sameCapacity : tablesByCapacity.tailMap(minCapacity, true).values()) {
+            for (int tableNumber : sameCapacity) {
+                if (startsNow && !tables.get(tableNumber).isAvailable()) {
+                    continue;
+                }
+                IntervalTree<Reservation> schedule = schedules.get(tableNumber);
+                if (schedule == null || !schedule.overlaps(start, end)) {
+                    free.add(tableNumber);
+                }
+            }
+        }
+        return free;
+    }
+
+    // Smallest free table for the party, or -1 if none
+    public synchronized int findBestTable(int partySize, LocalDateTime from, LocalDateTime to) {
+        List<Integer> free = findFreeTables(partySize, from, to);
+        return free.isEmpty() ? -1 : free.get(0);
+    }
+
+    // Book a specific table; null if the window is empty, the table is too small, it is already
+    // booked for that time or the insert fails
+    public synchronized Reservation book(int tableNumber, int customerId, int partySize,
+                                         LocalDateTime from, LocalDateTime to, String notes) {
+        if (from == null || to == null || !from.isBefore(to)) {
+            return null;
+        }
+        ensureLoaded();
+        pruneEnded(LocalDateTime.now());
+        Table table = tables.get(tableNumber);
+        if (table == null || table.getCapacity() < partySize) {
+            return null;
+        }
+        IntervalTree<Reservation> schedule = schedules.get(tableNumber);
+        if (schedule != null && schedule.overlaps(toMillis(from), toMillis(to))) {
+            return null;
+        }
+
+        Reservation reservation = new Reservation(0, tableNumber, customerId, partySize, from, to);
+        reservation.setNotes(notes);
+        int reservationId = reservationDAO.createReservationIfFree(reservation);
+        if (reservationId == 0) {
+            // Another register booked it first; pick up its bookings for this table
+            refreshTable(tableNumber);
+            return null;
+        }
+        if (reservationId < 0) {
+            return null;
+        }
+        reservation.setReservationId(reservationId);
+        add(reservation);
+        return reservation;
+    }
+
+    // Book the smallest table that is free for the whole window; null if none is
+    public synchronized Reservation bookBestTable(int customerId, int partySize,
+                                                 LocalDateTime from, LocalDateTime to, String notes) {
+        for (int tableNumber : findFreeTables(partySize, from, to)) {
+            Reservation reservation = book(tableNumber, customerId, partySize, from, to, notes);
+            if (reservation != null) {
+                return reservation;
+            }
+        }
+        return null;
+    }
+
+    // Change a booking's status; cancelled, completed and no-show bookings free their slot
+    public synchronized boolean updateStatus(int reservationId, Reservation.ReservationStatus status) {
+        ensureLoaded();
+        if (!reservationDAO.updateReservationStatus(reservationId, status)) {
+            return false;
+        }
+        Reservation reservation = reservations.get(reservationId);
+        if (reservation != null) {
+            reservation.setStatus(status);
+            if (!status.holdsTable()) {
+                remove(reservation);
+            }
+        }
+        return true;
+    }
+
+    public boolean cancel(int reservationId) {
+        return updateStatus(reservationId, Reservation.ReservationStatus.CANCELLED);
+    }
+
+    // Bookings on a table that overlap [from, to), in start order
+    public synchronized List<Reservation> getReservations(int tableNumber, LocalDateTime from, LocalDateTime to) {
+        ensureLoaded();
+        IntervalTree<Reservation> schedule = schedules.get(tableNumber);
+        return schedule != null ? schedule.findOverlapping(toMillis(from), toMillis(to)) : new ArrayList<>();
+    }
+
+    // Every booking overlapping [from, to), by table
+    public synchronized List<Reservation> getReservations(LocalDateTime from, LocalDateTime to) {
+        ensureLoaded();
+        List<Reservation> found = new ArrayList<>();
+        for (int tableNumber : new TreeSet<>(schedules.keySet())) {
+            found.addAll(schedules.get(tableNumber).findOverlapping(toMillis(from), toMillis(to)));
+        }
+        return found;
+    }
+
+    // Drop bookings that ended before the given time from memory
+    private void pruneEnded(LocalDateTime now) {
+        long nowMillis = toMillis(now);
+        for (IntervalTree<Reservation> schedule : new ArrayList<>(schedules.values())) {
+            for (Reservation reservation : schedule.findOverlapping(Long.MIN_VALUE, nowMillis)) {
+                if (toMillis(reservation.getEndsAt()) <= nowMillis) {
+                    remove(reservation);
+                }
+            }
+        }
+    }
+
+    private void add(Reservation reservation) {
+        schedules.computeIfAbsent(reservation.getTableNumber(), k -> new IntervalTree<>())
+                 .insert(toMillis(reservation.getStartsAt()), toMillis(reservation.getEndsAt()),
+                         reservation.getReservationId(), reservation);
+        reservations.put(reservation.getReservationId(), reservation);
+    }
+
+    private void remove(Reservation reservation) {
+        reservations.remove(reservation.getReservationId());
+        IntervalTree<Reservation> schedule = schedules.get(reservation.getTableNumber());
+        if (schedule != null) {
+            schedule.remove(toMillis(reservation.getStartsAt()), reservation.getReservationId());
+            if (schedule.isEmpty()) {
+                schedules.remove(reservation.getTableNumber());
+            }
+        }
+    }
+
+    // Re-read one table's bookings after losing a race for it
+    private void refreshTable(int tableNumber) {
+        IntervalTree<Reservation> schedule = schedules.remove(tableNumber);
+        if (schedule != null) {
+            for (Reservation reservation : schedule.findOverlapping(Long.MIN_VALUE, Long.MAX_VALUE)) {
+                reservations.remove(reservation.getReservationId());
+            }
+        }
+        for (Reservation reservation : reservationDAO.getActiveReservationsEndingAfter(LocalDateTime.now())) {
+            if (reservation.getTableNumber() == tableNumber) {
+                add(reservation);
+            }
+        }
+    }
+
+    // Keep the capacity index and current statuses in step with TableDAO writes
+    private synchronized void onTableChanged(int tableNumber) {
+        if (!loaded) {
+            return;
+        }
+        unindexTable(tableNumber);
+        Table table = tableDAO.getTableByNumber(tableNumber);
+        if (table != null) {
+            indexTable(table);
+        }
+    }
+
+    private void indexTable(Table table) {
+        tables.put(table.getTableNumber(), table);
+        if (table.getStatus() != Table.TableStatus.OUT_OF_SERVICE) {
+            tablesByCapacity.computeIfAbsent(table.getCapacity(), k -> new TreeSet<>()).add(table.getTableNumber());
+        }
+    }
+
+    private void unindexTable(int tableNumber) {
+        Table previous = tables.remove(tableNumber);
+        if (previous != null) {
+            TreeSet<Integer> sameCapacity = tablesByCapacity.get(previous.getCapacity());
+            if (sameCapacity != null) {
+                sameCapacity.remove(tableNumber);
+                if (sameCapacity.isEmpty()) {
+                    tablesByCapacity.remove(previous.getCapacity());
+                }
+            }
+        }
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
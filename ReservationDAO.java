@@ -0,0 +1,146 @@
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Data Access Object for Reservation operations
+ * Times are stored as UTC text like the other tables, so they compare correctly as strings.
+ */
+public class ReservationDAO {
+    // Overlap with [?, ?) on the same table among reservations that still hold it
+    private static final String CONFLICT_CONDITION =
+            "table_number = ? AND status IN ('BOOKED', 'SEATED') AND starts_at < ? AND ends_at > ?";
+
+    private DatabaseConnection dbConnection;
+
+    public ReservationDAO() {
+        this.dbConnection = DatabaseConnection.getInstance();
+    }
+
+    // Insert a reservation unless it overlaps another one on the same table.
+    // The check and the insert are one statement, so two registers can't both win.
+    // Returns the new ID, 0 on a conflict, -1 on error (including a window that doesn't end after it starts).
+    public int createReservationIfFree(Reservation reservation) {
+        if (reservation.getStartsAt() == null || reservation.getEndsAt() == null
+                || !reservation.getStartsAt().isBefore(reservation.getEndsAt())) {
+            System.err.println("Error creating reservation: it must end after it starts");
+            return -1;
+        }
+        String query = "INSERT INTO reservations (table_number, customer_id, party_size, starts_at, ends_at, status, notes) " +
+                      "SELECT ?, ?, ?, ?, ?, ?, ? WHERE NOT EXISTS (SELECT 1 FROM reservations WHERE " + CONFLICT_CONDITION + ")";
+
+        String startsAt = OrderArchive.toSqlTimestamp(reservation.getStartsAt());
+        String endsAt = OrderArchive.toSqlTimestamp(reservation.getEndsAt());
+        try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
+            pstmt.setInt(1, reservation.getTableNumber());
+            if (reservation.getCustomerId() > 0) {
+                pstmt.setInt(2, reservation.getCustomerId());
+            } else {
+                pstmt.setNull(2, Types.INTEGER);
+            }
+            pstmt.setInt(3, reservation.getPartySize());
+            pstmt.setString(4, startsAt);
+            pstmt.setString(5, endsAt);
+            pstmt.setString(6, reservation.getStatus().toString());
+            pstmt.setString(7, reservation.getNotes());
+            pstmt.setInt(8, reservation.getTableNumber());
+            pstmt.setString(9, endsAt);
+            pstmt.setString(10, startsAt);
+
+            if (pstmt.executeUpdate() == 0) {
+                return 0;
+            }
+            ResultSet generatedKeys = pstmt.getGeneratedKeys();
+            if (generatedKeys.next()) {
+                return generatedKeys.getInt(1);
+            }
+
+        } catch (SQLException e) {
+            System.err.println("Error creating reservation: " + e.getMessage());
+        }
+
+        return -1;
+    }
+
+    // Get reservation by ID
+    public Reservation getReservationById(int reservationId) {
+        String query = "SELECT * FROM reservations WHERE reservation_id = ?";
+
+        try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
+            pstmt.setInt(1, reservationId);
+            ResultSet rs = pstmt.executeQuery();
+
+            if (rs.next()) {
+                return createReservationFromResultSet(rs);
+            }
+
+        } catch (SQLException e) {
+            System.err.println("Error getting reservation by ID: " + e.getMessage());
+        }
+
+        return null;
+    }
+
+    // Reservations still holding their table that end after the given time
+    public List<Reservation> getActiveReservationsEndingAfter(LocalDateTime time) {
+        List<Reservation> reservations = new ArrayList<>();
+        String query = "SELECT * FROM reservations WHERE status IN ('BOOKED', 'SEATED') AND ends_at > ? " +
+                      "ORDER BY starts_at";
+
+        try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
+            pstmt.setString(1, OrderArchive.toSqlTimestamp(time));
+            ResultSet rs = pstmt.executeQuery();
+
+            while (rs.next()) {
+                Reservation reservation = createReservationFromResultSet(rs);
+                if (reservation != null) {
+                    reservations.add(reservation);
+                }
+            }
+
+        } catch (SQLException e) {
+            System.err.println("Error getting active reservations: " + e.getMessage());
+        }
+
+        return reservations;
+    }
+
+    // Update reservation status
+    public boolean updateReservationStatus(int reservationId, Reservation.ReservationStatus status) {
+        String query = "UPDATE reservations SET status = ?, updated_at = CURRENT_TIMESTAMP WHERE reservation_id = ?";
+
+        try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
+            pstmt.setString(1, status.toString());
+            pstmt.setInt(2, reservationId);
+
+            return pstmt.executeUpdate() > 0;
+
+        } catch (SQLException e) {
+            System.err.println("Error updating reservation status: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Helper method to create Reservation object from ResultSet
+    private Reservation createReservationFromResultSet(ResultSet rs) throws SQLException {
+        LocalDateTime startsAt = TableDAO.fromSqlTimestamp(rs.getString("starts_at"));
+        LocalDateTime endsAt = TableDAO.fromSqlTimestamp(rs.getString("ends_at"));
+        if (startsAt == null || endsAt == null || !endsAt.isAfter(startsAt)) {
+            System.err.println("Skipping reservation " + rs.getInt("reservation_id") + " with invalid times");
+            return null;
+        }
+
+        Reservation reservation = new Reservation(
+            rs.getInt("reservation_id"),
+            rs.getInt("table_number"),
+            rs.getInt("customer_id"),
+            rs.getInt("party_size"),
+            startsAt,
+            endsAt
+        );
+        reservation.setStatus(Reservation.ReservationStatus.valueOf(rs.getString("status")));
+        reservation.setNotes(rs.getString("notes"));
+        return reservation;
+    }
+}
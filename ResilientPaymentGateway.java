@@ -0,0 +1,315 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * ResilientPaymentGateway class for calling a processor without letting it stall checkout
+ * Wraps another PaymentGateway with:
+ *   - pipelining: up to maxInFlight requests outstanding at once without waiting
+ *     for earlier answers; further requests queue (bounded) and go out as
+ *     answers come back, without tying up a thread each
+ *   - a timeout per attempt, so a processor that never answers costs at most that
+ *   - retries with exponential backoff and jitter for failures marked retryable,
+ *     reusing the idempotency key so a retry can never charge twice
+ *   - a circuit breaker: after a run of failures calls fail at once for a while,
+ *     then a single probe decides whether to close it again
+ * Declines are answers, not failures, and never trip the breaker.
+ */
+public class ResilientPaymentGateway implements PaymentGateway {
+    private static final int DEFAULT_MAX_IN_FLIGHT = Integer.getInteger("coffeeshop.gatewayMaxInFlight", 32);
+    private static final int MAX_QUEUED = Integer.getInteger("coffeeshop.gatewayMaxQueued", 1000);
+    private static final long DEFAULT_TIMEOUT_MILLIS = Long.getLong("coffeeshop.gatewayTimeoutMillis", 3000L);
+    private static final int DEFAULT_MAX_RETRIES = Integer.getInteger("coffeeshop.gatewayMaxRetries", 2);
+    private static final long BACKOFF_MILLIS = Long.getLong("coffeeshop.gatewayBackoffMillis", 100L);
+    private static final int BREAKER_FAILURES = Integer.getInteger("coffeeshop.gatewayBreakerFailures", 5);
+    private static final long BREAKER_OPEN_MILLIS = Long.getLong("coffeeshop.gatewayBreakerOpenMillis", 10000L);
+
+    private static ResilientPaymentGateway instance;
+
+    private final PaymentGateway delegate;
+    private final int maxInFlight;
+    private final long timeoutMillis;
+    private final int maxRetries;
+    private final CircuitBreaker breaker = new CircuitBreaker(BREAKER_FAILURES, BREAKER_OPEN_MILLIS);
+    private final ScheduledExecutorService scheduler;
+
+    private final ConcurrentLinkedQueue<Runnable> waiting = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public ResilientPaymentGateway(PaymentGateway delegate) {
+        this(delegate, DEFAULT_MAX_IN_FLIGHT, DEFAULT_TIMEOUT_MILLIS, DEFAULT_MAX_RETRIES);
+    }
+
+    public ResilientPaymentGateway(PaymentGateway delegate, int maxInFlight, long timeoutMillis, int maxRetries) {
+        this.delegate = delegate;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.timeoutMillis = timeoutMillis;
+        this.maxRetries = Math.max(0, maxRetries);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "payment-gateway");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Get the register's gateway; the local simulator until a real processor is plugged in
+    public static synchronized ResilientPaymentGateway getInstance() {
+        if (instance == null) {
+            instance = new ResilientPaymentGateway(new SimulatedPaymentGateway());
+        }
+        return instance;
+    }
+
+    @Override
+    public CompletableFuture<GatewayResult> authorize(String idempotencyKey, Payment.PaymentMethod method,
+                                                      long amountCents, String paymentToken) {
+        return call(() -> delegate.authorize(idempotencyKey, method, amountCents, paymentToken));
+    }
+
+    @Override
+    public CompletableFuture<GatewayResult> capture(String idempotencyKey, String authorizationReference,
+                                                    long amountCents) {
+        return call(() -> delegate.capture(idempotencyKey, authorizationReference, amountCents));
+    }
+
+    @Override
+    public CompletableFuture<GatewayResult> refund(String idempotencyKey, String transactionReference,
+                                                   long amountCents) {
+        return call(() -> delegate.refund(idempotencyKey, transactionReference, amountCents));
+    }
+
+    @Override
+    public CompletableFuture<GatewayResult> voidAuthorization(String idempotencyKey, String authorizationReference) {
+        return call(() -> delegate.voidAuthorization(idempotencyKey, authorizationReference));
+    }
+
+    private CompletableFuture<GatewayResult> call(Supplier<CompletableFuture<GatewayResult>> request) {
+        requests.increment();
+        CompletableFuture<GatewayResult> result = new CompletableFuture<>();
+        attempt(request, 0, result);
+        return result;
+    }
+
+    private void attempt(Supplier<CompletableFuture<GatewayResult>> request, int attempt,
+                         CompletableFuture<GatewayResult> result) {
+        if (!breaker.allowRequest()) {
+            rejected.increment();
+            result.complete(GatewayResult.failed("Payment processor unavailable, try again shortly", false));
+            return;
+        }
+        dispatch(request).thenAccept(outcome -> {
+            if (outcome.isRetryable() && attempt < maxRetries) {
+                retries.increment();
+                // Full jitter: anywhere up to base x 2^attempt, so retries from many registers spread out
+                long delay = ThreadLocalRandom.current().nextLong((BACKOFF_MILLIS << attempt) + 1);
+                scheduler.schedule(() -> attempt(request, attempt + 1, result), delay, TimeUnit.MILLISECONDS);
+            } else {
+                result.complete(outcome);
+            }
+        });
+    }
+
+    // Queue a request behind the pipeline limit
+    private CompletableFuture<GatewayResult> dispatch(Supplier<CompletableFuture<GatewayResult>> request) {
+        CompletableFuture<GatewayResult> response = new CompletableFuture<>();
+        if (queued.incrementAndGet() > MAX_QUEUED) {
+            queued.decrementAndGet();
+            breaker.cancelProbe();
+            response.complete(GatewayResult.failed("Too many payments waiting for the processor", false));
+            return response;
+        }
+        waiting.add(() -> {
+            queued.decrementAndGet();
+            send(request, response);
+        });
+        drain();
+        return response;
+    }
+
+    // Send queued requests while there is room in the pipeline
+    private void drain() {
+        while (!waiting.isEmpty()) {
+            int current = inFlight.get();
+            if (current >= maxInFlight) {
+                return;
+            }
+            if (!inFlight.compareAndSet(current, current + 1)) {
+                continue;
+            }
+            Runnable next = waiting.poll();
+            if (next == null) {
+                inFlight.decrementAndGet();
+                continue;
+            }
+            next.run();
+        }
+    }
+
+    private void send(Supplier<CompletableFuture<GatewayResult>> request, CompletableFuture<GatewayResult> response) {
+        AtomicBoolean released = new AtomicBoolean();
+        Runnable release = () -> {
+            if (released.compareAndSet(false, true)) {
+                inFlight.decrementAndGet();
+                drain();
+            }
+        };
+
+        // A request that times out gives its slot back; the processor may still answer it later
+        ScheduledFuture<?> timer = scheduler.schedule(() -> {
+            if (response.complete(GatewayResult.failed("Payment processor timed out", true))) {
+                timeouts.increment();
+                breaker.onFailure();
+            }
+            release.run();
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+
+        CompletableFuture<GatewayResult> call;
+        try {
+            call = request.get();
+        } catch (RuntimeException e) {
+            call = new CompletableFuture<>();
+            call.completeExceptionally(e);
+        }
+        call.whenComplete((answer, error) -> {
+            timer.cancel(false);
+            GatewayResult outcome = error != null || answer == null
+                    ? GatewayResult.failed("Payment processor error: " + (error != null ? error.getMessage() : "no answer"), true)
+                    : answer;
+            if (response.complete(outcome)) {
+                if (outcome.getOutcome() == GatewayResult.Outcome.FAILED) {
+                    breaker.onFailure();
+                } else {
+                    breaker.onSuccess();
+                }
+            }
+            release.run();
+        });
+    }
+
+    public GatewayStats getStats() {
+        return new GatewayStats(breaker.getState(), inFlight.get(), queued.get(), requests.sum(), retries.sum(),
+                                timeouts.sum(), rejected.sum(), breaker.getTimesOpened());
+    }
+
+    // Inner class for the breaker state machine (closed -> open -> half-open -> closed or open)
+    static class CircuitBreaker {
+        enum State {
+            CLOSED, OPEN, HALF_OPEN
+        }
+
+        private final int failureThreshold;
+        private final long openMillis;
+        private State state = State.CLOSED;
+        private int consecutiveFailures;
+        private long openUntil;
+        private boolean probing;
+        private long timesOpened;
+
+        CircuitBreaker(int failureThreshold, long openMillis) {
+            this.failureThreshold = Math.max(1, failureThreshold);
+            this.openMillis = openMillis;
+        }
+
+        // Whether a call may go out now; while half-open only one probe at a time does
+        synchronized boolean allowRequest() {
+            if (state == State.OPEN) {
+                if (System.currentTimeMillis() < openUntil) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                probing = false;
+            }
+            if (state == State.HALF_OPEN) {
+                if (probing) {
+                    return false;
+                }
+                probing = true;
+            }
+            return true;
+        }
+
+        // A call that was allowed but never sent doesn't count as the probe
+        synchronized void cancelProbe() {
+            probing = false;
+        }
+
+        synchronized void onSuccess() {
+            consecutiveFailures = 0;
+            probing = false;
+            state = State.CLOSED;
+        }
+
+        synchronized void onFailure() {
+            consecutiveFailures++;
+            if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+                state = State.OPEN;
+                openUntil = System.currentTimeMillis() + openMillis;
+                probing = false;
+                timesOpened++;
+            }
+        }
+
+        synchronized State getState() {
+            return state;
+        }
+
+        synchronized long getTimesOpened() {
+            return timesOpened;
+        }
+    }
+
+    // Inner class for gateway health and counters
+    public static class GatewayStats {
+        private final CircuitBreaker.State breakerState;
+        private final int inFlight;
+        private final int queued;
+        private final long requests;
+        private final long retries;
+        private final long timeouts;
+        private final long rejected;
+        private final long breakerOpened;
+
+        public GatewayStats(CircuitBreaker.State breakerState, int inFlight, int queued, long requests, long retries,
+                            long timeouts, long rejected, long breakerOpened) {
+            this.breakerState = breakerState;
+            this.inFlight = inFlight;
+            this.queued = queued;
+            this.requests = requests;
+            this.retries = retries;
+            this.timeouts = timeouts;
+            this.rejected = rejected;
+            this.breakerOpened = breakerOpened;
+        }
+
+        public String getBreakerState() { return breakerState.toString(); }
+        public int getInFlight() { return inFlight; }
+        public int getQueued() { return queued; }
+        public long getRequests() { return requests; }
+        public long getRetries() { return retries; }
+        public long getTimeouts() { return timeouts; }
+        // Calls failed at once because the breaker was open
+        public long getRejected() { return rejected; }
+        public long getBreakerOpened() { return breakerOpened; }
+
+        @Override
+        public String toString() {
+            return String.format("Gateway: breaker %s (opened %d times), %d in flight, %d queued, %d requests, " +
+                                 "%d retries, %d timeouts, %d rejected", breakerState, breakerOpened, inFlight, queued,
+                                 requests, retries, timeouts, rejected);
+        }
+    }
+}
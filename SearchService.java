@@ -0,0 +1,77 @@
+import java.util.List;
+
+/**
+ * SearchService class for searching the menu, customers and inventory at once
+ * Wraps the full-text searches of the DAOs (ranked, diacritic-insensitive,
+ * prefix matching) behind one entry point for the management screens. Limits
+ * are applied in the SQL, so only the rows shown are read.
+ */
+public class SearchService {
+    private final MenuItemDAO menuItemDAO;
+    private final CustomerDAO customerDAO;
+    private final IngredientDAO ingredientDAO;
+
+    public SearchService() {
+        this(new MenuItemDAO(), new CustomerDAO(), new IngredientDAO());
+    }
+
+    public SearchService(MenuItemDAO menuItemDAO, CustomerDAO customerDAO, IngredientDAO ingredientDAO) {
+        this.menuItemDAO = menuItemDAO;
+        this.customerDAO = customerDAO;
+        this.ingredientDAO = ingredientDAO;
+    }
+
+    // Search menu items by name, category or description
+    public List<MenuItem> searchMenuItems(String searchTerm, int limit) {
+        return menuItemDAO.searchMenuItemsByName(searchTerm, sqlLimit(limit));
+    }
+
+    // Search customers by name, email or phone number
+    public List<Customer> searchCustomers(String searchTerm, int limit) {
+        return customerDAO.searchCustomers(searchTerm, sqlLimit(limit));
+    }
+
+    // Search ingredients by name
+    public List<Ingredient> searchIngredients(String searchTerm, int limit) {
+        return ingredientDAO.searchIngredientsByName(searchTerm, sqlLimit(limit));
+    }
+
+    // Search everything; each list is ranked best match first
+    public SearchResults search(String searchTerm, int limitPerType) {
+        return new SearchResults(
+            searchMenuItems(searchTerm, limitPerType),
+            searchCustomers(searchTerm, limitPerType),
+            searchIngredients(searchTerm, limitPerType)
+        );
+    }
+
+    // A limit of zero or less means no limit, which SQLite spells LIMIT -1
+    private static int sqlLimit(int limit) {
+        return limit > 0 ? limit : -1;
+    }
+
+    // Inner class for combined search results
+    public static class SearchResults {
+        private final List<MenuItem> menuItems;
+        private final List<Customer> customers;
+        private final List<Ingredient> ingredients;
+
+        public SearchResults(List<MenuItem> menuItems, List<Customer> customers, List<Ingredient> ingredients) {
+            this.menuItems = menuItems;
+            this.customers = customers;
+            this.ingredients = ingredients;
+        }
+
+        public List<MenuItem> getMenuItems() { return menuItems; }
+        public List<Customer> getCustomers() { return customers; }
+        public List<Ingredient> getIngredients() { return ingredients; }
+
+        public boolean isEmpty() {
+            return menuItems.isEmpty() && customers.isEmpty() && ingredients.isEmpty();
+        }
+
+        public int getTotalResults() {
+            return menuItems.size() + customers.size() + ingredients.size();
+        }
+    }
+}
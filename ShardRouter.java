@@ -0,0 +1,184 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * ShardRouter class for multi-store deployments
+ * Each store keeps its data in its own SQLite file (see
+ * DatabaseConnection.databaseNameForStore), with its own connection, so one
+ * store's writes never wait on another store's locks. The router hands out the
+ * DatabaseConnection for a store and runs HQ queries on every store in
+ * parallel (scatter-gather).
+ *
+ * Stores come from -Dcoffeeshop.stores=HN1,HN2,SG1; this register's own store
+ * is -Dcoffeeshop.storeId and is served by DatabaseConnection.getInstance().
+ * Only configured stores are routed; HQ queries read this register's store
+ * through a connection of their own, never the one the registers write on.
+ */
+public class ShardRouter {
+    private static final long QUERY_TIMEOUT_SECONDS = 30;
+    private static final int MAX_PARALLEL_QUERIES = 8;
+
+    private static ShardRouter instance;
+
+    private final String localStoreId;
+    private final Map<String, DatabaseConnection> shards = new ConcurrentHashMap<>();
+    private DatabaseConnection localReadConnection;
+    private final Map<String, OrderAnalytics> analytics = new ConcurrentHashMap<>();
+    private final List<String> storeIds = new ArrayList<>();
+    private final ExecutorService queryPool;
+
+    public ShardRouter(String localStoreId, List<String> storeIds) {
+        this.localStoreId = localStoreId;
+        for (String storeId : storeIds) {
+            if (!this.storeIds.contains(storeId)) {
+                this.storeIds.add(storeId);
+            }
+        }
+        if (localStoreId != null && !this.storeIds.contains(localStoreId)) {
+            this.storeIds.add(localStoreId);
+        }
+        this.queryPool = Executors.newFixedThreadPool(MAX_PARALLEL_QUERIES, r -> {
+            Thread thread = new Thread(r, "shard-query");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Get the router configured from system properties
+    public static synchronized ShardRouter getInstance() {
+        if (instance == null) {
+            String localStoreId = System.getProperty("coffeeshop.storeId");
+            List<String> storeIds = new ArrayList<>();
+            for (String storeId : System.getProperty("coffeeshop.stores", "").split(",")) {
+                if (!storeId.trim().isEmpty()) {
+                    storeIds.add(storeId.trim());
+                }
+            }
+            instance = new ShardRouter(localStoreId != null && !localStoreId.isEmpty() ? localStoreId : null, storeIds);
+        }
+        return instance;
+    }
+
+    // Whether reports should span more than this register's database
+    public synchronized boolean isSharded() {
+        return storeIds.size() > 1;
+    }
+
+    public synchronized List<String> getStoreIds() {
+        return Collections.unmodifiableList(new ArrayList<>(storeIds));
+    }
+
+    public String getLocalStoreId() {
+        return localStoreId;
+    }
+
+    // Database for a store, opened and initialized on first use; null for a store that is not configured
+    public DatabaseConnection getShard(String storeId) {
+        if (storeId == null || !isConfigured(storeId)) {
+            System.err.println("Unknown store: " + storeId);
+            return null;
+        }
+        if (storeId.equals(localStoreId)) {
+            return DatabaseConnection.getInstance();
+        }
+        return openShard(storeId);
+    }
+
+    // Database for reports on a store; this register's store is read through its own connection
+    public DatabaseConnection getReadShard(String storeId) {
+        if (storeId == null || !storeId.equals(localStoreId)) {
+            return getShard(storeId);
+        }
+        synchronized (this) {
+            if (localReadConnection == null) {
+                localReadConnection = new DatabaseConnection(DatabaseConnection.getInstance().getDatabaseName());
+            }
+            return localReadConnection;
+        }
+    }
+
+    // Register a new store; it gets a new file, so existing stores are not touched
+    public synchronized boolean addStore(String storeId) {
+        if (storeId == null || storeId.trim().isEmpty() || storeIds.contains(storeId)) {
+            return false;
+        }
+        openShard(storeId);
+        storeIds.add(storeId);
+        return true;
+    }
+
+    // Columnar order snapshot for a store, refreshed incrementally on each report
+    public OrderAnalytics getAnalytics(String storeId) {
+        DatabaseConnection shard = getReadShard(storeId);
+        if (shard == null) {
+            return null;
+        }
+        return analytics.computeIfAbsent(storeId, id -> new OrderAnalytics(shard));
+    }
+
+    // Run a query against every store in parallel; stores that fail or time out are left out
+    public <T> Map<String, T> scatter(Function<String, T> query) {
+        List<String> targets = getStoreIds();
+        Map<String, Future<T>> futures = new LinkedHashMap<>();
+        for (String storeId : targets) {
+            futures.put(storeId, queryPool.submit(() -> query.apply(storeId)));
+        }
+
+        Map<String, T> results = new LinkedHashMap<>();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(QUERY_TIMEOUT_SECONDS);
+        for (Map.Entry<String, Future<T>> entry : futures.entrySet()) {
+            try {
+                long remaining = Math.max(0, deadline - System.nanoTime());
+                results.put(entry.getKey(), entry.getValue().get(remaining, TimeUnit.NANOSECONDS));
+            } catch (TimeoutException e) {
+                entry.getValue().cancel(true);
+                System.err.println("Store " + entry.getKey() + " did not answer in time; left out of report");
+            } catch (ExecutionException e) {
+                System.err.println("Store " + entry.getKey() + " query failed: " + e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return results;
+    }
+
+    // Close every store database opened by the router
+    public void close() {
+        queryPool.shutdownNow();
+        for (DatabaseConnection shard : shards.values()) {
+            shard.closeConnection();
+        }
+        shards.clear();
+        analytics.clear();
+        synchronized (this) {
+            if (localReadConnection != null) {
+                localReadConnection.closeConnection();
+                localReadConnection = null;
+            }
+        }
+    }
+
+    private synchronized boolean isConfigured(String storeId) {
+        return storeIds.contains(storeId);
+    }
+
+    private DatabaseConnection openShard(String storeId) {
+        return shards.computeIfAbsent(storeId, id -> {
+            DatabaseConnection shard = new DatabaseConnection(DatabaseConnection.databaseNameForStore(id));
+            shard.initializeDatabase();
+            return shard;
+        });
+    }
+}
@@ -0,0 +1,138 @@
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * ShardedReports class for HQ reports across every store
+ * Each report is sent to all store databases at once through ShardRouter and
+ * the per-store results are merged; the per-store figures are kept alongside
+ * the totals for side-by-side comparison.
+ */
+public class ShardedReports {
+    private final ShardRouter router;
+
+    public ShardedReports() {
+        this(ShardRouter.getInstance());
+    }
+
+    public ShardedReports(ShardRouter router) {
+        this.router = router;
+    }
+
+    // Order statistics for every store, plus the chain-wide total
+    public StoreReport<OrderDAO.OrderStats> getOrderStats() {
+        Map<String, OrderDAO.OrderStats> byStore =
+            router.scatter(storeId -> new OrderDAO(router.getReadShard(storeId)).getOrderStats());
+
+        int totalOrders = 0;
+        long revenueCents = 0;
+        int completed = 0;
+        int pending = 0;
+        int preparing = 0;
+        int ready = 0;
+        int cancelled = 0;
+        for (OrderDAO.OrderStats stats : byStore.values()) {
+            totalOrders += stats.getTotalOrders();
+            revenueCents += Money.toCents(stats.getTotalRevenue());
+            completed += stats.getCompletedOrders();
+            pending += stats.getPendingOrders();
+            preparing += stats.getPreparingOrders();
+            ready += stats.getReadyOrders();
+            cancelled += stats.getCancelledOrders();
+        }
+
+        OrderDAO.OrderStats total = new OrderDAO.OrderStats(
+            totalOrders,
+            Money.toDouble(revenueCents),
+            totalOrders > 0 ? Money.toDouble(revenueCents) / totalOrders : 0.0,
+            completed, pending, preparing, ready, cancelled
+        );
+        return new StoreReport<>(total, byStore);
+    }
+
+    // Payment statistics for every store, plus the chain-wide total
+    public StoreReport<PaymentDAO.PaymentStats> getPaymentStats() {
+        Map<String, PaymentDAO.PaymentStats> byStore =
+            router.scatter(storeId -> new PaymentDAO(router.getReadShard(storeId)).getPaymentStats());
+
+        int totalPayments = 0;
+        long revenueCents = 0;
+        int completed = 0;
+        int pending = 0;
+        int cancelled = 0;
+        int refunded = 0;
+        int cash = 0;
+        int card = 0;
+        int mobile = 0;
+        int loyalty = 0;
+        for (PaymentDAO.PaymentStats stats : byStore.values()) {
+            totalPayments += stats.getTotalPayments();
+            revenueCents += Money.toCents(stats.getTotalRevenue());
+            completed += stats.getCompletedPayments();
+            pending += stats.getPendingPayments();
+            cancelled += stats.getCancelledPayments();
+            refunded += stats.getRefundedPayments();
+            cash += stats.getCashPayments();
+            card += stats.getCardPayments();
+            mobile += stats.getMobilePayments();
+            loyalty += stats.getLoyaltyPayments();
+        }
+
+        PaymentDAO.PaymentStats total = new PaymentDAO.PaymentStats(
+            totalPayments,
+            Money.toDouble(revenueCents),
+            completed > 0 ? Money.toDouble(revenueCents) / completed : 0.0,
+            completed, pending, cancelled, refunded, cash, card, mobile, loyalty
+        );
+        return new StoreReport<>(total, byStore);
+    }
+
+    // Sales summary for a period, from each store's incremental analytics snapshot
+    public StoreReport<OrderAnalytics.SalesSummary> getSalesSummary(LocalDateTime from, LocalDateTime to) {
+        Map<String, OrderAnalytics.SalesSummary> byStore = router.scatter(storeId -> {
+            OrderAnalytics analytics = router.getAnalytics(storeId);
+            analytics.refresh();
+            return analytics.getSalesSummary(from, to);
+        });
+
+        int totalOrders = 0;
+        int completed = 0;
+        int cancelled = 0;
+        long revenueCents = 0;
+        for (OrderAnalytics.SalesSummary summary : byStore.values()) {
+            totalOrders += summary.getTotalOrders();
+            completed += summary.getCompletedOrders();
+            cancelled += summary.getCancelledOrders();
+            revenueCents += summary.getCompletedRevenueCents();
+        }
+        return new StoreReport<>(new OrderAnalytics.SalesSummary(totalOrders, completed, cancelled, revenueCents), byStore);
+    }
+
+    // Revenue (cents) by hour of day across all stores; snapshots must be refreshed first
+    public long[] getRevenueByHour(LocalDateTime from, LocalDateTime to, int statusMask) {
+        Map<String, long[]> byStore =
+            router.scatter(storeId -> router.getAnalytics(storeId).getRevenueByHour(from, to, statusMask));
+
+        long[] total = new long[24];
+        for (long[] hours : byStore.values()) {
+            for (int hour = 0; hour < total.length; hour++) {
+                total[hour] += hours[hour];
+            }
+        }
+        return total;
+    }
+
+    // Inner class for a merged report with its per-store parts
+    public static class StoreReport<T> {
+        private final T total;
+        private final Map<String, T> byStore;
+
+        public StoreReport(T total, Map<String, T> byStore) {
+            this.total = total;
+            this.byStore = byStore;
+        }
+
+        public T getTotal() { return total; }
+        public Map<String, T> getByStore() { return byStore; }
+        public int getStoreCount() { return byStore.size(); }
+    }
+}
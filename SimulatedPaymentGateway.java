@@ -0,0 +1,181 @@
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * SimulatedPaymentGateway class for a local stand-in for a card processor
+ * Each call answers after a latency drawn from a log-normal distribution set by
+ * its median and 99th percentile, which gives the long tail real processors
+ * have. A share of calls is declined, a share fails with a transient error, and
+ * a share never answers at all, so timeouts, retries and the circuit breaker in
+ * ResilientPaymentGateway can be exercised and checkout throughput measured
+ * against a slow or flaky processor.
+ *
+ * Like a real processor it remembers final answers by idempotency key, and it
+ * checks captures, voids and refunds against what was authorized and captured.
+ */
+public class SimulatedPaymentGateway implements PaymentGateway {
+    // z-score of the 99th percentile of a standard normal
+    private static final double Z_99 = 2.326;
+
+    private final double medianMillis;
+    private final double sigma;
+    private final double declineRate;
+    private final double errorRate;
+    private final double hangRate;
+    private final ScheduledExecutorService scheduler;
+
+    private final Map<String, GatewayResult> answered = new ConcurrentHashMap<>();
+    private final Map<String, Long> authorizedCents = new ConcurrentHashMap<>();
+    private final Map<String, Long> capturedCents = new ConcurrentHashMap<>();
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder declines = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder hangs = new LongAdder();
+
+    // Settings from coffeeshop.gateway* system properties
+    public SimulatedPaymentGateway() {
+        this(Long.getLong("coffeeshop.gatewayMedianMillis", 150L),
+             Long.getLong("coffeeshop.gatewayP99Millis", 1200L),
+             Double.parseDouble(System.getProperty("coffeeshop.gatewayDeclineRate", "0.02")),
+             Double.parseDouble(System.getProperty("coffeeshop.gatewayErrorRate", "0.03")),
+             Double.parseDouble(System.getProperty("coffeeshop.gatewayHangRate", "0.005")));
+    }
+
+    public SimulatedPaymentGateway(long medianMillis, long p99Millis, double declineRate, double errorRate,
+                                   double hangRate) {
+        this.medianMillis = Math.max(0, medianMillis);
+        this.sigma = medianMillis > 0 && p99Millis > medianMillis ? Math.log((double) p99Millis / medianMillis) / Z_99 : 0;
+        this.declineRate = declineRate;
+        this.errorRate = errorRate;
+        this.hangRate = hangRate;
+        this.scheduler = Executors.newScheduledThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "gateway-simulator");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public CompletableFuture<GatewayResult> authorize(String idempotencyKey, Payment.PaymentMethod method,
+                                                      long amountCents, String paymentToken) {
+        return respond(idempotencyKey, true, () -> {
+            if (amountCents <= 0) {
+                return GatewayResult.declined("Invalid amount");
+            }
+            String reference = "AUTH" + Payment.generateTransactionReference().substring(3);
+            authorizedCents.put(reference, amountCents);
+            return GatewayResult.approved(reference);
+        });
+    }
+
+    @Override
+    public CompletableFuture<GatewayResult> capture(String idempotencyKey, String authorizationReference,
+                                                    long amountCents) {
+        return respond(idempotencyKey, false, () -> {
+            Long authorized = authorizedCents.remove(authorizationReference);
+            if (authorized == null || amountCents > authorized) {
+                if (authorized != null) {
+                    authorizedCents.put(authorizationReference, authorized);
+                }
+                return GatewayResult.declined("No authorization covering " + Money.format(amountCents));
+            }
+            String reference = Payment.generateTransactionReference();
+            capturedCents.put(reference, amountCents);
+            return GatewayResult.approved(reference);
+        });
+    }
+
+    @Override
+    public CompletableFuture<GatewayResult> refund(String idempotencyKey, String transactionReference,
+                                                   long amountCents) {
+        return respond(idempotencyKey, false, () -> {
+            Long captured = capturedCents.get(transactionReference);
+            if (captured == null || amountCents > captured) {
+                return GatewayResult.declined("Nothing captured to refund for " + transactionReference);
+            }
+            capturedCents.put(transactionReference, captured - amountCents);
+            return GatewayResult.approved("RFND" + Payment.generateTransactionReference().substring(3));
+        });
+    }
+
+    @Override
+    public CompletableFuture<GatewayResult> voidAuthorization(String idempotencyKey, String authorizationReference) {
+        return respond(idempotencyKey, false, () -> {
+            if (authorizedCents.remove(authorizationReference) == null) {
+                return GatewayResult.declined("No open authorization " + authorizationReference);
+            }
+            return GatewayResult.approved("VOID" + Payment.generateTransactionReference().substring(3));
+        });
+    }
+
+    // Answer after a sampled latency; a repeated key gets the earlier final answer
+    private CompletableFuture<GatewayResult> respond(String idempotencyKey, boolean mayDecline,
+                                                     Supplier<GatewayResult> process) {
+        requests.increment();
+        CompletableFuture<GatewayResult> response = new CompletableFuture<>();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        double roll = random.nextDouble();
+        long latency = sampleLatencyMillis(random);
+
+        if (roll < hangRate) {
+            // Never answers; only a caller's timeout ends the wait
+            hangs.increment();
+            return response;
+        }
+        scheduler.schedule(() -> {
+            GatewayResult previous = idempotencyKey != null ? answered.get(idempotencyKey) : null;
+            if (previous != null) {
+                response.complete(previous);
+                return;
+            }
+            GatewayResult result;
+            if (roll < hangRate + errorRate) {
+                errors.increment();
+                result = GatewayResult.failed("Processor unavailable", true);
+            } else if (mayDecline && roll < hangRate + errorRate + declineRate) {
+                declines.increment();
+                result = GatewayResult.declined("Card declined");
+            } else {
+                result = process.get();
+            }
+            if (idempotencyKey != null && result.getOutcome() != GatewayResult.Outcome.FAILED) {
+                GatewayResult raced = answered.putIfAbsent(idempotencyKey, result);
+                result = raced != null ? raced : result;
+            }
+            response.complete(result);
+        }, latency, TimeUnit.MILLISECONDS);
+        return response;
+    }
+
+    private long sampleLatencyMillis(ThreadLocalRandom random) {
+        if (medianMillis <= 0) {
+            return 0;
+        }
+        return Math.round(medianMillis * Math.exp(sigma * random.nextGaussian()));
+    }
+
+    // Forget remembered answers (between load-test runs)
+    public void reset() {
+        answered.clear();
+        authorizedCents.clear();
+        capturedCents.clear();
+    }
+
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Simulated gateway: %d requests, %d declined, %d errors, %d unanswered",
+                requests.sum(), declines.sum(), errors.sum(), hangs.sum());
+    }
+}
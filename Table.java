@@ -73,6 +73,15 @@ public class Table {
         this.notes = notes != null ? notes : "";
     }
     
+    // Restore state loaded from the database (no validation, no expiry check)
+    public void restoreState(TableStatus status, int currentCustomerId,
+                             LocalDateTime occupiedSince, LocalDateTime reservedUntil) {
+        this.status = status;
+        this.currentCustomerId = currentCustomerId;
+        this.occupiedSince = occupiedSince;
+        this.reservedUntil = reservedUntil;
+    }
+
     // Methods
     public boolean isAvailable() {
         // Check if reservation has expired
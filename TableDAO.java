@@ -1,22 +1,58 @@
 import java.sql.*;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Data Access Object for Table operations
  * Handles all database operations related to table management
  */
 public class TableDAO {
+    // Listener notified after a table row is created, updated or deleted
+    public interface ChangeListener {
+        void onChanged(int tableNumber);
+    }
+    
+    private static final DateTimeFormatter SQL_TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final List<ChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+    // How long a walk-in is expected to stay when checking for upcoming reservations
+    private static final long WALK_IN_MINUTES = Long.getLong("coffeeshop.walkInMinutes", 60);
+    
     private DatabaseConnection dbConnection;
     
     public TableDAO() {
         this.dbConnection = DatabaseConnection.getInstance();
     }
     
+    // Table access through a specific connection (e.g. a background job's own)
+    public TableDAO(DatabaseConnection dbConnection) {
+        this.dbConnection = dbConnection;
+    }
+    
+    public static void addChangeListener(ChangeListener listener) {
+        changeListeners.add(listener);
+    }
+    
+    public static void removeChangeListener(ChangeListener listener) {
+        changeListeners.remove(listener);
+    }
+    
+    private static void fireChanged(int tableNumber) {
+        for (ChangeListener listener : changeListeners) {
+            listener.onChanged(tableNumber);
+        }
+    }
+    
     // Create a new table
     public int createTable(Table table) {
-        String query = "INSERT INTO tables (table_number, capacity, status, location) VALUES (?, ?, ?, ?)";
+        String query = "INSERT INTO tables (table_number, capacity, status, notes) VALUES (?, ?, ?, ?)";
         
         try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
             pstmt.setInt(1, table.getTableNumber());
@@ -27,10 +63,8 @@ public class TableDAO {
             int rowsAffected = pstmt.executeUpdate();
             
             if (rowsAffected > 0) {
-                ResultSet generatedKeys = pstmt.getGeneratedKeys();
-                if (generatedKeys.next()) {
-                    return generatedKeys.getInt(1);
-                }
+                fireChanged(table.getTableNumber());
+                return table.getTableNumber();
             }
             
         } catch (SQLException e) {
@@ -40,9 +74,9 @@ public class TableDAO {
         return -1;
     }
     
-    // Get table by ID
+    // Get table by ID (tables are keyed by their table number)
     public Table getTableById(int tableId) {
-        String query = "SELECT * FROM tables WHERE table_id = ?";
+        String query = "SELECT * FROM tables WHERE table_number = ?";
         
         try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
             pstmt.setInt(1, tableId);
@@ -165,7 +199,7 @@ public class TableDAO {
     // Get tables by location
     public List<Table> getTablesByLocation(String location) {
         List<Table> tables = new ArrayList<>();
-        String query = "SELECT * FROM tables WHERE location LIKE ? ORDER BY table_number";
+        String query = "SELECT * FROM tables WHERE notes LIKE ? ORDER BY table_number";
         
         try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
             pstmt.setString(1, "%" + location + "%");
@@ -187,13 +221,16 @@ public class TableDAO {
     
     // Update table status
     public boolean updateTableStatus(int tableId, Table.TableStatus status) {
-        String query = "UPDATE tables SET status = ?, updated_at = CURRENT_TIMESTAMP WHERE table_id = ?";
+        String query = "UPDATE tables SET status = ?, updated_at = CURRENT_TIMESTAMP WHERE table_number = ?";
         
         try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
             pstmt.setString(1, status.toString());
             pstmt.setInt(2, tableId);
             
             int rowsAffected = pstmt.executeUpdate();
+            if (rowsAffected > 0) {
+                fireChanged(tableId);
+            }
             return rowsAffected > 0;
             
         } catch (SQLException e) {
@@ -224,13 +261,16 @@ public class TableDAO {
     
     // Update table capacity
     public boolean updateTableCapacity(int tableId, int capacity) {
-        String query = "UPDATE tables SET capacity = ?, updated_at = CURRENT_TIMESTAMP WHERE table_id = ?";
+        String query = "UPDATE tables SET capacity = ?, updated_at = CURRENT_TIMESTAMP WHERE table_number = ?";
         
         try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
             pstmt.setInt(1, capacity);
             pstmt.setInt(2, tableId);
             
             int rowsAffected = pstmt.executeUpdate();
+            if (rowsAffected > 0) {
+                fireChanged(tableId);
+            }
             return rowsAffected > 0;
             
         } catch (SQLException e) {
@@ -241,7 +281,7 @@ public class TableDAO {
     
     // Update table location
     public boolean updateTableLocation(int tableId, String location) {
-        String query = "UPDATE tables SET location = ?, updated_at = CURRENT_TIMESTAMP WHERE table_id = ?";
+        String query = "UPDATE tables SET notes = ?, updated_at = CURRENT_TIMESTAMP WHERE table_number = ?";
         
         try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
             pstmt.setString(1, location);
@@ -264,13 +304,17 @@ public class TableDAO {
             return false;
         }
         
-        String query = "UPDATE tables SET table_number = ?, updated_at = CURRENT_TIMESTAMP WHERE table_id = ?";
+        String query = "UPDATE tables SET table_number = ?, updated_at = CURRENT_TIMESTAMP WHERE table_number = ?";
         
         try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
             pstmt.setInt(1, newTableNumber);
             pstmt.setInt(2, tableId);
             
             int rowsAffected = pstmt.executeUpdate();
+            if (rowsAffected > 0) {
+                fireChanged(tableId);
+                fireChanged(newTableNumber);
+            }
             return rowsAffected > 0;
             
         } catch (SQLException e) {
@@ -287,12 +331,15 @@ public class TableDAO {
             return false;
         }
         
-        String query = "DELETE FROM tables WHERE table_id = ?";
+        String query = "DELETE FROM tables WHERE table_number = ?";
         
         try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
             pstmt.setInt(1, tableId);
             
             int rowsAffected = pstmt.executeUpdate();
+            if (rowsAffected > 0) {
+                fireChanged(tableId);
+            }
             return rowsAffected > 0;
             
         } catch (SQLException e) {
@@ -303,7 +350,7 @@ public class TableDAO {
     
     // Check if table has active orders
     private boolean hasActiveOrders(int tableId) {
-        String query = "SELECT COUNT(*) as count FROM orders WHERE table_id = ? AND status IN ('PENDING', 'PREPARING', 'READY')";
+        String query = "SELECT COUNT(*) as count FROM orders WHERE table_number = ? AND status IN ('PENDING', 'CONFIRMED', 'PREPARING', 'READY')";
         
         try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
             pstmt.setInt(1, tableId);
@@ -358,32 +405,28 @@ public class TableDAO {
         return new TableStats(0, 0, 0, 0, 0, 0, 0.0);
     }
     
-    // Find best available table for capacity
+    // Find best available table for capacity, free of bookings for a walk-in's stay
     public Table findBestTableForCapacity(int requiredCapacity) {
-        String query = "SELECT * FROM tables WHERE status = 'AVAILABLE' AND capacity >= ? " +
-                      "ORDER BY capacity ASC LIMIT 1";
-        
-        try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
-            pstmt.setInt(1, requiredCapacity);
-            ResultSet rs = pstmt.executeQuery();
-            
-            if (rs.next()) {
-                return createTableFromResultSet(rs);
-            }
-            
-        } catch (SQLException e) {
-            System.err.println("Error finding best table for capacity: " + e.getMessage());
+        LocalDateTime now = LocalDateTime.now();
+        return findBestTableForCapacity(requiredCapacity, now, now.plusMinutes(WALK_IN_MINUTES));
+    }
+    
+    // Find the smallest table for capacity with no reservation overlapping [from, to), from the
+    // reservation calendar. A window that has already started also needs the table to be available now.
+    public Table findBestTableForCapacity(int requiredCapacity, LocalDateTime from, LocalDateTime to) {
+        if (!from.isBefore(to)) {
+            return null;
         }
-        
-        return null;
+        int tableNumber = ReservationCalendar.getInstance().findBestTable(requiredCapacity, from, to);
+        return tableNumber >= 0 ? getTableByNumber(tableNumber) : null;
     }
     
     // Get tables with current orders
     public List<Table> getTablesWithOrders() {
         List<Table> tables = new ArrayList<>();
         String query = "SELECT DISTINCT t.* FROM tables t " +
-                      "INNER JOIN orders o ON t.table_id = o.table_id " +
-                      "WHERE o.status IN ('PENDING', 'PREPARING', 'READY') " +
+                      "INNER JOIN orders o ON t.table_number = o.table_number " +
+                      "WHERE o.status IN ('PENDING', 'CONFIRMED', 'PREPARING', 'READY') " +
                       "ORDER BY t.table_number";
         
         try (Statement stmt = dbConnection.getConnection().createStatement();
@@ -403,22 +446,168 @@ public class TableDAO {
         return tables;
     }
     
+    // Save a table's status together with its occupancy and reservation times
+    public boolean saveTableState(Table table) {
+        String query = "UPDATE tables SET status = ?, current_customer_id = ?, occupied_since = ?, " +
+                      "reserved_until = ?, notes = ?, updated_at = CURRENT_TIMESTAMP WHERE table_number = ?";
+        
+        try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
+            pstmt.setString(1, table.getStatus().toString());
+            if (table.getCurrentCustomerId() > 0) {
+                pstmt.setInt(2, table.getCurrentCustomerId());
+            } else {
+                pstmt.setNull(2, Types.INTEGER);
+            }
+            pstmt.setString(3, toSqlTimestamp(table.getOccupiedSince()));
+            pstmt.setString(4, toSqlTimestamp(table.getReservedUntil()));
+            pstmt.setString(5, table.getNotes());
+            pstmt.setInt(6, table.getTableNumber());
+            
+            int rowsAffected = pstmt.executeUpdate();
+            if (rowsAffected > 0) {
+                fireChanged(table.getTableNumber());
+            }
+            return rowsAffected > 0;
+            
+        } catch (SQLException e) {
+            System.err.println("Error saving table state: " + e.getMessage());
+            return false;
+        }
+    }
+    
+    // Free reserved tables whose reservation ended, in one transaction. Each entry maps a
+    // table number to the reserved_until it expired with; a table re-reserved since is left alone.
+    public List<Integer> releaseExpiredReservations(Map<Integer, LocalDateTime> reservedUntil) {
+        return releaseTables(reservedUntil, "RESERVED", "reserved_until");
+    }
+    
+    // Free occupied tables past their seating limit, in one transaction. Each entry maps a
+    // table number to the occupied_since it was seated with; a table re-seated since is left alone.
+    public List<Integer> releaseOverstayedTables(Map<Integer, LocalDateTime> occupiedSince) {
+        return releaseTables(occupiedSince, "OCCUPIED", "occupied_since");
+    }
+    
+    private List<Integer> releaseTables(Map<Integer, LocalDateTime> expected, String status, String timeColumn) {
+        List<Integer> released = new ArrayList<>();
+        if (expected.isEmpty()) {
+            return released;
+        }
+        String query = "UPDATE tables SET status = 'AVAILABLE', current_customer_id = NULL, occupied_since = NULL, " +
+                      "reserved_until = NULL, updated_at = CURRENT_TIMESTAMP " +
+                      "WHERE table_number = ? AND status = '" + status + "' AND " + timeColumn + " = ?";
+        
+        Connection conn = dbConnection.getConnection();
+        List<Integer> tableNumbers = new ArrayList<>(expected.keySet());
+        try {
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+                for (int tableNumber : tableNumbers) {
+                    pstmt.setInt(1, tableNumber);
+                    pstmt.setString(2, toSqlTimestamp(expected.get(tableNumber)));
+                    pstmt.addBatch();
+                }
+                int[] results = pstmt.executeBatch();
+                for (int i = 0; i < results.length; i++) {
+                    if (results[i] > 0) {
+                        released.add(tableNumbers.get(i));
+                    }
+                }
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            System.err.println("Error releasing tables: " + e.getMessage());
+            try {
+                conn.rollback();
+            } catch (SQLException rollbackEx) {
+                System.err.println("Error rolling back transaction: " + rollbackEx.getMessage());
+            }
+            return new ArrayList<>();
+        } finally {
+            try {
+                conn.setAutoCommit(true);
+            } catch (SQLException e) {
+                System.err.println("Error resetting auto-commit: " + e.getMessage());
+            }
+        }
+        
+        for (int tableNumber : released) {
+            fireChanged(tableNumber);
+        }
+        return released;
+    }
+    
+    // Which of the given tables still have an order in progress
+    public List<Integer> getTableNumbersWithActiveOrders(Collection<Integer> tableNumbers) {
+        List<Integer> busy = new ArrayList<>();
+        if (tableNumbers.isEmpty()) {
+            return busy;
+        }
+        StringBuilder placeholders = new StringBuilder();
+        for (int i = 0; i < tableNumbers.size(); i++) {
+            placeholders.append(i == 0 ? "?" : ", ?");
+        }
+        String query = "SELECT DISTINCT table_number FROM orders WHERE table_number IN (" + placeholders + ") " +
+                      "AND status IN ('PENDING', 'CONFIRMED', 'PREPARING', 'READY')";
+        
+        try (PreparedStatement pstmt = dbConnection.prepareStatement(query)) {
+            int index = 1;
+            for (int tableNumber : tableNumbers) {
+                pstmt.setInt(index++, tableNumber);
+            }
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                busy.add(rs.getInt("table_number"));
+            }
+        } catch (SQLException e) {
+            System.err.println("Error checking tables for active orders: " + e.getMessage());
+            // Treat every table as busy rather than free one with guests still at it
+            busy.addAll(tableNumbers);
+        }
+        
+        return busy;
+    }
+    
     // Helper method to create Table object from ResultSet
     private Table createTableFromResultSet(ResultSet rs) throws SQLException {
-        int tableId = rs.getInt("table_id");
         int tableNumber = rs.getInt("table_number");
         int capacity = rs.getInt("capacity");
         String statusStr = rs.getString("status");
-        String location = rs.getString("location");
+        int customerId = rs.getInt("current_customer_id");
+        if (rs.wasNull()) {
+            customerId = -1;
+        }
         
-        Table.TableStatus status = Table.TableStatus.valueOf(statusStr);
+        Table.TableStatus status = statusStr != null ? Table.TableStatus.valueOf(statusStr) : Table.TableStatus.AVAILABLE;
         
         Table table = new Table(tableNumber, capacity);
-        table.setNotes(location);
+        table.setNotes(rs.getString("notes"));
+        table.restoreState(status, customerId,
+                fromSqlTimestamp(rs.getString("occupied_since")),
+                fromSqlTimestamp(rs.getString("reserved_until")));
         
         return table;
     }
     
+    // Tables store times as UTC text, like CURRENT_TIMESTAMP
+    private static String toSqlTimestamp(LocalDateTime time) {
+        return time != null ? OrderArchive.toSqlTimestamp(time) : null;
+    }
+    
+    static LocalDateTime fromSqlTimestamp(String text) {
+        if (text == null || text.isEmpty()) {
+            return null;
+        }
+        try {
+            return LocalDateTime.parse(text.length() > 19 ? text.substring(0, 19) : text, SQL_TIMESTAMP_FORMAT)
+                    .atOffset(ZoneOffset.UTC)
+                    .atZoneSameInstant(ZoneId.systemDefault())
+                    .toLocalDateTime();
+        } catch (DateTimeParseException e) {
+            System.err.println("Unreadable table timestamp: " + text);
+            return null;
+        }
+    }
+    
     // Inner class for table statistics
     public static class TableStats {
         private final int totalTables;
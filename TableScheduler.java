@@ -0,0 +1,212 @@
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TableScheduler class for expiring reservations and releasing overstayed tables
+ * Every reserved or occupied table has one deadline in a TimingWheel: the end of
+ * its reservation, or its seating time plus coffeeshop.tableMaxSeatingMinutes.
+ * The tables are read once at start; after that the wheel follows TableDAO's
+ * change listener, so nothing polls the database. Each tick releases everything
+ * that came due in one batch update through TableDAO. The scheduler reads and
+ * writes on its own connection, one call at a time, so its batch transaction
+ * never mixes with a register's work on the shared connection.
+ *
+ * An overstayed table that still has an order in progress is not released;
+ * its deadline is pushed back by coffeeshop.tableSeatingGraceMinutes instead.
+ */
+public class TableScheduler {
+    public enum DeadlineType {
+        RESERVATION_ENDS, SEATING_LIMIT
+    }
+
+    private static final long TICK_MILLIS = 1000;
+    private static final int WHEEL_SIZE = 512;
+
+    private static TableScheduler instance;
+
+    private final TableDAO tableDAO;
+    private final TimingWheel<Integer, Deadline> wheel;
+    private final long maxSeatingMillis;
+    private final long seatingGraceMillis;
+    private final TableDAO.ChangeListener changeListener = this::onTableChanged;
+    // The scheduler's connection is used from the tick thread and from change listeners; one at a time
+    private final Object dbLock = new Object();
+    private ScheduledExecutorService scheduler;
+
+    public TableScheduler(TableDAO tableDAO) {
+        this.tableDAO = tableDAO;
+        this.wheel = new TimingWheel<>(TICK_MILLIS, WHEEL_SIZE, System.currentTimeMillis());
+        this.maxSeatingMillis = TimeUnit.MINUTES.toMillis(Long.getLong("coffeeshop.tableMaxSeatingMinutes", 120));
+        this.seatingGraceMillis = TimeUnit.MINUTES.toMillis(Long.getLong("coffeeshop.tableSeatingGraceMinutes", 15));
+    }
+
+    // Get the shared scheduler, working on its own connection to this register's database
+    public static synchronized TableScheduler getInstance() {
+        if (instance == null) {
+            DatabaseConnection schedulerConnection =
+                new DatabaseConnection(DatabaseConnection.getInstance().getDatabaseName());
+            instance = new TableScheduler(new TableDAO(schedulerConnection));
+        }
+        return instance;
+    }
+
+    // Load current deadlines and start ticking
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        TableDAO.addChangeListener(changeListener);
+        List<Table> tables;
+        synchronized (dbLock) {
+            tables = tableDAO.getAllTables();
+        }
+        for (Table table : tables) {
+            track(table);
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "table-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(() -> {
+            try {
+                tick(System.currentTimeMillis());
+            } catch (RuntimeException e) {
+                System.err.println("Table scheduler tick failed: " + e.getMessage());
+            }
+        }, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+            TableDAO.removeChangeListener(changeListener);
+        }
+    }
+
+    // Re-read a table after a DAO write and move its deadline
+    private void onTableChanged(int tableNumber) {
+        Table table;
+        synchronized (dbLock) {
+            table = tableDAO.getTableByNumber(tableNumber);
+        }
+        if (table == null) {
+            wheel.cancel(tableNumber);
+        } else {
+            track(table);
+        }
+    }
+
+    // Set the table's deadline from its status, or drop it if the table has none
+    public void track(Table table) {
+        int tableNumber = table.getTableNumber();
+        if (table.getStatus() == Table.TableStatus.RESERVED && table.getReservedUntil() != null) {
+            wheel.schedule(tableNumber, toMillis(table.getReservedUntil()),
+                    new Deadline(DeadlineType.RESERVATION_ENDS, tableNumber, table.getReservedUntil()));
+        } else if (table.getStatus() == Table.TableStatus.OCCUPIED && table.getOccupiedSince() != null) {
+            wheel.schedule(tableNumber, toMillis(table.getOccupiedSince()) + maxSeatingMillis,
+                    new Deadline(DeadlineType.SEATING_LIMIT, tableNumber, table.getOccupiedSince()));
+        } else {
+            wheel.cancel(tableNumber);
+        }
+    }
+
+    // Release every table whose deadline has passed; returns the tables freed
+    public List<Integer> tick(long nowMillis) {
+        List<TimingWheel.Timer<Integer, Deadline>> due = wheel.advance(nowMillis);
+        if (due.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Map<Integer, LocalDateTime> reservations = new LinkedHashMap<>();
+        Map<Integer, LocalDateTime> seatings = new LinkedHashMap<>();
+        for (TimingWheel.Timer<Integer, Deadline> timer : due) {
+            Deadline deadline = timer.getValue();
+            if (deadline.getType() == DeadlineType.RESERVATION_ENDS) {
+                reservations.put(deadline.getTableNumber(), deadline.getSince());
+            } else {
+                seatings.put(deadline.getTableNumber(), deadline.getSince());
+            }
+        }
+
+        synchronized (dbLock) {
+            // Tables with guests still waiting on an order keep their seat a while longer
+            for (int tableNumber : tableDAO.getTableNumbersWithActiveOrders(seatings.keySet())) {
+                LocalDateTime occupiedSince = seatings.remove(tableNumber);
+                wheel.schedule(tableNumber, nowMillis + seatingGraceMillis,
+                        new Deadline(DeadlineType.SEATING_LIMIT, tableNumber, occupiedSince));
+            }
+
+            List<Integer> released = new ArrayList<>(tableDAO.releaseExpiredReservations(reservations));
+            released.addAll(tableDAO.releaseOverstayedTables(seatings));
+            return released;
+        }
+    }
+
+    // Deadlines coming up within the given number of minutes, soonest first (for the floor plan)
+    public List<Deadline> getUpcoming(long withinMinutes) {
+        long until = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(withinMinutes);
+        List<Deadline> upcoming = new ArrayList<>();
+        for (TimingWheel.Timer<Integer, Deadline> timer : wheel.upcoming(until)) {
+            upcoming.add(timer.getValue().withDueAt(fromMillis(timer.getDeadlineMillis())));
+        }
+        return upcoming;
+    }
+
+    public int getTrackedCount() {
+        return wheel.size();
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static LocalDateTime fromMillis(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+
+    // Inner class for one table's pending deadline
+    public static class Deadline {
+        private final DeadlineType type;
+        private final int tableNumber;
+        // reserved_until or occupied_since the deadline was set from; the release only applies if unchanged
+        private final LocalDateTime since;
+        private final LocalDateTime dueAt;
+
+        Deadline(DeadlineType type, int tableNumber, LocalDateTime since) {
+            this(type, tableNumber, since, null);
+        }
+
+        private Deadline(DeadlineType type, int tableNumber, LocalDateTime since, LocalDateTime dueAt) {
+            this.type = type;
+            this.tableNumber = tableNumber;
+            this.since = since;
+            this.dueAt = dueAt;
+        }
+
+        Deadline withDueAt(LocalDateTime dueAt) {
+            return new Deadline(type, tableNumber, since, dueAt);
+        }
+
+        public DeadlineType getType() { return type; }
+        public int getTableNumber() { return tableNumber; }
+        public LocalDateTime getSince() { return since; }
+        public LocalDateTime getDueAt() { return dueAt; }
+
+        @Override
+        public String toString() {
+            String what = type == DeadlineType.RESERVATION_ENDS ? "reservation ends" : "seating limit";
+            return String.format("Table %d: %s at %s", tableNumber, what,
+                    dueAt != null ? dueAt.toLocalTime().withNano(0) : "?");
+        }
+    }
+}
@@ -0,0 +1,103 @@
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * TextFolding class for diacritic-insensitive text matching
+ * Folds Vietnamese (and other Latin) text to plain lower-case ASCII letters so
+ * "ca phe" matches "Cà phê". The same folding is applied by the SQLite full-text
+ * indexes (unicode61 remove_diacritics 2, plus đ -> d in the sync triggers).
+ */
+public final class TextFolding {
+    private TextFolding() {
+    }
+
+    // Fold a string: strip combining marks, map đ/Đ to d and lower-case
+    public static String fold(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+
+        // Fast path for plain ASCII input
+        boolean ascii = true;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) {
+                ascii = false;
+                break;
+            }
+        }
+        if (ascii) {
+            return text.toLowerCase();
+        }
+
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder sb = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            sb.append(foldChar(c));
+        }
+        return sb.toString();
+    }
+
+    // Fold one already-decomposed character
+    public static char foldChar(char c) {
+        if (c == 'đ' || c == 'Đ') {
+            return 'd';
+        }
+        return Character.toLowerCase(c);
+    }
+
+    // Split folded text into search tokens (letters and digits)
+    public static List<String> tokens(String text) {
+        List<String> tokens = new ArrayList<>();
+        String folded = fold(text);
+        int start = -1;
+        for (int i = 0; i <= folded.length(); i++) {
+            boolean wordChar = i < folded.length() && Character.isLetterOrDigit(folded.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                tokens.add(folded.substring(start, i));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    // Build an FTS5 MATCH expression where every token must match as a prefix
+    public static String toMatchQuery(String searchTerm) {
+        return toMatchQuery(null, searchTerm);
+    }
+
+    // Same, restricted to one FTS column; returns null when the term has no tokens
+    public static String toMatchQuery(String column, String searchTerm) {
+        List<String> tokens = tokens(searchTerm);
+        if (tokens.isEmpty()) {
+            return null;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        if (column != null) {
+            sb.append(column).append(" : (");
+        }
+        for (int i = 0; i < tokens.size(); i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            // Tokens are letters/digits only, so quoting cannot be broken out of
+            sb.append('"').append(tokens.get(i)).append("\"*");
+        }
+        if (column != null) {
+            sb.append(')');
+        }
+        return sb.toString();
+    }
+
+    // SQL expression that applies the same đ -> d folding inside SQLite
+    public static String sqlFold(String columnExpression) {
+        return "replace(replace(" + columnExpression + ", 'đ', 'd'), 'Đ', 'D')";
+    }
+}
@@ -0,0 +1,148 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * TimingWheel class for tracking many deadlines with O(1) schedule and cancel
+ * A hashed timing wheel: time is cut into ticks and each deadline is linked into
+ * the slot for its tick (tick mod wheel size) with a count of the full turns it
+ * still has to wait. advance() walks only the slots for the ticks that have
+ * passed, so the cost of a tick doesn't depend on how many timers are pending.
+ * Each key has at most one timer; scheduling a key again moves it.
+ *
+ * Not a clock: the owner calls advance(now) from its own scheduler.
+ */
+public class TimingWheel<K, V> {
+    private final long tickMillis;
+    private final int mask;
+    // One sentinel per slot; timers form a circular doubly linked list behind it
+    private final Timer<K, V>[] slots;
+    private final Map<K, Timer<K, V>> timers = new HashMap<>();
+    // First tick not yet processed by advance()
+    private long currentTick;
+
+    // wheelSize is rounded up to a power of two
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public TimingWheel(long tickMillis, int wheelSize, long startMillis) {
+        if (tickMillis <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("Tick and wheel size must be positive");
+        }
+        int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        this.tickMillis = tickMillis;
+        this.mask = size - 1;
+        this.slots = new Timer[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Timer<>(null, null, 0);
+            slots[i].prev = slots[i];
+            slots[i].next = slots[i];
+        }
+        this.currentTick = startMillis / tickMillis;
+    }
+
+    // Set (or move) the deadline for a key; a deadline already past fires on the next advance
+    public synchronized void schedule(K key, long deadlineMillis, V value) {
+        cancel(key);
+        Timer<K, V> timer = new Timer<>(key, value, deadlineMillis);
+        long tick = Math.max(deadlineMillis / tickMillis, currentTick);
+        timer.rounds = (tick - currentTick) / slots.length;
+        link(slots[(int) (tick & mask)], timer);
+        timers.put(key, timer);
+    }
+
+    // Remove the key's timer; false if it had none
+    public synchronized boolean cancel(K key) {
+        Timer<K, V> timer = timers.remove(key);
+        if (timer == null) {
+            return false;
+        }
+        unlink(timer);
+        return true;
+    }
+
+    public synchronized Timer<K, V> get(K key) {
+        return timers.get(key);
+    }
+
+    // Process every tick up to now and return the timers that expired, in deadline order
+    public synchronized List<Timer<K, V>> advance(long nowMillis) {
+        List<Timer<K, V>> expired = new ArrayList<>();
+        long nowTick = nowMillis / tickMillis;
+        while (currentTick <= nowTick && !timers.isEmpty()) {
+            Timer<K, V> sentinel = slots[(int) (currentTick & mask)];
+            Timer<K, V> timer = sentinel.next;
+            while (timer != sentinel) {
+                Timer<K, V> next = timer.next;
+                if (timer.rounds == 0) {
+                    unlink(timer);
+                    timers.remove(timer.key);
+                    expired.add(timer);
+                } else {
+                    timer.rounds--;
+                }
+                timer = next;
+            }
+            currentTick++;
+        }
+        if (timers.isEmpty() && currentTick <= nowTick) {
+            // Nothing pending: skip the idle ticks instead of walking empty slots
+            currentTick = nowTick + 1;
+        }
+        expired.sort((a, b) -> Long.compare(a.deadlineMillis, b.deadlineMillis));
+        return expired;
+    }
+
+    // Timers due at or before the given time, soonest first (walks all timers; for views, not the tick path)
+    public synchronized List<Timer<K, V>> upcoming(long untilMillis) {
+        List<Timer<K, V>> due = new ArrayList<>();
+        for (Timer<K, V> timer : timers.values()) {
+            if (timer.deadlineMillis <= untilMillis) {
+                due.add(timer);
+            }
+        }
+        due.sort((a, b) -> Long.compare(a.deadlineMillis, b.deadlineMillis));
+        return due;
+    }
+
+    public synchronized int size() {
+        return timers.size();
+    }
+
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    private static <K, V> void link(Timer<K, V> sentinel, Timer<K, V> timer) {
+        timer.prev = sentinel.prev;
+        timer.next = sentinel;
+        sentinel.prev.next = timer;
+        sentinel.prev = timer;
+    }
+
+    private static <K, V> void unlink(Timer<K, V> timer) {
+        timer.prev.next = timer.next;
+        timer.next.prev = timer.prev;
+        timer.prev = null;
+        timer.next = null;
+    }
+
+    // Inner class for one pending deadline
+    public static class Timer<K, V> {
+        private final K key;
+        private final V value;
+        private final long deadlineMillis;
+        private long rounds;
+        private Timer<K, V> prev;
+        private Timer<K, V> next;
+
+        Timer(K key, V value, long deadlineMillis) {
+            this.key = key;
+            this.value = value;
+            this.deadlineMillis = deadlineMillis;
+        }
+
+        public K getKey() { return key; }
+        public V getValue() { return value; }
+        public long getDeadlineMillis() { return deadlineMillis; }
+    }
+}
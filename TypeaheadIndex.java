@@ -0,0 +1,292 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * TypeaheadIndex class for instant prefix suggestions at the register
+ * A compressed (radix) trie over diacritic-folded keys. Every entry is indexed
+ * under its full text and under each word, so "sua" finds "Cà phê sữa đá".
+ * Entries can be added, replaced or removed one at a time, which lets the
+ * index follow DAO writes without a full rebuild.
+ */
+public class TypeaheadIndex<T> {
+    private final Node root = new Node("");
+    private final Map<Integer, T> values = new HashMap<>();
+    private final Map<Integer, List<String>> keysById = new HashMap<>();
+
+    // Add or replace an entry under the given texts (names, phone numbers, ...)
+    public synchronized void put(int id, T value, Collection<String> texts) {
+        remove(id);
+
+        Set<String> keys = new LinkedHashSet<>();
+        for (String text : texts) {
+            if (text == null) {
+                continue;
+            }
+            String folded = TextFolding.fold(text).trim();
+            if (folded.isEmpty()) {
+                continue;
+            }
+            keys.add(folded);
+            for (String token : TextFolding.tokens(folded)) {
+                keys.add(token);
+            }
+        }
+
+        for (String key : keys) {
+            insert(key, id);
+        }
+        values.put(id, value);
+        keysById.put(id, new ArrayList<>(keys));
+    }
+
+    // Remove an entry
+    public synchronized void remove(int id) {
+        List<String> keys = keysById.remove(id);
+        values.remove(id);
+        if (keys == null) {
+            return;
+        }
+        for (String key : keys) {
+            removeKey(key, id);
+        }
+    }
+
+    // Remove every entry
+    public synchronized void clear() {
+        root.children = Node.NO_CHILDREN;
+        root.ids = Node.NO_IDS;
+        root.idCount = 0;
+        values.clear();
+        keysById.clear();
+    }
+
+    // Entries with a key starting with the prefix; exact and shorter keys come first
+    public synchronized List<T> suggest(String prefix, int limit) {
+        List<T> results = new ArrayList<>();
+        String folded = TextFolding.fold(prefix).trim();
+        if (folded.isEmpty() || limit <= 0) {
+            return results;
+        }
+
+        Node node = find(folded, false);
+        if (node == null) {
+            return results;
+        }
+
+        Set<Integer> seen = new LinkedHashSet<>();
+        List<Node> level = new ArrayList<>();
+        level.add(node);
+        // Breadth-first so shorter completions rank above longer ones
+        while (!level.isEmpty() && seen.size() < limit) {
+            List<Node> next = new ArrayList<>();
+            for (Node current : level) {
+                for (int i = 0; i < current.idCount && seen.size() < limit; i++) {
+                    seen.add(current.ids[i]);
+                }
+                next.addAll(Arrays.asList(current.children));
+            }
+            level = next;
+        }
+
+        for (Integer id : seen) {
+            results.add(values.get(id));
+        }
+        return results;
+    }
+
+    public synchronized int size() {
+        return values.size();
+    }
+
+    private void insert(String key, int id) {
+        Node node = root;
+        int offset = 0;
+
+        while (true) {
+            if (offset == key.length()) {
+                node.addId(id);
+                return;
+            }
+
+            Node child = node.child(key.charAt(offset));
+            if (child == null) {
+                Node leaf = new Node(key.substring(offset));
+                leaf.addId(id);
+                node.addChild(leaf);
+                return;
+            }
+
+            int common = commonPrefix(child.label, key, offset);
+            if (common < child.label.length()) {
+                // Split the edge at the point where the key diverges
+                Node middle = new Node(child.label.substring(0, common));
+                node.replaceChild(child, middle);
+                child.label = child.label.substring(common);
+                middle.addChild(child);
+                child = middle;
+            }
+            node = child;
+            offset += common;
+        }
+    }
+
+    // Drop an id from a key's node, then prune on the way back up: a node left with no ids and
+    // no children is removed, and one left with no ids and a single child merges into it, so the
+    // trie shrinks again as entries come and go
+    private void removeKey(String key, int id) {
+        List<Node> path = new ArrayList<>();
+        Node node = root;
+        int offset = 0;
+        path.add(node);
+        while (offset < key.length()) {
+            Node child = node.child(key.charAt(offset));
+            if (child == null || !key.startsWith(child.label, offset)) {
+                return;
+            }
+            node = child;
+            offset += child.label.length();
+            path.add(node);
+        }
+        node.removeId(id);
+
+        for (int i = path.size() - 1; i > 0; i--) {
+            Node current = path.get(i);
+            Node parent = path.get(i - 1);
+            if (current.idCount > 0 || current.children.length > 1) {
+                return;
+            }
+            if (current.children.length == 1) {
+                Node only = current.children[0];
+                only.label = current.label + only.label;
+                parent.replaceChild(current, only);
+                return;
+            }
+            parent.removeChild(current);
+        }
+    }
+
+    // Find the node for a key; with exact = false, a key ending inside an edge returns that edge's node
+    private Node find(String key, boolean exact) {
+        Node node = root;
+        int offset = 0;
+
+        while (offset < key.length()) {
+            Node child = node.child(key.charAt(offset));
+            if (child == null) {
+                return null;
+            }
+            int common = commonPrefix(child.label, key, offset);
+            if (offset + common == key.length()) {
+                return exact && common < child.label.length() ? null : child;
+            }
+            if (common < child.label.length()) {
+                return null;
+            }
+            node = child;
+            offset += common;
+        }
+        return node;
+    }
+
+    private static int commonPrefix(String label, String key, int offset) {
+        int max = Math.min(label.length(), key.length() - offset);
+        int i = 0;
+        while (i < max && label.charAt(i) == key.charAt(offset + i)) {
+            i++;
+        }
+        return i;
+    }
+
+    // Trie node: an edge label, children sorted by first character and the ids ending here
+    private static class Node {
+        static final Node[] NO_CHILDREN = new Node[0];
+        static final int[] NO_IDS = new int[0];
+
+        String label;
+        Node[] children = NO_CHILDREN;
+        int[] ids = NO_IDS;
+        int idCount;
+
+        Node(String label) {
+            this.label = label;
+        }
+
+        Node child(char c) {
+            int low = 0;
+            int high = children.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                char midChar = children[mid].label.charAt(0);
+                if (midChar < c) {
+                    low = mid + 1;
+                } else if (midChar > c) {
+                    high = mid - 1;
+                } else {
+                    return children[mid];
+                }
+            }
+            return null;
+        }
+
+        void addChild(Node child) {
+            char c = child.label.charAt(0);
+            int index = 0;
+            while (index < children.length && children[index].label.charAt(0) < c) {
+                index++;
+            }
+            Node[] expanded = new Node[children.length + 1];
+            System.arraycopy(children, 0, expanded, 0, index);
+            expanded[index] = child;
+            System.arraycopy(children, index, expanded, index + 1, children.length - index);
+            children = expanded;
+        }
+
+        void removeChild(Node child) {
+            for (int i = 0; i < children.length; i++) {
+                if (children[i] == child) {
+                    Node[] shrunk = new Node[children.length - 1];
+                    System.arraycopy(children, 0, shrunk, 0, i);
+                    System.arraycopy(children, i + 1, shrunk, i, children.length - i - 1);
+                    children = shrunk.length == 0 ? NO_CHILDREN : shrunk;
+                    return;
+                }
+            }
+        }
+
+        void replaceChild(Node oldChild, Node newChild) {
+            for (int i = 0; i < children.length; i++) {
+                if (children[i] == oldChild) {
+                    children[i] = newChild;
+                    return;
+                }
+            }
+        }
+
+        void addId(int id) {
+            for (int i = 0; i < idCount; i++) {
+                if (ids[i] == id) {
+                    return;
+                }
+            }
+            if (idCount == ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(2, idCount * 2));
+            }
+            ids[idCount++] = id;
+        }
+
+        void removeId(int id) {
+            for (int i = 0; i < idCount; i++) {
+                if (ids[i] == id) {
+                    ids[i] = ids[--idCount];
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -57,6 +57,7 @@ CREATE TABLE orders (
     discount DECIMAL(10,2) DEFAULT 0.00,
     total_amount DECIMAL(10,2) NOT NULL,
     special_instructions TEXT,
+    idempotency_key VARCHAR(64),
     order_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     completion_time TIMESTAMP,
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
@@ -91,6 +92,7 @@ CREATE TABLE payments (
     amount_paid DECIMAL(10,2) DEFAULT 0.00,
     change_given DECIMAL(10,2) DEFAULT 0.00,
     transaction_reference VARCHAR(100),
+    idempotency_key VARCHAR(64),
     card_last_four_digits VARCHAR(4),
     failure_reason TEXT,
     payment_time TIMESTAMP,
@@ -116,6 +118,20 @@ CREATE TABLE ingredients (
     updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
 );
 
+-- Table for ingredient lots: one row per delivery, each with its own expiry.
+-- ingredients.current_stock is the sum of quantity_remaining and
+-- ingredients.expiration_date the earliest expiry among lots with stock left.
+CREATE TABLE ingredient_lots (
+    lot_id INTEGER PRIMARY KEY AUTOINCREMENT,
+    ingredient_id INTEGER NOT NULL,
+    quantity_received DECIMAL(10,3) NOT NULL,
+    quantity_remaining DECIMAL(10,3) NOT NULL,
+    received_date DATE NOT NULL,
+    expiration_date DATE,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    FOREIGN KEY (ingredient_id) REFERENCES ingredients(ingredient_id) ON DELETE CASCADE
+);
+
 -- Table for menu item ingredients (many-to-many relationship)
 CREATE TABLE menu_item_ingredients (
     menu_item_id INTEGER NOT NULL,
@@ -126,18 +142,64 @@ CREATE TABLE menu_item_ingredients (
     FOREIGN KEY (ingredient_id) REFERENCES ingredients(ingredient_id) ON DELETE CASCADE
 );
 
+-- Append-only loyalty ledger; customers.loyalty_points is the running balance.
+-- Points are stored in hundredths so balances add up exactly.
+CREATE TABLE loyalty_ledger (
+    entry_id INTEGER PRIMARY KEY AUTOINCREMENT,
+    customer_id INTEGER NOT NULL,
+    delta_hundredths INTEGER NOT NULL,
+    reason VARCHAR(20) NOT NULL,
+    order_id INTEGER,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    FOREIGN KEY (customer_id) REFERENCES customers(customer_id)
+);
+
+-- Table reservations (UTC times; ends_at is exclusive)
+CREATE TABLE reservations (
+    reservation_id INTEGER PRIMARY KEY AUTOINCREMENT,
+    table_number INTEGER NOT NULL,
+    customer_id INTEGER,
+    party_size INTEGER NOT NULL,
+    starts_at TIMESTAMP NOT NULL,
+    ends_at TIMESTAMP NOT NULL,
+    status VARCHAR(20) DEFAULT 'BOOKED',
+    notes TEXT,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    FOREIGN KEY (table_number) REFERENCES tables(table_number),
+    FOREIGN KEY (customer_id) REFERENCES customers(customer_id)
+);
+
+-- Row changes captured for point-in-time restore (BackupManager adds the triggers)
+CREATE TABLE change_log (
+    change_id INTEGER PRIMARY KEY AUTOINCREMENT,
+    changed_at TEXT NOT NULL DEFAULT (strftime('%Y-%m-%d %H:%M:%f', 'now')),
+    table_name TEXT NOT NULL,
+    op CHAR(1) NOT NULL,
+    row_key INTEGER NOT NULL,
+    row_data TEXT
+);
+
 -- Create indexes for better performance
 CREATE INDEX idx_orders_customer_id ON orders(customer_id);
 CREATE INDEX idx_orders_status ON orders(status);
 CREATE INDEX idx_orders_order_time ON orders(order_time);
+CREATE UNIQUE INDEX idx_orders_idempotency_key ON orders(idempotency_key);
 CREATE INDEX idx_order_items_order_id ON order_items(order_id);
 CREATE INDEX idx_order_items_menu_item_id ON order_items(menu_item_id);
 CREATE INDEX idx_payments_order_id ON payments(order_id);
 CREATE INDEX idx_payments_status ON payments(status);
+CREATE UNIQUE INDEX idx_payments_transaction_reference ON payments(transaction_reference);
+CREATE UNIQUE INDEX idx_payments_idempotency_key ON payments(idempotency_key);
 CREATE INDEX idx_tables_status ON tables(status);
 CREATE INDEX idx_ingredients_is_active ON ingredients(is_active);
 CREATE INDEX idx_menu_items_category ON menu_items(category);
 CREATE INDEX idx_menu_items_is_available ON menu_items(is_available);
+CREATE INDEX idx_loyalty_ledger_customer_id ON loyalty_ledger(customer_id);
+CREATE INDEX idx_reservations_table_time ON reservations(table_number, starts_at);
+CREATE INDEX idx_reservations_ends_at ON reservations(ends_at);
+CREATE INDEX idx_ingredient_lots_ingredient ON ingredient_lots(ingredient_id, expiration_date);
+CREATE INDEX idx_ingredient_lots_open_expiry ON ingredient_lots(expiration_date) WHERE quantity_remaining > 0;
 
 -- Insert sample data
 
@@ -187,6 +249,10 @@ INSERT INTO ingredients (name, description, unit, current_stock, minimum_stock,
 ('Paper Cups - Medium', 'Medium disposable cups', 'PIECES', 400, 100, 1000, 0.07, 'Cup Supply Co', TRUE),
 ('Paper Cups - Large', 'Large disposable cups', 'PIECES', 300, 100, 1000, 0.09, 'Cup Supply Co', TRUE);
 
+-- Opening lot for each sample ingredient's stock
+INSERT INTO ingredient_lots (ingredient_id, quantity_received, quantity_remaining, received_date, expiration_date)
+SELECT ingredient_id, current_stock, current_stock, DATE('now'), expiration_date FROM ingredients WHERE current_stock > 0;
+
 -- Sample menu item ingredients relationships
 INSERT INTO menu_item_ingredients (menu_item_id, ingredient_id, quantity_required) VALUES
 -- Espresso
@@ -248,6 +314,58 @@ CREATE TRIGGER update_ingredients_timestamp
         UPDATE ingredients SET updated_at = CURRENT_TIMESTAMP WHERE ingredient_id = NEW.ingredient_id;
     END;
 
+-- Full-text search (SQLite FTS5)
+-- unicode61 with remove_diacritics 2 folds Vietnamese accents; the triggers map đ/Đ to d
+-- so "ca phe" matches "Cà phê" and "da" matches "đá".
+
+-- Full-text index for menu items
+CREATE VIRTUAL TABLE menu_items_fts USING fts5(name, category, description, tokenize = 'unicode61 remove_diacritics 2', prefix = '2 3');
+
+CREATE TRIGGER menu_items_fts_ai AFTER INSERT ON menu_items BEGIN
+    INSERT INTO menu_items_fts (rowid, name, category, description) VALUES (new.id, replace(replace(new.name, 'đ', 'd'), 'Đ', 'D'), replace(replace(new.category, 'đ', 'd'), 'Đ', 'D'), replace(replace(new.description, 'đ', 'd'), 'Đ', 'D'));
+END;
+
+CREATE TRIGGER menu_items_fts_ad AFTER DELETE ON menu_items BEGIN
+    DELETE FROM menu_items_fts WHERE rowid = old.id;
+END;
+
+CREATE TRIGGER menu_items_fts_au AFTER UPDATE ON menu_items BEGIN
+    DELETE FROM menu_items_fts WHERE rowid = old.id;
+    INSERT INTO menu_items_fts (rowid, name, category, description) VALUES (new.id, replace(replace(new.name, 'đ', 'd'), 'Đ', 'D'), replace(replace(new.category, 'đ', 'd'), 'Đ', 'D'), replace(replace(new.description, 'đ', 'd'), 'Đ', 'D'));
+END;
+
+-- Full-text index for customers
+CREATE VIRTUAL TABLE customers_fts USING fts5(name, email, phone_number, tokenize = 'unicode61 remove_diacritics 2', prefix = '2 3');
+
+CREATE TRIGGER customers_fts_ai AFTER INSERT ON customers BEGIN
+    INSERT INTO customers_fts (rowid, name, email, phone_number) VALUES (new.customer_id, replace(replace(new.name, 'đ', 'd'), 'Đ', 'D'), replace(replace(new.email, 'đ', 'd'), 'Đ', 'D'), replace(replace(new.phone_number, 'đ', 'd'), 'Đ', 'D'));
+END;
+
+CREATE TRIGGER customers_fts_ad AFTER DELETE ON customers BEGIN
+    DELETE FROM customers_fts WHERE rowid = old.customer_id;
+END;
+
+CREATE TRIGGER customers_fts_au AFTER UPDATE ON customers BEGIN
+    DELETE FROM customers_fts WHERE rowid = old.customer_id;
+    INSERT INTO customers_fts (rowid, name, email, phone_number) VALUES (new.customer_id, replace(replace(new.name, 'đ', 'd'), 'Đ', 'D'), replace(replace(new.email, 'đ', 'd'), 'Đ', 'D'), replace(replace(new.phone_number, 'đ', 'd'), 'Đ', 'D'));
+END;
+
+-- Full-text index for ingredients
+CREATE VIRTUAL TABLE ingredients_fts USING fts5(name, supplier, tokenize = 'unicode61 remove_diacritics 2', prefix = '2 3');
+
+CREATE TRIGGER ingredients_fts_ai AFTER INSERT ON ingredients BEGIN
+    INSERT INTO ingredients_fts (rowid, name, supplier) VALUES (new.ingredient_id, replace(replace(new.name, 'đ', 'd'), 'Đ', 'D'), replace(replace(new.supplier, 'đ', 'd'), 'Đ', 'D'));
+END;
+
+CREATE TRIGGER ingredients_fts_ad AFTER DELETE ON ingredients BEGIN
+    DELETE FROM ingredients_fts WHERE rowid = old.ingredient_id;
+END;
+
+CREATE TRIGGER ingredients_fts_au AFTER UPDATE ON ingredients BEGIN
+    DELETE FROM ingredients_fts WHERE rowid = old.ingredient_id;
+    INSERT INTO ingredients_fts (rowid, name, supplier) VALUES (new.ingredient_id, replace(replace(new.name, 'đ', 'd'), 'Đ', 'D'), replace(replace(new.supplier, 'đ', 'd'), 'Đ', 'D'));
+END;
+
 -- Views for common queries
 
 -- View for current table status